@@ -0,0 +1,234 @@
+/**
+ * NoiseModelling is a free and open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by Université Gustave Eiffel and CNRS
+ * <http://noise-planet.org/noisemodelling.html>
+ * as part of:
+ * the Eval-PDU project (ANR-08-VILL-0005) 2008-2011, funded by the Agence Nationale de la Recherche (French)
+ * the CENSE project (ANR-16-CE22-0012) 2017-2021, funded by the Agence Nationale de la Recherche (French)
+ * the Nature4cities (N4C) project, funded by European Union’s Horizon 2020 research and innovation programme under grant agreement No 730468
+ *
+ * Noisemap is distributed under GPL 3 license.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488) and Ifsttar
+ * Copyright (C) 2013-2019 Ifsttar and CNRS
+ * Copyright (C) 2020 Université Gustave Eiffel and CNRS
+ */
+package org.noise_planet.noisemodelling.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.Polygon;
+import org.noise_planet.noisemodelling.pathfinder.FastObstructionTest;
+import org.noise_planet.noisemodelling.pathfinder.LayerDelaunayError;
+import org.noise_planet.noisemodelling.pathfinder.MeshBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Scenes shared by all benchmarks. Synthetic scenes are regular grids of jittered buildings, the density is the
+ * number of buildings along each side of a 1 km² square. The real scene is the Lorient building layout of the
+ * tutorial module. Random generators are seeded so that all runs use the same geometry.
+ */
+public final class BenchmarkScene {
+    public static final double RECEIVER_HEIGHT = 4.0;
+    public static final double SOURCE_HEIGHT = 0.05;
+    public static final int POINT_COUNT = 64;
+    private static final long SEED = 42;
+    private static final double SYNTHETIC_SIDE = 1000;
+    private static final String LORIENT_BUILDINGS = "/org/noise_planet/nmtutorial01/buildings.geojson";
+
+    public enum SceneType {
+        SPARSE(8), MEDIUM(20), DENSE(40), LORIENT(0);
+
+        final int buildingsPerSide;
+
+        SceneType(int buildingsPerSide) {
+            this.buildingsPerSide = buildingsPerSide;
+        }
+    }
+
+    private final List<Polygon> buildings;
+    private final List<Double> heights;
+    private final Envelope envelope;
+    private FastObstructionTest freeFieldFinder;
+    private final List<Coordinate> receivers = new ArrayList<>();
+    private final List<Coordinate> sources = new ArrayList<>();
+
+    private BenchmarkScene(List<Polygon> buildings, List<Double> heights, Envelope envelope) {
+        this.buildings = buildings;
+        this.heights = heights;
+        this.envelope = envelope;
+    }
+
+    /**
+     * Build the scene geometry, without triangulation
+     * @param sceneType Scene to load
+     * @return Scene with buildings, {@link #getFreeFieldFinder()} is null until {@link #buildMesh()} is called
+     */
+    public static BenchmarkScene load(SceneType sceneType) throws IOException {
+        if(sceneType == SceneType.LORIENT) {
+            return loadGeoJSON(LORIENT_BUILDINGS);
+        } else {
+            return generateGrid(sceneType.buildingsPerSide);
+        }
+    }
+
+    /**
+     * Build the scene, triangulate it and pick the receivers and sources positions outside of buildings
+     * @param sceneType Scene to load
+     * @return Ready to use scene
+     */
+    public static BenchmarkScene create(SceneType sceneType) throws IOException, LayerDelaunayError {
+        BenchmarkScene scene = load(sceneType);
+        scene.buildMesh();
+        scene.pickPoints();
+        return scene;
+    }
+
+    private static BenchmarkScene generateGrid(int buildingsPerSide) {
+        GeometryFactory factory = new GeometryFactory();
+        Random random = new Random(SEED);
+        List<Polygon> buildings = new ArrayList<>(buildingsPerSide * buildingsPerSide);
+        List<Double> heights = new ArrayList<>(buildingsPerSide * buildingsPerSide);
+        double cellSize = SYNTHETIC_SIDE / buildingsPerSide;
+        for(int i = 0; i < buildingsPerSide; i++) {
+            for(int j = 0; j < buildingsPerSide; j++) {
+                // Footprint between 30% and 60% of the cell, the remaining space is left for the streets
+                double width = cellSize * (0.3 + 0.3 * random.nextDouble());
+                double depth = cellSize * (0.3 + 0.3 * random.nextDouble());
+                double minX = i * cellSize + (cellSize - width) * random.nextDouble();
+                double minY = j * cellSize + (cellSize - depth) * random.nextDouble();
+                buildings.add(factory.createPolygon(new Coordinate[]{new Coordinate(minX, minY),
+                        new Coordinate(minX + width, minY), new Coordinate(minX + width, minY + depth),
+                        new Coordinate(minX, minY + depth), new Coordinate(minX, minY)}));
+                heights.add(5 + 25 * random.nextDouble());
+            }
+        }
+        return new BenchmarkScene(buildings, heights, new Envelope(-50, SYNTHETIC_SIDE + 50, -50,
+                SYNTHETIC_SIDE + 50));
+    }
+
+    private static BenchmarkScene loadGeoJSON(String resource) throws IOException {
+        GeometryFactory factory = new GeometryFactory();
+        List<Polygon> buildings = new ArrayList<>();
+        List<Double> heights = new ArrayList<>();
+        Envelope envelope = new Envelope();
+        try(InputStream inputStream = BenchmarkScene.class.getResourceAsStream(resource)) {
+            if(inputStream == null) {
+                throw new IOException("Missing resource " + resource);
+            }
+            JsonNode root = new ObjectMapper().readTree(inputStream);
+            for(JsonNode feature : root.get("features")) {
+                JsonNode geometry = feature.get("geometry");
+                double height = feature.get("properties").get("height").asDouble();
+                List<JsonNode> polygons = new ArrayList<>();
+                if("MultiPolygon".equals(geometry.get("type").asText())) {
+                    for(JsonNode polygon : geometry.get("coordinates")) {
+                        polygons.add(polygon);
+                    }
+                } else if("Polygon".equals(geometry.get("type").asText())) {
+                    polygons.add(geometry.get("coordinates"));
+                }
+                for(JsonNode polygon : polygons) {
+                    LinearRing shell = null;
+                    List<LinearRing> holes = new ArrayList<>();
+                    for(JsonNode ring : polygon) {
+                        Coordinate[] coordinates = new Coordinate[ring.size()];
+                        for(int i = 0; i < coordinates.length; i++) {
+                            coordinates[i] = new Coordinate(ring.get(i).get(0).asDouble(), ring.get(i).get(1).asDouble());
+                        }
+                        if(shell == null) {
+                            shell = factory.createLinearRing(coordinates);
+                        } else {
+                            holes.add(factory.createLinearRing(coordinates));
+                        }
+                    }
+                    Polygon building = factory.createPolygon(shell, holes.toArray(new LinearRing[0]));
+                    envelope.expandToInclude(building.getEnvelopeInternal());
+                    buildings.add(building);
+                    heights.add(height);
+                }
+            }
+        }
+        envelope.expandBy(50);
+        return new BenchmarkScene(buildings, heights, envelope);
+    }
+
+    /**
+     * @return New mesh builder fed with the scene buildings, {@link MeshBuilder#finishPolygonFeeding(Envelope)} is
+     * not called
+     */
+    public MeshBuilder createMeshBuilder() {
+        MeshBuilder meshBuilder = new MeshBuilder();
+        for(int i = 0; i < buildings.size(); i++) {
+            meshBuilder.addGeometry(buildings.get(i), heights.get(i));
+        }
+        return meshBuilder;
+    }
+
+    /**
+     * Triangulate the scene
+     */
+    public void buildMesh() throws LayerDelaunayError {
+        MeshBuilder meshBuilder = createMeshBuilder();
+        meshBuilder.finishPolygonFeeding(envelope);
+        freeFieldFinder = new FastObstructionTest(meshBuilder.getPolygonWithHeight(), meshBuilder.getTriangles(),
+                meshBuilder.getTriNeighbors(), meshBuilder.getVertices());
+    }
+
+    private void pickPoints() {
+        Random random = new Random(SEED);
+        while(receivers.size() < POINT_COUNT || sources.size() < POINT_COUNT) {
+            Coordinate pt = new Coordinate(envelope.getMinX() + random.nextDouble() * envelope.getWidth(),
+                    envelope.getMinY() + random.nextDouble() * envelope.getHeight());
+            int triangleId = freeFieldFinder.getTriangleIdByCoordinate(pt);
+            if(triangleId < 0 || freeFieldFinder.getTriangleAttribute(triangleId) >= 1) {
+                // Outside of the mesh or inside a building
+                continue;
+            }
+            if(receivers.size() <= sources.size()) {
+                receivers.add(new Coordinate(pt.x, pt.y, RECEIVER_HEIGHT));
+            } else {
+                sources.add(new Coordinate(pt.x, pt.y, SOURCE_HEIGHT));
+            }
+        }
+    }
+
+    public int getBuildingCount() {
+        return buildings.size();
+    }
+
+    public Envelope getEnvelope() {
+        return envelope;
+    }
+
+    public FastObstructionTest getFreeFieldFinder() {
+        return freeFieldFinder;
+    }
+
+    /**
+     * @return Receivers positions, outside of buildings
+     */
+    public List<Coordinate> getReceivers() {
+        return Collections.unmodifiableList(receivers);
+    }
+
+    /**
+     * @return Point sources positions, outside of buildings
+     */
+    public List<Coordinate> getSources() {
+        return Collections.unmodifiableList(sources);
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * NoiseModelling is a free and open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by Université Gustave Eiffel and CNRS
+ * <http://noise-planet.org/noisemodelling.html>
+ * as part of:
+ * the Eval-PDU project (ANR-08-VILL-0005) 2008-2011, funded by the Agence Nationale de la Recherche (French)
+ * the CENSE project (ANR-16-CE22-0012) 2017-2021, funded by the Agence Nationale de la Recherche (French)
+ * the Nature4cities (N4C) project, funded by European Union’s Horizon 2020 research and innovation programme under grant agreement No 730468
+ *
+ * Noisemap is distributed under GPL 3 license.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488) and Ifsttar
+ * Copyright (C) 2013-2019 Ifsttar and CNRS
+ * Copyright (C) 2020 Université Gustave Eiffel and CNRS
+ */
+package org.noise_planet.noisemodelling.benchmarks;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.noise_planet.noisemodelling.pathfinder.ComputeRays;
+import org.noise_planet.noisemodelling.pathfinder.ComputeRaysOut;
+import org.noise_planet.noisemodelling.pathfinder.LayerDelaunayError;
+import org.noise_planet.noisemodelling.pathfinder.PropagationPath;
+import org.noise_planet.noisemodelling.pathfinder.PropagationProcessData;
+import org.noise_planet.noisemodelling.propagation.EvaluateAttenuationCnossos;
+import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Attenuation of the propagation paths found in the scene (direct, diffracted and reflected paths).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class EvaluateAttenuationCnossosBenchmark {
+    private static final int MAXIMUM_PATH_COUNT = 5000;
+
+    @Param({"SPARSE", "MEDIUM", "DENSE", "LORIENT"})
+    public BenchmarkScene.SceneType scene;
+
+    private List<PropagationPath> propagationPaths;
+    private PropagationProcessPathData pathData;
+    private EvaluateAttenuationCnossos evaluateAttenuationCnossos;
+    private int index = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, LayerDelaunayError {
+        BenchmarkScene benchmarkScene = BenchmarkScene.create(scene);
+        PropagationProcessData processData = new PropagationProcessData(benchmarkScene.getFreeFieldFinder());
+        GeometryFactory factory = new GeometryFactory();
+        List<Coordinate> sources = benchmarkScene.getSources();
+        for(int i = 0; i < sources.size(); i++) {
+            processData.addSource((long) i, factory.createPoint(sources.get(i)));
+        }
+        processData.setComputeVerticalDiffraction(true);
+        ComputeRays computeRays = new ComputeRays(processData);
+        computeRays.initStructures();
+        ComputeRaysOut computeRaysOut = new ComputeRaysOut(true, processData);
+        List<Coordinate> receivers = benchmarkScene.getReceivers();
+        for(int i = 0; i < receivers.size() && computeRaysOut.getPropagationPaths().size() < MAXIMUM_PATH_COUNT; i++) {
+            computeRays.computeRaysAtPosition(receivers.get(i), i, null, computeRaysOut, null);
+        }
+        propagationPaths = new ArrayList<>(computeRaysOut.getPropagationPaths());
+        pathData = new PropagationProcessPathData();
+        pathData.setTemperature(15);
+        pathData.setHumidity(70);
+        evaluateAttenuationCnossos = new EvaluateAttenuationCnossos();
+        // Paths are initialised on the first evaluation, exclude it from the measurements
+        for(PropagationPath propagationPath : propagationPaths) {
+            evaluateAttenuationCnossos.evaluate(propagationPath, pathData);
+        }
+    }
+
+    @Benchmark
+    public double[] evaluate() {
+        index = (index + 1) % propagationPaths.size();
+        return evaluateAttenuationCnossos.evaluate(propagationPaths.get(index), pathData);
+    }
+}
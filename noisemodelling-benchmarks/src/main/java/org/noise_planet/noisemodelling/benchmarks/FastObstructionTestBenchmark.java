@@ -0,0 +1,119 @@
+/**
+ * NoiseModelling is a free and open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by Université Gustave Eiffel and CNRS
+ * <http://noise-planet.org/noisemodelling.html>
+ * as part of:
+ * the Eval-PDU project (ANR-08-VILL-0005) 2008-2011, funded by the Agence Nationale de la Recherche (French)
+ * the CENSE project (ANR-16-CE22-0012) 2017-2021, funded by the Agence Nationale de la Recherche (French)
+ * the Nature4cities (N4C) project, funded by European Union’s Horizon 2020 research and innovation programme under grant agreement No 730468
+ *
+ * Noisemap is distributed under GPL 3 license.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488) and Ifsttar
+ * Copyright (C) 2013-2019 Ifsttar and CNRS
+ * Copyright (C) 2020 Université Gustave Eiffel and CNRS
+ */
+package org.noise_planet.noisemodelling.benchmarks;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.noise_planet.noisemodelling.pathfinder.FastObstructionTest;
+import org.noise_planet.noisemodelling.pathfinder.LayerDelaunayError;
+import org.noise_planet.noisemodelling.pathfinder.PropagationProcessData;
+import org.noise_planet.noisemodelling.pathfinder.TriIdWithIntersection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ray casting in the triangulated scene, walls range query and diffraction path over buildings.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class FastObstructionTestBenchmark {
+
+    @Param({"SPARSE", "MEDIUM", "DENSE", "LORIENT"})
+    public BenchmarkScene.SceneType scene;
+
+    private FastObstructionTest freeFieldFinder;
+    private List<Coordinate> receivers;
+    private List<Coordinate> sources;
+    // Obstructed source-receiver pairs with the triangles crossed by the direct line
+    private List<Coordinate[]> obstructedPairs = new ArrayList<>();
+    private List<List<TriIdWithIntersection>> obstructedPaths = new ArrayList<>();
+    private int index = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, LayerDelaunayError {
+        BenchmarkScene benchmarkScene = BenchmarkScene.create(scene);
+        freeFieldFinder = benchmarkScene.getFreeFieldFinder();
+        // Measure the queries, not the caches
+        freeFieldFinder.setWallCacheSize(0);
+        receivers = benchmarkScene.getReceivers();
+        sources = benchmarkScene.getSources();
+        for(int i = 0; i < receivers.size(); i++) {
+            Coordinate receiver = receivers.get(i);
+            Coordinate source = sources.get(i);
+            List<TriIdWithIntersection> inters = new ArrayList<>();
+            freeFieldFinder.computePropagationPath(source, receiver, false, inters, true);
+            for(TriIdWithIntersection intersection : inters) {
+                if(intersection.isIntersectionOnBuilding()) {
+                    obstructedPairs.add(new Coordinate[]{receiver, source});
+                    obstructedPaths.add(inters);
+                    break;
+                }
+            }
+        }
+    }
+
+    private int next(int size) {
+        index = (index + 1) % size;
+        return index;
+    }
+
+    @Benchmark
+    public void computePropagationPath(Blackhole blackhole) {
+        int i = next(receivers.size());
+        List<TriIdWithIntersection> inters = new ArrayList<>();
+        blackhole.consume(freeFieldFinder.computePropagationPath(sources.get(i), receivers.get(i), false, inters,
+                true));
+        blackhole.consume(inters);
+    }
+
+    @Benchmark
+    public List<FastObstructionTest.Wall> getLimitsInRange() {
+        return freeFieldFinder.getLimitsInRange(PropagationProcessData.DEFAULT_MAXIMUM_REF_DIST,
+                receivers.get(next(receivers.size())), false);
+    }
+
+    @Benchmark
+    public Object getPath() {
+        if(obstructedPairs.isEmpty()) {
+            return null;
+        }
+        int i = next(obstructedPairs.size());
+        Coordinate[] pair = obstructedPairs.get(i);
+        return freeFieldFinder.getPath(pair[0], pair[1], obstructedPaths.get(i));
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * NoiseModelling is a free and open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by Université Gustave Eiffel and CNRS
+ * <http://noise-planet.org/noisemodelling.html>
+ * as part of:
+ * the Eval-PDU project (ANR-08-VILL-0005) 2008-2011, funded by the Agence Nationale de la Recherche (French)
+ * the CENSE project (ANR-16-CE22-0012) 2017-2021, funded by the Agence Nationale de la Recherche (French)
+ * the Nature4cities (N4C) project, funded by European Union’s Horizon 2020 research and innovation programme under grant agreement No 730468
+ *
+ * Noisemap is distributed under GPL 3 license.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488) and Ifsttar
+ * Copyright (C) 2013-2019 Ifsttar and CNRS
+ * Copyright (C) 2020 Université Gustave Eiffel and CNRS
+ */
+package org.noise_planet.noisemodelling.benchmarks;
+
+import org.noise_planet.noisemodelling.pathfinder.LayerDelaunayError;
+import org.noise_planet.noisemodelling.pathfinder.MeshBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merge of buildings and triangulation of the scene.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class MeshBuilderBenchmark {
+
+    @Param({"SPARSE", "MEDIUM", "DENSE", "LORIENT"})
+    public BenchmarkScene.SceneType scene;
+
+    private BenchmarkScene benchmarkScene;
+    private MeshBuilder meshBuilder;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        benchmarkScene = BenchmarkScene.load(scene);
+    }
+
+    @Setup(Level.Invocation)
+    public void feedPolygons() {
+        // finishPolygonFeeding can only be called once by instance
+        meshBuilder = benchmarkScene.createMeshBuilder();
+    }
+
+    @Benchmark
+    public MeshBuilder finishPolygonFeeding() throws LayerDelaunayError {
+        meshBuilder.finishPolygonFeeding(benchmarkScene.getEnvelope());
+        return meshBuilder;
+    }
+}
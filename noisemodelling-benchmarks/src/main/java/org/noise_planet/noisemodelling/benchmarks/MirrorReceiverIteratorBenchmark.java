@@ -0,0 +1,99 @@
+/**
+ * NoiseModelling is a free and open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by Université Gustave Eiffel and CNRS
+ * <http://noise-planet.org/noisemodelling.html>
+ * as part of:
+ * the Eval-PDU project (ANR-08-VILL-0005) 2008-2011, funded by the Agence Nationale de la Recherche (French)
+ * the CENSE project (ANR-16-CE22-0012) 2017-2021, funded by the Agence Nationale de la Recherche (French)
+ * the Nature4cities (N4C) project, funded by European Union’s Horizon 2020 research and innovation programme under grant agreement No 730468
+ *
+ * Noisemap is distributed under GPL 3 license.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488) and Ifsttar
+ * Copyright (C) 2013-2019 Ifsttar and CNRS
+ * Copyright (C) 2020 Université Gustave Eiffel and CNRS
+ */
+package org.noise_planet.noisemodelling.benchmarks;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.LineSegment;
+import org.noise_planet.noisemodelling.pathfinder.FastObstructionTest;
+import org.noise_planet.noisemodelling.pathfinder.LayerDelaunayError;
+import org.noise_planet.noisemodelling.pathfinder.MirrorReceiverIterator;
+import org.noise_planet.noisemodelling.pathfinder.MirrorReceiverResult;
+import org.noise_planet.noisemodelling.pathfinder.PropagationProcessData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Enumeration of the receiver images for each source-receiver pair.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MirrorReceiverIteratorBenchmark {
+
+    @Param({"SPARSE", "MEDIUM", "DENSE", "LORIENT"})
+    public BenchmarkScene.SceneType scene;
+
+    @Param({"1", "2"})
+    public int reflexionOrder;
+
+    private List<Coordinate> receivers;
+    private List<Coordinate> sources;
+    private List<List<FastObstructionTest.Wall>> receiversWalls = new ArrayList<>();
+    private int index = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, LayerDelaunayError {
+        BenchmarkScene benchmarkScene = BenchmarkScene.create(scene);
+        receivers = benchmarkScene.getReceivers();
+        sources = benchmarkScene.getSources();
+        FastObstructionTest freeFieldFinder = benchmarkScene.getFreeFieldFinder();
+        for(int i = 0; i < receivers.size(); i++) {
+            // Same walls selection than ComputeRays#computeRaysAtPosition
+            Set<FastObstructionTest.Wall> walls = new LinkedHashSet<>(freeFieldFinder.getLimitsInRange(
+                    PropagationProcessData.DEFAULT_MAXIMUM_REF_DIST, receivers.get(i), false));
+            walls.addAll(freeFieldFinder.getLimitsInRange(PropagationProcessData.DEFAULT_MAXIMUM_REF_DIST,
+                    sources.get(i), false));
+            receiversWalls.add(new ArrayList<>(walls));
+        }
+    }
+
+    @Benchmark
+    public void enumerateImages(Blackhole blackhole) {
+        index = (index + 1) % receivers.size();
+        Coordinate receiver = receivers.get(index);
+        LineSegment srcReceiver = new LineSegment(sources.get(index), receiver);
+        MirrorReceiverIterator.It mirroredReceivers = new MirrorReceiverIterator.It(receiver,
+                receiversWalls.get(index), srcReceiver, Integer.MAX_VALUE, reflexionOrder,
+                PropagationProcessData.DEFAULT_MAX_PROPAGATION_DISTANCE);
+        for(MirrorReceiverResult receiverImage : mirroredReceivers) {
+            blackhole.consume(receiverImage);
+        }
+    }
+}
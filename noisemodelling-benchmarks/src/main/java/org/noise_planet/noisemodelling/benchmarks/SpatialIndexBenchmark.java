@@ -0,0 +1,155 @@
+/**
+ * NoiseModelling is a free and open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by Université Gustave Eiffel and CNRS
+ * <http://noise-planet.org/noisemodelling.html>
+ * as part of:
+ * the Eval-PDU project (ANR-08-VILL-0005) 2008-2011, funded by the Agence Nationale de la Recherche (French)
+ * the CENSE project (ANR-16-CE22-0012) 2017-2021, funded by the Agence Nationale de la Recherche (French)
+ * the Nature4cities (N4C) project, funded by European Union’s Horizon 2020 research and innovation programme under grant agreement No 730468
+ *
+ * Noisemap is distributed under GPL 3 license.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488) and Ifsttar
+ * Copyright (C) 2013-2019 Ifsttar and CNRS
+ * Copyright (C) 2020 Université Gustave Eiffel and CNRS
+ */
+package org.noise_planet.noisemodelling.benchmarks;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.noise_planet.noisemodelling.pathfinder.FastObstructionTest;
+import org.noise_planet.noisemodelling.pathfinder.MeshBuilder;
+import org.noise_planet.noisemodelling.pathfinder.Triangle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * STRtree and uniform grid indexes of {@link FastObstructionTest}. The mesh is a jittered regular grid of triangles
+ * over the dense scene, so that large meshes are built without triangulation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+@State(Scope.Thread)
+public class SpatialIndexBenchmark {
+    private static final long SEED = 42;
+    private static final int QUERY_COUNT = 4096;
+
+    @Param({"STRTREE", "GRID"})
+    public FastObstructionTest.SpatialIndexType indexType;
+
+    @Param({"100000", "1000000"})
+    public int triangleCount;
+
+    private List<MeshBuilder.PolygonWithHeight> buildings;
+    private List<Triangle> triangles;
+    private List<Triangle> triNeighbors;
+    private List<Coordinate> vertices;
+    private FastObstructionTest freeFieldFinder;
+    private final List<Coordinate> points = new ArrayList<>(QUERY_COUNT);
+    private int index = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkScene benchmarkScene = BenchmarkScene.load(BenchmarkScene.SceneType.DENSE);
+        buildings = benchmarkScene.createMeshBuilder().getPolygonWithHeight();
+        double minX = benchmarkScene.getEnvelope().getMinX();
+        double minY = benchmarkScene.getEnvelope().getMinY();
+        double width = benchmarkScene.getEnvelope().getWidth();
+        double height = benchmarkScene.getEnvelope().getHeight();
+        // Two triangles by cell
+        int side = (int) Math.ceil(Math.sqrt(triangleCount / 2.0));
+        double cellWidth = width / side;
+        double cellHeight = height / side;
+        Random random = new Random(SEED);
+        vertices = new ArrayList<>((side + 1) * (side + 1));
+        for(int j = 0; j <= side; j++) {
+            for(int i = 0; i <= side; i++) {
+                // Jitter inner vertices, the mesh stays valid as the move is less than half the cell size
+                boolean border = i == 0 || j == 0 || i == side || j == side;
+                double dx = border ? 0 : (random.nextDouble() - 0.5) * 0.4 * cellWidth;
+                double dy = border ? 0 : (random.nextDouble() - 0.5) * 0.4 * cellHeight;
+                vertices.add(new Coordinate(minX + i * cellWidth + dx, minY + j * cellHeight + dy));
+            }
+        }
+        triangles = new ArrayList<>(side * side * 2);
+        triNeighbors = new ArrayList<>(side * side * 2);
+        for(int j = 0; j < side; j++) {
+            for(int i = 0; i < side; i++) {
+                int a = j * (side + 1) + i;
+                int b = a + 1;
+                int c = a + side + 1;
+                int d = c + 1;
+                triangles.add(new Triangle(a, b, d, 0));
+                triangles.add(new Triangle(a, d, c, 0));
+                triNeighbors.add(new Triangle(-1, -1, -1));
+                triNeighbors.add(new Triangle(-1, -1, -1));
+            }
+        }
+        freeFieldFinder = new FastObstructionTest(buildings, triangles, triNeighbors, vertices, indexType);
+        // Measure the index, not the cache
+        freeFieldFinder.setTriangleCacheSize(0);
+        for(int i = 0; i < QUERY_COUNT; i++) {
+            points.add(new Coordinate(minX + random.nextDouble() * width, minY + random.nextDouble() * height));
+        }
+    }
+
+    private int next() {
+        index = (index + 1) % QUERY_COUNT;
+        return index;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public FastObstructionTest buildIndex() {
+        return new FastObstructionTest(buildings, triangles, triNeighbors, vertices, indexType);
+    }
+
+    @Benchmark
+    public int getTriangleIdByCoordinate() {
+        return freeFieldFinder.getTriangleIdByCoordinate(points.get(next()));
+    }
+
+    @Benchmark
+    public int getBuildingsOnPath() {
+        Coordinate p1 = points.get(next());
+        Coordinate p2 = points.get(next());
+        BuildingCounter counter = new BuildingCounter(freeFieldFinder.getPolygonWithHeight(), p1, p2);
+        freeFieldFinder.getBuildingsOnPath(p1, p2, counter);
+        return counter.count;
+    }
+
+    private static final class BuildingCounter extends FastObstructionTest.IntersectionRayVisitor {
+        int count = 0;
+
+        BuildingCounter(List<MeshBuilder.PolygonWithHeight> polygonWithHeight, Coordinate p1, Coordinate p2) {
+            super(polygonWithHeight, p1, p2);
+        }
+
+        @Override
+        public void addBuilding(int buildingId) {
+            count++;
+        }
+    }
+}
@@ -21,4 +21,18 @@ public interface DirectionAttributes {
      * @return Attenuation in dB
      */
     double getAttenuation(double frequency, double phi, double theta);
+
+    /**
+     * @param frequencies Frequencies in Hertz
+     * @param phi (0 2π) 0 is front
+     * @param theta (-π/2 π/2) 0 is horizontal π is top
+     * @return Attenuation in dB for each frequency
+     */
+    default double[] getAttenuationArray(double[] frequencies, double phi, double theta) {
+        double[] attenuation = new double[frequencies.length];
+        for(int idFrequency = 0; idFrequency < frequencies.length; idFrequency++) {
+            attenuation[idFrequency] = getAttenuation(frequencies[idFrequency], phi, theta);
+        }
+        return attenuation;
+    }
 }
@@ -14,13 +14,23 @@ package org.noise_planet.noisemodelling.emission;
 import java.io.Serializable;
 import java.util.*;
 
+/**
+ * Directivity defined by attenuation records on (theta, phi) angles. Attenuation queries are read from a regular
+ * grid computed from the records on first use, so that instances can be shared between computation threads.
+ */
 public class DiscreteDirectionAttributes implements DirectionAttributes {
+    /** Number of grid cells between two records */
+    public static final int GRID_SUBDIVISION = 4;
+    /** Maximum number of attenuation values of the grid over all frequencies (16 MB), records are interpolated on
+     * each query above this size */
+    public static final int MAXIMUM_GRID_SIZE = 1 << 22;
+    private static final double FULL_TURN = 2 * Math.PI;
     int interpolationMethod = 1;
     int directionIdentifier;
     double[] frequencies;
     Map<Long, Integer> frequencyMapping = new HashMap<>();
-    DirectivityRecord lastQuery = null;
-    DirectivityRecord lastQueryRecord = null;
+    // Lookup grid, null when records have been modified
+    private volatile DirectivityGrid grid = null;
     // List of records, maintain the two lists sorted
     List<DirectivityRecord> recordsTheta = new ArrayList<>();
     List<DirectivityRecord> recordsPhi = new ArrayList<>();
@@ -36,8 +46,12 @@ public class DiscreteDirectionAttributes implements DirectionAttributes {
         }
     }
 
+    /**
+     * @param interpolationMethod 0 for closest neighbor, 1 for Bilinear interpolation
+     */
     public void setInterpolationMethod(int interpolationMethod) {
         this.interpolationMethod = interpolationMethod;
+        grid = null;
     }
 
     public List<DirectivityRecord> getRecordsTheta() {
@@ -52,10 +66,11 @@ public class DiscreteDirectionAttributes implements DirectionAttributes {
         return directionIdentifier;
     }
 
-    @Override
-    public double getAttenuation(double frequency, double phi, double theta) {
-        DirectivityRecord query = new DirectivityRecord((float)theta, (float)phi, null);
-
+    /**
+     * @param frequency Frequency in Hertz
+     * @return Index of the closest frequency in {@link #getFrequencies()}
+     */
+    private int getFrequencyIndex(double frequency) {
         // look for frequency index
         Integer idFreq = frequencyMapping.get(Double.doubleToLongBits(frequency));
         if(idFreq == null) {
@@ -68,14 +83,58 @@ public class DiscreteDirectionAttributes implements DirectionAttributes {
                         first : last;
             }
         }
+        return idFreq;
+    }
 
-        // for speed up, check if it is the same theta and phi queried last time
-        if(!query.equals(lastQuery)) {
-            // if not go looking for it
-            lastQueryRecord = getRecord(query.theta, query.phi, interpolationMethod);
-            lastQuery = query;
+    @Override
+    public double getAttenuation(double frequency, double phi, double theta) {
+        int idFreq = getFrequencyIndex(frequency);
+        DirectivityGrid directivityGrid = getGrid();
+        if(directivityGrid != null) {
+            double attenuation = directivityGrid.getAttenuation(idFreq, (float) theta, (float) phi);
+            if(!Double.isNaN(attenuation)) {
+                return attenuation;
+            }
         }
-        return lastQueryRecord.getAttenuation()[idFreq];
+        // Outside of the records domain
+        return getRecord((float) theta, (float) phi, interpolationMethod).getAttenuation()[idFreq];
+    }
+
+    @Override
+    public double[] getAttenuationArray(double[] frequencies, double phi, double theta) {
+        double[] attenuation = new double[frequencies.length];
+        int[] frequencyIndexes = new int[frequencies.length];
+        for(int i = 0; i < frequencies.length; i++) {
+            frequencyIndexes[i] = getFrequencyIndex(frequencies[i]);
+        }
+        DirectivityGrid directivityGrid = getGrid();
+        if(directivityGrid != null && directivityGrid.getAttenuationArray(frequencyIndexes, (float) theta,
+                (float) phi, attenuation)) {
+            return attenuation;
+        }
+        // Outside of the records domain
+        double[] recordAttenuation = getRecord((float) theta, (float) phi, interpolationMethod).getAttenuation();
+        for(int i = 0; i < frequencies.length; i++) {
+            attenuation[i] = recordAttenuation[frequencyIndexes[i]];
+        }
+        return attenuation;
+    }
+
+    /**
+     * @return Lookup grid of attenuation, computed from the records on the first call. Null if records do not define
+     * a grid or if the grid would be larger than {@link #MAXIMUM_GRID_SIZE}.
+     */
+    private DirectivityGrid getGrid() {
+        DirectivityGrid directivityGrid = grid;
+        if(directivityGrid == null) {
+            if(recordsTheta.size() < 2) {
+                return null;
+            }
+            // Concurrent first calls may compute the grid more than once, all results are identical
+            directivityGrid = new DirectivityGrid(this);
+            grid = directivityGrid;
+        }
+        return directivityGrid.isValid() ? directivityGrid : null;
     }
 
     public void addDirectivityRecord(float theta, float phi, double[] attenuation) {
@@ -91,6 +150,7 @@ public class DiscreteDirectionAttributes implements DirectionAttributes {
         index = Collections.binarySearch(recordsPhi, record, phiComparator);
         index = - index - 1;
         recordsPhi.add(index, record);
+        grid = null;
     }
 
     /**
@@ -247,6 +307,223 @@ public class DiscreteDirectionAttributes implements DirectionAttributes {
         recordsTheta.sort(thetaComparator);
         recordsPhi.addAll(newRecords);
         recordsPhi.sort(phiComparator);
+        grid = null;
+    }
+
+    /**
+     * @param values Sorted values
+     * @return Median of the positive differences between two consecutive values, 0 if there is no such difference
+     */
+    private static double getTypicalStep(float[] values) {
+        double[] deltas = new double[values.length];
+        int deltaCount = 0;
+        for(int i = 1; i < values.length; i++) {
+            double delta = values[i] - values[i - 1];
+            if(delta > 0) {
+                deltas[deltaCount++] = delta;
+            }
+        }
+        if(deltaCount == 0) {
+            return 0;
+        }
+        Arrays.sort(deltas, 0, deltaCount);
+        return deltas[deltaCount / 2];
+    }
+
+    /**
+     * Immutable regular grid of attenuation on (theta, phi), each node is evaluated with
+     * {@link #getRecord(float, float, int)}. Attenuation values are stored as energy ratio in one flat array per
+     * frequency, the bilinear interpolation is done on energy like {@link #getRecord(float, float, int)}.
+     */
+    private static final class DirectivityGrid {
+        private final int interpolationMethod;
+        private final double theta0;
+        private final double phi0;
+        private final double thetaStep;
+        private final double phiStep;
+        private final int thetaCount;
+        private final int phiCount;
+        // Theta axis cover a full turn
+        private final boolean thetaWrap;
+        // [frequency][phi * thetaCount + theta]
+        private final float[][] attenuation;
+
+        DirectivityGrid(DiscreteDirectionAttributes attributes) {
+            interpolationMethod = attributes.interpolationMethod;
+            float[] thetaValues = new float[attributes.recordsTheta.size()];
+            for(int i = 0; i < thetaValues.length; i++) {
+                thetaValues[i] = attributes.recordsTheta.get(i).theta;
+            }
+            float[] phiValues = new float[attributes.recordsPhi.size()];
+            for(int i = 0; i < phiValues.length; i++) {
+                phiValues[i] = attributes.recordsPhi.get(i).phi;
+            }
+            // Records that are almost at the same angle must not refine the whole grid
+            double thetaSpacing = getTypicalStep(thetaValues);
+            double phiSpacing = getTypicalStep(phiValues);
+            theta0 = thetaValues[0];
+            phi0 = phiValues[0];
+            double thetaSpan = thetaValues[thetaValues.length - 1] - theta0;
+            double phiSpan = phiValues[phiValues.length - 1] - phi0;
+            // Records on the whole circle, the grid covers the gap between the last and the first record
+            thetaWrap = thetaSpacing > 0 && thetaSpan + thetaSpacing >= FULL_TURN - 1e-3 && thetaSpan < FULL_TURN;
+            if(thetaWrap) {
+                thetaSpan = FULL_TURN;
+            }
+            double thetaNodeCount = Math.ceil(thetaSpan / (thetaSpacing / GRID_SUBDIVISION) - 1e-3) + 1;
+            double phiNodeCount = Math.ceil(phiSpan / (phiSpacing / GRID_SUBDIVISION) - 1e-3) + 1;
+            if(thetaSpacing <= 0 || phiSpacing <= 0 ||
+                    thetaNodeCount * phiNodeCount * attributes.frequencies.length > MAXIMUM_GRID_SIZE) {
+                thetaCount = 0;
+                phiCount = 0;
+                thetaStep = 0;
+                phiStep = 0;
+                attenuation = null;
+                return;
+            }
+            thetaCount = (int) thetaNodeCount;
+            phiCount = (int) phiNodeCount;
+            thetaStep = thetaSpan / (thetaCount - 1);
+            phiStep = phiSpan / (phiCount - 1);
+            // Nodes that fall on records angles must use the exact same value
+            float[] thetaNodes = new float[thetaCount];
+            for(int idTheta = 0; idTheta < thetaCount; idTheta++) {
+                thetaNodes[idTheta] = snap(thetaValues, theta0 + idTheta * thetaStep, thetaStep / 100);
+            }
+            float[] phiNodes = new float[phiCount];
+            for(int idPhi = 0; idPhi < phiCount; idPhi++) {
+                phiNodes[idPhi] = snap(phiValues, phi0 + idPhi * phiStep, phiStep / 100);
+            }
+            attenuation = new float[attributes.frequencies.length][thetaCount * phiCount];
+            for(int idPhi = 0; idPhi < phiCount; idPhi++) {
+                for(int idTheta = 0; idTheta < thetaCount; idTheta++) {
+                    DirectivityRecord record = attributes.getRecord(thetaNodes[idTheta], phiNodes[idPhi],
+                            interpolationMethod);
+                    int node = idPhi * thetaCount + idTheta;
+                    for(int idFreq = 0; idFreq < attenuation.length; idFreq++) {
+                        attenuation[idFreq][node] = (float) Utils.dbToW(record.attenuation[idFreq]);
+                    }
+                }
+            }
+        }
+
+        /**
+         * @param values Sorted angles
+         * @param angle Angle to look for
+         * @param tolerance Maximum difference
+         * @return Closest value if it is within tolerance, angle otherwise
+         */
+        private static float snap(float[] values, double angle, double tolerance) {
+            int index = Arrays.binarySearch(values, (float) angle);
+            if(index >= 0) {
+                return values[index];
+            }
+            index = -index - 1;
+            for(int i = Math.max(0, index - 1); i <= Math.min(values.length - 1, index); i++) {
+                if(Math.abs(values[i] - angle) < tolerance) {
+                    return values[i];
+                }
+            }
+            return (float) angle;
+        }
+
+        boolean isValid() {
+            return attenuation != null;
+        }
+
+        /**
+         * @param theta Theta angle in radians
+         * @return Position on the theta axis of the grid, in steps
+         */
+        private double gridX(float theta) {
+            double t = theta - theta0;
+            if(thetaWrap) {
+                t -= FULL_TURN * Math.floor(t / FULL_TURN);
+            }
+            return t / thetaStep;
+        }
+
+        /**
+         * @param phi Phi angle in radians
+         * @return Position on the phi axis of the grid, in steps
+         */
+        private double gridY(float phi) {
+            return (phi - phi0) / phiStep;
+        }
+
+        /**
+         * @return False if the grid position is not covered by the grid
+         */
+        private boolean isCovered(double x, double y) {
+            return x >= 0 && x <= thetaCount - 1 && y >= 0 && y <= phiCount - 1;
+        }
+
+        /**
+         * @param values Attenuation of the nodes in W
+         * @param x Position on the theta axis of the grid
+         * @param y Position on the phi axis of the grid
+         * @return Attenuation in dB
+         */
+        private double getAttenuation(float[] values, double x, double y) {
+            int idTheta = Math.min((int) x, thetaCount - 2);
+            int idPhi = Math.min((int) y, phiCount - 2);
+            double dx = x - idTheta;
+            double dy = y - idPhi;
+            if(interpolationMethod == 0) {
+                // closest node
+                return Utils.wToDb(values[(idPhi + (dy < 0.5 ? 0 : 1)) * thetaCount + idTheta + (dx < 0.5 ? 0 : 1)]);
+            }
+            int node = idPhi * thetaCount + idTheta;
+            return Utils.wToDb(values[node] * (1 - dx) * (1 - dy) + values[node + 1] * dx * (1 - dy)
+                    + values[node + thetaCount] * (1 - dx) * dy + values[node + thetaCount + 1] * dx * dy);
+        }
+
+        /**
+         * @return Attenuation in dB or NaN if the angles are not covered by the grid
+         */
+        double getAttenuation(int idFreq, float theta, float phi) {
+            double x = gridX(theta);
+            double y = gridY(phi);
+            if(!isCovered(x, y)) {
+                return Double.NaN;
+            }
+            return getAttenuation(attenuation[idFreq], x, y);
+        }
+
+        /**
+         * @return False if the angles are not covered by the grid
+         */
+        boolean getAttenuationArray(int[] frequencyIndexes, float theta, float phi, double[] result) {
+            double x = gridX(theta);
+            double y = gridY(phi);
+            if(!isCovered(x, y)) {
+                return false;
+            }
+            int idTheta = Math.min((int) x, thetaCount - 2);
+            int idPhi = Math.min((int) y, phiCount - 2);
+            double dx = x - idTheta;
+            double dy = y - idPhi;
+            int node = idPhi * thetaCount + idTheta;
+            if(interpolationMethod == 0) {
+                // closest node
+                node += (dy < 0.5 ? 0 : thetaCount) + (dx < 0.5 ? 0 : 1);
+                for(int i = 0; i < frequencyIndexes.length; i++) {
+                    result[i] = Utils.wToDb(attenuation[frequencyIndexes[i]][node]);
+                }
+                return true;
+            }
+            // Weights of the four nodes around the position, shared by all frequencies
+            double w00 = (1 - dx) * (1 - dy);
+            double w10 = dx * (1 - dy);
+            double w01 = (1 - dx) * dy;
+            double w11 = dx * dy;
+            for(int i = 0; i < frequencyIndexes.length; i++) {
+                float[] values = attenuation[frequencyIndexes[i]];
+                result[i] = Utils.wToDb(values[node] * w00 + values[node + 1] * w10
+                        + values[node + thetaCount] * w01 + values[node + thetaCount + 1] * w11);
+            }
+            return true;
+        }
     }
 
     public static class ThetaComparator implements Comparator<DirectivityRecord>, Serializable {
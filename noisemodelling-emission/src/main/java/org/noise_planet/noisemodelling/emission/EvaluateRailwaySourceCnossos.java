@@ -19,8 +19,13 @@ import com.fasterxml.jackson.databind.node.NullNode;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static java.lang.Math.min;
 import static org.noise_planet.noisemodelling.emission.Utils.Vperhour2NoiseLevel;
@@ -45,14 +50,32 @@ import static org.noise_planet.noisemodelling.emission.utils.interpLinear.interp
  */
 
 public class EvaluateRailwaySourceCnossos {
-    private JsonNode CnossosRailWayData = parse(EvaluateRailwaySourceCnossos.class.getResourceAsStream("coefficients_Railway_cnossos.json"));
-    private JsonNode CnossosVehicleData = parse(EvaluateRailwaySourceCnossos.class.getResourceAsStream("Vehicle_definition.json"));
-    private JsonNode CnossosTrainData = parse(EvaluateRailwaySourceCnossos.class.getResourceAsStream("Train_definition.json"));
+    /** Maximum number of vehicle emissions kept in cache, the cache is cleared when this size is reached */
+    public static final int MAXIMUM_EMISSION_CACHE_SIZE = 10000;
+    // Default data files are parsed once and shared by all instances, the trees are only read
+    private static final JsonNode DEFAULT_RAILWAY_DATA = parse(EvaluateRailwaySourceCnossos.class.getResourceAsStream("coefficients_Railway_cnossos.json"));
+    private static final JsonNode DEFAULT_VEHICLE_DATA = parse(EvaluateRailwaySourceCnossos.class.getResourceAsStream("Vehicle_definition.json"));
+    private static final JsonNode DEFAULT_TRAIN_DATA = parse(EvaluateRailwaySourceCnossos.class.getResourceAsStream("Train_definition.json"));
+    private static final Map<String, Map<String, Integer>> DEFAULT_TRAINS = parseTrains(DEFAULT_TRAIN_DATA);
+
+    private JsonNode CnossosRailWayData = DEFAULT_RAILWAY_DATA;
+    private JsonNode CnossosVehicleData = DEFAULT_VEHICLE_DATA;
+    private JsonNode CnossosTrainData = DEFAULT_TRAIN_DATA;
+    private Map<String, Map<String, Integer>> trains = DEFAULT_TRAINS;
+    // Emission of one vehicle per hour, the flow correction is applied on the cached spectrum
+    private final Map<VehicleEmissionKey, RailWayLW> emissionCache = new ConcurrentHashMap<>();
 
 
+    /**
+     * Replace the vehicle and train definitions. Must not be called while evaluating emissions.
+     * @param cnossosVehicleData Vehicle definition json
+     * @param cnossosTrainData Train definition json
+     */
     public void setEvaluateRailwaySourceCnossos(InputStream cnossosVehicleData,InputStream cnossosTrainData ) {
         this.CnossosVehicleData = parse(cnossosVehicleData);
         this.CnossosTrainData = parse(cnossosTrainData);
+        this.trains = parseTrains(CnossosTrainData);
+        emissionCache.clear();
     }
 
     private static JsonNode parse(InputStream inputStream) {
@@ -64,6 +87,17 @@ public class EvaluateRailwaySourceCnossos {
         }
     }
 
+    private static Map<String, Map<String, Integer>> parseTrains(JsonNode trainData) {
+        Map<String, Map<String, Integer>> trains = new HashMap<>();
+        ObjectMapper mapper = new ObjectMapper();
+        for (Iterator<Map.Entry<String, JsonNode>> it = trainData.fields(); it.hasNext(); ) {
+            Map.Entry<String, JsonNode> elt = it.next();
+            Map<String, Integer> vehicles = mapper.convertValue(elt.getValue(),new TypeReference<LinkedHashMap<String, Integer>>(){});
+            trains.put(elt.getKey(), Collections.unmodifiableMap(vehicles));
+        }
+        return trains;
+    }
+
     public JsonNode getCnossosRailWayData(int spectreVer){
         if (spectreVer==1){
             return CnossosRailWayData;
@@ -81,33 +115,25 @@ public class EvaluateRailwaySourceCnossos {
         return CnossosTrainData;
     }
 
+    /**
+     * @param trainName Train identifier
+     * @return Vehicles of the train with their count, null if the train is unknown
+     */
     public Map<String, Integer> getVehicleFromTrain(String trainName){
-        Map<String, Integer> vehicles = null;
-        for (Iterator<Map.Entry<String, JsonNode>> it = CnossosTrainData.fields(); it.hasNext(); ) {
-            Map.Entry<String, JsonNode> elt = it.next();
-            if (trainName.equals(elt.getKey()))
-            {
-
-                ObjectMapper mapper = new ObjectMapper();
-                vehicles = mapper.convertValue(elt.getValue(),new TypeReference<Map<String, Integer>>(){});
-                break;
-            }
-        }
-        return vehicles;
+        return trains.get(trainName);
     }
 
 
 
     public boolean isInVehicleList(String trainName) {
-        boolean inlist = false;
-        for (Iterator<Map.Entry<String, JsonNode>> it = CnossosVehicleData.fields(); it.hasNext(); ) {
-            Map.Entry<String, JsonNode> elt = it.next();
-            if (trainName.equals(elt.getKey())) {
-                inlist = true;
-                break;
-            }
-        }
-        return inlist;
+        return trainName != null && CnossosVehicleData.has(trainName);
+    }
+
+    /**
+     * @return Number of vehicle emissions in cache
+     */
+    public int getEmissionCacheSize() {
+        return emissionCache.size();
     }
 
     private static int getFreqInd(int freq){
@@ -289,7 +315,6 @@ public class EvaluateRailwaySourceCnossos {
         String typeVehicle = vehicleParameters.getTypeVehicle();
         double speedVehicle = vehicleParameters.getSpeedVehicle();
         double vehPerHour = vehicleParameters.getNumberVehicle();
-        int axlesPerVeh = getAxlesPerVeh(typeVehicle);
         int runningCondition = vehicleParameters.getRunningCondition();
 
         double speedTrack = trackParameters.getSpeedTrack();
@@ -313,16 +338,14 @@ public class EvaluateRailwaySourceCnossos {
             RailWayLW lWRailWay = new RailWayLW(lWSpectre, lWSpectre, lWSpectre, lWSpectre, lWSpectre, lWSpectre);
             return lWRailWay;
         }else {
-            //  Rolling noise calcul
-            double[] lWRolling = evaluateLWroughness("Rolling", typeVehicle, trackRoughnessId, impactId, bridgeId, curvature, speed, trackTransferId, spectreVer, axlesPerVeh);
-            // Traction noise calcul
-            double[] lWTractionA = evaluateLWSpectre(typeVehicle, "RefTraction", runningCondition, speed, 0, spectreVer);
-            double[] lWTractionB = evaluateLWSpectre(typeVehicle, "RefTraction", runningCondition, speed, 1, spectreVer);
-            // Aerodynamic noise calcul
-            double[] lWAerodynamicA = evaluateLWSpectre(typeVehicle, "RefAerodynamic", runningCondition, speed, 0, spectreVer);
-            double[] lWAerodynamicB = evaluateLWSpectre(typeVehicle, "RefAerodynamic", runningCondition, speed, 1, spectreVer);
-            // Bridge noise calcul
-            double[] lWBridge = evaluateLWroughness("Bridge", typeVehicle, trackRoughnessId, impactId, bridgeId, curvature, speed, trackTransferId, spectreVer, axlesPerVeh);
+            RailWayLW unitEmission = getUnitEmission(new VehicleEmissionKey(typeVehicle, runningCondition, speed,
+                    trackRoughnessId, trackTransferId, impactId, bridgeId, curvature, spectreVer));
+            double[] lWRolling = unitEmission.getLWRolling().clone();
+            double[] lWTractionA = unitEmission.getLWTractionA().clone();
+            double[] lWTractionB = unitEmission.getLWTractionB().clone();
+            double[] lWAerodynamicA = unitEmission.getLWAerodynamicA().clone();
+            double[] lWAerodynamicB = unitEmission.getLWAerodynamicB().clone();
+            double[] lWBridge = unitEmission.getLWBridge().clone();
 
             for (int i=0;i<lWRolling.length;i++) {
                 lWRolling[i] = Vperhour2NoiseLevel(lWRolling[i], vehPerHour, speed);
@@ -338,6 +361,35 @@ public class EvaluateRailwaySourceCnossos {
         }
     }
 
+    /**
+     * Emission spectra of a vehicle before the flow correction. Spectra only depend on the vehicle type, speed and
+     * track parameters so they are computed once for each combination.
+     * @param key Vehicle and track parameters
+     * @return Rolling, traction, aerodynamic and bridge spectra, must not be modified
+     */
+    private RailWayLW getUnitEmission(VehicleEmissionKey key) {
+        RailWayLW unitEmission = emissionCache.get(key);
+        if(unitEmission == null) {
+            int axlesPerVeh = getAxlesPerVeh(key.typeVehicle);
+            //  Rolling noise calcul
+            double[] lWRolling = evaluateLWroughness("Rolling", key.typeVehicle, key.trackRoughnessId, key.impactId, key.bridgeId, key.curvature, key.speed, key.trackTransferId, key.spectreVer, axlesPerVeh);
+            // Traction noise calcul
+            double[] lWTractionA = evaluateLWSpectre(key.typeVehicle, "RefTraction", key.runningCondition, key.speed, 0, key.spectreVer);
+            double[] lWTractionB = evaluateLWSpectre(key.typeVehicle, "RefTraction", key.runningCondition, key.speed, 1, key.spectreVer);
+            // Aerodynamic noise calcul
+            double[] lWAerodynamicA = evaluateLWSpectre(key.typeVehicle, "RefAerodynamic", key.runningCondition, key.speed, 0, key.spectreVer);
+            double[] lWAerodynamicB = evaluateLWSpectre(key.typeVehicle, "RefAerodynamic", key.runningCondition, key.speed, 1, key.spectreVer);
+            // Bridge noise calcul
+            double[] lWBridge = evaluateLWroughness("Bridge", key.typeVehicle, key.trackRoughnessId, key.impactId, key.bridgeId, key.curvature, key.speed, key.trackTransferId, key.spectreVer, axlesPerVeh);
+            unitEmission = new RailWayLW(lWRolling, lWTractionA, lWTractionB, lWAerodynamicA, lWAerodynamicB, lWBridge);
+            if(emissionCache.size() >= MAXIMUM_EMISSION_CACHE_SIZE) {
+                emissionCache.clear();
+            }
+            emissionCache.put(key, unitEmission);
+        }
+        return unitEmission;
+    }
+
     /**
      * traction or Aerodynamic Level.
      * @param typeVehicle vehicle data base
@@ -474,6 +526,53 @@ public class EvaluateRailwaySourceCnossos {
         return roughnessLtotFreq;
     }
 
-}
+    /**
+     * Parameters of the emission of one vehicle on a track
+     */
+    private static final class VehicleEmissionKey {
+        final String typeVehicle;
+        final int runningCondition;
+        final double speed;
+        final int trackRoughnessId;
+        final int trackTransferId;
+        final int impactId;
+        final int bridgeId;
+        final int curvature;
+        final int spectreVer;
+
+        VehicleEmissionKey(String typeVehicle, int runningCondition, double speed, int trackRoughnessId,
+                           int trackTransferId, int impactId, int bridgeId, int curvature, int spectreVer) {
+            this.typeVehicle = typeVehicle;
+            this.runningCondition = runningCondition;
+            this.speed = speed;
+            this.trackRoughnessId = trackRoughnessId;
+            this.trackTransferId = trackTransferId;
+            this.impactId = impactId;
+            this.bridgeId = bridgeId;
+            this.curvature = curvature;
+            this.spectreVer = spectreVer;
+        }
 
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            VehicleEmissionKey that = (VehicleEmissionKey) o;
+            return runningCondition == that.runningCondition &&
+                    Double.compare(that.speed, speed) == 0 &&
+                    trackRoughnessId == that.trackRoughnessId &&
+                    trackTransferId == that.trackTransferId &&
+                    impactId == that.impactId &&
+                    bridgeId == that.bridgeId &&
+                    curvature == that.curvature &&
+                    spectreVer == that.spectreVer &&
+                    Objects.equals(typeVehicle, that.typeVehicle);
+        }
 
+        @Override
+        public int hashCode() {
+            return Objects.hash(typeVehicle, runningCondition, speed, trackRoughnessId, trackTransferId, impactId,
+                    bridgeId, curvature, spectreVer);
+        }
+    }
+}
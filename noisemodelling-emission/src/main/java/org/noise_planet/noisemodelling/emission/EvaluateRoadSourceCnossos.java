@@ -16,6 +16,9 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.NullNode;
 
+import org.noise_planet.noisemodelling.emission.RoadCnossosCoefficients.VehicleCategory;
+import org.noise_planet.noisemodelling.emission.RoadCnossosCoefficients.VehicleCoefficient;
+
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -34,6 +37,8 @@ public class EvaluateRoadSourceCnossos {
 
     private static JsonNode cnossosData = parse(EvaluateRoadSourceCnossos.class.getResourceAsStream("coefficients_cnossos.json"));
     private static JsonNode cnossosData2019 = parse(EvaluateRoadSourceCnossos.class.getResourceAsStream("coefficients_cnossos2019.json")); // new coefficients in 2019 amendments
+    private static final RoadCnossosCoefficients coefficients = new RoadCnossosCoefficients(cnossosData);
+    private static final RoadCnossosCoefficients coefficients2019 = new RoadCnossosCoefficients(cnossosData2019);
 
     private static JsonNode parse(InputStream inputStream) {
         try {
@@ -52,6 +57,18 @@ public class EvaluateRoadSourceCnossos {
         }
     }
 
+    /**
+     * @param coeffVer 2015 or 2019 coefficients version
+     * @return Coefficients tables, to be used instead of {@link #getCnossosData(int)} in loops
+     */
+    public static RoadCnossosCoefficients getCoefficients(int coeffVer) {
+        if (coeffVer == 1) {
+            return coefficients;
+        } else {
+            return coefficients2019;
+        }
+    }
+
     /**
      * Get a Road Coeff for a frequency value
      * @param Freq Frequency in Hz (ocrave band)
@@ -61,36 +78,9 @@ public class EvaluateRoadSourceCnossos {
      * @return a Road Coeff
      */
     public static Double getA_Roadcoeff(int Freq, String vehCat, String RoadSurface, int coeffVer) { //CNOSSOS-EU_Road_Catalogue_Final - 01April2014.xlsx - accessed on line 2017 at : https://circabc.europa.eu/webdav/CircaBC/env/noisedir/Library/Public/cnossos-eu/Final_methods%26software
-        int Freq_ind;
-        switch (Freq) {
-            case 63:
-                Freq_ind = 0;
-                break;
-            case 125:
-                Freq_ind = 1;
-                break;
-            case 250:
-                Freq_ind = 2;
-                break;
-            case 500:
-                Freq_ind = 3;
-                break;
-            case 1000:
-                Freq_ind = 4;
-                break;
-            case 2000:
-                Freq_ind = 5;
-                break;
-            case 4000:
-                Freq_ind = 6;
-                break;
-            case 8000:
-                Freq_ind = 7;
-                break;
-            default:
-                Freq_ind = 0;
-        }
-        return getCnossosData(coeffVer).get("roads").get(RoadSurface).get("ref").get(vehCat).get("spectrum").get(Freq_ind).doubleValue();
+        RoadCnossosCoefficients roadCoefficients = getCoefficients(coeffVer);
+        return roadCoefficients.getSurfaceSpectrum(roadCoefficients.getSurfaceIndex(RoadSurface),
+                VehicleCategory.fromCode(vehCat), RoadCnossosCoefficients.getFrequencyIndex(Freq));
     }
 
     /**
@@ -101,7 +91,8 @@ public class EvaluateRoadSourceCnossos {
      * @return b Road Coeff
      */
     public static Double getB_Roadcoeff(String vehCat, String roadSurface, int coeffVer) { //CNOSSOS-EU_Road_Catalogue_Final - 01April2014.xlsx - https://circabc.europa.eu/webdav/CircaBC/env/noisedir/Library/Public/cnossos-eu/Final_methods%26software
-        return getCnossosData(coeffVer).get("roads").get(roadSurface).get("ref").get(vehCat).get("ßm").doubleValue();
+        RoadCnossosCoefficients roadCoefficients = getCoefficients(coeffVer);
+        return roadCoefficients.getSurfaceBeta(roadCoefficients.getSurfaceIndex(roadSurface), VehicleCategory.fromCode(vehCat));
     }
 
     /**
@@ -112,7 +103,7 @@ public class EvaluateRoadSourceCnossos {
      * @return Cr coefficient
      */
     public static double getCr(String vehCat, int k, int coeffVer) {
-        return getCnossosData(coeffVer).get("vehicles").get(vehCat).get(k == 1 ? "crossing" : "roundabout").get("cr").doubleValue();
+        return getCoefficients(coeffVer).getCr(VehicleCategory.fromCode(vehCat), k);
     }
 
     /**
@@ -123,7 +114,7 @@ public class EvaluateRoadSourceCnossos {
      * @return Cp coefficient
      */
     public static double getCp(String vehCat, int k, int coeffVer) {
-        return getCnossosData(coeffVer).get("vehicles").get(vehCat).get(k == 1 ? "crossing" : "roundabout").get("cp").doubleValue();
+        return getCoefficients(coeffVer).getCp(VehicleCategory.fromCode(vehCat), k);
     }
 
     /**
@@ -134,36 +125,8 @@ public class EvaluateRoadSourceCnossos {
      * @return Vehicle emission values coefficients
      */
     public static Double getCoeff(String coeff, int freq, String vehicleCategory, int coeffVer) {
-        int Freq_ind;
-        switch (freq) {
-            case 63:
-                Freq_ind = 0;
-                break;
-            case 125:
-                Freq_ind = 1;
-                break;
-            case 250:
-                Freq_ind = 2;
-                break;
-            case 500:
-                Freq_ind = 3;
-                break;
-            case 1000:
-                Freq_ind = 4;
-                break;
-            case 2000:
-                Freq_ind = 5;
-                break;
-            case 4000:
-                Freq_ind = 6;
-                break;
-            case 8000:
-                Freq_ind = 7;
-                break;
-            default:
-                Freq_ind = 0;
-        }
-        return getCnossosData(coeffVer).get("vehicles").get(vehicleCategory).get(coeff).get(Freq_ind).doubleValue();
+        return getCoefficients(coeffVer).getVehicleCoefficient(VehicleCoefficient.fromCode(coeff),
+                VehicleCategory.fromCode(vehicleCategory), RoadCnossosCoefficients.getFrequencyIndex(freq));
     }
 
     /**
@@ -184,17 +147,18 @@ public class EvaluateRoadSourceCnossos {
      * @param parameters
      * @param Pm_stud
      * @param Ts_stud
-     * @param freqParam
-     * @param coeffVer
+     * @param roadCoefficients
+     * @param idFreq
      * @return
      */
     private static Double getDeltaStuddedTyres(RoadSourceParametersCnossos parameters, double Pm_stud, double Ts_stud,
-                                               int freqParam, int coeffVer, double vRef) throws IOException {
+                                               RoadCnossosCoefficients roadCoefficients, int idFreq, double vRef) throws IOException {
             double speed = parameters.getSpeedLv();
             double ps = Pm_stud * Ts_stud / 12; // Eq. 2.2.7 yearly average proportion of vehicles equipped with studded tyres
             speed = (speed >= 90) ? 90 : speed;
             speed = (speed <= 50) ? 50 : speed;
-            double deltastud = getNoiseLvl(getCoeff("a", freqParam, "1", coeffVer), getCoeff("b", freqParam, "1", coeffVer), speed, vRef);
+            double deltastud = getNoiseLvl(roadCoefficients.getVehicleCoefficient(VehicleCoefficient.A, VehicleCategory.LIGHT, idFreq),
+                    roadCoefficients.getVehicleCoefficient(VehicleCoefficient.B, VehicleCategory.LIGHT, idFreq), speed, vRef);
             return  10 * Math.log10((1 - ps) + ps * Math.pow(10, deltastud / 10)); // Eq. 2.2.8
             // Only for light vehicles (Eq.2.2.9)
     }
@@ -289,28 +253,72 @@ public class EvaluateRoadSourceCnossos {
      * @return Noise level in dB
      */
     public static double evaluate(RoadSourceParametersCnossos parameters) throws IOException {
-        final int freqParam = parameters.getFreqParam();
+        RoadCnossosCoefficients roadCoefficients = getCoefficients(parameters.getCoeffVer());
+        return evaluate(parameters, roadCoefficients, roadCoefficients.getSurfaceIndex(parameters.getRoadSurface()));
+    }
+
+    /**
+     * Road noise evaluation of many road segments and/or frequency bands.
+     * @param parameters Noise emission parameters
+     * @return Noise level in dB, same order as parameters
+     */
+    public static double[] evaluate(RoadSourceParametersCnossos[] parameters) throws IOException {
+        double[] levels = new double[parameters.length];
+        evaluate(parameters, levels);
+        return levels;
+    }
+
+    /**
+     * Road noise evaluation of many road segments and/or frequency bands. The coefficient tables and the road surface
+     * are only looked up when they differ from the previous parameters.
+     * @param parameters Noise emission parameters
+     * @param levels [out] Noise level in dB, same order as parameters
+     */
+    public static void evaluate(RoadSourceParametersCnossos[] parameters, double[] levels) throws IOException {
+        if(levels.length < parameters.length) {
+            throw new IllegalArgumentException("Output array is smaller than parameters array");
+        }
+        int coeffVer = Integer.MIN_VALUE;
+        RoadCnossosCoefficients roadCoefficients = null;
+        String roadSurface = null;
+        int surfaceIndex = -1;
+        for(int i = 0; i < parameters.length; i++) {
+            RoadSourceParametersCnossos rsParameters = parameters[i];
+            if(roadCoefficients == null || rsParameters.getCoeffVer() != coeffVer) {
+                coeffVer = rsParameters.getCoeffVer();
+                roadCoefficients = getCoefficients(coeffVer);
+                roadSurface = null;
+            }
+            if(roadSurface == null || !roadSurface.equals(rsParameters.getRoadSurface())) {
+                surfaceIndex = roadCoefficients.getSurfaceIndex(rsParameters.getRoadSurface());
+                roadSurface = rsParameters.getRoadSurface();
+            }
+            levels[i] = evaluate(rsParameters, roadCoefficients, surfaceIndex);
+        }
+    }
+
+    private static double evaluate(RoadSourceParametersCnossos parameters, RoadCnossosCoefficients roadCoefficients,
+                                   int surfaceIndex) throws IOException {
+        final int idFreq = RoadCnossosCoefficients.getFrequencyIndex(parameters.getFreqParam());
         final double Temperature = parameters.getTemperature();
         final double Ts_stud = parameters.getTsStud();
         final double Pm_stud = parameters.getqStudRatio();
         final double Junc_dist = parameters.getJunc_dist();
         final int Junc_type = parameters.getJunc_type();
-        final String roadSurface = parameters.getRoadSurface();
-        final int coeffVer = parameters.getCoeffVer();
         double vRef = 70.;
 
         /**
          * Rolling Noise
          */
         // Rolling noise level Eq. 2.2.4
-        double lvRoadLvl = getNoiseLvl(getCoeff("ar", freqParam, "1", coeffVer), getCoeff("br", freqParam, "1", coeffVer), parameters.getSpeedLv(), vRef);
-        double medRoadLvl = getNoiseLvl(getCoeff("ar", freqParam, "2", coeffVer), getCoeff("br", freqParam, "2", coeffVer), parameters.getSpeedMv(), vRef);
-        double hgvRoadLvl = getNoiseLvl(getCoeff("ar", freqParam, "3", coeffVer), getCoeff("br", freqParam, "3", coeffVer), parameters.getSpeedHgv(), vRef);
+        double lvRoadLvl = getNoiseLvl(roadCoefficients.getVehicleCoefficient(VehicleCoefficient.AR, VehicleCategory.LIGHT, idFreq), roadCoefficients.getVehicleCoefficient(VehicleCoefficient.BR, VehicleCategory.LIGHT, idFreq), parameters.getSpeedLv(), vRef);
+        double medRoadLvl = getNoiseLvl(roadCoefficients.getVehicleCoefficient(VehicleCoefficient.AR, VehicleCategory.MEDIUM, idFreq), roadCoefficients.getVehicleCoefficient(VehicleCoefficient.BR, VehicleCategory.MEDIUM, idFreq), parameters.getSpeedMv(), vRef);
+        double hgvRoadLvl = getNoiseLvl(roadCoefficients.getVehicleCoefficient(VehicleCoefficient.AR, VehicleCategory.HEAVY, idFreq), roadCoefficients.getVehicleCoefficient(VehicleCoefficient.BR, VehicleCategory.HEAVY, idFreq), parameters.getSpeedHgv(), vRef);
         // Rolling noise is only for categories 1, 2 and 3
 
         // Correction for studded tyres - Eq. 2.2.6
         if (Pm_stud > 0 && Ts_stud > 0) {
-            lvRoadLvl = lvRoadLvl + getDeltaStuddedTyres(parameters, Pm_stud, Ts_stud, freqParam, coeffVer, vRef);
+            lvRoadLvl = lvRoadLvl + getDeltaStuddedTyres(parameters, Pm_stud, Ts_stud, roadCoefficients, idFreq, vRef);
         }
 
         // Effect of air temperature on rolling noise correction Eq 2.2.10
@@ -322,11 +330,11 @@ public class EvaluateRoadSourceCnossos {
          * Propulsion Noise
          */
         // General equation - Eq. 2.2.11
-        double lvMotorLvl = getCoeff("ap", freqParam, "1", coeffVer) + getCoeff("bp", freqParam, "1", coeffVer) * (parameters.getSpeedLv() - vRef) / vRef;
-        double medMotorLvl = getCoeff("ap", freqParam, "2", coeffVer) + getCoeff("bp", freqParam, "2", coeffVer) * (parameters.getSpeedMv() - vRef) / vRef;
-        double hgvMotorLvl = getCoeff("ap", freqParam, "3", coeffVer) + getCoeff("bp", freqParam, "3", coeffVer) * (parameters.getSpeedHgv() - vRef) / vRef;
-        double wheelaMotorLvl = getCoeff("ap", freqParam, "4a", coeffVer) + getCoeff("bp", freqParam, "4a", coeffVer) * (parameters.getSpeedWav() - vRef) / vRef;
-        double wheelbMotorLvl = getCoeff("ap", freqParam, "4b", coeffVer) + getCoeff("bp", freqParam, "4b", coeffVer) * (parameters.getSpeedWbv() - vRef) / vRef;
+        double lvMotorLvl = roadCoefficients.getVehicleCoefficient(VehicleCoefficient.AP, VehicleCategory.LIGHT, idFreq) + roadCoefficients.getVehicleCoefficient(VehicleCoefficient.BP, VehicleCategory.LIGHT, idFreq) * (parameters.getSpeedLv() - vRef) / vRef;
+        double medMotorLvl = roadCoefficients.getVehicleCoefficient(VehicleCoefficient.AP, VehicleCategory.MEDIUM, idFreq) + roadCoefficients.getVehicleCoefficient(VehicleCoefficient.BP, VehicleCategory.MEDIUM, idFreq) * (parameters.getSpeedMv() - vRef) / vRef;
+        double hgvMotorLvl = roadCoefficients.getVehicleCoefficient(VehicleCoefficient.AP, VehicleCategory.HEAVY, idFreq) + roadCoefficients.getVehicleCoefficient(VehicleCoefficient.BP, VehicleCategory.HEAVY, idFreq) * (parameters.getSpeedHgv() - vRef) / vRef;
+        double wheelaMotorLvl = roadCoefficients.getVehicleCoefficient(VehicleCoefficient.AP, VehicleCategory.TWO_WHEELERS_A, idFreq) + roadCoefficients.getVehicleCoefficient(VehicleCoefficient.BP, VehicleCategory.TWO_WHEELERS_A, idFreq) * (parameters.getSpeedWav() - vRef) / vRef;
+        double wheelbMotorLvl = roadCoefficients.getVehicleCoefficient(VehicleCoefficient.AP, VehicleCategory.TWO_WHEELERS_B, idFreq) + roadCoefficients.getVehicleCoefficient(VehicleCoefficient.BP, VehicleCategory.TWO_WHEELERS_B, idFreq) * (parameters.getSpeedWbv() - vRef) / vRef;
 
         // Effect of road gradients
         // This correction implicitly includes the effect of slope on speed.
@@ -355,27 +363,27 @@ public class EvaluateRoadSourceCnossos {
         // Todo Here, we should get the Junc_dist by another way that we are doing now to be more precise issue #261
         double coefficientJunctionDistance = Math.max(1 - Math.abs(Junc_dist) / 100, 0);
         // Effect of the acceleration and deceleration of vehicles - Rolling Noise Eq 2.2.17
-        lvRoadLvl = lvRoadLvl + getCr("1", Junc_type, coeffVer) * coefficientJunctionDistance;
-        medRoadLvl = medRoadLvl + getCr("2", Junc_type, coeffVer) * coefficientJunctionDistance;
-        hgvRoadLvl = hgvRoadLvl + getCr("3", Junc_type, coeffVer) * coefficientJunctionDistance;
+        lvRoadLvl = lvRoadLvl + roadCoefficients.getCr(VehicleCategory.LIGHT, Junc_type) * coefficientJunctionDistance;
+        medRoadLvl = medRoadLvl + roadCoefficients.getCr(VehicleCategory.MEDIUM, Junc_type) * coefficientJunctionDistance;
+        hgvRoadLvl = hgvRoadLvl + roadCoefficients.getCr(VehicleCategory.HEAVY, Junc_type) * coefficientJunctionDistance;
         // Effect of the acceleration and deceleration of vehicles - Propulsion Noise Eq 2.2.18
-        lvMotorLvl = lvMotorLvl + getCp("1", Junc_type, coeffVer) * coefficientJunctionDistance;
-        medMotorLvl = medMotorLvl + getCp("2", Junc_type, coeffVer) * coefficientJunctionDistance;
-        hgvMotorLvl = hgvMotorLvl + getCp("3", Junc_type, coeffVer) * coefficientJunctionDistance;
-        wheelaMotorLvl = wheelaMotorLvl + getCp("4a", Junc_type, coeffVer) * coefficientJunctionDistance;
-        wheelbMotorLvl = wheelbMotorLvl + getCp("4b", Junc_type, coeffVer) * coefficientJunctionDistance;
+        lvMotorLvl = lvMotorLvl + roadCoefficients.getCp(VehicleCategory.LIGHT, Junc_type) * coefficientJunctionDistance;
+        medMotorLvl = medMotorLvl + roadCoefficients.getCp(VehicleCategory.MEDIUM, Junc_type) * coefficientJunctionDistance;
+        hgvMotorLvl = hgvMotorLvl + roadCoefficients.getCp(VehicleCategory.HEAVY, Junc_type) * coefficientJunctionDistance;
+        wheelaMotorLvl = wheelaMotorLvl + roadCoefficients.getCp(VehicleCategory.TWO_WHEELERS_A, Junc_type) * coefficientJunctionDistance;
+        wheelbMotorLvl = wheelbMotorLvl + roadCoefficients.getCp(VehicleCategory.TWO_WHEELERS_B, Junc_type) * coefficientJunctionDistance;
 
         // Effect of the type of road surface - Eq. 2.2.19
-        lvRoadLvl = lvRoadLvl + getNoiseLvl(getA_Roadcoeff(freqParam, "1", parameters.getRoadSurface(), coeffVer), getB_Roadcoeff("1", roadSurface, coeffVer), parameters.getSpeedLv(), 70.);
-        medRoadLvl = medRoadLvl + getNoiseLvl(getA_Roadcoeff(freqParam, "2", parameters.getRoadSurface(), coeffVer), getB_Roadcoeff("2", roadSurface, coeffVer), parameters.getSpeedMv(), 70.);
-        hgvRoadLvl = hgvRoadLvl + getNoiseLvl(getA_Roadcoeff(freqParam, "3", parameters.getRoadSurface(), coeffVer), getB_Roadcoeff("3", roadSurface, coeffVer), parameters.getSpeedHgv(), 70.);
+        lvRoadLvl = lvRoadLvl + getNoiseLvl(roadCoefficients.getSurfaceSpectrum(surfaceIndex, VehicleCategory.LIGHT, idFreq), roadCoefficients.getSurfaceBeta(surfaceIndex, VehicleCategory.LIGHT), parameters.getSpeedLv(), 70.);
+        medRoadLvl = medRoadLvl + getNoiseLvl(roadCoefficients.getSurfaceSpectrum(surfaceIndex, VehicleCategory.MEDIUM, idFreq), roadCoefficients.getSurfaceBeta(surfaceIndex, VehicleCategory.MEDIUM), parameters.getSpeedMv(), 70.);
+        hgvRoadLvl = hgvRoadLvl + getNoiseLvl(roadCoefficients.getSurfaceSpectrum(surfaceIndex, VehicleCategory.HEAVY, idFreq), roadCoefficients.getSurfaceBeta(surfaceIndex, VehicleCategory.HEAVY), parameters.getSpeedHgv(), 70.);
 
         // Correction road on propulsion noise - Eq. 2.2.20
-        lvMotorLvl = lvMotorLvl + Math.min(getA_Roadcoeff(freqParam, "1", roadSurface, coeffVer), 0.);
-        medMotorLvl = medMotorLvl + Math.min(getA_Roadcoeff(freqParam, "2", roadSurface, coeffVer), 0.);
-        hgvMotorLvl = hgvMotorLvl + Math.min(getA_Roadcoeff(freqParam, "3", roadSurface, coeffVer), 0.);
-        wheelaMotorLvl = wheelaMotorLvl + Math.min(getA_Roadcoeff(freqParam, "4a", roadSurface, coeffVer), 0.);
-        wheelbMotorLvl = wheelbMotorLvl + Math.min(getA_Roadcoeff(freqParam, "4b", roadSurface, coeffVer), 0.);
+        lvMotorLvl = lvMotorLvl + Math.min(roadCoefficients.getSurfaceSpectrum(surfaceIndex, VehicleCategory.LIGHT, idFreq), 0.);
+        medMotorLvl = medMotorLvl + Math.min(roadCoefficients.getSurfaceSpectrum(surfaceIndex, VehicleCategory.MEDIUM, idFreq), 0.);
+        hgvMotorLvl = hgvMotorLvl + Math.min(roadCoefficients.getSurfaceSpectrum(surfaceIndex, VehicleCategory.HEAVY, idFreq), 0.);
+        wheelaMotorLvl = wheelaMotorLvl + Math.min(roadCoefficients.getSurfaceSpectrum(surfaceIndex, VehicleCategory.TWO_WHEELERS_A, idFreq), 0.);
+        wheelbMotorLvl = wheelbMotorLvl + Math.min(roadCoefficients.getSurfaceSpectrum(surfaceIndex, VehicleCategory.TWO_WHEELERS_B, idFreq), 0.);
 
         /**
          * Combine Propulsion and Rolling Noise - Eq. 2.2.2
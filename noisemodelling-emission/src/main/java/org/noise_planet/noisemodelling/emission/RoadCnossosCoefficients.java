@@ -0,0 +1,257 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+
+package org.noise_planet.noisemodelling.emission;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable CNOSSOS-EU road emission coefficients, read once from coefficients_cnossos.json or
+ * coefficients_cnossos2019.json and stored in flat arrays indexed by vehicle category, road surface and octave band.
+ * Missing coefficients are stored as NaN.
+ */
+public final class RoadCnossosCoefficients {
+    /** Octave bands of the coefficient tables */
+    public static final int[] FREQUENCIES = new int[] {63, 125, 250, 500, 1000, 2000, 4000, 8000};
+    public static final int FREQUENCY_COUNT = FREQUENCIES.length;
+
+    public enum VehicleCategory {
+        LIGHT("1"), MEDIUM("2"), HEAVY("3"), TWO_WHEELERS_A("4a"), TWO_WHEELERS_B("4b");
+
+        private final String code;
+
+        VehicleCategory(String code) {
+            this.code = code;
+        }
+
+        /**
+         * @return Category identifier in the coefficient files (1, 2, 3, 4a, 4b)
+         */
+        public String getCode() {
+            return code;
+        }
+
+        /**
+         * @param code Category identifier in the coefficient files (1, 2, 3, 4a, 4b)
+         * @return Vehicle category
+         */
+        public static VehicleCategory fromCode(String code) {
+            for(VehicleCategory category : values()) {
+                if(category.code.equals(code)) {
+                    return category;
+                }
+            }
+            throw new IllegalArgumentException("Unknown vehicle category " + code);
+        }
+    }
+
+    /**
+     * Vehicle emission coefficients, ar/br rolling noise, ap/bp propulsion noise and a/b studded tyres correction
+     */
+    public enum VehicleCoefficient {
+        AR("ar"), BR("br"), AP("ap"), BP("bp"), A("a"), B("b");
+
+        private final String code;
+
+        VehicleCoefficient(String code) {
+            this.code = code;
+        }
+
+        public String getCode() {
+            return code;
+        }
+
+        public static VehicleCoefficient fromCode(String code) {
+            for(VehicleCoefficient coefficient : values()) {
+                if(coefficient.code.equals(code)) {
+                    return coefficient;
+                }
+            }
+            throw new IllegalArgumentException("Unknown vehicle coefficient " + code);
+        }
+    }
+
+    private static final int CATEGORY_COUNT = VehicleCategory.values().length;
+    private static final int COEFFICIENT_COUNT = VehicleCoefficient.values().length;
+
+    // [coefficient][category][frequency]
+    private final double[] vehicleCoefficients;
+    // [category][crossing, roundabout]
+    private final double[] cr;
+    private final double[] cp;
+    private final List<String> surfaceNames;
+    private final Map<String, Integer> surfaceIndex;
+    // [surface][category][frequency]
+    private final double[] surfaceSpectrum;
+    // [surface][category]
+    private final double[] surfaceBeta;
+
+    /**
+     * @param cnossosData Content of coefficients file
+     */
+    public RoadCnossosCoefficients(JsonNode cnossosData) {
+        vehicleCoefficients = new double[COEFFICIENT_COUNT * CATEGORY_COUNT * FREQUENCY_COUNT];
+        cr = new double[CATEGORY_COUNT * 2];
+        cp = new double[CATEGORY_COUNT * 2];
+        Arrays.fill(vehicleCoefficients, Double.NaN);
+        Arrays.fill(cr, Double.NaN);
+        Arrays.fill(cp, Double.NaN);
+        JsonNode vehicles = cnossosData.path("vehicles");
+        for(VehicleCategory category : VehicleCategory.values()) {
+            JsonNode vehicle = vehicles.path(category.getCode());
+            for(VehicleCoefficient coefficient : VehicleCoefficient.values()) {
+                JsonNode values = vehicle.path(coefficient.getCode());
+                for(int idFreq = 0; idFreq < FREQUENCY_COUNT && idFreq < values.size(); idFreq++) {
+                    vehicleCoefficients[vehicleIndex(coefficient, category, idFreq)] = values.get(idFreq).doubleValue();
+                }
+            }
+            int junctionIndex = category.ordinal() * 2;
+            cr[junctionIndex] = vehicle.path("crossing").path("cr").asDouble(Double.NaN);
+            cp[junctionIndex] = vehicle.path("crossing").path("cp").asDouble(Double.NaN);
+            cr[junctionIndex + 1] = vehicle.path("roundabout").path("cr").asDouble(Double.NaN);
+            cp[junctionIndex + 1] = vehicle.path("roundabout").path("cp").asDouble(Double.NaN);
+        }
+        JsonNode roads = cnossosData.path("roads");
+        List<String> names = new ArrayList<>(roads.size());
+        Iterator<String> roadsNames = roads.fieldNames();
+        while(roadsNames.hasNext()) {
+            names.add(roadsNames.next());
+        }
+        surfaceNames = Collections.unmodifiableList(names);
+        surfaceIndex = new HashMap<>(names.size() * 2);
+        surfaceSpectrum = new double[names.size() * CATEGORY_COUNT * FREQUENCY_COUNT];
+        surfaceBeta = new double[names.size() * CATEGORY_COUNT];
+        Arrays.fill(surfaceSpectrum, Double.NaN);
+        Arrays.fill(surfaceBeta, Double.NaN);
+        for(int idSurface = 0; idSurface < names.size(); idSurface++) {
+            surfaceIndex.put(names.get(idSurface), idSurface);
+            JsonNode ref = roads.get(names.get(idSurface)).path("ref");
+            for(VehicleCategory category : VehicleCategory.values()) {
+                JsonNode surfaceCategory = ref.path(category.getCode());
+                surfaceBeta[idSurface * CATEGORY_COUNT + category.ordinal()] =
+                        surfaceCategory.path("ßm").asDouble(Double.NaN);
+                JsonNode spectrum = surfaceCategory.path("spectrum");
+                for(int idFreq = 0; idFreq < FREQUENCY_COUNT && idFreq < spectrum.size(); idFreq++) {
+                    surfaceSpectrum[surfaceSpectrumIndex(idSurface, category, idFreq)] =
+                            spectrum.get(idFreq).doubleValue();
+                }
+            }
+        }
+    }
+
+    private static int vehicleIndex(VehicleCoefficient coefficient, VehicleCategory category, int idFreq) {
+        return (coefficient.ordinal() * CATEGORY_COUNT + category.ordinal()) * FREQUENCY_COUNT + idFreq;
+    }
+
+    private static int surfaceSpectrumIndex(int surface, VehicleCategory category, int idFreq) {
+        return (surface * CATEGORY_COUNT + category.ordinal()) * FREQUENCY_COUNT + idFreq;
+    }
+
+    /**
+     * @param frequency Frequency in Hz (octave band)
+     * @return Index of the octave band in the coefficient tables, 0 if the frequency is not an octave band
+     */
+    public static int getFrequencyIndex(int frequency) {
+        switch (frequency) {
+            case 125:
+                return 1;
+            case 250:
+                return 2;
+            case 500:
+                return 3;
+            case 1000:
+                return 4;
+            case 2000:
+                return 5;
+            case 4000:
+                return 6;
+            case 8000:
+                return 7;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * @param coefficient ar,br,ap,bp,a,b
+     * @param category Vehicle category
+     * @param idFreq Octave band index, see {@link #getFrequencyIndex(int)}
+     * @return Vehicle emission coefficient
+     */
+    public double getVehicleCoefficient(VehicleCoefficient coefficient, VehicleCategory category, int idFreq) {
+        return vehicleCoefficients[vehicleIndex(coefficient, category, idFreq)];
+    }
+
+    /**
+     * @param category Vehicle category
+     * @param junctionType k=1 Crossing lights, k=2 roundabout
+     * @return Cr coefficient
+     */
+    public double getCr(VehicleCategory category, int junctionType) {
+        return cr[category.ordinal() * 2 + (junctionType == 1 ? 0 : 1)];
+    }
+
+    /**
+     * @param category Vehicle category
+     * @param junctionType k=1 Crossing lights, k=2 roundabout
+     * @return Cp coefficient
+     */
+    public double getCp(VehicleCategory category, int junctionType) {
+        return cp[category.ordinal() * 2 + (junctionType == 1 ? 0 : 1)];
+    }
+
+    /**
+     * @return Road surfaces identifiers, the position in this list is the surface index
+     */
+    public List<String> getSurfaceNames() {
+        return surfaceNames;
+    }
+
+    /**
+     * @param roadSurface Road surface identifier (NL01, FR1D..)
+     * @return Surface index used by {@link #getSurfaceSpectrum(int, VehicleCategory, int)}
+     */
+    public int getSurfaceIndex(String roadSurface) {
+        Integer index = roadSurface == null ? null : surfaceIndex.get(roadSurface);
+        if(index == null) {
+            throw new IllegalArgumentException("Unknown road surface " + roadSurface);
+        }
+        return index;
+    }
+
+    /**
+     * @param surface Surface index, see {@link #getSurfaceIndex(String)}
+     * @param category Vehicle category
+     * @param idFreq Octave band index, see {@link #getFrequencyIndex(int)}
+     * @return Road surface coefficient a
+     */
+    public double getSurfaceSpectrum(int surface, VehicleCategory category, int idFreq) {
+        return surfaceSpectrum[surfaceSpectrumIndex(surface, category, idFreq)];
+    }
+
+    /**
+     * @param surface Surface index, see {@link #getSurfaceIndex(String)}
+     * @param category Vehicle category
+     * @return Road surface coefficient ßm
+     */
+    public double getSurfaceBeta(int surface, VehicleCategory category) {
+        return surfaceBeta[surface * CATEGORY_COUNT + category.ordinal()];
+    }
+}
@@ -2,6 +2,9 @@ package org.noise_planet.noisemodelling.emission;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.junit.Assert.*;
 
 public class DiscreteDirectionAttributesTest {
@@ -62,4 +65,86 @@ public class DiscreteDirectionAttributesTest {
                 (float)Math.toRadians(26)),0.1);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testGridLookup() {
+        DiscreteDirectionAttributes d = new DiscreteDirectionAttributes(1, freqTest);
+        RailWayLW.TrainAttenuation att = new RailWayLW.TrainAttenuation(RailWayLW.TrainNoiseSource.TRACTIONB);
+        for(int yaw = 0; yaw < 360; yaw += 5) {
+            float theta = (float)Math.toRadians(yaw);
+            for(int pitch = -85; pitch < 90; pitch += 5) {
+                float phi = (float)Math.toRadians(pitch);
+                double[] attSpectrum = new double[freqTest.length];
+                for (int idFreq = 0; idFreq < freqTest.length; idFreq++) {
+                    attSpectrum[idFreq] = att.getAttenuation(freqTest[idFreq], phi, theta);
+                }
+                d.addDirectivityRecord(theta, phi, attSpectrum);
+            }
+        }
+        // Values on records are not altered by the lookup grid
+        for(int yaw = 0; yaw < 360; yaw += 15) {
+            for(int pitch = -85; pitch < 90; pitch += 15) {
+                float theta = (float)Math.toRadians(yaw);
+                float phi = (float)Math.toRadians(pitch);
+                assertArrayEquals(d.getRecord(theta, phi, 1).getAttenuation(),
+                        d.getAttenuationArray(freqTest, phi, theta), 1e-4);
+            }
+        }
+        // Compare the lookup grid with the records interpolation, including the gap between 355° and 360°
+        double sumError = 0;
+        int count = 0;
+        for(int yaw = -10; yaw < 370; yaw += 7) {
+            for(int pitch = -84; pitch < 85; pitch += 7) {
+                float theta = (float)Math.toRadians(yaw + 0.3);
+                float phi = (float)Math.toRadians(pitch + 0.3);
+                // The records interpolation expects theta in [0, 2π)
+                double[] expected = d.getRecord((float)Math.toRadians((yaw + 360) % 360 + 0.3), phi, 1)
+                        .getAttenuation();
+                double[] spectrum = d.getAttenuationArray(freqTest, phi, theta);
+                // Near the poles the records interpolation is done on great circle distances, the grid is bilinear
+                double maximumError = Math.abs(pitch) < 80 ? 0.4 : 1.5;
+                for (int idFreq = 0; idFreq < freqTest.length; idFreq++) {
+                    assertEquals(expected[idFreq], spectrum[idFreq], maximumError);
+                    sumError += Math.abs(expected[idFreq] - spectrum[idFreq]);
+                    count++;
+                    assertEquals(spectrum[idFreq], d.getAttenuation(freqTest[idFreq], phi, theta), 1e-12);
+                }
+            }
+        }
+        assertEquals(0, sumError / count, 0.01);
+        // Outside of the records, same value than the records interpolation
+        assertArrayEquals(d.getRecord((float)Math.toRadians(10), (float)Math.toRadians(88), 1).getAttenuation(),
+                d.getAttenuationArray(freqTest, (float)Math.toRadians(88), (float)Math.toRadians(10)), 1e-12);
+        // Closest neighbor
+        d.setInterpolationMethod(0);
+        assertArrayEquals(d.getRecord((float)Math.toRadians(25), (float)Math.toRadians(30), 0).getAttenuation(),
+                d.getAttenuationArray(freqTest, (float)Math.toRadians(30.5), (float)Math.toRadians(25.5)), 1e-6);
+    }
+
+    @Test
+    public void testLargeGridFallback() {
+        DiscreteDirectionAttributes d = new DiscreteDirectionAttributes(1, freqTest);
+        RailWayLW.TrainAttenuation att = new RailWayLW.TrainAttenuation(RailWayLW.TrainNoiseSource.TRACTIONB);
+        List<DiscreteDirectionAttributes.DirectivityRecord> records = new ArrayList<>();
+        for(int yaw = 0; yaw < 360; yaw += 1) {
+            float theta = (float)Math.toRadians(yaw);
+            for(int pitch = -85; pitch <= 85; pitch += 1) {
+                float phi = (float)Math.toRadians(pitch);
+                double[] attSpectrum = new double[freqTest.length];
+                for (int idFreq = 0; idFreq < freqTest.length; idFreq++) {
+                    attSpectrum[idFreq] = att.getAttenuation(freqTest[idFreq], phi, theta);
+                }
+                records.add(new DiscreteDirectionAttributes.DirectivityRecord(theta, phi, attSpectrum));
+            }
+        }
+        d.addDirectivityRecords(records);
+        // The grid would be larger than MAXIMUM_GRID_SIZE, the records are interpolated on each query
+        for(int yaw = 3; yaw < 360; yaw += 37) {
+            for(int pitch = -70; pitch < 80; pitch += 23) {
+                float theta = (float)Math.toRadians(yaw + 0.3);
+                float phi = (float)Math.toRadians(pitch + 0.3);
+                assertArrayEquals(d.getRecord(theta, phi, 1).getAttenuation(),
+                        d.getAttenuationArray(freqTest, phi, theta), 1e-12);
+            }
+        }
+    }
+}
@@ -355,4 +355,31 @@ public class EvaluateRailWaySourceCNOSSOSTest {
             assertEquals(expectedValuesLWBridge[idFreq], lWRailWay.getLWBridge()[idFreq], EPSILON_TEST1);
         }
     }*/
+
+    @Test
+    public void testEmissionCache() {
+        EvaluateRailwaySourceCnossos evaluateRailwaySourceCnossos = new EvaluateRailwaySourceCnossos();
+        RailwayTrackParametersCnossos trackParameters = new RailwayTrackParametersCnossos(160, 7, 3,
+                1, 0, 0, 120, false, 2);
+        RailWayLW lWRailWay = evaluateRailwaySourceCnossos.evaluate(new RailwayVehicleParametersCnossos("SNCF-BB66400",
+                80, 10, 0, 0), trackParameters);
+        // Returned levels are copies of the cached spectra
+        double firstRolling = lWRailWay.getLWRolling()[0];
+        lWRailWay.getLWRolling()[0] = 0;
+        RailWayLW lWRailWayDoubleFlow = evaluateRailwaySourceCnossos.evaluate(new RailwayVehicleParametersCnossos(
+                "SNCF-BB66400", 80, 20, 0, 0), trackParameters);
+        assertEquals(1, evaluateRailwaySourceCnossos.getEmissionCacheSize());
+        assertEquals(firstRolling + 10 * Math.log10(2), lWRailWayDoubleFlow.getLWRolling()[0], EPSILON_TEST1);
+        // Same result than a new instance
+        RailWayLW expected = new EvaluateRailwaySourceCnossos().evaluate(new RailwayVehicleParametersCnossos(
+                "SNCF-BB66400", 80, 20, 0, 0), trackParameters);
+        for (int idFreq = 0; idFreq < 24; idFreq++) {
+            assertEquals(expected.getLWRolling()[idFreq], lWRailWayDoubleFlow.getLWRolling()[idFreq], 0);
+            assertEquals(expected.getLWTractionB()[idFreq], lWRailWayDoubleFlow.getLWTractionB()[idFreq], 0);
+        }
+        // Other speed is another entry
+        evaluateRailwaySourceCnossos.evaluate(new RailwayVehicleParametersCnossos("SNCF-BB66400", 100, 10, 0, 0),
+                trackParameters);
+        assertEquals(2, evaluateRailwaySourceCnossos.getEmissionCacheSize());
+    }
 }
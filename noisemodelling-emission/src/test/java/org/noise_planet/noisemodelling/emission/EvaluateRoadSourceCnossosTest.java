@@ -12,6 +12,7 @@
 
 package org.noise_planet.noisemodelling.emission;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import org.junit.Test;
 
 import java.io.IOException;
@@ -222,4 +223,65 @@ public class EvaluateRoadSourceCnossosTest {
             assertEquals(String.format("%d Hz", FREQUENCIES[idFreq]), expectedValues[idFreq], result, EPSILON_TEST1);
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testCompiledCoefficients() {
+        for(int coeffVer = 1; coeffVer <= 2; coeffVer++) {
+            JsonNode cnossosData = EvaluateRoadSourceCnossos.getCnossosData(coeffVer);
+            RoadCnossosCoefficients coefficients = EvaluateRoadSourceCnossos.getCoefficients(coeffVer);
+            for(RoadCnossosCoefficients.VehicleCategory category : RoadCnossosCoefficients.VehicleCategory.values()) {
+                JsonNode vehicle = cnossosData.get("vehicles").get(category.getCode());
+                assertEquals(vehicle.get("crossing").get("cr").doubleValue(), coefficients.getCr(category, 1), 0);
+                assertEquals(vehicle.get("roundabout").get("cp").doubleValue(), coefficients.getCp(category, 2), 0);
+                for(int idFreq = 0; idFreq < FREQUENCIES.length; idFreq++) {
+                    assertEquals(idFreq, RoadCnossosCoefficients.getFrequencyIndex(FREQUENCIES[idFreq]));
+                    assertEquals(vehicle.get("ar").get(idFreq).doubleValue(), coefficients.getVehicleCoefficient(
+                            RoadCnossosCoefficients.VehicleCoefficient.AR, category, idFreq), 0);
+                    assertEquals(vehicle.get("bp").get(idFreq).doubleValue(), coefficients.getVehicleCoefficient(
+                            RoadCnossosCoefficients.VehicleCoefficient.BP, category, idFreq), 0);
+                }
+                for(String roadSurface : coefficients.getSurfaceNames()) {
+                    JsonNode ref = cnossosData.get("roads").get(roadSurface).get("ref").get(category.getCode());
+                    int surfaceIndex = coefficients.getSurfaceIndex(roadSurface);
+                    assertEquals(ref.get("ßm").doubleValue(), coefficients.getSurfaceBeta(surfaceIndex, category), 0);
+                    for(int idFreq = 0; idFreq < FREQUENCIES.length; idFreq++) {
+                        assertEquals(ref.get("spectrum").get(idFreq).doubleValue(),
+                                coefficients.getSurfaceSpectrum(surfaceIndex, category, idFreq), 0);
+                    }
+                }
+            }
+            // Studded tyres coefficients are only defined for light vehicles
+            assertTrue(Double.isNaN(coefficients.getVehicleCoefficient(RoadCnossosCoefficients.VehicleCoefficient.A,
+                    RoadCnossosCoefficients.VehicleCategory.HEAVY, 0)));
+        }
+    }
+
+    @Test
+    public void testBatchEvaluate() throws IOException {
+        String[] roadSurfaces = new String[] {"NL01", "NL01", "DEF", "NL05", "NL05"};
+        RoadSourceParametersCnossos[] parameters = new RoadSourceParametersCnossos[roadSurfaces.length * FREQUENCIES.length];
+        int index = 0;
+        for(int idSurface = 0; idSurface < roadSurfaces.length; idSurface++) {
+            for(int frequency : FREQUENCIES) {
+                RoadSourceParametersCnossos rsParameters = new RoadSourceParametersCnossos(50 + idSurface * 10, 50,
+                        45, 50, 50, 1000, 50, 80, 10, 10, frequency, 15, roadSurfaces[idSurface], 4, 0.5,
+                        idSurface * 20, idSurface % 3);
+                rsParameters.setSlopePercentage(idSurface - 2);
+                rsParameters.setCoeffVer(1 + idSurface % 2);
+                parameters[index++] = rsParameters;
+            }
+        }
+        double[] levels = EvaluateRoadSourceCnossos.evaluate(parameters);
+        assertEquals(parameters.length, levels.length);
+        for(int i = 0; i < parameters.length; i++) {
+            assertEquals(EvaluateRoadSourceCnossos.evaluate(parameters[i]), levels[i], 0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownRoadSurface() throws IOException {
+        RoadSourceParametersCnossos rsParameters = new RoadSourceParametersCnossos(50, 50, 50, 50, 50, 1000, 0, 0, 0,
+                0, 1000, 15, "UNKNOWN", 0, 0, 0, 0);
+        EvaluateRoadSourceCnossos.evaluate(rsParameters);
+    }
+}
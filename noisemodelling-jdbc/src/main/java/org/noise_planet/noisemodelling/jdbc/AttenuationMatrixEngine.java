@@ -0,0 +1,214 @@
+/**
+ * NoiseModelling is a free and open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by Université Gustave Eiffel and CNRS
+ * <http://noise-planet.org/noisemodelling.html>
+ * as part of:
+ * the Eval-PDU project (ANR-08-VILL-0005) 2008-2011, funded by the Agence Nationale de la Recherche (French)
+ * the CENSE project (ANR-16-CE22-0012) 2017-2021, funded by the Agence Nationale de la Recherche (French)
+ * the Nature4cities (N4C) project, funded by European Union’s Horizon 2020 research and innovation programme under grant agreement No 730468
+ *
+ * Noisemap is distributed under GPL 3 license.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488) and Ifsttar
+ * Copyright (C) 2013-2019 Ifsttar and CNRS
+ * Copyright (C) 2020 Université Gustave Eiffel and CNRS
+ *
+ * @Author Pierre Aumond, Université Gustave Eiffel
+ * @Author Nicolas Fortin, Université Gustave Eiffel
+ */
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.noise_planet.noisemodelling.pathfinder.ComputeRays;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compute receivers noise levels from an attenuation matrix file (see {@link AttenuationMatrixFile}) and the
+ * sound power of the sources. Used to evaluate emission scenarios (ex. hourly traffic) without propagation.
+ */
+public class AttenuationMatrixEngine implements Closeable {
+    // Number of receivers processed by a task
+    private static final int RECEIVERS_PER_TASK = 256;
+    // Maximum size of a read, in bytes. Larger receiver blocks are read one by one
+    private static final long READ_CHUNK_SIZE = 16 << 20;
+    private final FileChannel channel;
+    private final AttenuationMatrixFile.Index index;
+    private int threadCount = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * @param file File written by {@link AttenuationMatrixFile.Writer}
+     * @throws IOException Unable to read the file or unexpected file format
+     */
+    public AttenuationMatrixEngine(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            index = AttenuationMatrixFile.Index.read(channel);
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    public List<Integer> getFrequencies() {
+        return index.frequencies;
+    }
+
+    public int getReceiverCount() {
+        return index.receivers.length;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * @param threadCount Number of computation threads
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = Math.max(1, threadCount);
+    }
+
+    /**
+     * @param sourcesLevels Sound power level in dB of each source identifier
+     * @return Sound level in dB of each receiver identifier (in matrix order). Receivers without sources in range
+     * have -Infinity levels
+     * @throws IOException Unable to read the file
+     */
+    public Map<Long, double[]> computeLevels(Map<Long, double[]> sourcesLevels) throws IOException {
+        return computeLevels(Collections.singletonList(sourcesLevels)).get(0);
+    }
+
+    /**
+     * Evaluate multiple emission scenarios (ex. day, evening, night) while reading the matrix only once
+     * @param scenarios For each scenario, the sound power level in dB of each source identifier
+     * @return For each scenario, the sound level in dB of each receiver identifier (in matrix order)
+     * @throws IOException Unable to read the file
+     */
+    public List<Map<Long, double[]>> computeLevels(List<Map<Long, double[]>> scenarios) throws IOException {
+        final int frequencyCount = index.frequencies.size();
+        // Convert sources power to W once
+        final List<Map<Long, double[]>> scenariosPower = new ArrayList<>(scenarios.size());
+        for (Map<Long, double[]> sourcesLevels : scenarios) {
+            Map<Long, double[]> sourcesPower = new HashMap<>(sourcesLevels.size());
+            for (Map.Entry<Long, double[]> entry : sourcesLevels.entrySet()) {
+                if (entry.getValue().length != frequencyCount) {
+                    throw new IllegalArgumentException("Source " + entry.getKey() + " has " +
+                            entry.getValue().length + " levels instead of " + frequencyCount);
+                }
+                sourcesPower.put(entry.getKey(), ComputeRays.dbaToW(entry.getValue()));
+            }
+            scenariosPower.add(sourcesPower);
+        }
+        final int receiverCount = index.receivers.length;
+        final double[][][] levels = new double[scenarios.size()][receiverCount][];
+        ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int start = 0; start < receiverCount; start += RECEIVERS_PER_TASK) {
+                final int begin = start;
+                final int end = Math.min(receiverCount, start + RECEIVERS_PER_TASK);
+                tasks.add(executorService.submit(() -> {
+                    computeRange(begin, end, scenariosPower, levels);
+                    return null;
+                }));
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException ex) {
+            throw new IOException(ex.getLocalizedMessage(), ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new IllegalStateException(ex.getCause());
+        } finally {
+            executorService.shutdownNow();
+        }
+        List<Map<Long, double[]>> result = new ArrayList<>(scenarios.size());
+        for (double[][] scenarioLevels : levels) {
+            Map<Long, double[]> receiversLevels = new LinkedHashMap<>(receiverCount);
+            for (int i = 0; i < receiverCount; i++) {
+                receiversLevels.put(index.receivers[i], scenarioLevels[i]);
+            }
+            result.add(receiversLevels);
+        }
+        return result;
+    }
+
+    private void computeRange(int begin, int end, List<Map<Long, double[]>> scenariosPower, double[][][] levels)
+            throws IOException {
+        final int frequencyCount = index.frequencies.size();
+        double[] attenuation = new double[frequencyCount];
+        // Read the blocks of the range by chunks of bounded size
+        ByteBuffer buffer = null;
+        int chunkEnd = begin;
+        for (int idReceiver = begin; idReceiver < end; idReceiver++) {
+            if (idReceiver == chunkEnd) {
+                chunkEnd = idReceiver + 1;
+                while (chunkEnd < end && index.offsets[chunkEnd + 1] - index.offsets[idReceiver] <= READ_CHUNK_SIZE) {
+                    chunkEnd++;
+                }
+                long chunkSize = index.offsets[chunkEnd] - index.offsets[idReceiver];
+                if (chunkSize > Integer.MAX_VALUE) {
+                    throw new IOException("Receiver " + index.receivers[idReceiver] + " block size " + chunkSize +
+                            " bytes exceeds the maximum buffer size");
+                }
+                if (buffer == null || buffer.capacity() < chunkSize) {
+                    buffer = ByteBuffer.allocate((int) Math.max(chunkSize,
+                            Math.min(READ_CHUNK_SIZE, index.offsets[end] - index.offsets[idReceiver])))
+                            .order(ByteOrder.LITTLE_ENDIAN);
+                }
+                buffer.clear();
+                buffer.limit((int) chunkSize);
+                AttenuationMatrixFile.readFully(channel, buffer, index.offsets[idReceiver]);
+            }
+            buffer.getLong(); // receiver identifier
+            int sourceCount = buffer.getInt();
+            double[][] receiverPower = new double[scenariosPower.size()][frequencyCount];
+            for (int idSource = 0; idSource < sourceCount; idSource++) {
+                long sourceId = buffer.getLong();
+                for (int idFreq = 0; idFreq < frequencyCount; idFreq++) {
+                    attenuation[idFreq] = ComputeRays.dbaToW(buffer.getFloat());
+                }
+                for (int idScenario = 0; idScenario < receiverPower.length; idScenario++) {
+                    double[] sourcePower = scenariosPower.get(idScenario).get(sourceId);
+                    if (sourcePower != null) {
+                        double[] power = receiverPower[idScenario];
+                        for (int idFreq = 0; idFreq < frequencyCount; idFreq++) {
+                            power[idFreq] += sourcePower[idFreq] * attenuation[idFreq];
+                        }
+                    }
+                }
+            }
+            for (int idScenario = 0; idScenario < receiverPower.length; idScenario++) {
+                levels[idScenario][idReceiver] = ComputeRays.wToDba(receiverPower[idScenario],
+                        receiverPower[idScenario]);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
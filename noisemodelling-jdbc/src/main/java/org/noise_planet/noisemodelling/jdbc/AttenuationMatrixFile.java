@@ -0,0 +1,235 @@
+/**
+ * NoiseModelling is a free and open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by Université Gustave Eiffel and CNRS
+ * <http://noise-planet.org/noisemodelling.html>
+ * as part of:
+ * the Eval-PDU project (ANR-08-VILL-0005) 2008-2011, funded by the Agence Nationale de la Recherche (French)
+ * the CENSE project (ANR-16-CE22-0012) 2017-2021, funded by the Agence Nationale de la Recherche (French)
+ * the Nature4cities (N4C) project, funded by European Union’s Horizon 2020 research and innovation programme under grant agreement No 730468
+ *
+ * Noisemap is distributed under GPL 3 license.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488) and Ifsttar
+ * Copyright (C) 2013-2019 Ifsttar and CNRS
+ * Copyright (C) 2020 Université Gustave Eiffel and CNRS
+ *
+ * @Author Pierre Aumond, Université Gustave Eiffel
+ * @Author Nicolas Fortin, Université Gustave Eiffel
+ */
+package org.noise_planet.noisemodelling.jdbc;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary storage of the attenuation between each receiver and the sources in range.
+ * As the attenuation depends only on the geometry, the noise levels of new emission scenarios can be computed
+ * from this file with {@link AttenuationMatrixEngine} without running the propagation again.
+ * Little endian file layout:
+ * <ul>
+ *     <li>Header: int magic, int version, int frequency count n, n int frequencies</li>
+ *     <li>Receiver blocks: long receiver identifier, int source count m,
+ *     m times (long source identifier, n float attenuation in dB)</li>
+ *     <li>Index: long receiver count r, r times (long receiver identifier, long block offset)</li>
+ *     <li>Footer: long index offset, int magic</li>
+ * </ul>
+ */
+public class AttenuationMatrixFile {
+    public static final String FILE_EXTENSION = ".att";
+    static final int MAGIC = 0x4E4D4154;
+    static final int VERSION = 1;
+    static final int FOOTER_SIZE = Long.BYTES + Integer.BYTES;
+
+    private AttenuationMatrixFile() {
+    }
+
+    /**
+     * Append receiver blocks, can be used by multiple computation threads.
+     */
+    public static class Writer implements Closeable {
+        private final FileChannel channel;
+        private final int frequencyCount;
+        private long[] receivers = new long[1024];
+        private long[] offsets = new long[1024];
+        private int receiverCount = 0;
+        private long position;
+        private boolean closed = false;
+
+        /**
+         * @param file File to create or overwrite
+         * @param frequencies Frequency of each attenuation value
+         * @throws IOException Unable to create the file
+         */
+        public Writer(File file, List<Integer> frequencies) throws IOException {
+            frequencyCount = frequencies.size();
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            ByteBuffer header = ByteBuffer.allocate(Integer.BYTES * (3 + frequencyCount)).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(frequencyCount);
+            for (int frequency : frequencies) {
+                header.putInt(frequency);
+            }
+            header.flip();
+            writeFully(header);
+        }
+
+        private void writeFully(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer);
+            }
+        }
+
+        /**
+         * @param receiverId Receiver identifier
+         * @param attenuationPerSource Attenuation in dB of each source identifier
+         * @throws IOException Unable to write in the file
+         */
+        public void writeReceiver(long receiverId, Map<Long, double[]> attenuationPerSource) throws IOException {
+            // Serialize outside of the lock
+            ByteBuffer block = ByteBuffer.allocate(Long.BYTES + Integer.BYTES + attenuationPerSource.size() *
+                    (Long.BYTES + Float.BYTES * frequencyCount)).order(ByteOrder.LITTLE_ENDIAN);
+            block.putLong(receiverId);
+            block.putInt(attenuationPerSource.size());
+            for (Map.Entry<Long, double[]> entry : attenuationPerSource.entrySet()) {
+                double[] attenuation = entry.getValue();
+                if (attenuation.length != frequencyCount) {
+                    throw new IllegalArgumentException("Expected " + frequencyCount + " values, got " +
+                            attenuation.length);
+                }
+                block.putLong(entry.getKey());
+                for (double value : attenuation) {
+                    block.putFloat((float) value);
+                }
+            }
+            block.flip();
+            synchronized (this) {
+                if (closed) {
+                    throw new IOException("Attenuation matrix file is closed");
+                }
+                if (receiverCount == receivers.length) {
+                    receivers = Arrays.copyOf(receivers, receivers.length * 2);
+                    offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                }
+                receivers[receiverCount] = receiverId;
+                offsets[receiverCount] = position;
+                receiverCount++;
+                writeFully(block);
+            }
+        }
+
+        /**
+         * Write the index and close the file
+         * @throws IOException Unable to write in the file
+         */
+        @Override
+        public synchronized void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                long indexOffset = position;
+                ByteBuffer index = ByteBuffer.allocate(Long.BYTES + receiverCount * Long.BYTES * 2 + FOOTER_SIZE)
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                index.putLong(receiverCount);
+                for (int i = 0; i < receiverCount; i++) {
+                    index.putLong(receivers[i]);
+                    index.putLong(offsets[i]);
+                }
+                index.putLong(indexOffset);
+                index.putInt(MAGIC);
+                index.flip();
+                writeFully(index);
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Header and index of an attenuation matrix file
+     */
+    static class Index {
+        final List<Integer> frequencies;
+        final long[] receivers;
+        // Block offsets, the last value is the end of the last block
+        final long[] offsets;
+
+        Index(List<Integer> frequencies, long[] receivers, long[] offsets) {
+            this.frequencies = frequencies;
+            this.receivers = receivers;
+            this.offsets = offsets;
+        }
+
+        static Index read(FileChannel channel) throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(Integer.BYTES * 3).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header, 0);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not an attenuation matrix file");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported attenuation matrix file version " + version);
+            }
+            int frequencyCount = header.getInt();
+            ByteBuffer frequencyBuffer = ByteBuffer.allocate(Integer.BYTES * frequencyCount).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, frequencyBuffer, header.capacity());
+            List<Integer> frequencies = new ArrayList<>(frequencyCount);
+            for (int i = 0; i < frequencyCount; i++) {
+                frequencies.add(frequencyBuffer.getInt());
+            }
+            ByteBuffer footer = ByteBuffer.allocate(FOOTER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, footer, channel.size() - FOOTER_SIZE);
+            long indexOffset = footer.getLong();
+            if (footer.getInt() != MAGIC) {
+                throw new IOException("Attenuation matrix file has not been closed properly");
+            }
+            ByteBuffer count = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, count, indexOffset);
+            long storedReceiverCount = count.getLong();
+            if (storedReceiverCount > Integer.MAX_VALUE / (Long.BYTES * 2)) {
+                throw new IOException("Too many receivers in attenuation matrix file " + storedReceiverCount);
+            }
+            int receiverCount = (int) storedReceiverCount;
+            ByteBuffer indexBuffer = ByteBuffer.allocate(receiverCount * Long.BYTES * 2).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, indexBuffer, indexOffset + Long.BYTES);
+            long[] receivers = new long[receiverCount];
+            long[] offsets = new long[receiverCount + 1];
+            for (int i = 0; i < receiverCount; i++) {
+                receivers[i] = indexBuffer.getLong();
+                offsets[i] = indexBuffer.getLong();
+            }
+            offsets[receiverCount] = indexOffset;
+            return new Index(Collections.unmodifiableList(frequencies), receivers, offsets);
+        }
+    }
+
+    /**
+     * Positional read, can be called by multiple threads on the same channel
+     */
+    static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of attenuation matrix file");
+            }
+            position += read;
+        }
+        buffer.flip();
+    }
+}
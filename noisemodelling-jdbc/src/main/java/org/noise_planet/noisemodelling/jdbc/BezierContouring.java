@@ -34,6 +34,10 @@ import org.noise_planet.noisemodelling.pathfinder.ComputeRays;
 import java.sql.*;
 import java.text.DecimalFormat;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * Create isosurfaces
@@ -51,6 +55,8 @@ public class BezierContouring {
     double smoothCoefficient = 1.0;
     double deltaPoints = 0.5; // minimal distance between bezier points
     double epsilon = 0.05;
+    int threadCount = 1;
+    boolean loadPointsInMemory = false;
 
     int srid;
     public static final List<Double> NF31_133_ISO = Collections.unmodifiableList(Arrays.asList(35.0,40.0,45.0,50.0,55.0,60.0,65.0,70.0,75.0,80.0,200.0));
@@ -109,6 +115,31 @@ public class BezierContouring {
         return epsilon;
     }
 
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * @param threadCount If superior than 1, cells and iso levels within a cell are merged and smoothed by a pool of
+     *                    threadCount threads while the calling thread reads the triangles and inserts the polygons
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    public boolean isLoadPointsInMemory() {
+        return loadPointsInMemory;
+    }
+
+    /**
+     * @param loadPointsInMemory If true the positions and levels of the point table are loaded in memory then the
+     *                           triangle table is read once, without joining the point table for each triangle.
+     *                           Require 20 bytes per point (plus hash table overhead).
+     */
+    public void setLoadPointsInMemory(boolean loadPointsInMemory) {
+        this.loadPointsInMemory = loadPointsInMemory;
+    }
+
     public String getPointTableField() {
         return pointTableField;
     }
@@ -337,98 +368,173 @@ public class BezierContouring {
         }
     }
 
+    private PreparedStatement prepareInsert(Connection connection) throws SQLException {
+        return connection.prepareStatement("INSERT INTO " + TableLocation.parse(outputTable)
+                + "(cell_id, the_geom, ISOLVL, ISOLABEL) VALUES (?, ?, ?, ?);");
+    }
+
+    /**
+     * Run the tasks, in parallel if called from a ForkJoinPool thread
+     * @param tasks Tasks to run
+     * @param parallel If true fork the tasks
+     * @return Results in the order of tasks
+     */
+    private static <T> List<T> invokeAll(List<Callable<T>> tasks, boolean parallel) {
+        List<T> results = new ArrayList<>(tasks.size());
+        if(parallel) {
+            List<ForkJoinTask<T>> forkJoinTasks = new ArrayList<>(tasks.size());
+            for(Callable<T> task : tasks) {
+                forkJoinTasks.add(ForkJoinTask.adapt(task));
+            }
+            for(ForkJoinTask<T> task : ForkJoinTask.invokeAll(forkJoinTasks)) {
+                results.add(task.join());
+            }
+        } else {
+            for(Callable<T> task : tasks) {
+                try {
+                    results.add(task.call());
+                } catch (RuntimeException ex) {
+                    throw ex;
+                } catch (Exception ex) {
+                    throw new IllegalStateException(ex);
+                }
+            }
+        }
+        return results;
+    }
+
     /**
      * Merge polygons of the same iso levels then apply bezier filtering on outer and inner rings.
-     * Finally insert those polygons into the output table
-     * @param connection jdbc connection (h2gis or postgis)
-     * @param cellId area id (aggregate polygons by large area in order to avoid memory overloading)
-     * @param polys Polygons by isolevel
+     * @param polys Triangles by isolevel
+     * @param parallel If true iso levels are merged and smoothed by the ForkJoinPool of the calling thread
+     * @return Polygons by isolevel, in the iteration order of polys
      */
-    void processCell(Connection connection, int cellId, Map<Short, ArrayList<Geometry>> polys) throws SQLException {
-        // First step
+    Map<Short, List<Polygon>> mergeCell(Map<Short, ArrayList<Geometry>> polys, boolean parallel) {
+        final GeometryFactory factory = new GeometryFactory(new PrecisionModel(), srid);
+        // Merge triangles
+        List<Callable<Geometry>> unionTasks = new ArrayList<>(polys.size());
+        for (final ArrayList<Geometry> triangles : polys.values()) {
+            unionTasks.add(() -> new CascadedPolygonUnion(triangles).union());
+        }
+        List<Geometry> mergedTriangles = invokeAll(unionTasks, parallel);
+        Map<Short, List<Polygon>> result = new LinkedHashMap<>(polys.size());
+        if(!smooth) {
+            int idLevel = 0;
+            for (Short isoLevel : polys.keySet()) {
+                ArrayList<Polygon> polygons = new ArrayList<>();
+                explode(mergedTriangles.get(idLevel++), polygons);
+                result.put(isoLevel, polygons);
+            }
+            return result;
+        }
         // Smoothing of polygons
-        GeometryFactory factory = new GeometryFactory(new PrecisionModel(), srid);
-        if(smooth) {
-            Quadtree segmentTree = new Quadtree();
-            // Merge triangles and create an index of all segments
-            for (Map.Entry<Short, ArrayList<Geometry>> entry : polys.entrySet()) {
-                // Merge triangles
-                CascadedPolygonUnion union = new CascadedPolygonUnion(entry.getValue());
-                Geometry mergeTriangles = union.union();
+        // Create an index of all segments, the same segment shared by two iso levels share the control points
+        final Quadtree segmentTree = new Quadtree();
+        for (Geometry mergeTriangles : mergedTriangles) {
+            ArrayList<Polygon> polygons = new ArrayList<>();
+            explode(mergeTriangles, polygons);
+            for(Polygon polygon : polygons) {
+                Coordinate[] extRing = polygon.getExteriorRing().getCoordinates();
+                computeBezierControlPoints(extRing, smoothCoefficient, segmentTree);
+                for(int idHole = 0; idHole < polygon.getNumInteriorRing(); idHole++) {
+                    computeBezierControlPoints(polygon.getInteriorRingN(idHole).getCoordinates(), smoothCoefficient, segmentTree);
+                }
+            }
+        }
+        // Using precomputed (shared) Bezier control points smooth polygons
+        List<Callable<List<Polygon>>> smoothTasks = new ArrayList<>(polys.size());
+        for (final Geometry mergeTriangles : mergedTriangles) {
+            smoothTasks.add(() -> {
                 ArrayList<Polygon> polygons = new ArrayList<>();
                 explode(mergeTriangles, polygons);
+                List<Polygon> newPolygons = new ArrayList<>(polygons.size());
                 for(Polygon polygon : polygons) {
-                    Coordinate[] extRing = polygon.getExteriorRing().getCoordinates();
-                    computeBezierControlPoints(extRing, smoothCoefficient, segmentTree);
+                    Coordinate[] extRing = generateBezierCurves(polygon.getExteriorRing().getCoordinates(), segmentTree, deltaPoints);
                     LinearRing[] holes = new LinearRing[polygon.getNumInteriorRing()];
                     for(int idHole = 0; idHole < holes.length; idHole++) {
-                        computeBezierControlPoints(polygon.getInteriorRingN(idHole).getCoordinates(), smoothCoefficient, segmentTree);
+                        Coordinate[] hole = generateBezierCurves(polygon.getInteriorRingN(idHole).getCoordinates(), segmentTree, deltaPoints);
+                        holes[idHole] = factory.createLinearRing(hole);
                     }
-                }
-                // Replace triangles by polygons
-                entry.getValue().clear();
-                entry.getValue().add(mergeTriangles);
-            }
-            // Using precomputed (shared) Bezier control points smooth polygons
-            for (Map.Entry<Short, ArrayList<Geometry>> entry : polys.entrySet()) {
-                ArrayList<Geometry> newPolygons = new ArrayList<>();
-                if(entry.getValue().size() == 1) {
-                    ArrayList<Polygon> polygons = new ArrayList<>();
-                    explode(entry.getValue().get(0), polygons);
-                    for(Polygon polygon : polygons) {
-                        Coordinate[] extRing = generateBezierCurves(polygon.getExteriorRing().getCoordinates(), segmentTree, deltaPoints);
-                        LinearRing[] holes = new LinearRing[polygon.getNumInteriorRing()];
-                        for(int idHole = 0; idHole < holes.length; idHole++) {
-                            Coordinate[] hole = generateBezierCurves(polygon.getInteriorRingN(idHole).getCoordinates(), segmentTree, deltaPoints);
-                            holes[idHole] = factory.createLinearRing(hole);
-                        }
-                        polygon = factory.createPolygon(factory.createLinearRing(extRing), holes);
-                        TopologyPreservingSimplifier simplifier = new TopologyPreservingSimplifier(polygon);
-                        simplifier.setDistanceTolerance(epsilon);
-                        Geometry res = simplifier.getResultGeometry();
-                        if(res instanceof Polygon) {
-                            polygon = (Polygon) res;
-                        }
-                        newPolygons.add(polygon);
+                    polygon = factory.createPolygon(factory.createLinearRing(extRing), holes);
+                    TopologyPreservingSimplifier simplifier = new TopologyPreservingSimplifier(polygon);
+                    simplifier.setDistanceTolerance(epsilon);
+                    Geometry res = simplifier.getResultGeometry();
+                    if(res instanceof Polygon) {
+                        polygon = (Polygon) res;
                     }
-                    entry.getValue().clear();
-                    entry.getValue().addAll(newPolygons);
+                    newPolygons.add(polygon);
                 }
-            }
+                return newPolygons;
+            });
         }
-        // Second step insertion
-        int batchSize = 0;
-        try(PreparedStatement ps = connection.prepareStatement("INSERT INTO " + TableLocation.parse(outputTable)
-                + "(cell_id, the_geom, ISOLVL, ISOLABEL) VALUES (?, ?, ?, ?);")) {
-            for (Map.Entry<Short, ArrayList<Geometry>> entry : polys.entrySet()) {
-                ArrayList<Polygon> polygons = new ArrayList<>();
-                if(!smooth) {
-                    // Merge triangles
-                    CascadedPolygonUnion union = new CascadedPolygonUnion(entry.getValue());
-                    Geometry mergeTriangles = union.union();
-                    explode(mergeTriangles, polygons);
-                } else {
-                    explode(factory.createGeometryCollection(entry.getValue().toArray(new Geometry[0])), polygons);
-                }
-                for(Polygon polygon : polygons) {
-                    int parameterIndex = 1;
-                    ps.setInt(parameterIndex++, cellId);
-                    ps.setObject(parameterIndex++, polygon);
-                    ps.setInt(parameterIndex++, entry.getKey());
-                    ps.setString(parameterIndex++, isoLabels.get(entry.getKey()));
-                    ps.addBatch();
-                    batchSize++;
-                    if (batchSize >= BATCH_MAX_SIZE) {
-                        ps.executeBatch();
-                        ps.clearBatch();
-                        batchSize = 0;
-                    }
+        List<List<Polygon>> smoothPolygons = invokeAll(smoothTasks, parallel);
+        int idLevel = 0;
+        for (Short isoLevel : polys.keySet()) {
+            result.put(isoLevel, smoothPolygons.get(idLevel++));
+        }
+        return result;
+    }
+
+    /**
+     * Add the polygons of a cell to the insert batch
+     * @param ps Insert statement, see prepareInsert
+     * @param cellId area id
+     * @param polygons Polygons by isolevel
+     * @param batchSize Number of pending rows in the batch
+     * @return Number of pending rows in the batch
+     */
+    private int insertCell(PreparedStatement ps, int cellId, Map<Short, List<Polygon>> polygons, int batchSize) throws SQLException {
+        for (Map.Entry<Short, List<Polygon>> entry : polygons.entrySet()) {
+            for(Polygon polygon : entry.getValue()) {
+                int parameterIndex = 1;
+                ps.setInt(parameterIndex++, cellId);
+                ps.setObject(parameterIndex++, polygon);
+                ps.setInt(parameterIndex++, entry.getKey());
+                ps.setString(parameterIndex++, isoLabels.get(entry.getKey()));
+                ps.addBatch();
+                batchSize++;
+                if (batchSize >= BATCH_MAX_SIZE) {
+                    ps.executeBatch();
+                    ps.clearBatch();
+                    batchSize = 0;
                 }
             }
-            if (batchSize > 0) {
-                ps.executeBatch();
+        }
+        return batchSize;
+    }
+
+    /**
+     * Merged polygons of a cell
+     */
+    private static final class CellPolygons {
+        final int cellId;
+        final Map<Short, List<Polygon>> polygons;
+
+        CellPolygons(int cellId, Map<Short, List<Polygon>> polygons) {
+            this.cellId = cellId;
+            this.polygons = polygons;
+        }
+    }
+
+    /**
+     * Insert the merged polygons of the first pending cells, in the reading order of the cells
+     * @param ps Insert statement
+     * @param pendingCells Cells being processed by the pool
+     * @param maximumPendingCells Wait for the first cells until there is no more than this number of pending cells
+     * @param batchSize Number of pending rows in the batch
+     * @return Number of pending rows in the batch
+     */
+    private int insertPendingCells(PreparedStatement ps, Deque<ForkJoinTask<CellPolygons>> pendingCells,
+                                   int maximumPendingCells, int batchSize) throws SQLException {
+        while(!pendingCells.isEmpty() && (pendingCells.size() > maximumPendingCells || pendingCells.peekFirst().isDone())) {
+            try {
+                CellPolygons cell = pendingCells.pollFirst().get();
+                batchSize = insertCell(ps, cell.cellId, cell.polygons, batchSize);
+            } catch (InterruptedException | ExecutionException ex) {
+                throw new SQLException(ex);
             }
         }
+        return batchSize;
     }
 
     public void createTable(Connection connection) throws SQLException {
@@ -438,90 +544,282 @@ public class BezierContouring {
             throw new SQLException(pointTable+" does not contain a primary key");
         }
         String pkField = fields.get(pk - 1);
-        GeometryFactory geometryFactory = new GeometryFactory(new PrecisionModel(), srid);
-        Map<Short, ArrayList<Geometry>> polyMap = new HashMap<>();
-        int lastCellId = -1;
         try(Statement st = connection.createStatement()) {
             st.execute("DROP TABLE IF EXISTS " + TableLocation.parse(outputTable));
             st.execute("CREATE TABLE " + TableLocation.parse(outputTable) + "(PK SERIAL, CELL_ID INTEGER, THE_GEOM GEOMETRY, ISOLVL INTEGER, ISOLABEL VARCHAR);");
-            String query = "SELECT CELL_ID, ST_X(p1.the_geom) xa,ST_Y(p1.the_geom) ya,ST_X(p2.the_geom) xb,ST_Y(p2.the_geom) yb,ST_X(p3.the_geom) xc,ST_Y(p3.the_geom) yc, p1."+pointTableField+" lvla, p2."+pointTableField+" lvlb, p3."+pointTableField+" lvlc FROM "+triangleTable+" t, "+pointTable+" p1,"+pointTable+" p2,"+pointTable+" p3 WHERE t.PK_1 = p1."+pkField+" and t.PK_2 = p2."+pkField+" AND t.PK_3 = p3."+pkField+" order by cell_id;";
-            try(ResultSet rs = st.executeQuery(query)) {
-                // Cache columns index
-                int xa = 0, xb = 0, xc = 0, ya = 0, yb = 0, yc = 0, lvla = 0, lvlb = 0, lvlc = 0, cell_id = 0;
-                ResultSetMetaData resultSetMetaData = rs.getMetaData();
-                for (int columnId = 1; columnId <= resultSetMetaData.getColumnCount(); columnId++) {
-                    switch (resultSetMetaData.getColumnLabel(columnId).toUpperCase()) {
-                        case "XA":
-                            xa = columnId;
-                            break;
-                        case "XB":
-                            xb = columnId;
-                            break;
-                        case "XC":
-                            xc = columnId;
-                            break;
-                        case "YA":
-                            ya = columnId;
-                            break;
-                        case "YB":
-                            yb = columnId;
-                            break;
-                        case "YC":
-                            yc = columnId;
-                            break;
-                        case "LVLA":
-                            lvla = columnId;
-                            break;
-                        case "LVLB":
-                            lvlb = columnId;
-                            break;
-                        case "LVLC":
-                            lvlc = columnId;
-                            break;
-                        case "CELL_ID":
-                            cell_id = columnId;
-                            break;
-                    }
+            try(CellWriter cellWriter = new CellWriter(connection)) {
+                if(loadPointsInMemory) {
+                    processTrianglesInMemory(st, pkField, cellWriter);
+                } else {
+                    processTrianglesJoin(st, pkField, cellWriter);
                 }
-                if (xa == 0 || xb == 0 || xc == 0 || ya == 0 || yb == 0 || yc == 0 || lvla == 0 || lvlb == 0 ||
-                        lvlc == 0 || cell_id == 0) {
-                    throw new SQLException("Missing field in input tables");
+                cellWriter.finish();
+            }
+        }
+        connection.commit();
+    }
+
+    /**
+     * Fetch the triangles vertices positions and levels by joining the point table
+     */
+    private void processTrianglesJoin(Statement st, String pkField, CellWriter cellWriter) throws SQLException {
+        String query = "SELECT CELL_ID, ST_X(p1.the_geom) xa,ST_Y(p1.the_geom) ya,ST_X(p2.the_geom) xb,ST_Y(p2.the_geom) yb,ST_X(p3.the_geom) xc,ST_Y(p3.the_geom) yc, p1."+pointTableField+" lvla, p2."+pointTableField+" lvlb, p3."+pointTableField+" lvlc FROM "+triangleTable+" t, "+pointTable+" p1,"+pointTable+" p2,"+pointTable+" p3 WHERE t.PK_1 = p1."+pkField+" and t.PK_2 = p2."+pkField+" AND t.PK_3 = p3."+pkField+" order by cell_id;";
+        try(ResultSet rs = st.executeQuery(query)) {
+            // Cache columns index
+            int xa = 0, xb = 0, xc = 0, ya = 0, yb = 0, yc = 0, lvla = 0, lvlb = 0, lvlc = 0, cell_id = 0;
+            ResultSetMetaData resultSetMetaData = rs.getMetaData();
+            for (int columnId = 1; columnId <= resultSetMetaData.getColumnCount(); columnId++) {
+                switch (resultSetMetaData.getColumnLabel(columnId).toUpperCase()) {
+                    case "XA":
+                        xa = columnId;
+                        break;
+                    case "XB":
+                        xb = columnId;
+                        break;
+                    case "XC":
+                        xc = columnId;
+                        break;
+                    case "YA":
+                        ya = columnId;
+                        break;
+                    case "YB":
+                        yb = columnId;
+                        break;
+                    case "YC":
+                        yc = columnId;
+                        break;
+                    case "LVLA":
+                        lvla = columnId;
+                        break;
+                    case "LVLB":
+                        lvlb = columnId;
+                        break;
+                    case "LVLC":
+                        lvlc = columnId;
+                        break;
+                    case "CELL_ID":
+                        cell_id = columnId;
+                        break;
                 }
-                while(rs.next()) {
-                    int cellId = rs.getInt(cell_id);
-                    // Process polygons of last cell
-                    if(cellId != lastCellId && lastCellId != -1) {
-                        processCell(connection, cellId, polyMap);
-                        polyMap.clear();
-                    }
-                    lastCellId = cellId;
-                    // Split current triangle
-                    Coordinate a = new Coordinate(rs.getDouble(xa), rs.getDouble(ya));
-                    Coordinate b = new Coordinate(rs.getDouble(xb), rs.getDouble(yb));
-                    Coordinate c = new Coordinate(rs.getDouble(xc), rs.getDouble(yc));
-                    // Fetch data
-                    TriMarkers triMarkers = new TriMarkers(a, b, c, ComputeRays.dbaToW(rs.getDouble(lvla)),
-                            ComputeRays.dbaToW(rs.getDouble(lvlb)),
-                            ComputeRays.dbaToW(rs.getDouble(lvlc)));
-                    // Split triangle
-                    Map<Short, Deque<TriMarkers>> res = Contouring.processTriangle(triMarkers, isoLevels);
-                    for(Map.Entry<Short, Deque<TriMarkers>> entry : res.entrySet()) {
-                        if(!polyMap.containsKey(entry.getKey())) {
-                            polyMap.put(entry.getKey(), new ArrayList<>());
-                        }
-                        ArrayList<Geometry> polygonsArray = polyMap.get(entry.getKey());
-                        for(TriMarkers tri : entry.getValue()) {
-                            Polygon poly = geometryFactory.createPolygon(new Coordinate[]{tri.p0, tri.p1, tri.p2, tri.p0});
-                            polygonsArray.add(poly);
-                        }
+            }
+            if (xa == 0 || xb == 0 || xc == 0 || ya == 0 || yb == 0 || yc == 0 || lvla == 0 || lvlb == 0 ||
+                    lvlc == 0 || cell_id == 0) {
+                throw new SQLException("Missing field in input tables");
+            }
+            while(rs.next()) {
+                // Split current triangle
+                Coordinate a = new Coordinate(rs.getDouble(xa), rs.getDouble(ya));
+                Coordinate b = new Coordinate(rs.getDouble(xb), rs.getDouble(yb));
+                Coordinate c = new Coordinate(rs.getDouble(xc), rs.getDouble(yc));
+                // Fetch data
+                TriMarkers triMarkers = new TriMarkers(a, b, c, ComputeRays.dbaToW(rs.getDouble(lvla)),
+                        ComputeRays.dbaToW(rs.getDouble(lvlb)),
+                        ComputeRays.dbaToW(rs.getDouble(lvlc)));
+                cellWriter.addTriangle(rs.getInt(cell_id), triMarkers);
+            }
+        }
+    }
+
+    /**
+     * Load the point table in memory then read the triangle table once
+     */
+    private void processTrianglesInMemory(Statement st, String pkField, CellWriter cellWriter) throws SQLException {
+        PointLevelMap points = new PointLevelMap(1024);
+        try(ResultSet rs = st.executeQuery("SELECT " + pkField + ", ST_X(THE_GEOM), ST_Y(THE_GEOM), " +
+                pointTableField + " FROM " + pointTable)) {
+            while (rs.next()) {
+                points.put(rs.getLong(1), rs.getDouble(2), rs.getDouble(3), rs.getFloat(4));
+            }
+        }
+        int[] vertices = new int[3];
+        try(ResultSet rs = st.executeQuery("SELECT CELL_ID, PK_1, PK_2, PK_3 FROM " + triangleTable +
+                " ORDER BY CELL_ID")) {
+            while (rs.next()) {
+                for(int idVertex = 0; idVertex < vertices.length; idVertex++) {
+                    long pointPk = rs.getLong(idVertex + 2);
+                    vertices[idVertex] = points.indexOf(pointPk);
+                    if(vertices[idVertex] < 0) {
+                        throw new SQLException("Point " + pointPk + " referenced by " + triangleTable +
+                                " not found in " + pointTable);
                     }
                 }
+                TriMarkers triMarkers = new TriMarkers(points.getCoordinate(vertices[0]),
+                        points.getCoordinate(vertices[1]), points.getCoordinate(vertices[2]),
+                        ComputeRays.dbaToW(points.getLevel(vertices[0])),
+                        ComputeRays.dbaToW(points.getLevel(vertices[1])),
+                        ComputeRays.dbaToW(points.getLevel(vertices[2])));
+                cellWriter.addTriangle(rs.getInt(1), triMarkers);
+            }
+        }
+    }
+
+    /**
+     * Split the triangles by iso levels, merge the triangles of each cell and insert the polygons.
+     * Triangles must be provided ordered by cell.
+     */
+    private final class CellWriter implements AutoCloseable {
+        final GeometryFactory geometryFactory = new GeometryFactory(new PrecisionModel(), srid);
+        // Cells are merged by the pool while the calling thread reads the next cells and inserts the merged polygons
+        final ForkJoinPool pool = threadCount > 1 ? new ForkJoinPool(threadCount) : null;
+        // Limit the number of cells in memory
+        final int maximumPendingCells = threadCount * 2;
+        final Deque<ForkJoinTask<CellPolygons>> pendingCells = new ArrayDeque<>();
+        final PreparedStatement ps;
+        Map<Short, ArrayList<Geometry>> polyMap = new HashMap<>();
+        int lastCellId = -1;
+        int batchSize = 0;
+
+        CellWriter(Connection connection) throws SQLException {
+            ps = prepareInsert(connection);
+        }
+
+        void addTriangle(int cellId, TriMarkers triMarkers) throws SQLException {
+            // Process polygons of last cell
+            if(cellId != lastCellId && lastCellId != -1) {
+                submitCell();
+            }
+            lastCellId = cellId;
+            // Split triangle
+            Map<Short, Deque<TriMarkers>> res = Contouring.processTriangle(triMarkers, isoLevels);
+            for(Map.Entry<Short, Deque<TriMarkers>> entry : res.entrySet()) {
+                if(!polyMap.containsKey(entry.getKey())) {
+                    polyMap.put(entry.getKey(), new ArrayList<>());
+                }
+                ArrayList<Geometry> polygonsArray = polyMap.get(entry.getKey());
+                for(TriMarkers tri : entry.getValue()) {
+                    Polygon poly = geometryFactory.createPolygon(new Coordinate[]{tri.p0, tri.p1, tri.p2, tri.p0});
+                    polygonsArray.add(poly);
+                }
+            }
+        }
+
+        /**
+         * Merge the triangles of the last cell, using the pool if not null, then insert the polygons of the processed
+         * cells
+         */
+        private void submitCell() throws SQLException {
+            if(pool == null) {
+                batchSize = insertCell(ps, lastCellId, mergeCell(polyMap, false), batchSize);
+            } else {
+                final int cellId = lastCellId;
+                final Map<Short, ArrayList<Geometry>> cellPolygons = polyMap;
+                pendingCells.addLast(pool.submit(() -> new CellPolygons(cellId, mergeCell(cellPolygons, true))));
+                batchSize = insertPendingCells(ps, pendingCells, maximumPendingCells, batchSize);
             }
+            polyMap = new HashMap<>();
+        }
+
+        /**
+         * Process the last cell and wait for the insertion of all cells
+         */
+        void finish() throws SQLException {
             if(!polyMap.isEmpty()) {
-                processCell(connection, lastCellId, polyMap);
+                submitCell();
+            }
+            batchSize = insertPendingCells(ps, pendingCells, 0, batchSize);
+            if (batchSize > 0) {
+                ps.executeBatch();
+                batchSize = 0;
             }
         }
-        connection.commit();
+
+        @Override
+        public void close() throws SQLException {
+            if(pool != null) {
+                pool.shutdownNow();
+            }
+            ps.close();
+        }
+    }
+
+    /**
+     * Position and level of points, by primary key. Open addressing hash table with primitive arrays.
+     */
+    static final class PointLevelMap {
+        // Hash table of indexes in the points arrays, -1 if empty
+        private int[] slots;
+        private long[] keys;
+        private double[] coordinates;
+        private float[] levels;
+        private int size = 0;
+
+        PointLevelMap(int capacity) {
+            capacity = Math.max(capacity, 16);
+            keys = new long[capacity];
+            coordinates = new double[capacity * 2];
+            levels = new float[capacity];
+            slots = new int[Integer.highestOneBit(capacity - 1) << 2];
+            Arrays.fill(slots, -1);
+        }
+
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int)(h ^ (h >>> 32));
+        }
+
+        /**
+         * @param key Primary key
+         * @return Slot of the key in the hash table, or the empty slot where the key would be inserted
+         */
+        private int findSlot(long key) {
+            int mask = slots.length - 1;
+            int slot = hash(key) & mask;
+            while(slots[slot] != -1 && keys[slots[slot]] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        /**
+         * Add a point, replace the point with the same key if any
+         */
+        void put(long key, double x, double y, float level) {
+            int slot = findSlot(key);
+            int index = slots[slot];
+            if(index == -1) {
+                if(size == keys.length) {
+                    int capacity = keys.length * 2;
+                    keys = Arrays.copyOf(keys, capacity);
+                    coordinates = Arrays.copyOf(coordinates, capacity * 2);
+                    levels = Arrays.copyOf(levels, capacity);
+                }
+                index = size++;
+                keys[index] = key;
+                if(size * 2 > slots.length) {
+                    // Keep load factor under 0.5
+                    slots = new int[slots.length * 2];
+                    Arrays.fill(slots, -1);
+                    for(int i = 0; i < size; i++) {
+                        slots[findSlot(keys[i])] = i;
+                    }
+                } else {
+                    slots[slot] = index;
+                }
+            }
+            coordinates[index * 2] = x;
+            coordinates[index * 2 + 1] = y;
+            levels[index] = level;
+        }
+
+        /**
+         * @param key Primary key
+         * @return Point index or -1 if not found
+         */
+        int indexOf(long key) {
+            return slots[findSlot(key)];
+        }
+
+        Coordinate getCoordinate(int index) {
+            return new Coordinate(coordinates[index * 2], coordinates[index * 2 + 1]);
+        }
+
+        float getLevel(int index) {
+            return levels[index];
+        }
+
+        int size() {
+            return size;
+        }
     }
 
     static class Segment {
@@ -7,7 +7,9 @@ import org.h2gis.utilities.SpatialResultSet;
 import org.h2gis.utilities.TableLocation;
 import org.locationtech.jts.geom.*;
 import org.locationtech.jts.io.WKTWriter;
+import org.noise_planet.noisemodelling.pathfinder.FastObstructionTest;
 import org.noise_planet.noisemodelling.pathfinder.GeoWithSoilType;
+import org.noise_planet.noisemodelling.pathfinder.GroundFactorRaster;
 import org.noise_planet.noisemodelling.pathfinder.MeshBuilder;
 import org.noise_planet.noisemodelling.pathfinder.PropagationProcessData;
 import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
@@ -48,6 +50,7 @@ public abstract class JdbcNoiseMap {
     protected double maximumReflectionDistance = 100;
     // Soil areas are splited by the provided size in order to reduce the propagation time
     protected double groundSurfaceSplitSideLength = 200;
+    protected double groundFactorRasterCellSize = 0;
     protected int soundReflectionOrder = 2;
     public boolean verbose = true;
     protected boolean computeHorizontalDiffraction = true;
@@ -56,6 +59,8 @@ public abstract class JdbcNoiseMap {
     protected double wallAbsorption = 100000;
     /** maximum dB Error, stop calculation if the sum of further sources contributions are smaller than this value */
     public double maximumError = Double.NEGATIVE_INFINITY;
+    protected boolean cacheLineSourceDiscretization = false;
+    protected FastObstructionTest.SpatialIndexType spatialIndexType = FastObstructionTest.SpatialIndexType.STRTREE;
     protected String heightField = "";
     protected GeometryFactory geometryFactory;
     protected int parallelComputationCount = 0;
@@ -124,6 +129,18 @@ public abstract class JdbcNoiseMap {
         this.groundSurfaceSplitSideLength = groundSurfaceSplitSideLength;
     }
 
+    public double getGroundFactorRasterCellSize() {
+        return groundFactorRasterCellSize;
+    }
+
+    /**
+     * @param groundFactorRasterCellSize If superior than 0, the soil table is rasterised with this cell size in
+     *                                   meters instead of being split into groundSurfaceSplitSideLength polygons
+     */
+    public void setGroundFactorRasterCellSize(double groundFactorRasterCellSize) {
+        this.groundFactorRasterCellSize = groundFactorRasterCellSize;
+    }
+
     protected void fetchCellDem(Connection connection, Envelope fetchEnvelope, MeshBuilder mesh) throws SQLException {
         if(!demTable.isEmpty()) {
             List<String> geomFields = SFSUtilities.getGeometryFields(connection,
@@ -149,6 +166,38 @@ public abstract class JdbcNoiseMap {
         }
     }
 
+    /**
+     * Rasterise the soil areas located in the envelope
+     * @param connection Active connection
+     * @param fetchEnvelope Extent of the raster
+     * @return Raster of G, null if there is no soil table
+     * @see #setGroundFactorRasterCellSize(double)
+     */
+    protected GroundFactorRaster fetchCellSoilRaster(Connection connection, Envelope fetchEnvelope)
+            throws SQLException {
+        if(soilTableName.isEmpty()) {
+            return null;
+        }
+        GroundFactorRaster groundFactorRaster = new GroundFactorRaster(fetchEnvelope, groundFactorRasterCellSize);
+        String soilGeomName = SFSUtilities.getGeometryFields(connection,
+                TableLocation.parse(soilTableName)).get(0);
+        try (PreparedStatement st = connection.prepareStatement(
+                "SELECT " + TableLocation.quoteIdentifier(soilGeomName) + ", G FROM " +
+                        soilTableName + " WHERE " +
+                        TableLocation.quoteIdentifier(soilGeomName) + " && ?::geometry")) {
+            st.setObject(1, geometryFactory.toGeometry(fetchEnvelope));
+            try (SpatialResultSet rs = st.executeQuery().unwrap(SpatialResultSet.class)) {
+                while (rs.next()) {
+                    Geometry poly = rs.getGeometry();
+                    if(poly != null) {
+                        groundFactorRaster.addSoil(poly, rs.getDouble("G"));
+                    }
+                }
+            }
+        }
+        return groundFactorRaster;
+    }
+
     protected void fetchCellSoilAreas(Connection connection, Envelope fetchEnvelope, List<GeoWithSoilType> geoWithSoil)
             throws SQLException {
         if(!soilTableName.isEmpty()){
@@ -535,6 +584,36 @@ public abstract class JdbcNoiseMap {
         this.maximumError = maximumError;
     }
 
+    /**
+     * @return True if line sources are discretized once per segment size instead of once per receiver
+     */
+    public boolean isCacheLineSourceDiscretization() {
+        return cacheLineSourceDiscretization;
+    }
+
+    /**
+     * @param cacheLineSourceDiscretization True to discretize line sources once per segment size and share the points
+     *                                      between receivers, the segment size is rounded down to a power of two meters
+     */
+    public void setCacheLineSourceDiscretization(boolean cacheLineSourceDiscretization) {
+        this.cacheLineSourceDiscretization = cacheLineSourceDiscretization;
+    }
+
+    /**
+     * @return Spatial index of buildings and triangles of the cells
+     */
+    public FastObstructionTest.SpatialIndexType getSpatialIndexType() {
+        return spatialIndexType;
+    }
+
+    /**
+     * @param spatialIndexType Spatial index of buildings and triangles of the cells, default to
+     *                         {@link FastObstructionTest.SpatialIndexType#STRTREE}
+     */
+    public void setSpatialIndexType(FastObstructionTest.SpatialIndexType spatialIndexType) {
+        this.spatialIndexType = spatialIndexType;
+    }
+
     /**
      * @return Reflection and diffraction maximum search distance, default to 400m.
      */
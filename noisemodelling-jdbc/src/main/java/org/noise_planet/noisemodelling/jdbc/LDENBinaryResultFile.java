@@ -0,0 +1,401 @@
+/**
+ * NoiseModelling is a free and open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by Université Gustave Eiffel and CNRS
+ * <http://noise-planet.org/noisemodelling.html>
+ * as part of:
+ * the Eval-PDU project (ANR-08-VILL-0005) 2008-2011, funded by the Agence Nationale de la Recherche (French)
+ * the CENSE project (ANR-16-CE22-0012) 2017-2021, funded by the Agence Nationale de la Recherche (French)
+ * the Nature4cities (N4C) project, funded by European Union’s Horizon 2020 research and innovation programme under grant agreement No 730468
+ *
+ * Noisemap is distributed under GPL 3 license.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488) and Ifsttar
+ * Copyright (C) 2013-2019 Ifsttar and CNRS
+ * Copyright (C) 2020 Université Gustave Eiffel and CNRS
+ *
+ * @Author Pierre Aumond, Université Gustave Eiffel
+ * @Author Nicolas Fortin, Université Gustave Eiffel
+ */
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.h2gis.utilities.JDBCUtilities;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compact binary storage of receiver levels, used instead of row by row table insertion.
+ * Little endian file layout:
+ * <ul>
+ *     <li>Header: int magic, int version, byte merged sources (1) or not (0), int frequency count n,
+ *     n int frequencies</li>
+ *     <li>Rows: long receiver identifier, long source identifier (only if sources are not merged), n float levels,
+ *     float LAEQ, float LEQ</li>
+ * </ul>
+ */
+public class LDENBinaryResultFile {
+    public static final String FILE_EXTENSION = ".bin";
+    static final int MAGIC = 0x4E4D4C52;
+    static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private LDENBinaryResultFile() {
+    }
+
+    /**
+     * @param directory Folder of result files
+     * @param tableName Result table name
+     * @return Binary file associated with the table
+     */
+    public static File getFile(File directory, String tableName) {
+        return new File(directory, tableName + FILE_EXTENSION);
+    }
+
+    /**
+     * Append rows into a new binary file
+     */
+    public static class Writer implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private final boolean mergeSources;
+        private final int frequencyCount;
+        private final int rowSize;
+        private long rowCount = 0;
+
+        /**
+         * @param file File to create or overwrite
+         * @param frequencies Frequency of each level
+         * @param mergeSources If false, the source identifier is stored in each row
+         * @throws IOException Unable to create the file
+         */
+        public Writer(File file, List<Integer> frequencies, boolean mergeSources) throws IOException {
+            this.mergeSources = mergeSources;
+            this.frequencyCount = frequencies.size();
+            this.rowSize = Long.BYTES * (mergeSources ? 1 : 2) + Float.BYTES * (frequencyCount + 2);
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            buffer = ByteBuffer.allocateDirect(Math.max(BUFFER_SIZE, rowSize + Integer.BYTES * (frequencyCount + 4)))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.put((byte) (mergeSources ? 1 : 0));
+            buffer.putInt(frequencyCount);
+            for (int frequency : frequencies) {
+                buffer.putInt(frequency);
+            }
+        }
+
+        /**
+         * @param receiverId Receiver identifier
+         * @param sourceId Source identifier, ignored if sources are merged
+         * @param levels Level for each frequency
+         * @param laeq A weighted global level
+         * @param leq Global level
+         * @throws IOException Unable to write in the file
+         */
+        public void write(long receiverId, long sourceId, double[] levels, double laeq, double leq) throws IOException {
+            if (levels.length != frequencyCount) {
+                throw new IllegalArgumentException("Expected " + frequencyCount + " levels, got " + levels.length);
+            }
+            if (buffer.remaining() < rowSize) {
+                flush();
+            }
+            buffer.putLong(receiverId);
+            if (!mergeSources) {
+                buffer.putLong(sourceId);
+            }
+            for (double level : levels) {
+                buffer.putFloat((float) level);
+            }
+            buffer.putFloat((float) laeq);
+            buffer.putFloat((float) leq);
+            rowCount++;
+        }
+
+        /**
+         * @return Number of written rows
+         */
+        public long getRowCount() {
+            return rowCount;
+        }
+
+        public void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Read rows of a binary file
+     */
+    public static class Reader implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private final boolean mergeSources;
+        private final List<Integer> frequencies;
+        private long receiverId;
+        private long sourceId = -1;
+        private final double[] levels;
+        private double laeq;
+        private double leq;
+
+        /**
+         * @param file File created by {@link Writer}
+         * @throws IOException Unable to read the file or unexpected file format
+         */
+        public Reader(File file) throws IOException {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.flip();
+            try {
+                if (!fill(Integer.BYTES * 3 + 1) || buffer.getInt() != MAGIC) {
+                    throw new IOException("Not a result file " + file);
+                }
+                int version = buffer.getInt();
+                if (version != VERSION) {
+                    throw new IOException("Unsupported result file version " + version);
+                }
+                mergeSources = buffer.get() != 0;
+                int frequencyCount = buffer.getInt();
+                if (!fill(Integer.BYTES * frequencyCount)) {
+                    throw new EOFException("Truncated header in " + file);
+                }
+                List<Integer> frequencyList = new ArrayList<>(frequencyCount);
+                for (int i = 0; i < frequencyCount; i++) {
+                    frequencyList.add(buffer.getInt());
+                }
+                frequencies = Collections.unmodifiableList(frequencyList);
+                levels = new double[frequencyCount];
+            } catch (IOException ex) {
+                channel.close();
+                throw ex;
+            }
+        }
+
+        private boolean fill(int length) throws IOException {
+            if (buffer.remaining() >= length) {
+                return true;
+            }
+            buffer.compact();
+            while (buffer.position() < length) {
+                if (channel.read(buffer) < 0) {
+                    break;
+                }
+            }
+            buffer.flip();
+            return buffer.remaining() >= length;
+        }
+
+        /**
+         * Move to the next row
+         * @return False if there is no more rows
+         * @throws IOException Unable to read the file
+         */
+        public boolean next() throws IOException {
+            int rowSize = Long.BYTES * (mergeSources ? 1 : 2) + Float.BYTES * (levels.length + 2);
+            if (!fill(rowSize)) {
+                if (buffer.hasRemaining()) {
+                    throw new EOFException("Truncated row");
+                }
+                return false;
+            }
+            receiverId = buffer.getLong();
+            if (!mergeSources) {
+                sourceId = buffer.getLong();
+            }
+            for (int i = 0; i < levels.length; i++) {
+                levels[i] = buffer.getFloat();
+            }
+            laeq = buffer.getFloat();
+            leq = buffer.getFloat();
+            return true;
+        }
+
+        public boolean isMergeSources() {
+            return mergeSources;
+        }
+
+        public List<Integer> getFrequencies() {
+            return frequencies;
+        }
+
+        public long getReceiverId() {
+            return receiverId;
+        }
+
+        /**
+         * @return Source identifier or -1 if sources are merged
+         */
+        public long getSourceId() {
+            return sourceId;
+        }
+
+        /**
+         * @return Levels of the current row, the array is reused by the next row
+         */
+        public double[] getLevels() {
+            return levels;
+        }
+
+        public double getLaeq() {
+            return laeq;
+        }
+
+        public double getLeq() {
+            return leq;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Create a table and copy the content of the binary file into it. The table structure is the same as the one
+     * created by {@link LDENPointNoiseMapFactory} in OUTPUT_MODE_TABLE mode.
+     * On H2 the rows are bulk loaded with CSVREAD from a temporary csv file written next to the binary file, so the
+     * database must be embedded or share the file system. Other databases use batched insert statements.
+     * @param connection Database connection (H2GIS or PostGIS)
+     * @param file File created by {@link Writer}
+     * @param tableName Table to create, dropped if exists
+     * @return Number of imported rows
+     * @throws SQLException Error while inserting rows
+     * @throws IOException Error while reading the file
+     */
+    public static long importTable(Connection connection, File file, String tableName) throws SQLException, IOException {
+        if (JDBCUtilities.isH2DataBase(connection.getMetaData())) {
+            return importTableCsvRead(connection, file, tableName);
+        }
+        long rowCount = 0;
+        try (Reader reader = new Reader(file)) {
+            createTable(connection, tableName, reader);
+            StringBuilder query = new StringBuilder("INSERT INTO ");
+            query.append(tableName);
+            query.append(" VALUES (?");
+            if (!reader.isMergeSources()) {
+                query.append(", ?");
+            }
+            for (int i = 0; i < reader.getFrequencies().size(); i++) {
+                query.append(", ?");
+            }
+            query.append(", ?, ?)");
+            try (PreparedStatement ps = connection.prepareStatement(query.toString())) {
+                int batchSize = 0;
+                while (reader.next()) {
+                    int parameterIndex = 1;
+                    ps.setLong(parameterIndex++, reader.getReceiverId());
+                    if (!reader.isMergeSources()) {
+                        ps.setLong(parameterIndex++, reader.getSourceId());
+                    }
+                    for (double level : reader.getLevels()) {
+                        ps.setDouble(parameterIndex++, level);
+                    }
+                    ps.setDouble(parameterIndex++, reader.getLaeq());
+                    ps.setDouble(parameterIndex, reader.getLeq());
+                    ps.addBatch();
+                    batchSize++;
+                    rowCount++;
+                    if (batchSize >= LDENPointNoiseMapFactory.BATCH_MAX_SIZE) {
+                        ps.executeBatch();
+                        ps.clearBatch();
+                        batchSize = 0;
+                    }
+                }
+                if (batchSize > 0) {
+                    ps.executeBatch();
+                }
+            }
+        }
+        return rowCount;
+    }
+
+    private static void createTable(Connection connection, String tableName, Reader reader) throws SQLException {
+        try (Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS " + tableName);
+            st.execute(LDENPointNoiseMapFactory.forgeCreateTable(tableName, reader.isMergeSources(),
+                    reader.getFrequencies()));
+        }
+    }
+
+    /**
+     * Convert the binary file into a csv file then load it with a single INSERT INTO SELECT FROM CSVREAD statement
+     */
+    private static long importTableCsvRead(Connection connection, File file, String tableName)
+            throws SQLException, IOException {
+        long rowCount = 0;
+        File csvFile = File.createTempFile(file.getName(), ".csv", file.getAbsoluteFile().getParentFile());
+        try {
+            try (Reader reader = new Reader(file);
+                 BufferedWriter writer = Files.newBufferedWriter(csvFile.toPath(), StandardCharsets.UTF_8)) {
+                createTable(connection, tableName, reader);
+                writer.write("IDRECEIVER");
+                if (!reader.isMergeSources()) {
+                    writer.write(",IDSOURCE");
+                }
+                for (int frequency : reader.getFrequencies()) {
+                    writer.write(",HZ");
+                    writer.write(Integer.toString(frequency));
+                }
+                writer.write(",LAEQ,LEQ\n");
+                while (reader.next()) {
+                    writer.write(Long.toString(reader.getReceiverId()));
+                    if (!reader.isMergeSources()) {
+                        writer.write(',');
+                        writer.write(Long.toString(reader.getSourceId()));
+                    }
+                    for (double level : reader.getLevels()) {
+                        writer.write(',');
+                        writer.write(Float.toString((float) level));
+                    }
+                    writer.write(',');
+                    writer.write(Float.toString((float) reader.getLaeq()));
+                    writer.write(',');
+                    writer.write(Float.toString((float) reader.getLeq()));
+                    writer.write('\n');
+                    rowCount++;
+                }
+            }
+            try (Statement st = connection.createStatement()) {
+                st.executeUpdate("INSERT INTO " + tableName + " SELECT * FROM CSVREAD('" +
+                        csvFile.getAbsolutePath().replace("'", "''") + "', NULL, 'charset=UTF-8')");
+            }
+        } finally {
+            if (!csvFile.delete()) {
+                csvFile.deleteOnExit();
+            }
+        }
+        return rowCount;
+    }
+}
@@ -6,14 +6,25 @@ import org.noise_planet.noisemodelling.pathfinder.PropagationPath;
 import org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation;
 import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LDENComputeRaysOut.class);
     LdenData ldenData;
     LDENPropagationProcessData ldenPropagationProcessData;
 
@@ -40,11 +51,13 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
 
         void processAndPushResult(long receiverPK, List<double[]> wjSources, ConcurrentLinkedDeque<VerticeSL> result) {
             double[] levels = new double[ldenComputeRaysOut.genericMeteoData.freq_lvl.size()];
+            double[] sourceLevel = ComputeRays.getScratchArray(0, levels.length);
             for (VerticeSL lvl : receiverAttenuationLevels) {
-                levels = ComputeRays.sumArray(levels,
-                        ComputeRays.dbaToW(ComputeRays.sumArray(ComputeRays.wToDba(wjSources.get((int) lvl.sourceId)), lvl.value)));
+                ComputeRays.wToDba(wjSources.get((int) lvl.sourceId), sourceLevel);
+                ComputeRays.sumArray(sourceLevel, lvl.value, sourceLevel);
+                ComputeRays.sumArray(levels, ComputeRays.dbaToW(sourceLevel, sourceLevel), levels);
             }
-            pushInStack(result, new VerticeSL(receiverPK, -1, ComputeRays.wToDba(levels)));
+            pushInStack(result, new VerticeSL(receiverPK, -1, ComputeRays.wToDba(levels, levels)));
         }
 
         /**
@@ -52,23 +65,26 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
          * @param data receiver noise level in dB
          */
         public void pushInStack(ConcurrentLinkedDeque<VerticeSL> stack, VerticeSL data) {
-            while(ldenComputeRaysOut.ldenData.queueSize.get() > ldenConfig.outputMaximumQueue) {
-                try {
-                    Thread.sleep(10);
-                } catch (InterruptedException ex) {
-                    ldenConfig.aborted = true;
-                    break;
-                }
-                if(ldenConfig.aborted) {
-                    if(multiThreadParent != null && this.multiThreadParent.inputData != null &&
-                            this.multiThreadParent.inputData.cellProg != null) {
-                        this.multiThreadParent.inputData.cellProg.cancel();
-                    }
-                    return;
-                }
+            if(!awaitStackCapacity()) {
+                return;
             }
             stack.add(data);
-            ldenComputeRaysOut.ldenData.queueSize.incrementAndGet();
+            ldenComputeRaysOut.ldenData.notifyPushed(1);
+        }
+
+        /**
+         * Wait until the writer consumed enough results
+         * @return False if the computation has been aborted
+         */
+        private boolean awaitStackCapacity() {
+            if(!ldenComputeRaysOut.ldenData.awaitCapacity(ldenConfig)) {
+                if(multiThreadParent != null && this.multiThreadParent.inputData != null &&
+                        this.multiThreadParent.inputData.cellProg != null) {
+                    this.multiThreadParent.inputData.cellProg.cancel();
+                }
+                return false;
+            }
+            return true;
         }
 
         /**
@@ -76,23 +92,39 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
          * @param data rays
          */
         public void pushInStack(ConcurrentLinkedDeque<PropagationPath> stack, Collection<PropagationPath> data) {
-            while(ldenComputeRaysOut.ldenData.queueSize.get() > ldenConfig.outputMaximumQueue) {
-                try {
-                    Thread.sleep(10);
-                } catch (InterruptedException ex) {
-                    ldenConfig.aborted = true;
-                    break;
+            if(!awaitStackCapacity()) {
+                return;
+            }
+            stack.addAll(data);
+            ldenComputeRaysOut.ldenData.notifyPushed(data.size());
+        }
+
+        /**
+         * Store the attenuation of each source for this receiver
+         * @param receiverPK Receiver identifier
+         * @param writer Attenuation matrix
+         */
+        void pushAttenuationMatrix(long receiverPK, AttenuationMatrixFile.Writer writer) {
+            Map<Long, double[]> attenuationPerSource = new HashMap<>();
+            for (VerticeSL lvl : receiverAttenuationLevels) {
+                long sourcePK = lvl.sourceId;
+                if(ldenComputeRaysOut.inputData != null && sourcePK < ldenComputeRaysOut.inputData.sourcesPk.size()) {
+                    sourcePK = ldenComputeRaysOut.inputData.sourcesPk.get((int) lvl.sourceId);
                 }
-                if(ldenConfig.aborted) {
-                    if(multiThreadParent != null && this.multiThreadParent.inputData != null &&
-                            this.multiThreadParent.inputData.cellProg != null) {
-                        this.multiThreadParent.inputData.cellProg.cancel();
-                    }
-                    return;
+                double[] merged = attenuationPerSource.get(sourcePK);
+                if (merged == null) {
+                    // Copy as attenuation levels are used later for the noise levels
+                    attenuationPerSource.put(sourcePK, lvl.value.clone());
+                } else {
+                    ComputeRays.sumDbArray(merged, lvl.value, merged);
                 }
             }
-            stack.addAll(data);
-            ldenComputeRaysOut.ldenData.queueSize.addAndGet(data.size());
+            try {
+                writer.writeReceiver(receiverPK, attenuationPerSource);
+            } catch (IOException ex) {
+                LOGGER.error("Unable to write attenuation matrix", ex);
+                ldenConfig.aborted = true;
+            }
         }
 
         @Override
@@ -108,16 +140,26 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
                     receiverPK = ldenComputeRaysOut.inputData.receiversPk.get((int)receiverId);
                 }
             }
+            AttenuationMatrixFile.Writer attenuationMatrixWriter = ldenComputeRaysOut.ldenData.attenuationMatrixWriter;
+            if(attenuationMatrixWriter != null) {
+                pushAttenuationMatrix(receiverPK, attenuationMatrixWriter);
+            }
             if(!ldenConfig.mergeSources) {
                 // Aggregate by source id
                 Map<Long, double[]> levelsPerSourceLines = new HashMap<>();
+                // Sources having a merged level owned by this map
+                Set<Long> mergedSources = new HashSet<>();
                 for (VerticeSL lvl : receiverAttenuationLevels) {
                     if (!levelsPerSourceLines.containsKey(lvl.sourceId)) {
                         levelsPerSourceLines.put(lvl.sourceId, lvl.value);
                     } else {
-                        // merge
-                        levelsPerSourceLines.put(lvl.sourceId, ComputeRays.sumDbArray(levelsPerSourceLines.get(lvl.sourceId),
-                                lvl.value));
+                        // merge, the first level is still referenced by the receiver levels so it is copied on first write
+                        double[] merged = levelsPerSourceLines.get(lvl.sourceId);
+                        if (mergedSources.add(lvl.sourceId)) {
+                            levelsPerSourceLines.put(lvl.sourceId, ComputeRays.sumDbArray(merged, lvl.value));
+                        } else {
+                            ComputeRays.sumDbArray(merged, lvl.value, merged);
+                        }
                     }
                 }
                 long sourcePK;
@@ -131,23 +173,27 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
                         }
                     }
                     if(ldenConfig.computeLDay) {
-                        double[] levels = ComputeRays.sumArray(ComputeRays.wToDba(ldenComputeRaysOut.ldenPropagationProcessData.
-                                wjSourcesD.get((int) sourceId)), entry.getValue());
+                        double[] levels = ComputeRays.wToDba(ldenComputeRaysOut.ldenPropagationProcessData.
+                                wjSourcesD.get((int) sourceId));
+                        ComputeRays.sumArray(levels, entry.getValue(), levels);
                         pushInStack(ldenComputeRaysOut.ldenData.lDayLevels, new VerticeSL(receiverPK, sourcePK, levels));
                     }
                     if(ldenConfig.computeLEvening) {
-                        double[] levels = ComputeRays.sumArray(ComputeRays.wToDba(ldenComputeRaysOut.ldenPropagationProcessData.
-                                wjSourcesE.get((int) sourceId)), entry.getValue());
+                        double[] levels = ComputeRays.wToDba(ldenComputeRaysOut.ldenPropagationProcessData.
+                                wjSourcesE.get((int) sourceId));
+                        ComputeRays.sumArray(levels, entry.getValue(), levels);
                         pushInStack(ldenComputeRaysOut.ldenData.lEveningLevels, new VerticeSL(receiverPK, sourcePK, levels));
                     }
                     if(ldenConfig.computeLNight) {
-                        double[] levels = ComputeRays.sumArray(ComputeRays.wToDba(ldenComputeRaysOut.ldenPropagationProcessData.
-                                wjSourcesN.get((int) sourceId)), entry.getValue());
+                        double[] levels = ComputeRays.wToDba(ldenComputeRaysOut.ldenPropagationProcessData.
+                                wjSourcesN.get((int) sourceId));
+                        ComputeRays.sumArray(levels, entry.getValue(), levels);
                         pushInStack(ldenComputeRaysOut.ldenData.lNightLevels, new VerticeSL(receiverPK, sourcePK, levels));
                     }
                     if(ldenConfig.computeLDEN) {
-                        double[] levels = ComputeRays.sumArray(ComputeRays.wToDba(ldenComputeRaysOut.ldenPropagationProcessData.
-                                wjSourcesDEN.get((int) sourceId)), entry.getValue());
+                        double[] levels = ComputeRays.wToDba(ldenComputeRaysOut.ldenPropagationProcessData.
+                                wjSourcesDEN.get((int) sourceId));
+                        ComputeRays.sumArray(levels, entry.getValue(), levels);
                         pushInStack(ldenComputeRaysOut.ldenData.lDenLevels, new VerticeSL(receiverPK, sourcePK, levels));
                     }
                 }
@@ -174,12 +220,134 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
         }
     }
 
+    /**
+     * Results shared between computation threads and the table writer thread.
+     * Computation threads wait when the queue is full and the writer thread waits when the queue is empty.
+     */
     static class LdenData {
+        // Maximum wait time before checking the process status
+        private static final long AWAIT_TIMEOUT_MS = 100;
         AtomicLong queueSize = new AtomicLong(0);
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition notFull = lock.newCondition();
+        private final Condition notEmpty = lock.newCondition();
+        // Metrics
+        final LongAdder producerStallTime = new LongAdder();
+        final LongAdder writtenRows = new LongAdder();
+        final LongAdder writerActiveTime = new LongAdder();
         public ConcurrentLinkedDeque<VerticeSL> lDayLevels = new ConcurrentLinkedDeque<>();
         public ConcurrentLinkedDeque<VerticeSL> lEveningLevels = new ConcurrentLinkedDeque<>();
         public ConcurrentLinkedDeque<VerticeSL> lNightLevels = new ConcurrentLinkedDeque<>();
         public ConcurrentLinkedDeque<VerticeSL> lDenLevels = new ConcurrentLinkedDeque<>();
         public ConcurrentLinkedDeque<PropagationPath> rays = new ConcurrentLinkedDeque<>();
+        // Optional storage of receivers/sources attenuation
+        AttenuationMatrixFile.Writer attenuationMatrixWriter = null;
+
+        /**
+         * Block the calling computation thread while the queue is full
+         * @param ldenConfig Configuration (maximum queue size and process status)
+         * @return False if the computation has been aborted
+         */
+        boolean awaitCapacity(LDENConfig ldenConfig) {
+            if(queueSize.get() <= ldenConfig.outputMaximumQueue) {
+                return !ldenConfig.aborted;
+            }
+            long start = System.nanoTime();
+            lock.lock();
+            try {
+                while (queueSize.get() > ldenConfig.outputMaximumQueue && !ldenConfig.aborted) {
+                    notFull.await(AWAIT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException ex) {
+                ldenConfig.aborted = true;
+            } finally {
+                lock.unlock();
+                producerStallTime.add(System.nanoTime() - start);
+            }
+            return !ldenConfig.aborted;
+        }
+
+        /**
+         * Block the writer thread while there is nothing to write
+         * @param ldenConfig Configuration (process status)
+         * @throws InterruptedException Writer thread interrupted
+         */
+        void awaitData(LDENConfig ldenConfig) throws InterruptedException {
+            lock.lock();
+            try {
+                while (queueSize.get() == 0 && !ldenConfig.exitWhenDone && !ldenConfig.aborted) {
+                    notEmpty.await(AWAIT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @param count Number of elements added into the stacks
+         */
+        void notifyPushed(int count) {
+            if(queueSize.getAndAdd(count) == 0) {
+                // The writer may be waiting
+                signal(notEmpty);
+            }
+        }
+
+        /**
+         * @param count Number of elements written by the writer thread
+         */
+        void notifyConsumed(int count) {
+            writtenRows.add(count);
+            signal(notFull);
+        }
+
+        /**
+         * Wake up all waiting threads (end of computation or abort)
+         */
+        void wakeUp() {
+            lock.lock();
+            try {
+                notEmpty.signalAll();
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void signal(Condition condition) {
+            lock.lock();
+            try {
+                condition.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return Number of computation threads currently waiting for free space in the queue
+         */
+        int getWaitingProducerCount() {
+            lock.lock();
+            try {
+                return lock.getWaitQueueLength(notFull);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return Total time spent by computation threads waiting for the writer, in milliseconds
+         */
+        long getProducerStallTime() {
+            return TimeUnit.NANOSECONDS.toMillis(producerStallTime.sum());
+        }
+
+        /**
+         * @return Written rows per second of writer activity
+         */
+        double getWriterThroughput() {
+            long activeTime = writerActiveTime.sum();
+            return activeTime > 0 ? writtenRows.sum() / (activeTime / 1e9) : 0;
+        }
     }
 }
@@ -23,12 +23,15 @@ package org.noise_planet.noisemodelling.jdbc;
 
 import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
 
+import java.io.File;
+
 /**
  * Configuration of NoiseModelling computation based on database data using standard Lden outputs
  */
 public class LDENConfig {
     public enum INPUT_MODE { INPUT_MODE_TRAFFIC_FLOW,INPUT_MODE_RAILWAY_FLOW, INPUT_MODE_LW_DEN, INPUT_MODE_PROBA}
     final INPUT_MODE input_mode;
+    public enum OUTPUT_MODE { OUTPUT_MODE_TABLE, OUTPUT_MODE_BINARY_FILE}
 
     // This field is initialised when {@link PointNoiseMap#initialize} is called
     PropagationProcessPathData propagationProcessPathData = null;
@@ -53,6 +56,12 @@ public class LDENConfig {
 
     boolean mergeSources = true;
 
+    // Results are inserted in tables or written in binary files (see {@link LDENBinaryResultFile})
+    OUTPUT_MODE outputMode = OUTPUT_MODE.OUTPUT_MODE_TABLE;
+    File binaryOutputDirectory = null;
+    boolean importBinaryOutput = false;
+    File attenuationMatrixFile = null;
+
     String lDayTable = "LDAY_RESULT";
     String lEveningTable = "LEVENING_RESULT";
     String lNightTable = "LNIGHT_RESULT";
@@ -195,4 +204,52 @@ public class LDENConfig {
     public boolean isMergeSources() {
         return mergeSources;
     }
+
+    public OUTPUT_MODE getOutputMode() {
+        return outputMode;
+    }
+
+    /**
+     * @param outputMode OUTPUT_MODE_TABLE (default) to insert results in database tables, OUTPUT_MODE_BINARY_FILE
+     *                   to write results in binary files located in {@link #getBinaryOutputDirectory()}
+     */
+    public void setOutputMode(OUTPUT_MODE outputMode) {
+        this.outputMode = outputMode;
+    }
+
+    public File getBinaryOutputDirectory() {
+        return binaryOutputDirectory;
+    }
+
+    /**
+     * @param binaryOutputDirectory Folder of result files, one file per table name with .bin extension
+     */
+    public void setBinaryOutputDirectory(File binaryOutputDirectory) {
+        this.binaryOutputDirectory = binaryOutputDirectory;
+    }
+
+    public File getAttenuationMatrixFile() {
+        return attenuationMatrixFile;
+    }
+
+    /**
+     * @param attenuationMatrixFile If not null, the attenuation between each receiver and source is stored in this
+     *                              file in order to compute other emission scenarios with
+     *                              {@link AttenuationMatrixEngine}
+     */
+    public void setAttenuationMatrixFile(File attenuationMatrixFile) {
+        this.attenuationMatrixFile = attenuationMatrixFile;
+    }
+
+    public boolean isImportBinaryOutput() {
+        return importBinaryOutput;
+    }
+
+    /**
+     * @param importBinaryOutput If true the binary files are imported into the result tables when the computation
+     *                           is done
+     */
+    public void setImportBinaryOutput(boolean importBinaryOutput) {
+        this.importBinaryOutput = importBinaryOutput;
+    }
 }
@@ -31,6 +31,9 @@ import org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
@@ -149,6 +152,18 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
         if(ldenConfig.propagationProcessPathData == null) {
             throw new IllegalStateException("start() function must be called after PointNoiseMap initialization call");
         }
+        if(ldenConfig.outputMode == LDENConfig.OUTPUT_MODE.OUTPUT_MODE_BINARY_FILE &&
+                ldenConfig.binaryOutputDirectory == null) {
+            throw new IllegalStateException("Binary output mode require an output directory");
+        }
+        if(ldenConfig.attenuationMatrixFile != null) {
+            try {
+                ldenData.attenuationMatrixWriter = new AttenuationMatrixFile.Writer(ldenConfig.attenuationMatrixFile,
+                        ldenConfig.propagationProcessPathData.freq_lvl);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
         tableWriter = new TableWriter(connection, ldenConfig, ldenData);
         ldenConfig.exitWhenDone = false;
         tableWriterThread = new Thread(tableWriter);
@@ -168,12 +183,25 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
      */
     public void stop() {
         ldenConfig.exitWhenDone = true;
-        while (tableWriterThread != null && tableWriterThread.isAlive()) {
+        ldenData.wakeUp();
+        if (tableWriterThread != null) {
             try {
-                Thread.sleep(150);
+                tableWriterThread.join();
             } catch (InterruptedException e) {
                 // ignore
-                break;
+            }
+        }
+        closeAttenuationMatrix();
+    }
+
+    private void closeAttenuationMatrix() {
+        if(ldenData.attenuationMatrixWriter != null) {
+            try {
+                ldenData.attenuationMatrixWriter.close();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            } finally {
+                ldenData.attenuationMatrixWriter = null;
             }
         }
     }
@@ -183,14 +211,34 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
      */
     public void cancel() {
         ldenConfig.aborted = true;
-        while (tableWriterThread.isAlive()) {
-            try {
-                Thread.sleep(150);
-            } catch (InterruptedException e) {
-                // ignore
-                break;
-            }
+        ldenData.wakeUp();
+        try {
+            tableWriterThread.join();
+        } catch (InterruptedException e) {
+            // ignore
         }
+        closeAttenuationMatrix();
+    }
+
+    /**
+     * @return Total time spent by computation threads waiting for the result writer, in milliseconds
+     */
+    public long getProducerStallTime() {
+        return ldenData.getProducerStallTime();
+    }
+
+    /**
+     * @return Number of results written by the result writer
+     */
+    public long getWrittenRowCount() {
+        return ldenData.writtenRows.sum();
+    }
+
+    /**
+     * @return Written results per second while the result writer was not waiting for data
+     */
+    public double getWriterThroughput() {
+        return ldenData.getWriterThroughput();
     }
 
     @Override
@@ -205,6 +253,34 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
         return new LDENComputeRaysOut(pathData, (LDENPropagationProcessData)threadData, ldenData);
     }
 
+    /**
+     * @param tableName Table name
+     * @param mergeSources If false, the table contains a source identifier column
+     * @param frequencies Frequency of each level column
+     * @return Create table query of receiver levels
+     */
+    static String forgeCreateTable(String tableName, boolean mergeSources, List<Integer> frequencies) {
+        StringBuilder sb = new StringBuilder("create table ");
+        sb.append(tableName);
+        if(!mergeSources) {
+            sb.append(" (IDRECEIVER bigint NOT NULL");
+            sb.append(", IDSOURCE bigint NOT NULL");
+        } else {
+            sb.append(" (IDRECEIVER SERIAL PRIMARY KEY");
+        }
+        for (int frequency : frequencies) {
+            sb.append(", HZ");
+            sb.append(frequency);
+            sb.append(" numeric(5, 2)");
+        }
+        sb.append(", LAEQ numeric(5, 2), LEQ numeric(5, 2)");
+        if(!mergeSources) {
+            sb.append(", PRIMARY KEY(IDRECEIVER, IDSOURCE)");
+        }
+        sb.append(")");
+        return sb.toString();
+    }
+
     private static class TableWriter implements Runnable {
         Logger LOGGER = LoggerFactory.getLogger(TableWriter.class);
         private Connection connection;
@@ -212,15 +288,13 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
         LDENComputeRaysOut.LdenData ldenData;
         double[] a_weighting;
         boolean started = false;
+        Map<String, LDENBinaryResultFile.Writer> binaryWriters = new HashMap<>();
 
         public TableWriter(Connection connection, LDENConfig ldenConfig, LDENComputeRaysOut.LdenData ldenData) {
             this.connection = connection;
             this.ldenConfig = ldenConfig;
             this.ldenData = ldenData;
-            a_weighting = new double[ldenConfig.propagationProcessPathData.freq_lvl_a_weighting.size()];
-            for(int idfreq = 0; idfreq < a_weighting.length; idfreq++) {
-                a_weighting[idfreq] = ldenConfig.propagationProcessPathData.freq_lvl_a_weighting.get(idfreq);
-            }
+            a_weighting = ldenConfig.propagationProcessPathData.getAttenuationContext().getAWeighting();
         }
 
         void processRaysStack(ConcurrentLinkedDeque<PropagationPath> stack) throws SQLException {
@@ -240,11 +314,13 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
                 if (batchSize >= BATCH_MAX_SIZE) {
                     ps.executeBatch();
                     ps.clearBatch();
+                    ldenData.notifyConsumed(batchSize);
                     batchSize = 0;
                 }
             }
             if (batchSize > 0) {
                 ps.executeBatch();
+                ldenData.notifyConsumed(batchSize);
             }
 
         }
@@ -276,53 +352,119 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
                 if(!ldenConfig.mergeSources) {
                     ps.setLong(parameterIndex++, row.sourceId);
                 }
+                replaceNonFiniteLevels(row.value);
                 for(int idfreq=0;idfreq < ldenConfig.propagationProcessPathData.freq_lvl.size(); idfreq++) {
-                    Double value = row.value[idfreq];
-                    if(!Double.isFinite(value)) {
-                        value = -99.0;
-                        row.value[idfreq] = value;
-                    }
-                    ps.setDouble(parameterIndex++, value);
+                    ps.setDouble(parameterIndex++, row.value[idfreq]);
                 }
                 // laeq value
-                ps.setDouble(parameterIndex++, ComputeRays.wToDba(ComputeRays.sumArray(ComputeRays.dbaToW(ComputeRays.sumArray(row.value, a_weighting)))));
+                ps.setDouble(parameterIndex++, computeLaeq(row.value));
 
                 // leq value
-                ps.setDouble(parameterIndex++, ComputeRays.wToDba(ComputeRays.sumArray(ComputeRays.dbaToW(row.value))));
+                ps.setDouble(parameterIndex++, computeLeq(row.value));
 
                 ps.addBatch();
                 batchSize++;
                 if (batchSize >= BATCH_MAX_SIZE) {
                     ps.executeBatch();
                     ps.clearBatch();
+                    ldenData.notifyConsumed(batchSize);
                     batchSize = 0;
                 }
             }
             if (batchSize > 0) {
                 ps.executeBatch();
+                ldenData.notifyConsumed(batchSize);
             }
         }
 
-        private String forgeCreateTable(String tableName) {
-            StringBuilder sb = new StringBuilder("create table ");
-            sb.append(tableName);
-            if(!ldenConfig.mergeSources) {
-                sb.append(" (IDRECEIVER bigint NOT NULL");
-                sb.append(", IDSOURCE bigint NOT NULL");
+        private void replaceNonFiniteLevels(double[] levels) {
+            for(int idfreq = 0; idfreq < levels.length; idfreq++) {
+                if(!Double.isFinite(levels[idfreq])) {
+                    levels[idfreq] = -99.0;
+                }
+            }
+        }
+
+        private double computeLaeq(double[] levels) {
+            double[] buffer = ComputeRays.getScratchArray(0, levels.length);
+            return ComputeRays.wToDba(ComputeRays.sumArray(ComputeRays.dbaToW(
+                    ComputeRays.sumArray(levels, a_weighting, buffer), buffer)));
+        }
+
+        private double computeLeq(double[] levels) {
+            double[] buffer = ComputeRays.getScratchArray(0, levels.length);
+            return ComputeRays.wToDba(ComputeRays.sumArray(ComputeRays.dbaToW(levels, buffer)));
+        }
+
+        /**
+         * Pop values from stack and append rows into the binary file
+         * @param tableName Table associated with the file
+         * @param stack Stack to pop from
+         * @throws IOException Got an error
+         */
+        void processBinaryStack(String tableName, ConcurrentLinkedDeque<ComputeRaysOutAttenuation.VerticeSL> stack) throws IOException {
+            LDENBinaryResultFile.Writer writer = binaryWriters.get(tableName);
+            int batchSize = 0;
+            while(!stack.isEmpty()) {
+                ComputeRaysOutAttenuation.VerticeSL row = stack.pop();
+                ldenData.queueSize.decrementAndGet();
+                replaceNonFiniteLevels(row.value);
+                writer.write(row.receiverId, row.sourceId, row.value, computeLaeq(row.value), computeLeq(row.value));
+                batchSize++;
+                if (batchSize >= BATCH_MAX_SIZE) {
+                    ldenData.notifyConsumed(batchSize);
+                    batchSize = 0;
+                }
+            }
+            if (batchSize > 0) {
+                ldenData.notifyConsumed(batchSize);
+            }
+        }
+
+        private void processLevelsStack(String tableName, ConcurrentLinkedDeque<ComputeRaysOutAttenuation.VerticeSL> stack) throws SQLException, IOException {
+            if(ldenConfig.outputMode == LDENConfig.OUTPUT_MODE.OUTPUT_MODE_BINARY_FILE) {
+                processBinaryStack(tableName, stack);
             } else {
-                sb.append(" (IDRECEIVER SERIAL PRIMARY KEY");
+                processStack(tableName, stack);
             }
-            for (int idfreq = 0; idfreq < ldenConfig.propagationProcessPathData.freq_lvl.size(); idfreq++) {
-                sb.append(", HZ");
-                sb.append(ldenConfig.propagationProcessPathData.freq_lvl.get(idfreq));
-                sb.append(" numeric(5, 2)");
+        }
+
+        private void createResultOutput(Statement sql, String tableName) throws SQLException, IOException {
+            if(ldenConfig.outputMode == LDENConfig.OUTPUT_MODE.OUTPUT_MODE_BINARY_FILE) {
+                binaryWriters.put(tableName, new LDENBinaryResultFile.Writer(
+                        LDENBinaryResultFile.getFile(ldenConfig.binaryOutputDirectory, tableName),
+                        ldenConfig.propagationProcessPathData.freq_lvl, ldenConfig.mergeSources));
+            } else {
+                sql.execute(String.format("DROP TABLE IF EXISTS %s", tableName));
+                sql.execute(forgeCreateTable(tableName, ldenConfig.mergeSources,
+                        ldenConfig.propagationProcessPathData.freq_lvl));
             }
-            sb.append(", LAEQ numeric(5, 2), LEQ numeric(5, 2)");
-            if(!ldenConfig.mergeSources) {
-                sb.append(", PRIMARY KEY(IDRECEIVER, IDSOURCE)");
+        }
+
+        /**
+         * Close binary files then import them into tables if requested
+         */
+        private void closeBinaryOutput() throws SQLException, IOException {
+            IOException closeException = null;
+            for(LDENBinaryResultFile.Writer writer : binaryWriters.values()) {
+                try {
+                    writer.close();
+                } catch (IOException ex) {
+                    closeException = ex;
+                }
+            }
+            if(closeException != null) {
+                throw closeException;
+            }
+            if(ldenConfig.importBinaryOutput && !ldenConfig.aborted) {
+                for(String tableName : binaryWriters.keySet()) {
+                    File file = LDENBinaryResultFile.getFile(ldenConfig.binaryOutputDirectory, tableName);
+                    long rowCount = LDENBinaryResultFile.importTable(connection, file, tableName);
+                    LOGGER.info(String.format(Locale.ROOT, "%d rows imported from %s into %s", rowCount,
+                            file.getName(), tableName));
+                }
             }
-            sb.append(")");
-            return sb.toString();
+            binaryWriters.clear();
         }
 
         @Override
@@ -334,50 +476,68 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
                     sql.execute("CREATE TABLE "+ldenConfig.raysTable+"(pk serial primary key, the_geom geometry, IDRECEIVER bigint NOT NULL, IDSOURCE bigint NOT NULL)");
                 }
                 if(ldenConfig.computeLDay) {
-                    sql.execute(String.format("DROP TABLE IF EXISTS %s", ldenConfig.lDayTable));
-                    sql.execute(forgeCreateTable(ldenConfig.lDayTable));
+                    createResultOutput(sql, ldenConfig.lDayTable);
                 }
                 if(ldenConfig.computeLEvening) {
-                    sql.execute(String.format("DROP TABLE IF EXISTS %s", ldenConfig.lEveningTable));
-                    sql.execute(forgeCreateTable(ldenConfig.lEveningTable));
+                    createResultOutput(sql, ldenConfig.lEveningTable);
                 }
                 if(ldenConfig.computeLNight) {
-                    sql.execute(String.format("DROP TABLE IF EXISTS %s", ldenConfig.lNightTable));
-                    sql.execute(forgeCreateTable(ldenConfig.lNightTable));
+                    createResultOutput(sql, ldenConfig.lNightTable);
                 }
                 if(ldenConfig.computeLDEN) {
-                    sql.execute(String.format("DROP TABLE IF EXISTS %s", ldenConfig.lDenTable));
-                    sql.execute(forgeCreateTable(ldenConfig.lDenTable));
+                    createResultOutput(sql, ldenConfig.lDenTable);
                 }
+                long writerStart = System.nanoTime();
                 while (!ldenConfig.aborted) {
                     started = true;
                     try {
+                        long start = System.nanoTime();
                         if(!ldenData.lDayLevels.isEmpty()) {
-                            processStack(ldenConfig.lDayTable, ldenData.lDayLevels);
+                            processLevelsStack(ldenConfig.lDayTable, ldenData.lDayLevels);
                         } else if(!ldenData.lEveningLevels.isEmpty()) {
-                            processStack(ldenConfig.lEveningTable, ldenData.lEveningLevels);
+                            processLevelsStack(ldenConfig.lEveningTable, ldenData.lEveningLevels);
                         } else if(!ldenData.lNightLevels.isEmpty()) {
-                            processStack(ldenConfig.lNightTable, ldenData.lNightLevels);
+                            processLevelsStack(ldenConfig.lNightTable, ldenData.lNightLevels);
                         } else if(!ldenData.lDenLevels.isEmpty()) {
-                            processStack(ldenConfig.lDenTable, ldenData.lDenLevels);
+                            processLevelsStack(ldenConfig.lDenTable, ldenData.lDenLevels);
                         } else if(!ldenData.rays.isEmpty()) {
                             processRaysStack(ldenData.rays);
                         } else {
                             if(ldenConfig.exitWhenDone) {
                                 break;
                             } else {
-                                Thread.sleep(50);
+                                ldenData.awaitData(ldenConfig);
+                                continue;
                             }
                         }
+                        ldenData.writerActiveTime.add(System.nanoTime() - start);
                     } catch (InterruptedException ex) {
                         // ignore
                         break;
                     }
                 }
+                closeBinaryOutput();
+                LOGGER.info(String.format(Locale.ROOT, "Result writer: %d rows in %.1f s (%.0f rows/s when active)," +
+                                " computation threads waited %d ms for the writer",
+                        ldenData.writtenRows.sum(), (System.nanoTime() - writerStart) / 1e9,
+                        ldenData.getWriterThroughput(), ldenData.getProducerStallTime()));
             } catch (SQLException e) {
                 LOGGER.error("SQL Writer exception", e);
                 LOGGER.error(e.getLocalizedMessage(), e.getNextException());
                 ldenConfig.aborted = true;
+            } catch (IOException e) {
+                LOGGER.error("Binary Writer exception", e);
+                ldenConfig.aborted = true;
+            } finally {
+                // Release computation threads waiting for free space
+                ldenData.wakeUp();
+                for(LDENBinaryResultFile.Writer writer : binaryWriters.values()) {
+                    try {
+                        writer.close();
+                    } catch (IOException ex) {
+                        // ignore
+                    }
+                }
             }
             // LOGGER.info("Exit TableWriter");
         }
@@ -103,6 +103,16 @@ public class LDENPropagationProcessData extends PropagationProcessData {
         }
     }
 
+    @Override
+    public double[] getSourceAttenuation(int srcIndex, double[] frequencies, float phi, float theta) {
+        DirectionAttributes attributes = directionAttributes.get(sourceDirection.get(sourcesPk.get(srcIndex)));
+        if(attributes != null) {
+            return attributes.getAttenuationArray(frequencies, phi, theta);
+        } else {
+            return new double[frequencies.length];
+        }
+    }
+
     /**
      * @param rs result set of source
      * @param period D or E or N
@@ -218,16 +228,18 @@ public class LDENPropagationProcessData extends PropagationProcessData {
             hgvPerHour = hv;
         }
         // Compute emission
+        RoadSourceParametersCnossos[] rsParametersCnossos = new RoadSourceParametersCnossos[lvl.length];
         int idFreq = 0;
         for (int freq : ldenConfig.propagationProcessPathData.freq_lvl) {
-            RoadSourceParametersCnossos rsParametersCnossos = new RoadSourceParametersCnossos(lv_speed, mv_speed, hgv_speed, wav_speed,
+            RoadSourceParametersCnossos rsParameters = new RoadSourceParametersCnossos(lv_speed, mv_speed, hgv_speed, wav_speed,
                     wbv_speed,lvPerHour, mvPerHour, hgvPerHour, wavPerHour, wbvPerHour, freq, temperature,
                     roadSurface, tsStud, pmStud, junctionDistance, junctionType);
-            rsParametersCnossos.setSlopePercentage(slope);
-            rsParametersCnossos.setWay(way);
-            rsParametersCnossos.setCoeffVer(ldenConfig.coefficientVersion);
-            lvl[idFreq++] = EvaluateRoadSourceCnossos.evaluate(rsParametersCnossos);
+            rsParameters.setSlopePercentage(slope);
+            rsParameters.setWay(way);
+            rsParameters.setCoeffVer(ldenConfig.coefficientVersion);
+            rsParametersCnossos[idFreq++] = rsParameters;
         }
+        EvaluateRoadSourceCnossos.evaluate(rsParametersCnossos, lvl);
         return lvl;
     }
 
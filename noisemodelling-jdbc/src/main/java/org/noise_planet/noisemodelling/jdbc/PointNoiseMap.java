@@ -18,6 +18,7 @@ import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.Point;
 import org.locationtech.jts.index.strtree.STRtree;
+import org.noise_planet.noisemodelling.pathfinder.CellMeshCache;
 import org.noise_planet.noisemodelling.pathfinder.ComputeRays;
 import org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation;
 import org.noise_planet.noisemodelling.pathfinder.FastObstructionTest;
@@ -35,6 +36,11 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 /**
  * Compute noise propagation at specified receiver points.
@@ -46,6 +52,9 @@ public class PointNoiseMap extends JdbcNoiseMap {
     private IComputeRaysOutFactory computeRaysOutFactory;
     private Logger logger = LoggerFactory.getLogger(PointNoiseMap.class);
     private int threadCount = 0;
+    private int receiverChunkSize = 0;
+    private int cellPrefetchDepth = 1;
+    private CellMeshCache cellMeshCache = null;
 
     public PointNoiseMap(String buildingsTableName, String sourcesTableName, String receiverTableName) {
         super(buildingsTableName, sourcesTableName);
@@ -68,6 +77,46 @@ public class PointNoiseMap extends JdbcNoiseMap {
         this.threadCount = threadCount;
     }
 
+    public int getReceiverChunkSize() {
+        return receiverChunkSize;
+    }
+
+    /**
+     * @param receiverChunkSize If superior than 0, computation threads fetch receivers by chunks of this size instead
+     *                          of splitting the receivers of a cell in equal ranges.
+     * @see ComputeRays#setReceiverChunkSize(int)
+     */
+    public void setReceiverChunkSize(int receiverChunkSize) {
+        this.receiverChunkSize = receiverChunkSize;
+    }
+
+    /**
+     * @return Number of cells prepared in advance by {@link #evaluateCells}
+     */
+    public int getCellPrefetchDepth() {
+        return cellPrefetchDepth;
+    }
+
+    /**
+     * @param cellPrefetchDepth Number of cells prepared in advance by {@link #evaluateCells} while the current cell
+     *                          is computed. 0 to prepare and compute cells sequentially.
+     */
+    public void setCellPrefetchDepth(int cellPrefetchDepth) {
+        this.cellPrefetchDepth = cellPrefetchDepth;
+    }
+
+    public CellMeshCache getCellMeshCache() {
+        return cellMeshCache;
+    }
+
+    /**
+     * @param cellMeshCache If not null, the triangulation of cells is stored in this cache and reused on the
+     *                      following runs while buildings and topography of the cell are unchanged
+     */
+    public void setCellMeshCache(CellMeshCache cellMeshCache) {
+        this.cellMeshCache = cellMeshCache;
+    }
+
     /**
      * Initialisation of data structures needed for sound propagation.
      * @param connection JDBC Connection
@@ -104,13 +153,27 @@ public class PointNoiseMap extends JdbcNoiseMap {
         Envelope meshEnvelope = new Envelope(expandedCellEnvelop);
         // Expand again envelope for sound sources or buildings sides that are close to the edge
         meshEnvelope.expandBy(10);
-        try {
-            mesh.finishPolygonFeeding(expandedCellEnvelop);
-        } catch (LayerDelaunayError ex) {
-            throw new SQLException(ex.getLocalizedMessage(), ex);
+        FastObstructionTest freeFieldFinder = null;
+        String meshCacheKey = null;
+        if(cellMeshCache != null) {
+            meshCacheKey = CellMeshCache.computeKey(mesh, expandedCellEnvelop);
+            freeFieldFinder = cellMeshCache.load(meshCacheKey, spatialIndexType);
+            if(verbose && freeFieldFinder != null) {
+                logger.info("Triangulation of cell " + ij + " loaded from cache");
+            }
+        }
+        if(freeFieldFinder == null) {
+            try {
+                mesh.finishPolygonFeeding(expandedCellEnvelop);
+            } catch (LayerDelaunayError ex) {
+                throw new SQLException(ex.getLocalizedMessage(), ex);
+            }
+            if(cellMeshCache != null) {
+                cellMeshCache.store(meshCacheKey, mesh);
+            }
+            freeFieldFinder = new FastObstructionTest(mesh.getPolygonWithHeight(),
+                    mesh.getTriangles(), mesh.getTriNeighbors(), mesh.getVertices(), spatialIndexType);
         }
-        FastObstructionTest freeFieldFinder = new FastObstructionTest(mesh.getPolygonWithHeight(),
-                mesh.getTriangles(), mesh.getTriNeighbors(), mesh.getVertices());
 
 
         PropagationProcessData propagationProcessData;
@@ -121,6 +184,7 @@ public class PointNoiseMap extends JdbcNoiseMap {
         }
         propagationProcessData.reflexionOrder = soundReflectionOrder;
         propagationProcessData.maximumError = getMaximumError();
+        propagationProcessData.cacheLineSourceDiscretization = isCacheLineSourceDiscretization();
         propagationProcessData.maxRefDist = maximumReflectionDistance;
         propagationProcessData.maxSrcDist = maximumPropagationDistance;
         propagationProcessData.setComputeVerticalDiffraction(computeVerticalDiffraction);
@@ -132,7 +196,11 @@ public class PointNoiseMap extends JdbcNoiseMap {
         propagationProcessData.cellId = ij;
 
         // Fetch soil areas
-        fetchCellSoilAreas(connection, expandedCellEnvelop, propagationProcessData.getSoilList());
+        if(groundFactorRasterCellSize > 0) {
+            propagationProcessData.setGroundFactorRaster(fetchCellSoilRaster(connection, expandedCellEnvelop));
+        } else {
+            fetchCellSoilAreas(connection, expandedCellEnvelop, propagationProcessData.getSoilList());
+        }
 
         // Fetch receivers
 
@@ -235,6 +303,102 @@ public class PointNoiseMap extends JdbcNoiseMap {
                                         ProgressVisitor progression, Set<Long> skipReceivers) throws SQLException, IOException {
         PropagationProcessData threadData = prepareCell(connection, cellI, cellJ, progression, skipReceivers);
 
+        return computeCell(threadData);
+    }
+
+    /**
+     * Launch sound propagation on the provided cells. Cells data are fetched and triangulated in the calling thread.
+     * @param connection Connection used for fetching the cells data
+     * @param cells Cells to compute, in computation order
+     * @param progression Progression info
+     * @param skipReceivers Receivers primary keys already processed
+     * @param cellResult Optional, called for each computed cell
+     * @throws SQLException
+     * @throws IOException
+     * @see #evaluateCells(Connection, Connection, Collection, ProgressVisitor, Set, Consumer)
+     */
+    public void evaluateCells(Connection connection, Collection<CellIndex> cells, ProgressVisitor progression,
+                              Set<Long> skipReceivers, Consumer<IComputeRaysOut> cellResult)
+            throws SQLException, IOException {
+        evaluateCells(connection, null, cells, progression, skipReceivers, cellResult);
+    }
+
+    /**
+     * Launch sound propagation on the provided cells. The data of the next cells are fetched and triangulated in
+     * another thread while the propagation of the current cell is computed.
+     * @param connection Connection of the calling thread
+     * @param prefetchConnection Connection dedicated to the preparation thread, must not be used elsewhere while this
+     *                           method is running. If null or if {@link #getCellPrefetchDepth()} is 0 the cells are
+     *                           prepared sequentially in the calling thread using connection.
+     * @param cells Cells to compute, in computation order
+     * @param progression Progression info
+     * @param skipReceivers Receivers primary keys already processed. Updated by the preparation thread only.
+     * @param cellResult Optional, called for each computed cell (in the calling thread)
+     * @throws SQLException
+     * @throws IOException
+     */
+    public void evaluateCells(Connection connection, Connection prefetchConnection, Collection<CellIndex> cells,
+                              ProgressVisitor progression, Set<Long> skipReceivers,
+                              Consumer<IComputeRaysOut> cellResult) throws SQLException, IOException {
+        if(prefetchConnection == null || cellPrefetchDepth <= 0) {
+            for(CellIndex cellIndex : cells) {
+                IComputeRaysOut computeRaysOut = evaluateCell(connection, cellIndex.getLatitudeIndex(),
+                        cellIndex.getLongitudeIndex(), progression, skipReceivers);
+                if (cellResult != null) {
+                    cellResult.accept(computeRaysOut);
+                }
+                if (progression != null && progression.isCanceled()) {
+                    break;
+                }
+            }
+            return;
+        }
+        final int prefetchDepth = cellPrefetchDepth;
+        ExecutorService prepareExecutor = Executors.newSingleThreadExecutor();
+        Deque<Future<PropagationProcessData>> preparedCells = new ArrayDeque<>(prefetchDepth + 1);
+        Iterator<CellIndex> cellIterator = cells.iterator();
+        try {
+            while (cellIterator.hasNext() || !preparedCells.isEmpty()) {
+                // Keep the preparation queue filled
+                while (cellIterator.hasNext() && preparedCells.size() <= prefetchDepth) {
+                    final CellIndex cellIndex = cellIterator.next();
+                    preparedCells.add(prepareExecutor.submit(() -> prepareCell(prefetchConnection,
+                            cellIndex.getLatitudeIndex(), cellIndex.getLongitudeIndex(), progression, skipReceivers)));
+                }
+                PropagationProcessData threadData = preparedCells.poll().get();
+                IComputeRaysOut computeRaysOut = computeCell(threadData);
+                if (cellResult != null) {
+                    cellResult.accept(computeRaysOut);
+                }
+                if (progression != null && progression.isCanceled()) {
+                    break;
+                }
+            }
+        } catch (InterruptedException ex) {
+            throw new SQLException(ex.getLocalizedMessage(), ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else {
+                throw new SQLException(cause);
+            }
+        } finally {
+            prepareExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Launch sound propagation on a prepared cell
+     * @param threadData Data input for cell evaluation
+     * @return Propagation results
+     * @see #prepareCell(Connection, int, int, ProgressVisitor, Set)
+     */
+    public IComputeRaysOut computeCell(PropagationProcessData threadData) {
         if(verbose) {
             logger.info(String.format("This computation area contains %d receivers %d sound sources and %d buildings",
                     threadData.receivers.size(), threadData.sourceGeometries.size(),
@@ -252,6 +416,7 @@ public class PointNoiseMap extends JdbcNoiseMap {
         if(threadCount > 0) {
             computeRays.setThreadCount(threadCount);
         }
+        computeRays.setReceiverChunkSize(receiverChunkSize);
 
         if(!receiverHasAbsoluteZCoordinates) {
             computeRays.makeReceiverRelativeZToAbsolute();
@@ -263,6 +428,18 @@ public class PointNoiseMap extends JdbcNoiseMap {
 
         computeRays.run(computeRaysOut);
 
+        if(verbose) {
+            FastObstructionTest freeFieldFinder = threadData.freeFieldFinder;
+            long hit = freeFieldFinder.getTriangleCacheHitCount();
+            long miss = freeFieldFinder.getTriangleCacheMissCount();
+            logger.info(String.format(Locale.ROOT, "Triangle location cache hit rate %.1f %% (%d queries)",
+                    hit + miss > 0 ? 100.0 * hit / (hit + miss) : 0, hit + miss));
+            hit = freeFieldFinder.getWallCacheHitCount();
+            miss = freeFieldFinder.getWallCacheMissCount();
+            logger.info(String.format(Locale.ROOT, "Source walls cache hit rate %.1f %% (%d queries)",
+                    hit + miss > 0 ? 100.0 * hit / (hit + miss) : 0, hit + miss));
+        }
+
         return computeRaysOut;
     }
 
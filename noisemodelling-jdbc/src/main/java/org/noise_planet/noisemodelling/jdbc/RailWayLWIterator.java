@@ -35,6 +35,8 @@ public class RailWayLWIterator implements Iterator<RailWayLWIterator.RailWayLWGe
     private LDENConfig ldenConfig;
     private SpatialResultSet spatialResultSet;
     private int currentIdSection = -1;
+    // Shared by all rows, vehicle emissions are cached by vehicle and track parameters
+    private EvaluateRailwaySourceCnossos evaluateRailwaySourceCnossos = new EvaluateRailwaySourceCnossos();
 
     public Map<String, Integer> sourceFields = null;
 
@@ -45,6 +47,17 @@ public class RailWayLWIterator implements Iterator<RailWayLWIterator.RailWayLWGe
         this.ldenConfig = ldenConfig;
     }
 
+    public EvaluateRailwaySourceCnossos getEvaluateRailwaySourceCnossos() {
+        return evaluateRailwaySourceCnossos;
+    }
+
+    /**
+     * @param evaluateRailwaySourceCnossos Emission model, custom vehicle and train definitions can be set on it
+     */
+    public void setEvaluateRailwaySourceCnossos(EvaluateRailwaySourceCnossos evaluateRailwaySourceCnossos) {
+        this.evaluateRailwaySourceCnossos = evaluateRailwaySourceCnossos;
+    }
+
     @Override
     public boolean hasNext() {
         return railWayLWfinal != null;
@@ -194,9 +207,6 @@ public class RailWayLWIterator implements Iterator<RailWayLWIterator.RailWayLWGe
             this.nbTrack = nbTrack;
         }
 
-
-        EvaluateRailwaySourceCnossos evaluateRailwaySourceCnossos = new EvaluateRailwaySourceCnossos();
-
         RailWayLW  lWRailWay = new RailWayLW();
 
         RailwayTrackParametersCnossos trackParameters = new RailwayTrackParametersCnossos(vMaxInfra, trackTransfer, railRoughness,
@@ -1,5 +1,6 @@
 package org.noise_planet.noisemodelling.jdbc;
 
+import org.h2gis.api.ProgressVisitor;
 import org.h2gis.utilities.JDBCUtilities;
 import org.h2gis.utilities.SFSUtilities;
 import org.h2gis.utilities.TableLocation;
@@ -20,10 +21,16 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -239,37 +246,122 @@ public class TriangleNoiseMap extends JdbcNoiseMap {
     }
 
     public void generateReceivers(Connection connection, int cellI, int cellJ, String receiverTableName, String trianglesTableName, AtomicInteger receiverPK) throws SQLException, LayerDelaunayError, IOException {
+        createReceiversTables(connection, receiverTableName, trianglesTableName);
+        ReceiverCell cell = triangulateCell(fetchCell(connection, cellI, cellJ));
+        try(ReceiverWriter writer = new ReceiverWriter(connection, receiverTableName, trianglesTableName)) {
+            writer.insertCell(cell, receiverPK);
+            writer.flush();
+        }
+    }
+
+    /**
+     * Generate the receivers of all cells. The input data of the cells are fetched by the calling thread, the cells
+     * are triangulated concurrently then the receivers and triangles are inserted by the calling thread in the cells
+     * order, so that the primary keys are the same as the cell by cell generation.
+     * @param connection Connection, only used by the calling thread
+     * @param receiverTableName Receivers table, created if not exists
+     * @param trianglesTableName Triangles table, created if not exists
+     * @param receiverPK Primary key of the next receiver, each cell get the range of primary keys of its vertices
+     * @param progression Progression info, one step per cell, may be null
+     * @see #setParallelComputationCount(int)
+     */
+    public void generateReceivers(Connection connection, String receiverTableName, String trianglesTableName,
+                                  AtomicInteger receiverPK, ProgressVisitor progression) throws SQLException, IOException {
+        createReceiversTables(connection, receiverTableName, trianglesTableName);
+        final int threadCount = parallelComputationCount > 0 ? parallelComputationCount :
+                Runtime.getRuntime().availableProcessors();
+        // Limit the number of triangulated cells waiting for insertion
+        final int maximumPendingCells = threadCount * 2;
+        ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+        Deque<Future<ReceiverCell>> pendingCells = new ArrayDeque<>(maximumPendingCells + 1);
+        try(ReceiverWriter writer = new ReceiverWriter(connection, receiverTableName, trianglesTableName)) {
+            for (int i = 0; i < gridDim; i++) {
+                for (int j = 0; j < gridDim; j++) {
+                    final ReceiverCell cell = fetchCell(connection, i, j);
+                    pendingCells.add(executorService.submit(() -> triangulateCell(cell)));
+                    // Insert the triangulated cells, in the cells order
+                    while (!pendingCells.isEmpty() && (pendingCells.size() > maximumPendingCells ||
+                            pendingCells.peek().isDone())) {
+                        writer.insertCell(pendingCells.poll().get(), receiverPK);
+                        if (progression != null) {
+                            progression.endStep();
+                        }
+                    }
+                }
+            }
+            while (!pendingCells.isEmpty()) {
+                writer.insertCell(pendingCells.poll().get(), receiverPK);
+                if (progression != null) {
+                    progression.endStep();
+                }
+            }
+            writer.flush();
+        } catch (InterruptedException ex) {
+            throw new SQLException(ex.getLocalizedMessage(), ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else {
+                throw new SQLException(cause);
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
 
+    private void createReceiversTables(Connection connection, String receiverTableName, String trianglesTableName) throws SQLException {
+        try(Statement st = connection.createStatement()) {
+            if (!JDBCUtilities.tableExists(connection, receiverTableName)) {
+                st.execute("CREATE TABLE " + TableLocation.parse(receiverTableName) + "(pk serial NOT NULL, the_geom geometry not null, PRIMARY KEY (PK))");
+            }
+            if (!JDBCUtilities.tableExists(connection, trianglesTableName)) {
+                st.execute("CREATE TABLE " + TableLocation.parse(trianglesTableName) + "(pk serial NOT NULL, the_geom geometry , PK_1 integer not null, PK_2 integer not null, PK_3 integer not null, cell_id integer not null, PRIMARY KEY (PK))");
+            }
+        }
+    }
+
+    /**
+     * Fetch the sources and buildings of a cell
+     */
+    private ReceiverCell fetchCell(Connection connection, int cellI, int cellJ) throws SQLException {
         int ij = cellI * gridDim + cellJ + 1;
         if(verbose) {
             logger.info("Begin processing of cell " + ij + " / " + gridDim * gridDim);
         }
-        // Compute the first pass delaunay mesh
-        // The first pass doesn't take account of additional
-        // vertices of neighbor cells at the borders
-        // then, there are discontinuities in iso surfaces at each
-        // border of cell
         Envelope cellEnvelope = getCellEnv(mainEnvelope, cellI,
                 cellJ, getCellWidth(), getCellHeight());
+        ReceiverCell cell = new ReceiverCell(cellI, cellJ);
         // Fetch all source located in expandedCellEnvelop
         PropagationProcessData data = new PropagationProcessData(null);
         fetchCellSource(connection, cellEnvelope, data);
+        cell.sources = data.sourceGeometries;
+        fetchCellBuildings(connection, cellEnvelope, cell.buildings);
+        return cell;
+    }
 
-        List<Geometry> sourceDelaunayGeometries = data.sourceGeometries;
-
-        ArrayList<MeshBuilder.PolygonWithHeight> buildings = new ArrayList<>();
-        fetchCellBuildings(connection, cellEnvelope, buildings);
-
+    /**
+     * Compute the receivers and triangles of a cell. Does not use the database connection.
+     */
+    private ReceiverCell triangulateCell(ReceiverCell cell) throws SQLException {
+        // Compute the first pass delaunay mesh
+        // The first pass doesn't take account of additional
+        // vertices of neighbor cells at the borders
+        // then, there are discontinuities in iso surfaces at each
+        // border of cell
         LayerTinfour cellMesh = new LayerTinfour();
         cellMesh.setDumpFolder(exceptionDumpFolder);
         try {
-            computeDelaunay(cellMesh, mainEnvelope, cellI,
-                    cellJ,
-                    maximumPropagationDistance, sourceDelaunayGeometries, roadWidth, maximumArea, buildingBuffer, buildings);
+            computeDelaunay(cellMesh, mainEnvelope, cell.cellI,
+                    cell.cellJ,
+                    maximumPropagationDistance, cell.sources, roadWidth, maximumArea, buildingBuffer, cell.buildings);
         } catch (LayerDelaunayError err) {
             throw new SQLException(err.getLocalizedMessage(), err);
         }
-        sourceDelaunayGeometries.clear();
+        cell.sources = null;
+        cell.buildings = null;
         // Make a structure to keep the following information
         // Triangle list with 3 vertices(int), and 3 neighbor
         // triangle ID
@@ -277,68 +369,107 @@ public class TriangleNoiseMap extends JdbcNoiseMap {
 
         // The evaluation of sound level must be done where the
         // following vertices are
-        List<Coordinate> vertices = new ArrayList<>(cellMesh.getVertices().size());
+        cell.vertices = new ArrayList<>(cellMesh.getVertices().size());
         for(Coordinate vertex : cellMesh.getVertices()) {
             Coordinate translatedVertex = new Coordinate(vertex);
             double z = receiverHeight;
             translatedVertex.setOrdinate(2, z);
-            vertices.add(translatedVertex);
+            cell.vertices.add(translatedVertex);
         }
         // Do not add triangles associated with buildings
-        List<Triangle> triangles = new ArrayList<>();
+        cell.triangles = new ArrayList<>();
         for(Triangle triangle : cellMesh.getTriangles()) {
             if(triangle.getAttribute() == 0) {
-                triangles.add(triangle);
+                cell.triangles.add(triangle);
             }
         }
-        nbreceivers += vertices.size();
+        return cell;
+    }
 
-        if(!JDBCUtilities.tableExists(connection, receiverTableName)) {
-            Statement st = connection.createStatement();
-            st.execute("CREATE TABLE "+TableLocation.parse(receiverTableName)+"(pk serial NOT NULL, the_geom geometry not null, PRIMARY KEY (PK))");
+    /**
+     * Input geometries then computed receivers of a cell
+     */
+    private static final class ReceiverCell {
+        final int cellI;
+        final int cellJ;
+        List<Geometry> sources;
+        List<MeshBuilder.PolygonWithHeight> buildings = new ArrayList<>();
+        List<Coordinate> vertices;
+        List<Triangle> triangles;
+
+        ReceiverCell(int cellI, int cellJ) {
+            this.cellI = cellI;
+            this.cellJ = cellJ;
         }
-        if(!JDBCUtilities.tableExists(connection, trianglesTableName)) {
-            Statement st = connection.createStatement();
-            st.execute("CREATE TABLE "+TableLocation.parse(trianglesTableName)+"(pk serial NOT NULL, the_geom geometry , PK_1 integer not null, PK_2 integer not null, PK_3 integer not null, cell_id integer not null, PRIMARY KEY (PK))");
+    }
+
+    /**
+     * Insert receivers and triangles of cells, batches are shared by all cells
+     */
+    private final class ReceiverWriter implements AutoCloseable {
+        final PreparedStatement receiversStatement;
+        final PreparedStatement trianglesStatement;
+        int receiversBatchSize = 0;
+        int trianglesBatchSize = 0;
+
+        ReceiverWriter(Connection connection, String receiverTableName, String trianglesTableName) throws SQLException {
+            receiversStatement = connection.prepareStatement("INSERT INTO "+TableLocation.parse(receiverTableName)+" VALUES (?, ?);");
+            trianglesStatement = connection.prepareStatement("INSERT INTO "+TableLocation.parse(trianglesTableName)+"(the_geom, PK_1, PK_2, PK_3, CELL_ID) VALUES (?, ?, ?, ?, ?);");
         }
-        int receiverPkOffset = receiverPK.get();
-        // Add vertices to receivers
-        PreparedStatement ps = connection.prepareStatement("INSERT INTO "+TableLocation.parse(receiverTableName)+" VALUES (?, ?);");
-        int batchSize = 0;
-        for(Coordinate v : vertices) {
-            ps.setInt(1, receiverPK.getAndAdd(1));
-            ps.setObject(2, geometryFactory.createPoint(v));
-            ps.addBatch();
-            batchSize++;
-            if (batchSize >= BATCH_MAX_SIZE) {
-                ps.executeBatch();
-                ps.clearBatch();
-                batchSize = 0;
+
+        void insertCell(ReceiverCell cell, AtomicInteger receiverPK) throws SQLException {
+            nbreceivers += cell.vertices.size();
+            // Reserve the primary keys of the cell vertices
+            int receiverPkOffset = receiverPK.getAndAdd(cell.vertices.size());
+            // Add vertices to receivers
+            int pk = receiverPkOffset;
+            for(Coordinate v : cell.vertices) {
+                receiversStatement.setInt(1, pk++);
+                receiversStatement.setObject(2, geometryFactory.createPoint(v));
+                receiversStatement.addBatch();
+                receiversBatchSize++;
+                if (receiversBatchSize >= BATCH_MAX_SIZE) {
+                    receiversStatement.executeBatch();
+                    receiversStatement.clearBatch();
+                    receiversBatchSize = 0;
+                }
+            }
+            // Add triangles
+            List<Coordinate> vertices = cell.vertices;
+            for(Triangle t : cell.triangles) {
+                trianglesStatement.setObject(1, geometryFactory.createPolygon(new Coordinate[]{vertices.get(t.getA()),
+                        vertices.get(t.getB()), vertices.get(t.getC()), vertices.get(t.getA())}));
+                trianglesStatement.setInt(2, t.getA() + receiverPkOffset);
+                trianglesStatement.setInt(3, t.getC() + receiverPkOffset);
+                trianglesStatement.setInt(4, t.getB() + receiverPkOffset);
+                trianglesStatement.setInt(5, cell.cellI * gridDim + cell.cellJ);
+                trianglesStatement.addBatch();
+                trianglesBatchSize++;
+                if (trianglesBatchSize >= BATCH_MAX_SIZE) {
+                    trianglesStatement.executeBatch();
+                    trianglesStatement.clearBatch();
+                    trianglesBatchSize = 0;
+                }
             }
         }
-        if (batchSize > 0) {
-            ps.executeBatch();
-        }
-        // Add triangles
-        ps = connection.prepareStatement("INSERT INTO "+TableLocation.parse(trianglesTableName)+"(the_geom, PK_1, PK_2, PK_3, CELL_ID) VALUES (?, ?, ?, ?, ?);");
-        batchSize = 0;
-        for(Triangle t : triangles) {
-            ps.setObject(1, geometryFactory.createPolygon(new Coordinate[]{vertices.get(t.getA()),
-                    vertices.get(t.getB()), vertices.get(t.getC()), vertices.get(t.getA())}));
-            ps.setInt(2, t.getA() + receiverPkOffset);
-            ps.setInt(3, t.getC() + receiverPkOffset);
-            ps.setInt(4, t.getB() + receiverPkOffset);
-            ps.setInt(5, cellI * gridDim + cellJ);
-            ps.addBatch();
-            batchSize++;
-            if (batchSize >= BATCH_MAX_SIZE) {
-                ps.executeBatch();
-                ps.clearBatch();
-                batchSize = 0;
+
+        void flush() throws SQLException {
+            if (receiversBatchSize > 0) {
+                receiversStatement.executeBatch();
+                receiversStatement.clearBatch();
+                receiversBatchSize = 0;
+            }
+            if (trianglesBatchSize > 0) {
+                trianglesStatement.executeBatch();
+                trianglesStatement.clearBatch();
+                trianglesBatchSize = 0;
             }
         }
-        if (batchSize > 0) {
-            ps.executeBatch();
+
+        @Override
+        public void close() throws SQLException {
+            receiversStatement.close();
+            trianglesStatement.close();
         }
     }
 
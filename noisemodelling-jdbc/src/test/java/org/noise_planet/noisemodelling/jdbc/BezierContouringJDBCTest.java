@@ -11,6 +11,7 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.List;
@@ -34,8 +35,7 @@ public class BezierContouringJDBCTest {
     }
 
 
-    @Test
-    public void testBezierContouring() throws SQLException, IOException {
+    private void loadTriangles() throws SQLException, IOException {
         GeoJsonRead.readGeoJson(connection, BezierContouringJDBCTest.class.getResource("lden_geom.geojson").getFile());
         GeoJsonRead.readGeoJson(connection, BezierContouringJDBCTest.class.getResource("triangles.geojson").getFile());
         try(Statement st = connection.createStatement()) {
@@ -45,6 +45,35 @@ public class BezierContouringJDBCTest {
             st.execute("ALTER TABLE TRIANGLES ADD PRIMARY KEY (PK)");
             st.execute("CREATE INDEX ON TRIANGLES(CELL_ID)");
         }
+    }
+
+    /**
+     * Check that two contouring tables contains the same number of polygons and area for each cell and level
+     */
+    private void assertSameContouring(String expectedTable, String table) throws SQLException {
+        try(Statement st = connection.createStatement(); Statement st2 = connection.createStatement()) {
+            String levelsQuery = "SELECT CELL_ID, ISOLVL, COUNT(*) CPT, SUM(ST_AREA(THE_GEOM)) AREA FROM %s" +
+                    " GROUP BY CELL_ID, ISOLVL ORDER BY CELL_ID, ISOLVL";
+            try(ResultSet expected = st.executeQuery(String.format(levelsQuery, expectedTable));
+                ResultSet actual = st2.executeQuery(String.format(levelsQuery, table))) {
+                int levelCount = 0;
+                while (expected.next()) {
+                    assertTrue(actual.next());
+                    assertEquals(expected.getInt("CELL_ID"), actual.getInt("CELL_ID"));
+                    assertEquals(expected.getInt("ISOLVL"), actual.getInt("ISOLVL"));
+                    assertEquals(expected.getInt("CPT"), actual.getInt("CPT"));
+                    assertEquals(expected.getDouble("AREA"), actual.getDouble("AREA"), 1e-6);
+                    levelCount++;
+                }
+                assertFalse(actual.next());
+                assertTrue(levelCount > 0);
+            }
+        }
+    }
+
+    @Test
+    public void testBezierContouring() throws SQLException, IOException {
+        loadTriangles();
 
         long start = System.currentTimeMillis();
         BezierContouring bezierContouring = new BezierContouring(BezierContouring.NF31_133_ISO, 2154);
@@ -70,4 +99,72 @@ public class BezierContouringJDBCTest {
 
         SHPWrite.exportTable(connection, "target/contouring.shp", "CONTOURING_NOISE_MAP");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testParallelBezierContouring() throws SQLException, IOException {
+        loadTriangles();
+
+        BezierContouring bezierContouring = new BezierContouring(BezierContouring.NF31_133_ISO, 2154);
+        bezierContouring.setPointTable("LDEN_GEOM");
+        bezierContouring.setPointTableField("LAEQ");
+        bezierContouring.setSmooth(true);
+        bezierContouring.setOutputTable("CONTOURING_SEQUENTIAL");
+        bezierContouring.createTable(connection);
+
+        bezierContouring.setThreadCount(4);
+        bezierContouring.setOutputTable("CONTOURING_PARALLEL");
+        bezierContouring.createTable(connection);
+
+        // Same polygons must be produced by both modes
+        assertSameContouring("CONTOURING_SEQUENTIAL", "CONTOURING_PARALLEL");
+    }
+
+    @Test
+    public void testInMemoryBezierContouring() throws SQLException, IOException {
+        loadTriangles();
+        // Levels are kept in single precision in memory, store the same values in the point table
+        try(Statement st = connection.createStatement()) {
+            st.execute("ALTER TABLE LDEN_GEOM ALTER COLUMN LAEQ REAL");
+        }
+
+        BezierContouring bezierContouring = new BezierContouring(BezierContouring.NF31_133_ISO, 2154);
+        bezierContouring.setPointTable("LDEN_GEOM");
+        bezierContouring.setPointTableField("LAEQ");
+        bezierContouring.setSmooth(false);
+        bezierContouring.setOutputTable("CONTOURING_JOIN");
+        bezierContouring.createTable(connection);
+
+        bezierContouring.setLoadPointsInMemory(true);
+        bezierContouring.setOutputTable("CONTOURING_IN_MEMORY");
+        bezierContouring.createTable(connection);
+
+        // Same polygons must be produced by both modes
+        assertSameContouring("CONTOURING_JOIN", "CONTOURING_IN_MEMORY");
+    }
+
+    @Test
+    public void testPointLevelMap() {
+        BezierContouring.PointLevelMap points = new BezierContouring.PointLevelMap(4);
+        for(long pk = 0; pk < 1000; pk++) {
+            points.put(pk * 7919, pk, -pk, pk / 10.f);
+        }
+        assertEquals(1000, points.size());
+        points.put(7919, 5, 6, 55.f);
+        assertEquals(1000, points.size());
+        for(long pk = 0; pk < 1000; pk++) {
+            int index = points.indexOf(pk * 7919);
+            assertTrue(index >= 0);
+            if(pk == 1) {
+                assertEquals(5, points.getCoordinate(index).x, 0);
+                assertEquals(6, points.getCoordinate(index).y, 0);
+                assertEquals(55.f, points.getLevel(index), 0);
+            } else {
+                assertEquals(pk, points.getCoordinate(index).x, 0);
+                assertEquals(-pk, points.getCoordinate(index).y, 0);
+                assertEquals(pk / 10.f, points.getLevel(index), 0);
+            }
+        }
+        assertEquals(-1, points.indexOf(1));
+        assertEquals(-1, points.indexOf(-7919));
+    }
+}
@@ -2276,6 +2276,63 @@ public class EvaluateAttenuationCnossosTest {
         assertEquals(44.07, ComputeRays.wToDba(ComputeRays.sumArray(roadLvl.length, dbaToW(propDataOut.getVerticesSoundLevel().get(0).value))), 0.1);
     }
 
+    /**
+     * Sources processed through the source quadtree without tolerated error must give the same levels than the sources
+     * sorted by power
+     */
+    @Test
+    public void testSourceQuadTreeSameLevels() throws LayerDelaunayError, ParseException {
+        GeometryFactory factory = new GeometryFactory();
+        WKTReader wktReader = new WKTReader(factory);
+        MeshBuilder mesh = new MeshBuilder();
+        mesh.addGeometry(wktReader.read("POLYGON ((20 20, 60 20, 60 40, 20 40, 20 20))"), 12);
+        mesh.finishPolygonFeeding(new Envelope(new Coordinate(-400, -400, 0.), new Coordinate(400, 400, 0.)));
+        FastObstructionTest manager = new FastObstructionTest(mesh.getPolygonWithHeight(), mesh.getTriangles(),
+                mesh.getTriNeighbors(), mesh.getVertices());
+
+        double[] roadLvl = new double[]{25.65, 38.15, 54.35, 60.35, 74.65, 66.75, 59.25, 53.95};
+        for(int i = 0; i < roadLvl.length; i++) {
+            roadLvl[i] = dbaToW(roadLvl[i]);
+        }
+        PropagationProcessPathData attData = new PropagationProcessPathData();
+        Map<Long, Double> sortedLevels = new HashMap<>();
+        Map<Long, Double> queueLevels = new HashMap<>();
+        for(int idRun = 0; idRun < 2; idRun++) {
+            DirectPropagationProcessData rayData = new DirectPropagationProcessData(manager);
+            rayData.addReceiver(new Coordinate(0, 0, 4));
+            rayData.addReceiver(new Coordinate(40, 80, 1.5));
+            rayData.addReceiver(new Coordinate(-150, 120, 4));
+            rayData.addSource(factory.createPoint(new Coordinate(10, -30, 1)), roadLvl);
+            rayData.addSource(factory.createPoint(new Coordinate(-200, 200, 1)), roadLvl);
+            rayData.addSource(factory.createLineString(new Coordinate[]{new Coordinate(-100, 60, 0.05),
+                    new Coordinate(100, 60, 0.05)}), roadLvl);
+            rayData.addSource(factory.createLineString(new Coordinate[]{new Coordinate(80, -100, 0.05),
+                    new Coordinate(90, 0, 5), new Coordinate(120, 150, 0.05)}), roadLvl);
+            rayData.setComputeHorizontalDiffraction(true);
+            rayData.setComputeVerticalDiffraction(true);
+            rayData.reflexionOrder = 1;
+            rayData.maxSrcDist = 500;
+            // Zero tolerated error processes all the sources through the source quadtree
+            rayData.maximumError = idRun == 0 ? Double.NEGATIVE_INFINITY : 0;
+            RayOut propDataOut = new RayOut(false, attData, rayData);
+            ComputeRays computeRays = new ComputeRays(rayData);
+            computeRays.setThreadCount(1);
+            computeRays.run(propDataOut);
+            Map<Long, Double> levels = idRun == 0 ? sortedLevels : queueLevels;
+            for(ComputeRaysOutAttenuation.VerticeSL lvl : propDataOut.getVerticesSoundLevel()) {
+                double power = ComputeRays.sumArray(lvl.value.length, dbaToW(lvl.value));
+                Double previous = levels.get(lvl.receiverId);
+                levels.put(lvl.receiverId, previous == null ? power : previous + power);
+            }
+        }
+        assertEquals(3, sortedLevels.size());
+        assertEquals(sortedLevels.keySet(), queueLevels.keySet());
+        for(Map.Entry<Long, Double> entry : sortedLevels.entrySet()) {
+            assertEquals(ComputeRays.wToDba(entry.getValue()), ComputeRays.wToDba(queueLevels.get(entry.getKey())),
+                    1e-6);
+        }
+    }
+
     @Test
     public void testRoseIndex() {
         double angle_section = (2 * Math.PI) / PropagationProcessPathData.DEFAULT_WIND_ROSE.length;
@@ -19,12 +19,16 @@ import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.Assert.*;
 
@@ -365,6 +369,197 @@ public class LDENPointNoiseMapFactoryTest {
 
     }
 
+    @Test
+    public void testBinaryOutput() throws SQLException, IOException {
+        SHPRead.readShape(connection, LDENPointNoiseMapFactoryTest.class.getResource("roads_traff.shp").getFile());
+        SHPRead.readShape(connection, LDENPointNoiseMapFactoryTest.class.getResource("buildings.shp").getFile());
+        SHPRead.readShape(connection, LDENPointNoiseMapFactoryTest.class.getResource("receivers.shp").getFile());
+
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+
+        LDENPointNoiseMapFactory factory = new LDENPointNoiseMapFactory(connection, ldenConfig);
+
+        ldenConfig.setComputeLDay(false);
+        ldenConfig.setComputeLEvening(false);
+        ldenConfig.setComputeLNight(true);
+        ldenConfig.setComputeLDEN(false);
+        ldenConfig.setMergeSources(true); // No idsource column
+        ldenConfig.setOutputMode(LDENConfig.OUTPUT_MODE.OUTPUT_MODE_BINARY_FILE);
+        ldenConfig.setBinaryOutputDirectory(new File("target/"));
+        ldenConfig.setImportBinaryOutput(true);
+
+        PointNoiseMap pointNoiseMap = new PointNoiseMap("BUILDINGS", "ROADS_TRAFF",
+                "RECEIVERS");
+
+        pointNoiseMap.setComputeRaysOutFactory(factory);
+        pointNoiseMap.setPropagationProcessDataFactory(factory);
+
+        pointNoiseMap.setMaximumPropagationDistance(100.0);
+        pointNoiseMap.setComputeHorizontalDiffraction(false);
+        pointNoiseMap.setComputeVerticalDiffraction(false);
+        pointNoiseMap.setSoundReflectionOrder(0);
+
+        // Set of already processed receivers
+        Set<Long> receivers = new HashSet<>();
+
+        try {
+            RootProgressVisitor progressLogger = new RootProgressVisitor(1, true, 1);
+
+            pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+
+            factory.start();
+
+            pointNoiseMap.setGridDim(4); // force grid size
+
+            Map<PointNoiseMap.CellIndex, Integer> cells = pointNoiseMap.searchPopulatedCells(connection);
+            ProgressVisitor progressVisitor = progressLogger.subProcess(cells.size());
+            // Iterate over computation areas
+            for(PointNoiseMap.CellIndex cellIndex : new TreeSet<>(cells.keySet())) {
+                // Run ray propagation
+                pointNoiseMap.evaluateCell(connection, cellIndex.getLatitudeIndex(), cellIndex.getLongitudeIndex(), progressVisitor, receivers);
+            }
+        }finally {
+            factory.stop();
+        }
+        connection.commit();
+
+        File binaryFile = LDENBinaryResultFile.getFile(new File("target/"), ldenConfig.lNightTable);
+        assertTrue(binaryFile.exists());
+        int rowCount = 0;
+        double maxLeq = Double.NEGATIVE_INFINITY;
+        try(LDENBinaryResultFile.Reader reader = new LDENBinaryResultFile.Reader(binaryFile)) {
+            assertTrue(reader.isMergeSources());
+            assertEquals(ldenConfig.propagationProcessPathData.freq_lvl, reader.getFrequencies());
+            while (reader.next()) {
+                rowCount++;
+                maxLeq = Math.max(maxLeq, reader.getLeq());
+            }
+        }
+        assertEquals(830, rowCount);
+        assertEquals(79, maxLeq, 2.0);
+
+        // Imported table
+        assertTrue(JDBCUtilities.tableExists(connection, ldenConfig.lNightTable));
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT COUNT(*) CPT, MAX(LEQ) FROM " + ldenConfig.lNightTable)) {
+            assertTrue(rs.next());
+            assertEquals(830, rs.getInt(1));
+            assertEquals(maxLeq, rs.getDouble(2), 0.01);
+        }
+    }
+
+    @Test
+    public void testResultQueueBackPressure() throws InterruptedException {
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+        ldenConfig.setOutputMaximumQueue(1);
+        LDENComputeRaysOut.LdenData ldenData = new LDENComputeRaysOut.LdenData();
+        ldenData.notifyPushed(2);
+        AtomicBoolean released = new AtomicBoolean(false);
+        CountDownLatch producerDone = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            released.set(ldenData.awaitCapacity(ldenConfig));
+            producerDone.countDown();
+        });
+        producer.start();
+        // Queue is full, producer must block on the condition until rows are consumed
+        while (ldenData.getWaitingProducerCount() == 0) {
+            assertEquals(1, producerDone.getCount());
+            Thread.yield();
+        }
+        assertEquals(2, ldenData.queueSize.get());
+        assertFalse(released.get());
+        ldenData.queueSize.addAndGet(-2);
+        ldenData.notifyConsumed(2);
+        assertTrue(producerDone.await(5, TimeUnit.SECONDS));
+        assertTrue(released.get());
+        assertEquals(0, ldenData.getWaitingProducerCount());
+        assertTrue(ldenData.producerStallTime.sum() > 0);
+        assertEquals(2, ldenData.writtenRows.sum());
+        // Aborted computation release producers
+        ldenData.notifyPushed(2);
+        ldenConfig.aborted = true;
+        assertFalse(ldenData.awaitCapacity(ldenConfig));
+    }
+
+    @Test
+    public void testAttenuationMatrix() throws SQLException, IOException {
+        SHPRead.readShape(connection, LDENPointNoiseMapFactoryTest.class.getResource("lw_roads.shp").getFile());
+        SHPRead.readShape(connection, LDENPointNoiseMapFactoryTest.class.getResource("buildings.shp").getFile());
+        SHPRead.readShape(connection, LDENPointNoiseMapFactoryTest.class.getResource("receivers.shp").getFile());
+
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_LW_DEN);
+        ldenConfig.setComputeLDay(true);
+        ldenConfig.setComputeLEvening(false);
+        ldenConfig.setComputeLNight(false);
+        ldenConfig.setComputeLDEN(false);
+        ldenConfig.setMergeSources(true);
+        File matrixFile = new File("target/testAttenuationMatrix" + AttenuationMatrixFile.FILE_EXTENSION);
+        ldenConfig.setAttenuationMatrixFile(matrixFile);
+
+        LDENPointNoiseMapFactory factory = new LDENPointNoiseMapFactory(connection, ldenConfig);
+
+        PointNoiseMap pointNoiseMap = new PointNoiseMap("BUILDINGS", "LW_ROADS",
+                "RECEIVERS");
+
+        pointNoiseMap.setComputeRaysOutFactory(factory);
+        pointNoiseMap.setPropagationProcessDataFactory(factory);
+
+        pointNoiseMap.setMaximumPropagationDistance(100.0);
+        pointNoiseMap.setComputeHorizontalDiffraction(false);
+        pointNoiseMap.setComputeVerticalDiffraction(false);
+        pointNoiseMap.setSoundReflectionOrder(0);
+
+        Set<Long> receivers = new HashSet<>();
+        try {
+            pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+            factory.start();
+            pointNoiseMap.setGridDim(2);
+            Map<PointNoiseMap.CellIndex, Integer> cells = pointNoiseMap.searchPopulatedCells(connection);
+            RootProgressVisitor progressLogger = new RootProgressVisitor(1, true, 1);
+            ProgressVisitor progressVisitor = progressLogger.subProcess(cells.size());
+            for(PointNoiseMap.CellIndex cellIndex : new TreeSet<>(cells.keySet())) {
+                pointNoiseMap.evaluateCell(connection, cellIndex.getLatitudeIndex(), cellIndex.getLongitudeIndex(), progressVisitor, receivers);
+            }
+        } finally {
+            factory.stop();
+        }
+
+        // Recompute day levels from the matrix and the sources day emission
+        List<Integer> frequencies = ldenConfig.propagationProcessPathData.freq_lvl;
+        Map<Long, double[]> sourcesLevels = new HashMap<>();
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT * FROM LW_ROADS")) {
+            while (rs.next()) {
+                double[] lw = new double[frequencies.size()];
+                for(int idFreq = 0; idFreq < lw.length; idFreq++) {
+                    lw[idFreq] = rs.getDouble("LWD" + frequencies.get(idFreq));
+                }
+                sourcesLevels.put(rs.getLong("PK"), lw);
+            }
+        }
+        Map<Long, double[]> receiversLevels;
+        try(AttenuationMatrixEngine engine = new AttenuationMatrixEngine(matrixFile)) {
+            assertEquals(frequencies, engine.getFrequencies());
+            assertEquals(receivers.size(), engine.getReceiverCount());
+            engine.setThreadCount(2);
+            receiversLevels = engine.computeLevels(sourcesLevels);
+        }
+        int checkedReceivers = 0;
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT * FROM " + ldenConfig.lDayTable)) {
+            while (rs.next()) {
+                double[] expected = new double[frequencies.size()];
+                for(int idFreq = 0; idFreq < expected.length; idFreq++) {
+                    expected[idFreq] = rs.getDouble("HZ" + frequencies.get(idFreq));
+                }
+                double[] levels = receiversLevels.get(rs.getLong("IDRECEIVER"));
+                assertNotNull(levels);
+                if(expected[0] > -99) {
+                    assertArrayEquals(expected, levels, 0.05);
+                    checkedReceivers++;
+                }
+            }
+        }
+        assertTrue(checkedReceivers > 0);
+    }
+
     @Test
     public void testReadFrequencies() throws SQLException, IOException {
         SHPRead.readShape(connection, LDENPointNoiseMapFactoryTest.class.getResource("lw_roads.shp").getFile());
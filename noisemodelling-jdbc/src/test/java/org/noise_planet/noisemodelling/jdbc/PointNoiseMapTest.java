@@ -20,15 +20,19 @@ import org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation;
 import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
 
 import java.io.DataInputStream;
+import java.io.File;
 import java.io.DataOutputStream;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.sql.DataSource;
+
 import static org.junit.Assert.*;
 import static org.noise_planet.noisemodelling.jdbc.Utils.getRunScriptRes;
 
@@ -105,6 +109,172 @@ public class PointNoiseMapTest {
         }
     }
 
+    /**
+     * Cells prepared in advance by the pipelined driver, using a dedicated connection, must give the same levels than
+     * the cells evaluated one after the other
+     */
+    @Test
+    public void testEvaluateCellsPipeline() throws Exception {
+        DataSource dataSource = H2GISDBFactory.createDataSource(PointNoiseMapTest.class.getSimpleName() + "_pipeline",
+                true);
+        try(Connection connection = SFSUtilities.wrapConnection(dataSource.getConnection());
+            Connection prefetchConnection = SFSUtilities.wrapConnection(dataSource.getConnection());
+            Statement st = connection.createStatement()) {
+            st.execute(getRunScriptRes("scene_with_dem.sql"));
+            st.execute("DROP TABLE IF EXISTS RECEIVERS");
+            st.execute("CREATE TABLE RECEIVERS(the_geom POINT, GID SERIAL)");
+            // Receivers spread over the scene in order to populate more cells than the prefetch depth
+            st.execute("INSERT INTO RECEIVERS(the_geom) SELECT ST_MAKEPOINT(-40 + 40 * X.X, -120 + 40 * Y.X, 4)" +
+                    " FROM SYSTEM_RANGE(0, 9) X, SYSTEM_RANGE(0, 7) Y");
+            PointNoiseMap pointNoiseMap = new PointNoiseMap("BUILDINGS", "SOUND_SOURCE", "RECEIVERS");
+            pointNoiseMap.setComputeHorizontalDiffraction(true);
+            pointNoiseMap.setSoundReflectionOrder(0);
+            pointNoiseMap.setReceiverHasAbsoluteZCoordinates(false);
+            pointNoiseMap.setSourceHasAbsoluteZCoordinates(false);
+            pointNoiseMap.setHeightField("HEIGHT");
+            pointNoiseMap.setDemTable("DEM");
+            pointNoiseMap.setComputeVerticalDiffraction(false);
+            pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+            pointNoiseMap.setGridDim(3);
+
+            pointNoiseMap.setComputeRaysOutFactory(new JDBCComputeRaysOut(false));
+            pointNoiseMap.setPropagationProcessDataFactory(new JDBCPropagationData());
+            pointNoiseMap.setCellPrefetchDepth(2);
+
+            // Reference levels, cells evaluated one after the other
+            Map<Long, double[]> expectedLevels = new HashMap<>();
+            Set<Long> expectedReceivers = new HashSet<>();
+            for(int i=0; i < pointNoiseMap.getGridDim(); i++) {
+                for(int j=0; j < pointNoiseMap.getGridDim(); j++) {
+                    IComputeRaysOut out = pointNoiseMap.evaluateCell(connection, i, j,
+                            new RootProgressVisitor(1, false, 5), expectedReceivers);
+                    if(out instanceof ComputeRaysOutAttenuation) {
+                        for(ComputeRaysOutAttenuation.VerticeSL lvl :
+                                ((ComputeRaysOutAttenuation) out).getVerticesSoundLevel()) {
+                            assertNull(expectedLevels.put(lvl.receiverId, lvl.value));
+                        }
+                    }
+                }
+            }
+
+            Map<Long, double[]> levels = new HashMap<>();
+            Set<Long> receivers = new HashSet<>();
+            Map<PointNoiseMap.CellIndex, Integer> cells = pointNoiseMap.searchPopulatedCells(connection);
+            assertTrue(cells.size() > pointNoiseMap.getCellPrefetchDepth());
+            RootProgressVisitor progressVisitor = new RootProgressVisitor(cells.size(), true, 5);
+            pointNoiseMap.evaluateCells(connection, prefetchConnection, new TreeSet<>(cells.keySet()), progressVisitor,
+                    receivers, out -> {
+                if(out instanceof ComputeRaysOutAttenuation) {
+                    for(ComputeRaysOutAttenuation.VerticeSL lvl :
+                            ((ComputeRaysOutAttenuation) out).getVerticesSoundLevel()) {
+                        assertNull(levels.put(lvl.receiverId, lvl.value));
+                    }
+                }
+            });
+            // Same spectrum for each receiver
+            assertEquals(expectedReceivers, receivers);
+            assertFalse(expectedLevels.isEmpty());
+            assertEquals(expectedLevels.keySet(), levels.keySet());
+            for(Map.Entry<Long, double[]> entry : expectedLevels.entrySet()) {
+                assertArrayEquals(entry.getValue(), levels.get(entry.getKey()), 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void testCellMeshCache() throws Exception {
+        File cacheDirectory = new File("target/mesh_cache_test");
+        if(cacheDirectory.exists()) {
+            for(File file : Objects.requireNonNull(cacheDirectory.listFiles())) {
+                assertTrue(file.delete());
+            }
+        }
+        try(Statement st = connection.createStatement()) {
+            st.execute(getRunScriptRes("scene_with_dem.sql"));
+            st.execute("DROP TABLE IF EXISTS RECEIVERS");
+            st.execute("CREATE TABLE RECEIVERS(the_geom POINT, GID SERIAL)");
+            st.execute("INSERT INTO RECEIVERS(the_geom) VALUES ('POINT(-72 41 11)')");
+            st.execute("INSERT INTO RECEIVERS(the_geom) VALUES ('POINT(-9 41 1.6)')");
+            st.execute("INSERT INTO RECEIVERS(the_geom) VALUES ('POINT(70 11 7)')");
+            PointNoiseMap pointNoiseMap = new PointNoiseMap("BUILDINGS", "SOUND_SOURCE", "RECEIVERS");
+            pointNoiseMap.setComputeHorizontalDiffraction(true);
+            pointNoiseMap.setSoundReflectionOrder(1);
+            pointNoiseMap.setReceiverHasAbsoluteZCoordinates(true);
+            pointNoiseMap.setSourceHasAbsoluteZCoordinates(false);
+            pointNoiseMap.setHeightField("HEIGHT");
+            pointNoiseMap.setDemTable("DEM");
+            pointNoiseMap.setComputeVerticalDiffraction(true);
+            pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+            pointNoiseMap.setGridDim(1);
+            pointNoiseMap.setCellMeshCache(new CellMeshCache(cacheDirectory));
+
+            pointNoiseMap.setComputeRaysOutFactory(new JDBCComputeRaysOut(false));
+            pointNoiseMap.setPropagationProcessDataFactory(new JDBCPropagationData());
+
+            List<List<ComputeRaysOutAttenuation.VerticeSL>> runs = new ArrayList<>();
+            for(int run = 0; run < 2; run++) {
+                IComputeRaysOut out = pointNoiseMap.evaluateCell(connection, 0, 0,
+                        new RootProgressVisitor(1, false, 5), new HashSet<>());
+                assertTrue(out instanceof ComputeRaysOutAttenuation);
+                List<ComputeRaysOutAttenuation.VerticeSL> levels = ((ComputeRaysOutAttenuation) out).getVerticesSoundLevel();
+                levels.sort(Comparator.comparingLong(v -> v.receiverId));
+                runs.add(levels);
+                // One triangulation stored
+                assertEquals(1, Objects.requireNonNull(cacheDirectory.listFiles()).length);
+            }
+            // Same levels with the triangulation loaded from the cache
+            assertEquals(3, runs.get(0).size());
+            assertEquals(runs.get(0).size(), runs.get(1).size());
+            for(int i = 0; i < runs.get(0).size(); i++) {
+                assertEquals(runs.get(0).get(i).receiverId, runs.get(1).get(i).receiverId);
+                assertArrayEquals(runs.get(0).get(i).value, runs.get(1).get(i).value, 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void testGridSpatialIndex() throws Exception {
+        try(Statement st = connection.createStatement()) {
+            st.execute(getRunScriptRes("scene_with_dem.sql"));
+            st.execute("DROP TABLE IF EXISTS RECEIVERS");
+            st.execute("CREATE TABLE RECEIVERS(the_geom POINT, GID SERIAL)");
+            st.execute("INSERT INTO RECEIVERS(the_geom) VALUES ('POINT(-72 41 11)')");
+            st.execute("INSERT INTO RECEIVERS(the_geom) VALUES ('POINT(-9 41 1.6)')");
+            st.execute("INSERT INTO RECEIVERS(the_geom) VALUES ('POINT(70 11 7)')");
+            PointNoiseMap pointNoiseMap = new PointNoiseMap("BUILDINGS", "SOUND_SOURCE", "RECEIVERS");
+            pointNoiseMap.setComputeHorizontalDiffraction(true);
+            pointNoiseMap.setSoundReflectionOrder(1);
+            pointNoiseMap.setReceiverHasAbsoluteZCoordinates(true);
+            pointNoiseMap.setSourceHasAbsoluteZCoordinates(false);
+            pointNoiseMap.setHeightField("HEIGHT");
+            pointNoiseMap.setDemTable("DEM");
+            pointNoiseMap.setComputeVerticalDiffraction(true);
+            pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+            pointNoiseMap.setGridDim(1);
+
+            pointNoiseMap.setComputeRaysOutFactory(new JDBCComputeRaysOut(false));
+            pointNoiseMap.setPropagationProcessDataFactory(new JDBCPropagationData());
+
+            List<List<ComputeRaysOutAttenuation.VerticeSL>> runs = new ArrayList<>();
+            for(FastObstructionTest.SpatialIndexType indexType : FastObstructionTest.SpatialIndexType.values()) {
+                pointNoiseMap.setSpatialIndexType(indexType);
+                IComputeRaysOut out = pointNoiseMap.evaluateCell(connection, 0, 0,
+                        new RootProgressVisitor(1, false, 5), new HashSet<>());
+                assertTrue(out instanceof ComputeRaysOutAttenuation);
+                List<ComputeRaysOutAttenuation.VerticeSL> levels = ((ComputeRaysOutAttenuation) out).getVerticesSoundLevel();
+                levels.sort(Comparator.comparingLong(v -> v.receiverId));
+                runs.add(levels);
+            }
+            // Same levels with the buildings and triangles indexed in a grid
+            assertEquals(3, runs.get(0).size());
+            assertEquals(runs.get(0).size(), runs.get(1).size());
+            for(int i = 0; i < runs.get(0).size(); i++) {
+                assertEquals(runs.get(0).get(i).receiverId, runs.get(1).get(i).receiverId);
+                assertArrayEquals(runs.get(0).get(i).value, runs.get(1).get(i).value, 1e-6);
+            }
+        }
+    }
+
     @Test
     public void testGroundSurface() throws Exception {
         try(Statement st = connection.createStatement()) {
@@ -143,6 +313,44 @@ public class PointNoiseMapTest {
         }
     }
 
+    @Test
+    public void testGroundFactorRaster() throws Exception {
+        try(Statement st = connection.createStatement()) {
+            st.execute(String.format("CALL SHPREAD('%s', 'LANDCOVER2000')", PointNoiseMapTest.class.getResource("landcover2000.shp").getFile()));
+            st.execute(getRunScriptRes("scene_with_landcover.sql"));
+            PointNoiseMap pointNoiseMap = new PointNoiseMap("BUILDINGS", "ROADS_GEOM", "RECEIVERS");
+            pointNoiseMap.setHeightField("HEIGHT");
+            pointNoiseMap.setSoilTableName("LAND_G");
+            pointNoiseMap.setGroundFactorRasterCellSize(10);
+            pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+            // Align the envelope on the soil tiles so that both modes cover the same area
+            double tileSize = pointNoiseMap.getGroundSurfaceSplitSideLength();
+            Envelope mainEnvelope = pointNoiseMap.getMainEnvelope();
+            Envelope envelope = new Envelope(Math.floor(mainEnvelope.getMinX() / tileSize) * tileSize,
+                    Math.ceil(mainEnvelope.getMaxX() / tileSize) * tileSize,
+                    Math.floor(mainEnvelope.getMinY() / tileSize) * tileSize,
+                    Math.ceil(mainEnvelope.getMaxY() / tileSize) * tileSize);
+            List<GeoWithSoilType> soils = new ArrayList<>();
+            pointNoiseMap.fetchCellSoilAreas(connection, envelope, soils);
+            double expectedSum = 0;
+            for(GeoWithSoilType soil : soils) {
+                expectedSum += soil.getGeo().getArea() * soil.getType();
+            }
+            GroundFactorRaster raster = pointNoiseMap.fetchCellSoilRaster(connection, envelope);
+            assertNotNull(raster);
+            double sum = 0;
+            for(int row = 0; row < raster.getRows(); row++) {
+                for(int column = 0; column < raster.getColumns(); column++) {
+                    float g = raster.getCellValue(column, row);
+                    assertTrue(g >= 0 && g <= 1.0001);
+                    sum += g * raster.getCellSize() * raster.getCellSize();
+                }
+            }
+            assertTrue(expectedSum > 0);
+            assertEquals(expectedSum, sum, expectedSum * 0.01);
+        }
+    }
+
     @Test
     public void testNoiseMapBuilding() throws Exception {
         try(Statement st = connection.createStatement()) {
@@ -164,6 +372,47 @@ public class PointNoiseMapTest {
         }
     }
 
+    @Test
+    public void testParallelNoiseMapBuilding() throws Exception {
+        try(Statement st = connection.createStatement()) {
+            st.execute(String.format("CALL SHPREAD('%s', 'LANDCOVER2000')", PointNoiseMapTest.class.getResource("landcover2000.shp").getFile()));
+            st.execute(getRunScriptRes("scene_with_landcover.sql"));
+            TriangleNoiseMap noisemap = new TriangleNoiseMap("BUILDINGS", "ROADS_GEOM");
+            noisemap.setReceiverHasAbsoluteZCoordinates(false);
+            noisemap.setSourceHasAbsoluteZCoordinates(false);
+            noisemap.setHeightField("HEIGHT");
+            noisemap.initialize(connection, new EmptyProgressVisitor());
+
+            AtomicInteger pk = new AtomicInteger(0);
+            for(int i=0; i < noisemap.getGridDim(); i++) {
+                for(int j=0; j < noisemap.getGridDim(); j++) {
+                    noisemap.generateReceivers(connection, i, j, "NM_RECEIVERS", "TRIANGLES", pk);
+                }
+            }
+
+            noisemap.setParallelComputationCount(4);
+            AtomicInteger parallelPk = new AtomicInteger(0);
+            noisemap.generateReceivers(connection, "NM_RECEIVERS_PARALLEL", "TRIANGLES_PARALLEL", parallelPk,
+                    new EmptyProgressVisitor());
+            assertEquals(pk.get(), parallelPk.get());
+
+            // Same receivers and triangles with the same primary keys
+            try(ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM NM_RECEIVERS R, NM_RECEIVERS_PARALLEL P" +
+                    " WHERE R.PK = P.PK AND ST_EQUALS(R.THE_GEOM, P.THE_GEOM)")) {
+                assertTrue(rs.next());
+                assertEquals(pk.get(), rs.getInt(1));
+            }
+            try(ResultSet rs = st.executeQuery("SELECT COUNT(*), SUM(PK_1), SUM(PK_2), SUM(PK_3) FROM TRIANGLES" +
+                    " UNION ALL SELECT COUNT(*), SUM(PK_1), SUM(PK_2), SUM(PK_3) FROM TRIANGLES_PARALLEL")) {
+                assertTrue(rs.next());
+                long[] expected = new long[] {rs.getLong(1), rs.getLong(2), rs.getLong(3), rs.getLong(4)};
+                assertTrue(expected[0] > 0);
+                assertTrue(rs.next());
+                assertArrayEquals(expected, new long[] {rs.getLong(1), rs.getLong(2), rs.getLong(3), rs.getLong(4)});
+            }
+        }
+    }
+
     //    @Test
     //    public void testNoiseMapBuilding2() throws Exception {
     //        try(Statement st = connection.createStatement()) {
@@ -0,0 +1,242 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ *
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ *
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ *
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.io.ParseException;
+import org.locationtech.jts.io.WKBReader;
+import org.locationtech.jts.io.WKBWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Store triangulation results on disk in order to skip the triangulation of a cell when its buildings and
+ * topography did not change since a previous run. Each entry is identified by the digest of the
+ * {@link MeshBuilder} input data, see {@link MeshBuilder#computeInputDigest(Envelope)}.
+ */
+public class CellMeshCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CellMeshCache.class);
+    private static final int MAGIC = 0x4E4D4D43;
+    private static final int VERSION = 1;
+    public static final String FILE_EXTENSION = ".mesh";
+    private final File directory;
+    private final GeometryFactory geometryFactory = new GeometryFactory();
+
+    /**
+     * @param directory Folder of cache files, created if it does not exist
+     */
+    public CellMeshCache(File directory) {
+        this.directory = directory;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @param mesh Mesh with all input data, before the call to finishPolygonFeeding
+     * @param boundingBox Bounding box that will be provided to finishPolygonFeeding
+     * @return Cache entry identifier
+     */
+    public static String computeKey(MeshBuilder mesh, Envelope boundingBox) {
+        byte[] digest = mesh.computeInputDigest(boundingBox);
+        StringBuilder sb = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    private File getFile(String key) {
+        return new File(directory, key + FILE_EXTENSION);
+    }
+
+    /**
+     * @param key Cache entry identifier
+     * @return Obstruction test instance built from the stored triangulation or null if there is no such entry
+     * @throws IOException Error while reading the cache file
+     */
+    public FastObstructionTest load(String key) throws IOException {
+        return load(key, FastObstructionTest.SpatialIndexType.STRTREE);
+    }
+
+    /**
+     * @param key Cache entry identifier
+     * @param indexType Spatial index of buildings and triangles of the returned instance
+     * @return Obstruction test instance built from the stored triangulation or null if there is no such entry
+     * @throws IOException Error while reading the cache file
+     */
+    public FastObstructionTest load(String key, FastObstructionTest.SpatialIndexType indexType) throws IOException {
+        File file = getFile(key);
+        if (!file.exists()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                LOGGER.warn("Ignore unexpected mesh cache file " + file);
+                return null;
+            }
+            WKBReader wkbReader = new WKBReader(geometryFactory);
+            int polygonCount = buffer.getInt();
+            List<MeshBuilder.PolygonWithHeight> polygons = new ArrayList<>(polygonCount);
+            for (int i = 0; i < polygonCount; i++) {
+                int primaryKey = buffer.getInt();
+                double height = buffer.getDouble();
+                int alphaCount = buffer.getInt();
+                List<Double> alpha = new ArrayList<>(alphaCount);
+                for (int idAlpha = 0; idAlpha < alphaCount; idAlpha++) {
+                    alpha.add(buffer.getDouble());
+                }
+                byte[] wkb = new byte[buffer.getInt()];
+                buffer.get(wkb);
+                MeshBuilder.PolygonWithHeight polygon = new MeshBuilder.PolygonWithHeight(wkbReader.read(wkb),
+                        height, alpha);
+                polygon.setPrimaryKey(primaryKey);
+                polygons.add(polygon);
+            }
+            List<Triangle> triangles = readTriangles(buffer, true);
+            List<Triangle> neighbors = readTriangles(buffer, false);
+            int vertexCount = buffer.getInt();
+            List<Coordinate> vertices = new ArrayList<>(vertexCount);
+            for (int i = 0; i < vertexCount; i++) {
+                vertices.add(new Coordinate(buffer.getDouble(), buffer.getDouble(), buffer.getDouble()));
+            }
+            return new FastObstructionTest(polygons, triangles, neighbors, vertices, indexType);
+        } catch (ParseException ex) {
+            throw new IOException("Invalid geometry in mesh cache file " + file, ex);
+        }
+    }
+
+    private static List<Triangle> readTriangles(ByteBuffer buffer, boolean withAttribute) {
+        int triangleCount = buffer.getInt();
+        if (triangleCount < 0) {
+            return null;
+        }
+        List<Triangle> triangles = new ArrayList<>(triangleCount);
+        for (int i = 0; i < triangleCount; i++) {
+            if (withAttribute) {
+                triangles.add(new Triangle(buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt()));
+            } else {
+                triangles.add(new Triangle(buffer.getInt(), buffer.getInt(), buffer.getInt()));
+            }
+        }
+        return triangles;
+    }
+
+    private static void writeTriangles(DataOutputStream out, List<Triangle> triangles, boolean withAttribute)
+            throws IOException {
+        if (triangles == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(triangles.size());
+        for (Triangle triangle : triangles) {
+            out.writeInt(triangle.getA());
+            out.writeInt(triangle.getB());
+            out.writeInt(triangle.getC());
+            if (withAttribute) {
+                out.writeInt(triangle.getAttribute());
+            }
+        }
+    }
+
+    /**
+     * Store the triangulation of the mesh
+     * @param key Cache entry identifier computed before the triangulation
+     * @param mesh Mesh after the call to finishPolygonFeeding
+     * @throws IOException Error while writing the cache file
+     */
+    public void store(String key, MeshBuilder mesh) throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Unable to create mesh cache folder " + directory);
+        }
+        File file = getFile(key);
+        // Write in a temporary file first, as other processes may read the cache at the same time
+        File tempFile = File.createTempFile(key, ".tmp", directory);
+        try {
+            try (OutputStream fileStream = Files.newOutputStream(tempFile.toPath());
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileStream))) {
+                WKBWriter wkbWriter = new WKBWriter(3);
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                List<MeshBuilder.PolygonWithHeight> polygons = mesh.getPolygonWithHeight();
+                out.writeInt(polygons.size());
+                for (MeshBuilder.PolygonWithHeight polygon : polygons) {
+                    out.writeInt(polygon.getPrimaryKey());
+                    out.writeDouble(polygon.getHeight());
+                    List<Double> alpha = polygon.getAlpha();
+                    out.writeInt(alpha.size());
+                    for (double alphaValue : alpha) {
+                        out.writeDouble(alphaValue);
+                    }
+                    Geometry geometry = polygon.getGeometry();
+                    byte[] wkb = wkbWriter.write(geometry);
+                    out.writeInt(wkb.length);
+                    out.write(wkb);
+                }
+                writeTriangles(out, mesh.getTriangles(), true);
+                writeTriangles(out, mesh.getTriNeighbors(), false);
+                List<Coordinate> vertices = mesh.getVertices();
+                out.writeInt(vertices.size());
+                for (Coordinate vertex : vertices) {
+                    out.writeDouble(vertex.x);
+                    out.writeDouble(vertex.y);
+                    out.writeDouble(vertex.z);
+                }
+            }
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
+}
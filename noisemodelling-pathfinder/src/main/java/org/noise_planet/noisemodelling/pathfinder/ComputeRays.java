@@ -49,8 +49,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.noise_planet.noisemodelling.pathfinder.utils.AcousticPropagation.getADiv;
 
@@ -65,10 +67,18 @@ public class ComputeRays {
     // in order to reduce computational cost
     private final static double MAX_RATIO_HULL_DIRECT_PATH = 4;
     private int threadCount;
+    private int receiverChunkSize = 0;
     private PropagationProcessData data;
 
     private STRtree rTreeOfGeoSoil;
+    // Built on first use by receivers with a maximum error
+    private volatile SourceQuadTree sourceQuadTree;
+    // Line sources points by source index, line index and segment size, see getDiscretizedLineSource
+    private final Map<Long, DiscretizedLineSource> lineSourceDiscretization = new ConcurrentHashMap<>();
+    // Segment size of the cached line source discretization is at most 2^MAXIMUM_DISCRETIZATION_LEVEL meters
+    private final static int MAXIMUM_DISCRETIZATION_LEVEL = 62;
     private final static Logger LOGGER = LoggerFactory.getLogger(ComputeRays.class);
+    private final static ThreadLocal<List<double[]>> SCRATCH_BUFFERS = ThreadLocal.withInitial(ArrayList::new);
 
     /**
      * Eq 2.5.9
@@ -81,14 +91,25 @@ public class ComputeRays {
      * @return
      */
     public static double[] sumArrayWithPonderation(double[] array1, double[] array2, double p) {
-        if (array1.length != array2.length) {
+        return sumArrayWithPonderation(array1, array2, p, new double[array1.length]);
+    }
+
+    /**
+     * Eq 2.5.9 without allocation
+     * @param array1
+     * @param array2
+     * @param p the mean occurrence p of favourable conditions in the direction of the path (S,R)
+     * @param dest Destination array, may be array1 or array2
+     * @return dest
+     */
+    public static double[] sumArrayWithPonderation(double[] array1, double[] array2, double p, double[] dest) {
+        if (array1.length != array2.length || dest.length != array1.length) {
             throw new IllegalArgumentException("Not same size array");
         }
-        double[] sum = new double[array1.length];
         for (int i = 0; i < array1.length; i++) {
-            sum[i] = wToDba(p * dbaToW(array1[i]) + (1 - p) * dbaToW(array2[i]));
+            dest[i] = wToDba(p * dbaToW(array1[i]) + (1 - p) * dbaToW(array2[i]));
         }
-        return sum;
+        return dest;
     }
 
     /**
@@ -99,14 +120,25 @@ public class ComputeRays {
      * @return
      */
     public static double[] sumDbArray(double[] array1, double[] array2) {
-        if (array1.length != array2.length) {
+        return sumDbArray(array1, array2, new double[array1.length]);
+    }
+
+    /**
+     * energetic Sum of dBA array without allocation
+     *
+     * @param array1
+     * @param array2
+     * @param dest Destination array, may be array1 or array2
+     * @return dest
+     */
+    public static double[] sumDbArray(double[] array1, double[] array2, double[] dest) {
+        if (array1.length != array2.length || dest.length != array1.length) {
             throw new IllegalArgumentException("Not same size array");
         }
-        double[] sum = new double[array1.length];
         for (int i = 0; i < array1.length; i++) {
-            sum[i] = wToDba(dbaToW(array1[i]) + dbaToW(array2[i]));
+            dest[i] = wToDba(dbaToW(array1[i]) + dbaToW(array2[i]));
         }
-        return sum;
+        return dest;
     }
 
     /**
@@ -151,14 +183,47 @@ public class ComputeRays {
      * @return Sum of the two arrays
      */
     public static double[] sumArray(double array1[], double array2[]) {
-        if (array1.length != array2.length) {
+        return sumArray(array1, array2, new double[array1.length]);
+    }
+
+    /**
+     * Element wise sum array without any other operations and without allocation.
+     *
+     * @param array1 First array
+     * @param array2 Second array
+     * @param dest Destination array, may be array1 or array2
+     * @return dest
+     */
+    public static double[] sumArray(double array1[], double array2[], double[] dest) {
+        if (array1.length != array2.length || dest.length != array1.length) {
             throw new IllegalArgumentException("Arrays with different size");
         }
-        double[] ret = new double[array1.length];
         for (int idfreq = 0; idfreq < array1.length; idfreq++) {
-            ret[idfreq] = array1[idfreq] + array2[idfreq];
+            dest[idfreq] = array1[idfreq] + array2[idfreq];
+        }
+        return dest;
+    }
+
+    /**
+     * Working arrays of the current thread. Avoid allocation of temporary spectrum arrays in the computation loops.
+     * The returned array content is not initialised and will be overwritten by the next call with the same slot in
+     * the same thread, so it must not be stored or returned to the caller.
+     *
+     * @param slot Buffer index, use different slots for arrays used at the same time [0-n]
+     * @param length Array length
+     * @return Array of the provided length, owned by the current thread
+     */
+    public static double[] getScratchArray(int slot, int length) {
+        List<double[]> buffers = SCRATCH_BUFFERS.get();
+        while (buffers.size() <= slot) {
+            buffers.add(new double[length]);
+        }
+        double[] buffer = buffers.get(slot);
+        if (buffer.length != length) {
+            buffer = new double[length];
+            buffers.set(slot, buffer);
         }
-        return ret;
+        return buffer;
     }
 
     public ComputeRays(PropagationProcessData data) {
@@ -175,6 +240,22 @@ public class ComputeRays {
         this.threadCount = threadCount;
     }
 
+    /**
+     * @return Number of receivers fetched at once by a computation thread, 0 if receivers are split in equal ranges
+     */
+    public int getReceiverChunkSize() {
+        return receiverChunkSize;
+    }
+
+    /**
+     * @param receiverChunkSize If superior than 0, computation threads fetch receivers by chunks of this size until
+     *                          there is no more receivers to process. This balance the load of threads when receivers
+     *                          density is heterogeneous. If 0, receivers are split in threadCount equal ranges.
+     */
+    public void setReceiverChunkSize(int receiverChunkSize) {
+        this.receiverChunkSize = receiverChunkSize;
+    }
+
     /**
      * Update ground Z coordinates of sound sources absolute to sea levels
      */
@@ -215,11 +296,19 @@ public class ComputeRays {
     }
 
     public static double[] dbaToW(double[] dBA) {
-        double[] ret = new double[dBA.length];
+        return dbaToW(dBA, new double[dBA.length]);
+    }
+
+    /**
+     * @param dBA Source array
+     * @param dest Destination array, may be dBA
+     * @return dest
+     */
+    public static double[] dbaToW(double[] dBA, double[] dest) {
         for (int i = 0; i < dBA.length; i++) {
-            ret[i] = dbaToW(dBA[i]);
+            dest[i] = dbaToW(dBA[i]);
         }
-        return ret;
+        return dest;
     }
 
     public static double wToDba(double w) {
@@ -227,11 +316,19 @@ public class ComputeRays {
     }
 
     public static double[] wToDba(double[] w) {
-        double[] ret = new double[w.length];
+        return wToDba(w, new double[w.length]);
+    }
+
+    /**
+     * @param w Source array
+     * @param dest Destination array, may be w
+     * @return dest
+     */
+    public static double[] wToDba(double[] w, double[] dest) {
         for (int i = 0; i < w.length; i++) {
-            ret[i] = wToDba(w[i]);
+            dest[i] = wToDba(w[i]);
         }
-        return ret;
+        return dest;
     }
 
     /**
@@ -350,6 +447,22 @@ public class ComputeRays {
 
     public List<PropagationPath> computeReflexion(Coordinate receiverCoord,
                                                   Coordinate srcCoord, boolean favorable, List<FastObstructionTest.Wall> nearBuildingsWalls) {
+        return computeReflexion(receiverCoord, srcCoord, favorable, nearBuildingsWalls, null);
+    }
+
+    /**
+     * @param receiverCoord Receiver position
+     * @param srcCoord Source position
+     * @param favorable Favorable conditions
+     * @param nearBuildingsWalls Walls to use in reflection
+     * @param receiverMirrors Receiver images built on the first walls of nearBuildingsWalls, null to compute all
+     *                        receiver images for this source
+     * @return Reflection propagation paths
+     */
+    public List<PropagationPath> computeReflexion(Coordinate receiverCoord,
+                                                  Coordinate srcCoord, boolean favorable,
+                                                  List<FastObstructionTest.Wall> nearBuildingsWalls,
+                                                  MirrorReceiverTree receiverMirrors) {
 //                for(FastObstructionTest.Wall wall : nearBuildingsWalls) {
 //                    System.out.println(String.format(Locale.ROOT, "walls.add(new FastObstructionTest.Wall(new Coordinate(%.2f,%.2f), new Coordinate(%.2f,%.2f) , %d));", wall.p0.x, wall.p0.y, wall.p1.x, wall.p1.y, wall.getBuildingId()));
 //                }
@@ -360,8 +473,14 @@ public class ComputeRays {
         List<PropagationPath> reflexionPropagationPaths = new ArrayList<>();
 
 
-        MirrorReceiverIterator.It mirroredReceivers = new MirrorReceiverIterator.It(receiverCoord, nearBuildingsWalls,
-                srcReceiver, Integer.MAX_VALUE, data.reflexionOrder, data.maxSrcDist);
+        Iterable<MirrorReceiverResult> mirroredReceivers;
+        if(receiverMirrors != null) {
+            mirroredReceivers = receiverMirrors.findImages(nearBuildingsWalls, srcReceiver, Integer.MAX_VALUE,
+                    data.maxSrcDist);
+        } else {
+            mirroredReceivers = new MirrorReceiverIterator.It(receiverCoord, nearBuildingsWalls,
+                    srcReceiver, Integer.MAX_VALUE, data.reflexionOrder, data.maxSrcDist);
+        }
 
         for (MirrorReceiverResult receiverReflection : mirroredReceivers) {
             // Print wall reflections
@@ -536,24 +655,28 @@ public class ComputeRays {
 
 
         //will give a flag here for soil effect
-        final List<GeoWithSoilType> soilTypeList = data.getSoilList();
-        LineString RSZone = factory.createLineString(new Coordinate[]{receiverCoord, srcCoord});
-        List<EnvelopeWithIndex<Integer>> resultZ0 = rTreeOfGeoSoil.query(RSZone.getEnvelopeInternal());
-        for (EnvelopeWithIndex<Integer> envel : resultZ0) {
-            RectangleLineIntersector rectangleLineIntersector = new RectangleLineIntersector(envel);
-            if (rectangleLineIntersector.intersects(receiverCoord, srcCoord)) {
-                try {
-                    //get the geo intersected
-                    Geometry geoInter = RSZone.intersection(soilTypeList.get(envel.getId()).getGeo());
-                    //add the intersected distance with ground effect
-                    totRSDistance += getIntersectedDistance(geoInter) * soilTypeList.get(envel.getId()).getType();
-                } catch (TopologyException | IllegalArgumentException ex) {
-                    // Ignore
+        if(data.getGroundFactorRaster() != null) {
+            gPath = data.getGroundFactorRaster().getMeanG(srcCoord, receiverCoord);
+        } else {
+            final List<GeoWithSoilType> soilTypeList = data.getSoilList();
+            LineString RSZone = factory.createLineString(new Coordinate[]{receiverCoord, srcCoord});
+            List<EnvelopeWithIndex<Integer>> resultZ0 = rTreeOfGeoSoil.query(RSZone.getEnvelopeInternal());
+            for (EnvelopeWithIndex<Integer> envel : resultZ0) {
+                RectangleLineIntersector rectangleLineIntersector = new RectangleLineIntersector(envel);
+                if (rectangleLineIntersector.intersects(receiverCoord, srcCoord)) {
+                    try {
+                        //get the geo intersected
+                        Geometry geoInter = RSZone.intersection(soilTypeList.get(envel.getId()).getGeo());
+                        //add the intersected distance with ground effect
+                        totRSDistance += getIntersectedDistance(geoInter) * soilTypeList.get(envel.getId()).getType();
+                    } catch (TopologyException | IllegalArgumentException ex) {
+                        // Ignore
+                    }
                 }
             }
+            // Compute GPath using 2D Length
+            gPath = totRSDistance / RSZone.getLength();
         }
-        // Compute GPath using 2D Length
-        gPath = totRSDistance / RSZone.getLength();
 
         if (inters == null) {
             inters = new ArrayList<>();
@@ -955,13 +1078,16 @@ public class ComputeRays {
      * @param receiverCoord      coordinate of receiver
      * @param rcvId              receiver identifier
      * @param nearBuildingsWalls Walls to use in reflection
+     * @param receiverMirrors Receiver images shared by all sources, may be null
      * @param debugInfo
      * @param dataOut
      * @return Minimal power level (dB) or maximum attenuation (dB)
      */
     private double[] receiverSourcePropa(SourcePointInfo src,
                                          Coordinate receiverCoord, int rcvId,
-                                         List<FastObstructionTest.Wall> nearBuildingsWalls, List<PropagationDebugInfo> debugInfo, IComputeRaysOut dataOut) {
+                                         List<FastObstructionTest.Wall> nearBuildingsWalls,
+                                         MirrorReceiverTree receiverMirrors, List<PropagationDebugInfo> debugInfo,
+                                         IComputeRaysOut dataOut) {
         Coordinate srcCoord = src.position;
         int srcId = src.sourcePrimaryKey;
         double sourceLi = src.li;
@@ -976,7 +1102,8 @@ public class ComputeRays {
 
             // Process specular reflection
             if (data.reflexionOrder > 0) {
-                List<PropagationPath> propagationPaths_all = computeReflexion(receiverCoord, srcCoord, false, nearBuildingsWalls);
+                List<PropagationPath> propagationPaths_all = computeReflexion(receiverCoord, srcCoord, false, nearBuildingsWalls,
+                        receiverMirrors);
                 propagationPaths.addAll(propagationPaths_all);
             }
 
@@ -1004,42 +1131,169 @@ public class ComputeRays {
         return ComputeRays.sumArray(srcWJ.length, srcWJ);
     }
 
-    private double addLineSource(LineString source, Coordinate receiverCoord, int srcIndex, List<SourcePointInfo> sourceList, double[] wj) {
+    private double addLineSource(LineString source, Coordinate receiverCoord, int srcIndex, int subGeomIndex,
+                                 List<SourcePointInfo> sourceList, double[] wj) {
         double totalPowerRemaining = 0;
-        ArrayList<Coordinate> pts = new ArrayList<Coordinate>();
         // Compute li to equation 4.1 NMPB 2008 (June 2009)
         Coordinate nearestPoint = JTSUtility.getNearestPoint(receiverCoord, source);
         double segmentSizeConstraint = Math.max(1, receiverCoord.distance3D(nearestPoint) / 2.0);
         if (Double.isNaN(segmentSizeConstraint)) {
             segmentSizeConstraint = Math.max(1, receiverCoord.distance(nearestPoint) / 2.0);
         }
+        if (data.cacheLineSourceDiscretization) {
+            DiscretizedLineSource discretizedSource = getDiscretizedLineSource(source, srcIndex, subGeomIndex,
+                    segmentSizeConstraint);
+            for (int ptIndex = 0; ptIndex < discretizedSource.points.length; ptIndex++) {
+                Coordinate pt = discretizedSource.points[ptIndex];
+                if (pt.distance(receiverCoord) < data.maxSrcDist) {
+                    totalPowerRemaining += insertPtSource(receiverCoord, pt, wj, discretizedSource.li, srcIndex,
+                            sourceList, discretizedSource.orientations[ptIndex]);
+                }
+            }
+            return totalPowerRemaining;
+        }
+        ArrayList<Coordinate> pts = new ArrayList<Coordinate>();
         double li = splitLineStringIntoPoints(source, segmentSizeConstraint, pts);
         for (int ptIndex = 0; ptIndex < pts.size(); ptIndex++) {
             Coordinate pt = pts.get(ptIndex);
             if (pt.distance(receiverCoord) < data.maxSrcDist) {
-                // use the orientation computed from the line source coordinates
-                Vector3D v;
-                if(ptIndex == 0) {
-                    v = new Vector3D(source.getCoordinates()[0], pts.get(ptIndex));
-                } else {
-                    v = new Vector3D(pts.get(ptIndex - 1), pts.get(ptIndex));
+                totalPowerRemaining += insertPtSource(receiverCoord, pt, wj, li, srcIndex, sourceList,
+                        getLineSourceOrientation(source, pts, ptIndex, srcIndex));
+            }
+        }
+        return totalPowerRemaining;
+    }
+
+    /**
+     * @param source Line source
+     * @param pts Discretized points of the line source
+     * @param ptIndex Index of the point in pts
+     * @param srcIndex Source index in {@link PropagationProcessData#sourceGeometries}
+     * @return Orientation of the point source, computed from the line source coordinates
+     */
+    private Orientation getLineSourceOrientation(LineString source, List<Coordinate> pts, int ptIndex, int srcIndex) {
+        // use the orientation computed from the line source coordinates
+        Vector3D v;
+        if(ptIndex == 0) {
+            v = new Vector3D(source.getCoordinateN(0), pts.get(ptIndex));
+        } else {
+            v = new Vector3D(pts.get(ptIndex - 1), pts.get(ptIndex));
+        }
+        Orientation inputOrientation;
+        if(data.sourcesPk.size() > srcIndex && data.sourceOrientation.containsKey(data.sourcesPk.get(srcIndex))) {
+            // If the line source already provide an orientation then alter the line orientation
+            inputOrientation = data.sourceOrientation.get(data.sourcesPk.get(srcIndex));
+            inputOrientation = Orientation.fromVector(
+                    Orientation.rotate(new Orientation(inputOrientation.yaw, inputOrientation.roll, 0),
+                            v.normalize()), inputOrientation.roll);
+        } else {
+            inputOrientation = Orientation.fromVector(v.normalize(), 0);
+        }
+        return inputOrientation;
+    }
+
+    /**
+     * Receiver independent discretization of a line source. The segment size constraint is rounded down to a power of
+     * two meters so that receivers at a similar distance share the same points, far receivers use less points.
+     * @param source Line source
+     * @param srcIndex Source index in {@link PropagationProcessData#sourceGeometries}
+     * @param subGeomIndex Index of the line in the source geometry
+     * @param segmentSizeConstraint Maximal distance between points
+     * @return Cached discretization, the segment size is not greater than segmentSizeConstraint
+     */
+    DiscretizedLineSource getDiscretizedLineSource(LineString source, int srcIndex, int subGeomIndex,
+                                                   double segmentSizeConstraint) {
+        // 2^level is the greatest power of two not greater than segmentSizeConstraint
+        final int level = Math.max(0, Math.min(MAXIMUM_DISCRETIZATION_LEVEL, Math.getExponent(segmentSizeConstraint)));
+        long key = ((long) srcIndex << 32) | ((long) subGeomIndex << 6) | level;
+        return lineSourceDiscretization.computeIfAbsent(key, k -> {
+            List<Coordinate> pts = new ArrayList<>();
+            double li = splitLineStringIntoPoints(source, Math.scalb(1.0, level), pts);
+            Orientation[] orientations = new Orientation[pts.size()];
+            for (int ptIndex = 0; ptIndex < orientations.length; ptIndex++) {
+                orientations[ptIndex] = getLineSourceOrientation(source, pts, ptIndex, srcIndex);
+            }
+            return new DiscretizedLineSource(pts.toArray(new Coordinate[0]), orientations, li);
+        });
+    }
+
+    /**
+     * Discretize the source into point sources located at less than maxSrcDist from the receiver
+     * @param srcIndex Source index in {@link PropagationProcessData#sourceGeometries}
+     * @param receiverCoord Receiver position
+     * @param sourceList Discretized point sources
+     * @return Sum of the maximal power of the added point sources at the receiver position
+     */
+    private double addSource(int srcIndex, Coordinate receiverCoord, List<SourcePointInfo> sourceList) {
+        double totalPowerRemaining = 0;
+        Geometry source = data.sourceGeometries.get(srcIndex);
+        double[] wj = data.getMaximalSourcePower(srcIndex);
+        if (source instanceof Point) {
+            Coordinate ptpos = source.getCoordinate();
+            if (ptpos.distance(receiverCoord) < data.maxSrcDist) {
+                Orientation orientation = null;
+                if(data.sourcesPk.size() > srcIndex) {
+                    orientation = data.sourceOrientation.get(data.sourcesPk.get(srcIndex));
                 }
-                Orientation inputOrientation;
-                if(data.sourcesPk.size() > srcIndex && data.sourceOrientation.containsKey(data.sourcesPk.get(srcIndex))) {
-                    // If the line source already provide an orientation then alter the line orientation
-                    inputOrientation = data.sourceOrientation.get(data.sourcesPk.get(srcIndex));
-                    inputOrientation = Orientation.fromVector(
-                            Orientation.rotate(new Orientation(inputOrientation.yaw, inputOrientation.roll, 0),
-                                    v.normalize()), inputOrientation.roll);
-                } else {
-                    inputOrientation = Orientation.fromVector(v.normalize(), 0);
+                if(orientation == null) {
+                    orientation = new Orientation(0,0, 0);
                 }
-                totalPowerRemaining += insertPtSource(receiverCoord, pt, wj, li, srcIndex, sourceList, inputOrientation);
+                totalPowerRemaining += insertPtSource(receiverCoord, ptpos, wj, 1., srcIndex, sourceList, orientation);
             }
+        } else if (source instanceof LineString) {
+            // Discretization of line into multiple point
+            // First point is the closest point of the LineString from
+            // the receiver
+            totalPowerRemaining += addLineSource((LineString) source, receiverCoord, srcIndex, 0, sourceList, wj);
+        } else if (source instanceof MultiLineString) {
+            for (int id = 0; id < source.getNumGeometries(); id++) {
+                Geometry subGeom = source.getGeometryN(id);
+                if (subGeom instanceof LineString) {
+                    totalPowerRemaining += addLineSource((LineString) subGeom, receiverCoord, srcIndex, id,
+                            sourceList, wj);
+                }
+            }
+        } else {
+            throw new IllegalArgumentException(String.format("Sound source %s geometry are not supported", source.getGeometryType()));
         }
         return totalPowerRemaining;
     }
 
+    /**
+     * @return Quadtree of the sources with their maximal power, built on first call
+     */
+    SourceQuadTree getSourceQuadTree() {
+        SourceQuadTree tree = sourceQuadTree;
+        if (tree == null) {
+            synchronized (this) {
+                tree = sourceQuadTree;
+                if (tree == null) {
+                    double[] weights = new double[data.sourceGeometries.size()];
+                    for (int srcIndex = 0; srcIndex < weights.length; srcIndex++) {
+                        Geometry source = data.sourceGeometries.get(srcIndex);
+                        if (source != null && !source.isEmpty()) {
+                            weights[srcIndex] = SourceQuadTree.getMaximalWeight(source,
+                                    data.getMaximalSourcePower(srcIndex));
+                        }
+                    }
+                    tree = new SourceQuadTree(data.sourceGeometries, weights);
+                    sourceQuadTree = tree;
+                }
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * Upper bound of the power received in free field with reflective ground, see insertPtSource
+     * @param weight Source power multiplied by the source length
+     * @param distance Minimal distance between the source and the receiver
+     * @return Maximal power at the receiver
+     */
+    private static double getMaximalReceivedPower(double weight, double distance) {
+        return weight * dbaToW(-getADiv(distance)) * dbaToW(3);
+    }
+
     /**
      * Compute sound level by frequency band at this receiver position
      *
@@ -1059,63 +1313,78 @@ public class ComputeRays {
                 receiverCoord.y - searchSourceDistance, receiverCoord.y
                 + searchSourceDistance
         );
-        Iterator<Integer> regionSourcesLst = data.sourcesIndex
-                .query(receiverSourceRegion);
         List<SourcePointInfo> sourceList = new ArrayList<>();
         // Sum of all sources power using only geometric dispersion with direct field
         double totalPowerRemaining = 0;
-        while (regionSourcesLst.hasNext()) {
-            Integer srcIndex = regionSourcesLst.next();
-            if (!processedLineSources.contains(srcIndex)) {
-                processedLineSources.add(srcIndex);
-                Geometry source = data.sourceGeometries.get(srcIndex);
-                double[] wj = data.getMaximalSourcePower(srcIndex);
-                if (source instanceof Point) {
-                    Coordinate ptpos = source.getCoordinate();
-                    if (ptpos.distance(receiverCoord) < data.maxSrcDist) {
-                        Orientation orientation = null;
-                        if(data.sourcesPk.size() > srcIndex) {
-                            orientation = data.sourceOrientation.get(data.sourcesPk.get(srcIndex));
-                        }
-                        if(orientation == null) {
-                            orientation = new Orientation(0,0, 0);
-                        }
-                        totalPowerRemaining += insertPtSource(receiverCoord, ptpos, wj, 1., srcIndex, sourceList, orientation);
-                    }
-                } else if (source instanceof LineString) {
-                    // Discretization of line into multiple point
-                    // First point is the closest point of the LineString from
-                    // the receiver
-                    totalPowerRemaining += addLineSource((LineString) source, receiverCoord, srcIndex, sourceList, wj);
-                } else if (source instanceof MultiLineString) {
-                    for (int id = 0; id < source.getNumGeometries(); id++) {
-                        Geometry subGeom = source.getGeometryN(id);
-                        if (subGeom instanceof LineString) {
-                            totalPowerRemaining += addLineSource((LineString) subGeom, receiverCoord, srcIndex, sourceList, wj);
-                        }
-                    }
-                } else {
-                    throw new IllegalArgumentException(String.format("Sound source %s geometry are not supported", source.getGeometryType()));
+        SourceQueue sourceQueue = null;
+        if (data.maximumError >= 0) {
+            // Clusters of sources are discretized only if they may contribute more than the remaining error
+            sourceQueue = new SourceQueue(getSourceQuadTree(), receiverCoord);
+            totalPowerRemaining = sourceQueue.getTotalPowerRemaining();
+        } else {
+            Iterator<Integer> regionSourcesLst = data.sourcesIndex
+                    .query(receiverSourceRegion);
+            while (regionSourcesLst.hasNext()) {
+                Integer srcIndex = regionSourcesLst.next();
+                if (!processedLineSources.contains(srcIndex)) {
+                    processedLineSources.add(srcIndex);
+                    totalPowerRemaining += addSource(srcIndex, receiverCoord, sourceList);
                 }
             }
+            // Sort sources by power contribution descending
+            Collections.sort(sourceList);
         }
-        // Sort sources by power contribution descending
-        Collections.sort(sourceList);
+        // Receiver images through the receiver walls are computed once and filtered for each source
+        List<FastObstructionTest.Wall> receiverWalls = new ArrayList<>(wallsReceiver);
+        MirrorReceiverTree receiverMirrors = null;
+        boolean receiverMirrorsInitialized = false;
         double powerAtSource = 0;
+        int sourceListIndex = 0;
         //Iterate over source point sorted by maximal power by descending order
-        for (SourcePointInfo src : sourceList) {
+        while (true) {
+            SourcePointInfo src;
+            if (sourceQueue != null) {
+                src = sourceQueue.poll();
+            } else {
+                src = sourceListIndex < sourceList.size() ? sourceList.get(sourceListIndex++) : null;
+            }
+            if (src == null) {
+                break;
+            }
+            if (!receiverMirrorsInitialized) {
+                receiverMirrorsInitialized = true;
+                if (data.reflexionOrder > 0) {
+                    // Sources are nearer than maxSrcDist, so are the images in range of a source
+                    receiverMirrors = new MirrorReceiverTree(receiverCoord, receiverWalls, data.reflexionOrder,
+                            2 * data.maxSrcDist);
+                    if (!receiverMirrors.isComplete()) {
+                        // Too many images, fall back to the iterator
+                        receiverMirrors = null;
+                    }
+                }
+            }
             // For each Pt Source - Pt Receiver
             Coordinate srcCoord = src.position;
 
-            Set<FastObstructionTest.Wall> wallsSource = new HashSet<>(wallsReceiver);
+            List<FastObstructionTest.Wall> wallsSource = new ArrayList<>(receiverWalls);
             if (data.reflexionOrder > 0) {
-                wallsSource.addAll(data.freeFieldFinder.getLimitsInRange(
-                        data.maxRefDist, srcCoord, false));
+                // Source points are shared by all receivers, walls around them are kept in cache
+                for(FastObstructionTest.Wall wall : data.freeFieldFinder.getLimitsInRangeCached(
+                        data.maxRefDist, srcCoord, false)) {
+                    if(!wallsReceiver.contains(wall)) {
+                        wallsSource.add(wall);
+                    }
+                }
             }
             double[] power = receiverSourcePropa(src, receiverCoord, idReceiver,
-                    new ArrayList<>(wallsSource), debugInfo, dataOut);
-            double global = ComputeRays.sumArray(power.length, ComputeRays.dbaToW(power));
-            totalPowerRemaining -= src.globalWj;
+                    wallsSource, receiverMirrors, debugInfo, dataOut);
+            double global = ComputeRays.sumArray(power.length, ComputeRays.dbaToW(power,
+                    getScratchArray(0, power.length)));
+            if (sourceQueue != null) {
+                totalPowerRemaining = sourceQueue.getTotalPowerRemaining();
+            } else {
+                totalPowerRemaining -= src.globalWj;
+            }
             if (power.length > 0) {
                 powerAtSource += global;
             } else {
@@ -1163,6 +1432,26 @@ public class ComputeRays {
                 splitCount,
                 splitCount + 1, Long.MAX_VALUE,
                 TimeUnit.SECONDS);
+        if (receiverChunkSize > 0) {
+            // Threads pick the next receivers chunk when they are done with the previous one
+            AtomicInteger nextReceiver = new AtomicInteger(0);
+            for (int idThread = 0; idThread < splitCount; idThread++) {
+                ChunkReceiversComputation chunkThread = new ChunkReceiversComputation(nextReceiver,
+                        receiverChunkSize, this, debugInfo, propaProcessProgression, computeRaysOut);
+                if (threadCount != 1) {
+                    threadManager.executeBlocking(chunkThread);
+                } else {
+                    chunkThread.run();
+                }
+            }
+            threadManager.shutdown();
+            try {
+                threadManager.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                LOGGER.error(ex.getLocalizedMessage(), ex);
+            }
+            return;
+        }
         int maximumReceiverBatch = (int) Math.ceil(data.receivers.size() / (double) splitCount);
         int endReceiverRange = 0;
         while (endReceiverRange < data.receivers.size()) {
@@ -1252,6 +1541,44 @@ private static final class RangeReceiversComputation implements Runnable {
     }
 }
 
+/**
+ * Fetch receivers range from a shared cursor until all receivers of the cell are processed
+ */
+private static final class ChunkReceiversComputation implements Runnable {
+    private final AtomicInteger nextReceiver;
+    private final int chunkSize;
+    private ComputeRays propagationProcess;
+    private List<PropagationDebugInfo> debugInfo;
+    private ProgressVisitor progressVisitor;
+    private IComputeRaysOut computeRaysOut;
+
+    public ChunkReceiversComputation(AtomicInteger nextReceiver, int chunkSize, ComputeRays propagationProcess,
+                                     List<PropagationDebugInfo> debugInfo, ProgressVisitor progressVisitor,
+                                     IComputeRaysOut computeRaysOut) {
+        this.nextReceiver = nextReceiver;
+        this.chunkSize = chunkSize;
+        this.propagationProcess = propagationProcess;
+        this.debugInfo = debugInfo;
+        this.progressVisitor = progressVisitor;
+        this.computeRaysOut = computeRaysOut;
+    }
+
+    @Override
+    public void run() {
+        final int receiverCount = propagationProcess.data.receivers.size();
+        int startReceiver = nextReceiver.getAndAdd(chunkSize);
+        while (startReceiver < receiverCount) {
+            if (progressVisitor != null && progressVisitor.isCanceled()) {
+                break;
+            }
+            int endReceiver = Math.min(startReceiver + chunkSize, receiverCount);
+            new RangeReceiversComputation(startReceiver, endReceiver, propagationProcess, debugInfo, progressVisitor,
+                    computeRaysOut.subProcess(startReceiver, endReceiver)).run();
+            startReceiver = nextReceiver.getAndAdd(chunkSize);
+        }
+    }
+}
+
 /**
  * Offset de Z coordinates by the height of the ground
  */
@@ -1296,6 +1623,121 @@ public static final class AbsoluteCoordinateSequenceFilter implements Coordinate
     }
 }
 
+/**
+ * Sources of a receiver sorted by their maximal power at the receiver position. Nodes of the source quadtree and
+ * line sources are discretized only when they reach the head of the queue, as their bound is greater than the
+ * bound of their point sources the point sources are given in the same order as the sorted list of all sources.
+ */
+private final class SourceQueue {
+    private final PriorityQueue<SourceQueueItem> queue = new PriorityQueue<>();
+    private final SourceQuadTree tree;
+    private final Coordinate receiverCoord;
+    private final List<SourcePointInfo> pointSources = new ArrayList<>();
+    // Sum of the bounds of the queued items
+    private double totalPowerRemaining = 0;
+
+    SourceQueue(SourceQuadTree tree, Coordinate receiverCoord) {
+        this.tree = tree;
+        this.receiverCoord = receiverCoord;
+        if (tree.getNodeCount() > 0) {
+            addNode(tree.getRoot());
+        }
+    }
+
+    double getTotalPowerRemaining() {
+        return Math.max(0, totalPowerRemaining);
+    }
+
+    private void addNode(int node) {
+        double distance = tree.getDistance(node, receiverCoord);
+        if (distance < data.maxSrcDist) {
+            add(new SourceQueueItem(getMaximalReceivedPower(tree.getWeight(node), distance), node, -1, null));
+        }
+    }
+
+    private void add(SourceQueueItem item) {
+        queue.add(item);
+        totalPowerRemaining += item.bound;
+    }
+
+    /**
+     * @return The point source of highest power or null if there is no more sources
+     */
+    SourcePointInfo poll() {
+        while (!queue.isEmpty()) {
+            SourceQueueItem item = queue.poll();
+            totalPowerRemaining -= item.bound;
+            if (item.point != null) {
+                return item.point;
+            } else if (item.source >= 0) {
+                pointSources.clear();
+                addSource(item.source, receiverCoord, pointSources);
+                for (SourcePointInfo pointSource : pointSources) {
+                    add(new SourceQueueItem(pointSource.globalWj, -1, item.source, pointSource));
+                }
+            } else if (tree.isLeaf(item.node)) {
+                for (int i = 0; i < tree.getSourceCount(item.node); i++) {
+                    int source = tree.getSource(item.node, i);
+                    double distance = tree.getSourceDistance(source, receiverCoord);
+                    if (distance < data.maxSrcDist) {
+                        add(new SourceQueueItem(getMaximalReceivedPower(tree.getSourceWeight(source), distance),
+                                -1, source, null));
+                    }
+                }
+            } else {
+                for (int i = 0; i < tree.getChildCount(item.node); i++) {
+                    addNode(tree.getChild(item.node, i));
+                }
+            }
+        }
+        return null;
+    }
+}
+
+private static final class SourceQueueItem implements Comparable<SourceQueueItem> {
+    // Maximal power at the receiver position
+    private final double bound;
+    private final int node;
+    private final int source;
+    private final SourcePointInfo point;
+
+    SourceQueueItem(double bound, int node, int source, SourcePointInfo point) {
+        this.bound = bound;
+        this.node = node;
+        this.source = source;
+        this.point = point;
+    }
+
+    @Override
+    public int compareTo(SourceQueueItem o) {
+        int cmp = -Double.compare(bound, o.bound);
+        if (cmp != 0) {
+            return cmp;
+        }
+        // Expand clusters before giving a point source of the same bound
+        if (point == null || o.point == null) {
+            return Boolean.compare(point != null, o.point != null);
+        }
+        return point.compareTo(o.point);
+    }
+}
+
+/**
+ * Point sources of a line source, shared between receivers
+ */
+static final class DiscretizedLineSource {
+    final Coordinate[] points;
+    final Orientation[] orientations;
+    /** Coefficient of power per meter for each point source */
+    final double li;
+
+    DiscretizedLineSource(Coordinate[] points, Orientation[] orientations, double li) {
+        this.points = points;
+        this.orientations = orientations;
+        this.li = li;
+    }
+}
+
 private static final class SourcePointInfo implements Comparable<SourcePointInfo> {
     private double[] wj;
     private double li; //
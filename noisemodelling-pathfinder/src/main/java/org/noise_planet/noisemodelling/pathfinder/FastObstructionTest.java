@@ -40,14 +40,14 @@ import org.locationtech.jts.geom.*;
 import org.locationtech.jts.index.ItemVisitor;
 import org.locationtech.jts.index.strtree.STRtree;
 import org.locationtech.jts.io.WKTWriter;
-import org.locationtech.jts.math.Vector2D;
 import org.locationtech.jts.triangulate.quadedge.Vertex;
 import org.noise_planet.noisemodelling.pathfinder.utils.Densifier3D;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * FastObstructionTest speed up the search of
@@ -64,15 +64,51 @@ public class FastObstructionTest {
     private static final double MINIMAL_REFLECTION_WALL_LENGTH = 1.0;
     // Split ray to test up to 200m length (in order to reduce returns results)
     private static final double STRTREE_TRAVERSAL_SPLIT = 300;
+    public static final int DEFAULT_TRIANGLE_CACHE_SIZE = 50000;
+    public static final int DEFAULT_WALL_CACHE_SIZE = 5000;
+
+    /**
+     * Spatial index of buildings and triangles
+     */
+    public enum SpatialIndexType {
+        /** JTS STRtree */
+        STRTREE,
+        /** Uniform grid over primitive arrays, see {@link GridIndex} */
+        GRID
+    }
+
     private STRtree polygonIndex;
-    private List<Triangle> triVertices;
-    private List<Coordinate> vertices;
-    private List<Triangle> triNeighbors; // Neighbors
+    private GridIndex polygonGrid = null;
+    // Packed mesh, three entries by triangle: vertex index of A, B, C and neighbor triangle index of the side opposite
+    // to A, B, C (-1 if none), see Triangle#getSegment
+    private int[] triangleVertices;
+    private int[] triangleNeighbors;
+    // Building identifier of each triangle, 0 if not in a building
+    private int[] triangleAttributes;
+    // x, y, z of each vertex
+    private double[] vertexCoordinates;
     private List<Integer> buildingsPK = new ArrayList<>();
     private List<MeshBuilder.PolygonWithHeight> polygonWithHeight = new ArrayList<MeshBuilder.PolygonWithHeight>();//list polygon with height
     private Envelope meshEnvelope;
 
     private STRtree triIndex = null;
+    private GridIndex triGrid = null;
+    // Location of already queried points (x,y) into triangle index
+    private final Map<Coordinate, Integer> triangleIdCache = new ConcurrentHashMap<>();
+    private int triangleCacheSize = DEFAULT_TRIANGLE_CACHE_SIZE;
+    private final LongAdder triangleCacheHit = new LongAdder();
+    private final LongAdder triangleCacheMiss = new LongAdder();
+    // Walls in range of already queried points (Least recently used entries are evicted)
+    private int wallCacheSize = DEFAULT_WALL_CACHE_SIZE;
+    private final Map<WallsQuery, List<Wall>> wallCache = Collections.synchronizedMap(
+            new LinkedHashMap<WallsQuery, List<Wall>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<WallsQuery, List<Wall>> eldest) {
+            return size() > wallCacheSize;
+        }
+    });
+    private final LongAdder wallCacheHit = new LongAdder();
+    private final LongAdder wallCacheMiss = new LongAdder();
     private List<Float> verticesOpenAngle = null;
     private List<Coordinate> verticesOpenAngleTranslated = null; /*Open angle*/
     private boolean hasBuildingWithHeight;
@@ -90,6 +126,22 @@ public class FastObstructionTest {
      */
     public FastObstructionTest(List<MeshBuilder.PolygonWithHeight> buildings,
                                List<Triangle> triangles, List<Triangle> triNeighbors, List<Coordinate> points) {
+        this(buildings, triangles, triNeighbors, points, SpatialIndexType.STRTREE);
+    }
+
+    /**
+     * Initialize buildings, triangles and points from mesh data
+     *
+     * @param buildings    list of buildings with their height
+     * @param triangles    list of triangles including buildingID which correspondent the building e.x: triangle.buildingID=1 <=> buildings[0]
+     *                     If a triangle is not in building, buildingID for this triangle is 0
+     * @param triNeighbors list of neighbors triangle
+     * @param points       list of all points in mesh, this points includes vertices of building, Topographic points, vertices of boundingBox
+     * @param indexType    Spatial index of buildings and triangles
+     */
+    public FastObstructionTest(List<MeshBuilder.PolygonWithHeight> buildings,
+                               List<Triangle> triangles, List<Triangle> triNeighbors, List<Coordinate> points,
+                               SpatialIndexType indexType) {
 
         List<MeshBuilder.PolygonWithHeight> polygonWithHeightArray = new ArrayList<MeshBuilder.PolygonWithHeight>(buildings.size());
         hasBuildingWithHeight = false;
@@ -98,29 +150,73 @@ public class FastObstructionTest {
             hasBuildingWithHeight = hasBuildingWithHeight || poly.hasHeight();
         }
         this.polygonWithHeight = polygonWithHeightArray;
-        this.polygonIndex = new STRtree(Math.max(20, polygonWithHeightArray.size()));
         // Index buildings
-        for(int i = 0; i < polygonWithHeightArray.size(); i++) {
-            MeshBuilder.PolygonWithHeight p = polygonWithHeightArray.get(i);
-            polygonIndex.insert(p.geo.getEnvelopeInternal(), i + 1);
+        if(indexType == SpatialIndexType.GRID) {
+            double[] envelopes = new double[polygonWithHeightArray.size() * 4];
+            int[] ids = new int[polygonWithHeightArray.size()];
+            for(int i = 0; i < polygonWithHeightArray.size(); i++) {
+                Envelope env = polygonWithHeightArray.get(i).geo.getEnvelopeInternal();
+                envelopes[i * 4] = env.getMinX();
+                envelopes[i * 4 + 1] = env.getMinY();
+                envelopes[i * 4 + 2] = env.getMaxX();
+                envelopes[i * 4 + 3] = env.getMaxY();
+                ids[i] = i + 1;
+            }
+            polygonGrid = new GridIndex(envelopes, ids);
+        } else {
+            this.polygonIndex = new STRtree(Math.max(20, polygonWithHeightArray.size()));
+            for(int i = 0; i < polygonWithHeightArray.size(); i++) {
+                MeshBuilder.PolygonWithHeight p = polygonWithHeightArray.get(i);
+                polygonIndex.insert(p.geo.getEnvelopeInternal(), i + 1);
+            }
         }
-        this.triVertices = triangles;
-        this.triNeighbors = triNeighbors;
-        this.vertices = points;
+        triangleVertices = new int[triangles.size() * 3];
+        triangleNeighbors = new int[triangles.size() * 3];
+        triangleAttributes = new int[triangles.size()];
+        for(int triId = 0; triId < triangles.size(); triId++) {
+            Triangle tri = triangles.get(triId);
+            Triangle neighbors = triNeighbors.get(triId);
+            for(int i = 0; i < 3; i++) {
+                triangleVertices[triId * 3 + i] = tri.get(i);
+                triangleNeighbors[triId * 3 + i] = neighbors.get(i);
+            }
+            triangleAttributes[triId] = tri.getAttribute();
+        }
+        vertexCoordinates = new double[points.size() * 3];
         meshEnvelope = new Envelope();
-        for(Coordinate p : points) {
+        for(int vertexId = 0; vertexId < points.size(); vertexId++) {
+            Coordinate p = points.get(vertexId);
+            vertexCoordinates[vertexId * 3] = p.x;
+            vertexCoordinates[vertexId * 3 + 1] = p.y;
+            vertexCoordinates[vertexId * 3 + 2] = p.z;
             meshEnvelope.expandToInclude(p);
         }
 
         // /////////////////////////////////
         // Feed Query Structure to find triangle, by coordinate
 
-        triIndex = new STRtree();
-        for (int triId = 0; triId < this.triVertices.size(); triId++) {
-            Triangle tri = triVertices.get(triId);
-            Envelope env = new Envelope(vertices.get(tri.getA()), vertices.get(tri.getB()));
-            env.expandToInclude(vertices.get(tri.getC()));
-            triIndex.insert(env, triId);
+        if(indexType == SpatialIndexType.GRID) {
+            double[] envelopes = new double[getTriangleCount() * 4];
+            for (int triId = 0; triId < getTriangleCount(); triId++) {
+                int a = triangleVertices[triId * 3] * 3;
+                int b = triangleVertices[triId * 3 + 1] * 3;
+                int c = triangleVertices[triId * 3 + 2] * 3;
+                envelopes[triId * 4] = Math.min(vertexCoordinates[a], Math.min(vertexCoordinates[b], vertexCoordinates[c]));
+                envelopes[triId * 4 + 1] = Math.min(vertexCoordinates[a + 1], Math.min(vertexCoordinates[b + 1],
+                        vertexCoordinates[c + 1]));
+                envelopes[triId * 4 + 2] = Math.max(vertexCoordinates[a], Math.max(vertexCoordinates[b], vertexCoordinates[c]));
+                envelopes[triId * 4 + 3] = Math.max(vertexCoordinates[a + 1], Math.max(vertexCoordinates[b + 1],
+                        vertexCoordinates[c + 1]));
+            }
+            triGrid = new GridIndex(envelopes, null);
+        } else {
+            triIndex = new STRtree();
+            for (int triId = 0; triId < getTriangleCount(); triId++) {
+                Coordinate[] tri = getTriangle(triId);
+                Envelope env = new Envelope(tri[0], tri[1]);
+                env.expandToInclude(tri[2]);
+                triIndex.insert(env, triId);
+            }
         }
         //give a average height to each building
         setAverageBuildingHeight(this.polygonWithHeight);
@@ -136,7 +232,11 @@ public class FastObstructionTest {
     public void getBuildingsOnPath(Coordinate p1, Coordinate p2, IntersectionRayVisitor visitor) {
         Envelope pathEnv = new Envelope(p1, p2);
         try {
-            polygonIndex.query(pathEnv, visitor);
+            if(polygonGrid != null) {
+                polygonGrid.query(pathEnv, visitor);
+            } else {
+                polygonIndex.query(pathEnv, visitor);
+            }
         } catch (IllegalStateException ex) {
             //Ignore
         }
@@ -160,7 +260,12 @@ public class FastObstructionTest {
      * @return Triangle list
      */
     public List<Triangle> getTriangles() {
-        return Collections.unmodifiableList(triVertices);
+        List<Triangle> triangles = new ArrayList<>(getTriangleCount());
+        for(int triId = 0; triId < getTriangleCount(); triId++) {
+            triangles.add(new Triangle(triangleVertices[triId * 3], triangleVertices[triId * 3 + 1],
+                    triangleVertices[triId * 3 + 2], triangleAttributes[triId]));
+        }
+        return Collections.unmodifiableList(triangles);
     }
 
 
@@ -168,9 +273,67 @@ public class FastObstructionTest {
      * @return vertices list, only for debug and unit test purpose
      */
     public List<Coordinate> getVertices() {
+        List<Coordinate> vertices = new ArrayList<>(getVertexCount());
+        for(int vertexId = 0; vertexId < getVertexCount(); vertexId++) {
+            vertices.add(getVertex(vertexId));
+        }
         return Collections.unmodifiableList(vertices);
     }
 
+    /**
+     * @return Number of triangles in the mesh
+     */
+    public int getTriangleCount() {
+        return triangleAttributes.length;
+    }
+
+    /**
+     * @return Number of vertices in the mesh
+     */
+    public int getVertexCount() {
+        return vertexCoordinates.length / 3;
+    }
+
+    /**
+     * @param triId Triangle index
+     * @return Building identifier [1-n] of the triangle, 0 if the triangle is not in a building
+     */
+    public int getTriangleAttribute(int triId) {
+        return triangleAttributes[triId];
+    }
+
+    /**
+     * @param vertexId Vertex index
+     * @return New instance of the vertex coordinate
+     */
+    private Coordinate getVertex(int vertexId) {
+        return new Coordinate(vertexCoordinates[vertexId * 3], vertexCoordinates[vertexId * 3 + 1],
+                vertexCoordinates[vertexId * 3 + 2]);
+    }
+
+    /**
+     * @param dest Coordinate to update
+     * @param vertexId Vertex index
+     */
+    private void setVertex(Coordinate dest, int vertexId) {
+        dest.x = vertexCoordinates[vertexId * 3];
+        dest.y = vertexCoordinates[vertexId * 3 + 1];
+        dest.z = vertexCoordinates[vertexId * 3 + 2];
+    }
+
+    /**
+     * Vertices and sides of the current triangle of a walk through the mesh, updated by each step of the walk
+     */
+    private static final class TriangleWalk {
+        final Coordinate a = new Coordinate();
+        final Coordinate b = new Coordinate();
+        final Coordinate c = new Coordinate();
+        // Sides reference the vertices above
+        final LineSegment ab = new LineSegment(a, b);
+        final LineSegment bc = new LineSegment(b, c);
+        final LineSegment ca = new LineSegment(c, a);
+    }
+
 
     /**
      * Compute the next triangle index.Find the shortest intersection point of
@@ -178,31 +341,35 @@ public class FastObstructionTest {
      *
      * @param triIndex        Triangle index
      * @param propagationLine Propagation line
+     * @param walk            Vertices of the walk, set to the vertices of triIndex
      * @return Next triangle to the specified direction, -1 if there is no
      * triangle neighbor.
      */
     private TriIdWithIntersection getNextTri(final int triIndex,
                                              final LineSegment propagationLine,
-                                             HashSet<Integer> navigationHistory) {
-        final Triangle tri = this.triVertices.get(triIndex);
-        final Triangle triNeighbors = this.triNeighbors.get(triIndex);
+                                             HashSet<Integer> navigationHistory, TriangleWalk walk) {
+        final int triNeighbors = triIndex * 3;
+        final int triAttribute = triangleAttributes[triIndex];
         int nearestIntersectionSide = -1;
         int idneigh;
 
         double nearestIntersectionPtDist = Double.MAX_VALUE;
         // Find intersection pt
-        final Coordinate aTri = this.vertices.get(tri.getA());
-        final Coordinate bTri = this.vertices.get(tri.getB());
-        final Coordinate cTri = this.vertices.get(tri.getC());
+        final Coordinate aTri = walk.a;
+        final Coordinate bTri = walk.b;
+        final Coordinate cTri = walk.c;
+        setVertex(aTri, triangleVertices[triIndex * 3]);
+        setVertex(bTri, triangleVertices[triIndex * 3 + 1]);
+        setVertex(cTri, triangleVertices[triIndex * 3 + 2]);
         double distline_line;
         Coordinate intersection = new Coordinate();
         //if there is no intersection, by default we set the - max value to Topography intersection to avoid the problem
         double zTopoIntersection = -Double.MAX_VALUE;
         double zPropagationRayIntersection;
         // Intersection First Side
-        idneigh = triNeighbors.get(2);
+        idneigh = triangleNeighbors[triNeighbors + 2];
         if (idneigh != -1 && !navigationHistory.contains(idneigh)) {
-            Coordinate[] closestPoints = propagationLine.closestPoints(new LineSegment(aTri, bTri));
+            Coordinate[] closestPoints = propagationLine.closestPoints(walk.ab);
             Coordinate intersectionTest = null;
             if(closestPoints.length == 2 && closestPoints[0].distance(closestPoints[1]) < epsilon) {
                 intersectionTest = closestPoints[0];
@@ -220,9 +387,9 @@ public class FastObstructionTest {
             }
         }
         // Intersection Second Side
-        idneigh = triNeighbors.get(0);
+        idneigh = triangleNeighbors[triNeighbors + 0];
         if (idneigh != -1 && !navigationHistory.contains(idneigh)) {
-            Coordinate[] closestPoints = propagationLine.closestPoints(new LineSegment(bTri, cTri));
+            Coordinate[] closestPoints = propagationLine.closestPoints(walk.bc);
             Coordinate intersectionTest = null;
             if(closestPoints.length == 2 && closestPoints[0].distance(closestPoints[1]) < epsilon) {
                 intersectionTest = closestPoints[0];
@@ -240,9 +407,9 @@ public class FastObstructionTest {
             }
         }
         // Intersection Third Side
-        idneigh = triNeighbors.get(1);
+        idneigh = triangleNeighbors[triNeighbors + 1];
         if (idneigh != -1 && !navigationHistory.contains(idneigh)) {
-            Coordinate[] closestPoints = propagationLine.closestPoints(new LineSegment(cTri, aTri));
+            Coordinate[] closestPoints = propagationLine.closestPoints(walk.ca);
             Coordinate intersectionTest = null;
             if(closestPoints.length == 2 && closestPoints[0].distance(closestPoints[1]) < epsilon) {
                 intersectionTest = closestPoints[0];
@@ -262,15 +429,16 @@ public class FastObstructionTest {
             //get this point Z using propagation line
             zPropagationRayIntersection = calculateLinearInterpolation(propagationLine.p0, propagationLine.p1, intersection);
             // Manage blocking buildings
-            int neightBuildingId = this.triVertices.get(triNeighbors.get(nearestIntersectionSide)).getAttribute();
+            final int nextTri = triangleNeighbors[triNeighbors + nearestIntersectionSide];
+            int neightBuildingId = triangleAttributes[nextTri];
             int rayBuildingId = 0;
             // Current tri is in building
-            if(tri.getAttribute() != 0) {
-                rayBuildingId = tri.getAttribute();
-                MeshBuilder.PolygonWithHeight building = polygonWithHeight.get(tri.getAttribute() - 1);
+            if(triAttribute != 0) {
+                rayBuildingId = triAttribute;
+                MeshBuilder.PolygonWithHeight building = polygonWithHeight.get(triAttribute - 1);
                 // Stop propagation if ray collide with the building
                 if(!building.hasHeight() || Double.isNaN(zPropagationRayIntersection) || zPropagationRayIntersection < building.getHeight()) {
-                    return new TriIdWithIntersection(triNeighbors.get(nearestIntersectionSide),
+                    return new TriIdWithIntersection(nextTri,
                             new Coordinate(intersection.x, intersection.y, zPropagationRayIntersection),
                             true,false, rayBuildingId);
                 }
@@ -281,21 +449,21 @@ public class FastObstructionTest {
                 MeshBuilder.PolygonWithHeight building = polygonWithHeight.get(neightBuildingId - 1);
                 // Stop propagation if ray collide with the building
                 if(!building.hasHeight() || Double.isNaN(zPropagationRayIntersection) || zPropagationRayIntersection < building.getHeight()) {
-                    return new TriIdWithIntersection(triNeighbors.get(nearestIntersectionSide),
+                    return new TriIdWithIntersection(nextTri,
                             new Coordinate(intersection.x, intersection.y, zPropagationRayIntersection),
                             true,false, rayBuildingId);
                 }
             }
             //If the Z calculated by propagation Line >= Z calculated by intersected line, we will find next triangle
             if (Double.isNaN(zPropagationRayIntersection) || zPropagationRayIntersection + epsilon >= zTopoIntersection) {
-                return new TriIdWithIntersection(triNeighbors.get(nearestIntersectionSide),
+                return new TriIdWithIntersection(nextTri,
                         new Coordinate(intersection.x, intersection.y, zPropagationRayIntersection),
                         false, false, rayBuildingId);
             }
             //Else, the Z of Topographic intersection > Z calculated by propagation Line, the Topographic intersection will block the propagation line
             else {
                 //Propagation line blocked by the topography
-                return new TriIdWithIntersection(triNeighbors.get(nearestIntersectionSide),
+                return new TriIdWithIntersection(nextTri,
                         new Coordinate(intersection.x, intersection.y, zTopoIntersection),
                         false,true, rayBuildingId);
             }
@@ -306,57 +474,60 @@ public class FastObstructionTest {
         }
     }
 
-    private boolean dotInTri(Coordinate p, Coordinate a, Coordinate b,
-                             Coordinate c) {
-        return dotInTri(p, a, b, c, null);
-    }
     /**
      * Fast dot in triangle test
      * <p/>
      * {@see http://www.blackpawn.com/texts/pointinpoly/default.html}
      *
      * @param p coordinate of the point
-     * @param a coordinate of the A vertex of triangle
-     * @param b coordinate of the B vertex of triangle
-     * @param c coordinate of the C vertex of triangle
+     * @param triId Triangle index
      * @return True if dot is in triangle
      */
-    private boolean dotInTri(Coordinate p, Coordinate a, Coordinate b,
-                             Coordinate c, AtomicReference<Double> error) {
-        Vector2D v0 = new Vector2D(c.x - a.x, c.y - a.y);
-        Vector2D v1 = new Vector2D(b.x - a.x, b.y - a.y);
-        Vector2D v2 = new Vector2D(p.x - a.x, p.y - a.y);
-
-        // Compute dot products
-        double dot00 = v0.dot(v0);
-        double dot01 = v0.dot(v1);
-        double dot02 = v0.dot(v2);
-        double dot11 = v1.dot(v1);
-        double dot12 = v1.dot(v2);
-
-        // Compute barycentric coordinates
+    private boolean dotInTri(Coordinate p, int triId) {
+        final int a = triangleVertices[triId * 3] * 3;
+        final int b = triangleVertices[triId * 3 + 1] * 3;
+        final int c = triangleVertices[triId * 3 + 2] * 3;
+        double v0x = vertexCoordinates[c] - vertexCoordinates[a], v0y = vertexCoordinates[c + 1] - vertexCoordinates[a + 1];
+        double v1x = vertexCoordinates[b] - vertexCoordinates[a], v1y = vertexCoordinates[b + 1] - vertexCoordinates[a + 1];
+        double v2x = p.x - vertexCoordinates[a], v2y = p.y - vertexCoordinates[a + 1];
+        double dot00 = v0x * v0x + v0y * v0y;
+        double dot01 = v0x * v1x + v0y * v1y;
+        double dot02 = v0x * v2x + v0y * v2y;
+        double dot11 = v1x * v1x + v1y * v1y;
+        double dot12 = v1x * v2x + v1y * v2y;
         double invDenom = 1 / (dot00 * dot11 - dot01 * dot01);
         double u = (dot11 * dot02 - dot01 * dot12) * invDenom;
         double v = (dot00 * dot12 - dot01 * dot02) * invDenom;
-
-        if(error != null) {
-            double err = 0;
-            err += Math.max(0, -u);
-            err += Math.max(0, -v);
-            err += Math.max(0, (u + v) - 1);
-            error.set(err);
-        }
-
-        // Check if point is in triangle
         return (u > (0. - epsilon)) && (v > (0. - epsilon))
                 && (u + v < (1. + epsilon));
+    }
 
+    /**
+     * @param p coordinate of the point
+     * @param triId Triangle index
+     * @return Distance in barycentric coordinates to the triangle, 0 if the point is in the triangle
+     */
+    private double getBarycentricError(Coordinate p, int triId) {
+        final int a = triangleVertices[triId * 3] * 3;
+        final int b = triangleVertices[triId * 3 + 1] * 3;
+        final int c = triangleVertices[triId * 3 + 2] * 3;
+        double v0x = vertexCoordinates[c] - vertexCoordinates[a], v0y = vertexCoordinates[c + 1] - vertexCoordinates[a + 1];
+        double v1x = vertexCoordinates[b] - vertexCoordinates[a], v1y = vertexCoordinates[b + 1] - vertexCoordinates[a + 1];
+        double v2x = p.x - vertexCoordinates[a], v2y = p.y - vertexCoordinates[a + 1];
+        double dot00 = v0x * v0x + v0y * v0y;
+        double dot01 = v0x * v1x + v0y * v1y;
+        double dot02 = v0x * v2x + v0y * v2y;
+        double dot11 = v1x * v1x + v1y * v1y;
+        double dot12 = v1x * v2x + v1y * v2y;
+        double invDenom = 1 / (dot00 * dot11 - dot01 * dot01);
+        double u = (dot11 * dot02 - dot01 * dot12) * invDenom;
+        double v = (dot00 * dot12 - dot01 * dot02) * invDenom;
+        return Math.max(0, -u) + Math.max(0, -v) + Math.max(0, (u + v) - 1);
     }
 
     Coordinate[] getTriangle(int triIndex) {
-        final Triangle tri = this.triVertices.get(triIndex);
-        return new Coordinate[]{this.vertices.get(tri.getA()),
-                this.vertices.get(tri.getB()), this.vertices.get(tri.getC())};
+        return new Coordinate[]{getVertex(triangleVertices[triIndex * 3]),
+                getVertex(triangleVertices[triIndex * 3 + 1]), getVertex(triangleVertices[triIndex * 3 + 2])};
     }
 
     /**
@@ -367,6 +538,64 @@ public class FastObstructionTest {
      */
 
     public int getTriangleIdByCoordinate(Coordinate pt) {
+        if(triangleCacheSize <= 0) {
+            return queryTriangleIdByCoordinate(pt);
+        }
+        Integer cachedTriangle = triangleIdCache.get(pt);
+        if(cachedTriangle != null) {
+            triangleCacheHit.increment();
+            return cachedTriangle;
+        }
+        triangleCacheMiss.increment();
+        int triangleId = queryTriangleIdByCoordinate(pt);
+        if(triangleIdCache.size() >= triangleCacheSize) {
+            // Cache is full, drop all entries
+            triangleIdCache.clear();
+        }
+        // Copy the coordinate as the provided instance may be modified later
+        triangleIdCache.put(new Coordinate(pt.x, pt.y), triangleId);
+        return triangleId;
+    }
+
+    /**
+     * @return Number of calls to {@link #getTriangleIdByCoordinate(Coordinate)} that did not query the triangle index
+     */
+    public long getTriangleCacheHitCount() {
+        return triangleCacheHit.sum();
+    }
+
+    /**
+     * @return Number of calls to {@link #getTriangleIdByCoordinate(Coordinate)} that did query the triangle index
+     */
+    public long getTriangleCacheMissCount() {
+        return triangleCacheMiss.sum();
+    }
+
+    public int getTriangleCacheSize() {
+        return triangleCacheSize;
+    }
+
+    /**
+     * @param triangleCacheSize Maximum number of point locations kept in memory. The cache is cleared when this size is
+     *                          reached. 0 to disable the cache.
+     */
+    public void setTriangleCacheSize(int triangleCacheSize) {
+        this.triangleCacheSize = triangleCacheSize;
+        triangleIdCache.clear();
+    }
+
+    /**
+     * Query the triangle index in order to find the triangle that contains the point
+     *
+     * @param pt Point test
+     * @return Triangle Id, Or -1 if no triangle has been found
+     */
+    private int queryTriangleIdByCoordinate(Coordinate pt) {
+        if(triGrid != null) {
+            NearestTriangleVisitor visitor = new NearestTriangleVisitor(pt);
+            triGrid.query(pt.x - 1, pt.y - 1, pt.x + 1, pt.y + 1, visitor);
+            return visitor.minDistanceTriangle;
+        }
         Envelope ptEnv = new Envelope(pt);
         ptEnv.expandBy(1);
         List res = triIndex.query(new Envelope(ptEnv));
@@ -374,11 +603,9 @@ public class FastObstructionTest {
         int minDistanceTriangle = -1;
         for(Object objInd : res) {
             int triId = (Integer) objInd;
-            Coordinate[] tri = getTriangle(triId);
-            AtomicReference<Double> err = new AtomicReference<>(0.);
-            dotInTri(pt, tri[0], tri[1], tri[2], err);
-            if (err.get() < minDistance) {
-                minDistance = err.get();
+            double err = getBarycentricError(pt, triId);
+            if (err < minDistance) {
+                minDistance = err;
                 minDistanceTriangle = triId;
             }
         }
@@ -456,29 +683,31 @@ public class FastObstructionTest {
      */
     public List<Coordinate> getWideAnglePoints(double minAngle, double maxAngle) {
         List<Coordinate> wideAnglePts = new ArrayList<Coordinate>(
-                vertices.size());
+                getVertexCount());
         if (verticesOpenAngle == null) {
-            verticesOpenAngle = new ArrayList<Float>(vertices.size()); // Reserve
+            verticesOpenAngle = new ArrayList<Float>(getVertexCount()); // Reserve
             // size
             verticesOpenAngleTranslated = new ArrayList<Coordinate>(
-                    vertices.size());
+                    getVertexCount());
             // Vertex open angle. For each vertex
             // [ccwmin,ccwmax,ccwmin,ccwmax,..]
             ArrayList<ArrayList<Double>> verticesOpenAnglesTuples = new ArrayList<ArrayList<Double>>(
-                    vertices.size());
-            for (int idvert = 0; idvert < vertices.size(); idvert++) {
+                    getVertexCount());
+            for (int idvert = 0; idvert < getVertexCount(); idvert++) {
                 verticesOpenAngle.add(0.f);
                 verticesOpenAnglesTuples.add(new ArrayList<Double>());
             }
 
 
-            for (Triangle tri : this.triVertices) {
-                if (tri.getAttribute() < 1) {
+            for (int triId = 0; triId < getTriangleCount(); triId++) {
+                if (triangleAttributes[triId] < 1) {
+                    Triangle tri = new Triangle(triangleVertices[triId * 3], triangleVertices[triId * 3 + 1],
+                            triangleVertices[triId * 3 + 2]);
                     // Compute angle at each corner, then add to vertices angle
                     // array
-                    Coordinate triA = vertices.get(tri.getA());
-                    Coordinate triB = vertices.get(tri.getB());
-                    Coordinate triC = vertices.get(tri.getC());
+                    Coordinate triA = getVertex(tri.getA());
+                    Coordinate triB = getVertex(tri.getB());
+                    Coordinate triC = getVertex(tri.getC());
                     // Add A vertex min/max angle
                     updateMinMax(tri.getA(), triA, triB, triC,
                             verticesOpenAnglesTuples);
@@ -503,11 +732,11 @@ public class FastObstructionTest {
                 }
             }
 
-            for (int idvert = 0; idvert < vertices.size(); idvert++) {
+            for (int idvert = 0; idvert < getVertexCount(); idvert++) {
                 // Compute median angle of open angle point
                 ArrayList<Double> curvert = verticesOpenAnglesTuples
                         .get(idvert);
-                Coordinate curVert = vertices.get(idvert);
+                Coordinate curVert = getVertex(idvert);
                 if (curvert.size() == 2) {
                     double ccw1 = curvert.get(0);
                     double ccw2 = curvert.get(1);
@@ -579,6 +808,60 @@ public class FastObstructionTest {
         return verticesBuilding;
     }
 
+    /**
+     * Same as {@link #getLimitsInRange(double, Coordinate, boolean)} but the result is kept in memory in order to be
+     * returned for the following queries with the same parameters. Used for source points as they are shared by all
+     * receivers of the cell.
+     *
+     * @param maxDist Maximum distance from origin to segments
+     * @param p1      Origin of search
+     * @return Unmodifiable list of distinct segments
+     */
+    public List<Wall> getLimitsInRangeCached(double maxDist, Coordinate p1, boolean goThroughWalls) {
+        if(wallCacheSize <= 0) {
+            return new ArrayList<>(new LinkedHashSet<>(getLimitsInRange(maxDist, p1, goThroughWalls)));
+        }
+        WallsQuery query = new WallsQuery(p1.x, p1.y, maxDist, goThroughWalls);
+        List<Wall> walls = wallCache.get(query);
+        if(walls != null) {
+            wallCacheHit.increment();
+            return walls;
+        }
+        wallCacheMiss.increment();
+        // Computed outside of the lock, concurrent threads may evaluate the same query
+        walls = Collections.unmodifiableList(new ArrayList<>(new LinkedHashSet<>(getLimitsInRange(maxDist, p1,
+                goThroughWalls))));
+        wallCache.put(query, walls);
+        return walls;
+    }
+
+    /**
+     * @return Number of calls to {@link #getLimitsInRangeCached(double, Coordinate, boolean)} answered by the cache
+     */
+    public long getWallCacheHitCount() {
+        return wallCacheHit.sum();
+    }
+
+    /**
+     * @return Number of calls to {@link #getLimitsInRangeCached(double, Coordinate, boolean)} that computed walls
+     */
+    public long getWallCacheMissCount() {
+        return wallCacheMiss.sum();
+    }
+
+    public int getWallCacheSize() {
+        return wallCacheSize;
+    }
+
+    /**
+     * @param wallCacheSize Maximum number of wall lists kept in memory. The least recently used list is evicted
+     *                      when this size is reached. 0 to disable the cache.
+     */
+    public void setWallCacheSize(int wallCacheSize) {
+        this.wallCacheSize = wallCacheSize;
+        wallCache.clear();
+    }
+
     /**
      * Compute the list of segments corresponding to holes and domain limitation
      *
@@ -591,7 +874,7 @@ public class FastObstructionTest {
         LinkedList<Wall> walls = new LinkedList<>();
         int curTri = getTriangleIdByCoordinate(p1);
         int p1Building = 0;
-        p1Building = triVertices.get(curTri).getAttribute();
+        p1Building = triangleAttributes[curTri];
         int nextTri = -1;
         short firstSide = 0;
         HashSet<Integer> navigationHistory = new HashSet<Integer>(); // List all
@@ -610,35 +893,32 @@ public class FastObstructionTest {
                 navigationHistory.add(curTri);
             }
             // for each side of the triangle
-            Triangle neighbors = this.triNeighbors.get(curTri);
+            final int neighbors = curTri * 3;
             nextTri = -1;
             for (short sideId = firstSide; sideId < 3; sideId++) {
-                Triangle tri = this.triVertices.get(curTri);
-                IntSegment segVerticesIndex = tri
-                        .getSegment(sideId);
+                final int neighbor = triangleNeighbors[neighbors + sideId];
                 int wallBuildingId = 0;
-                if(neighbors.get(sideId) != -1) {
-                    wallBuildingId = triVertices.get(neighbors.get(sideId)).getAttribute();
+                if(neighbor != -1) {
+                    wallBuildingId = triangleAttributes[neighbor];
                 }
-                Wall wall = new Wall(
-                        this.vertices.get(segVerticesIndex.getA()),
-                        this.vertices.get(segVerticesIndex.getB()),wallBuildingId);
-                Coordinate closestPoint = wall.closestPoint(p1);
-                if (closestPoint.distance(p1) <= maxDist) {
+                // The side is the opposite of the vertex sideId, see Triangle#getSegment
+                final int wallA = triangleVertices[curTri * 3 + (sideId + 1) % 3];
+                final int wallB = triangleVertices[curTri * 3 + (sideId + 2) % 3];
+                if (getSegmentDistance(wallA, wallB, p1) <= maxDist) {
                     // Propagate search in this direction if this is not the domain limitation
-                    if (neighbors.get(sideId) != -1) {
+                    if (neighbor != -1) {
                         // If the triangle side is a wal
-                        if (wall.getBuildingId() >= 1 && wall.getLength() > MINIMAL_REFLECTION_WALL_LENGTH) {
-                            walls.add(wall);
+                        if (wallBuildingId >= 1 && getSegmentLength(wallA, wallB) > MINIMAL_REFLECTION_WALL_LENGTH) {
+                            walls.add(new Wall(getVertex(wallA), getVertex(wallB), wallBuildingId));
                         }
-                        if((goThroughWalls || wall.getBuildingId() == 0 || wall.getBuildingId() == p1Building) && !navigationHistory.contains(neighbors.get(sideId))) {
+                        if((goThroughWalls || wallBuildingId == 0 || wallBuildingId == p1Building) && !navigationHistory.contains(neighbor)) {
                             // Store currentTriangle Id. This is where to go
                             // back when there is no more navigable neighbors at
                             // the next triangle
                             navigationNodes.add(curTri);
                             navigationSide.add(sideId);
                             firstSide = 0;
-                            nextTri = neighbors.get(sideId);
+                            nextTri = neighbor;
                             break; // Next triangle
                         }
                     }
@@ -655,6 +935,45 @@ public class FastObstructionTest {
         return walls;
     }
 
+    /**
+     * @param vertexA First vertex index
+     * @param vertexB Second vertex index
+     * @return 2D length of the segment, see {@link LineSegment#getLength()}
+     */
+    private double getSegmentLength(int vertexA, int vertexB) {
+        double dx = vertexCoordinates[vertexB * 3] - vertexCoordinates[vertexA * 3];
+        double dy = vertexCoordinates[vertexB * 3 + 1] - vertexCoordinates[vertexA * 3 + 1];
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * @param vertexA First vertex index
+     * @param vertexB Second vertex index
+     * @param p Point
+     * @return 2D distance between the point and the closest point of the segment, see
+     * {@link LineSegment#closestPoint(Coordinate)}
+     */
+    private double getSegmentDistance(int vertexA, int vertexB, Coordinate p) {
+        double ax = vertexCoordinates[vertexA * 3], ay = vertexCoordinates[vertexA * 3 + 1];
+        double bx = vertexCoordinates[vertexB * 3], by = vertexCoordinates[vertexB * 3 + 1];
+        double dx = bx - ax;
+        double dy = by - ay;
+        double len2 = dx * dx + dy * dy;
+        if (len2 > 0) {
+            double factor = ((p.x - ax) * dx + (p.y - ay) * dy) / len2;
+            if (factor > 0 && factor < 1) {
+                return distance(ax + factor * dx, ay + factor * dy, p);
+            }
+        }
+        return Math.min(distance(ax, ay, p), distance(bx, by, p));
+    }
+
+    private static double distance(double x, double y, Coordinate p) {
+        double dx = x - p.x;
+        double dy = y - p.y;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
     /**
      * Get ray curve length from homogeneous CNOSSOS p .94
      * @param MN distance between M and N
@@ -675,12 +994,7 @@ public class FastObstructionTest {
     public double getHeightAtPosition(Coordinate p1) {
         int curTri = getTriangleIdByCoordinate(p1);
         if(curTri >= 0) {
-            Triangle triangle = triVertices.get(curTri);
-            org.locationtech.jts.geom.Triangle tri =
-                    new org.locationtech.jts.geom.Triangle(vertices.get(triangle.getA()),
-                            vertices.get(triangle.getB()),vertices.get(triangle.getC()));
-
-            return tri.interpolateZ(p1);
+            return getTopoZ(curTri, p1);
         } else {
             return Double.NaN;
         }
@@ -749,28 +1063,26 @@ public class FastObstructionTest {
             logger.error(String.format("Propagation path point (%.2f, %.2f) is outside of bounds", p2.x, p2.y));
             return false;
         }
-        Coordinate[] triP1 = getTriangle(curTriP1);
-        Coordinate[] triP2 = getTriangle(curTriP2);
-        Triangle buildingP1 = this.triVertices.get(curTriP1);
-        Triangle buildingP2 = this.triVertices.get(curTriP2);
+        final int buildingP1 = triangleAttributes[curTriP1];
+        final int buildingP2 = triangleAttributes[curTriP2];
         if(stopOnIntersection) {
-            if (buildingP1.getAttribute() >= 1) {
-                MeshBuilder.PolygonWithHeight building = polygonWithHeight.get(buildingP1.getAttribute() - 1);
+            if (buildingP1 >= 1) {
+                MeshBuilder.PolygonWithHeight building = polygonWithHeight.get(buildingP1 - 1);
                 if (!building.hasHeight() || Double.isNaN(p1.z) || building.getHeight() >= p1.z) {
                     //receiver is in the building so this propagation line is invisible
                     return false;
                 }
             }
-            if (buildingP2.getAttribute() >= 1) {
-                MeshBuilder.PolygonWithHeight building = polygonWithHeight.get(buildingP2.getAttribute() - 1);
+            if (buildingP2 >= 1) {
+                MeshBuilder.PolygonWithHeight building = polygonWithHeight.get(buildingP2 - 1);
                 if (!building.hasHeight() || Double.isNaN(p2.z) || building.getHeight() >= p2.z) {
                     //receiver is in the building so this propagation line is invisible
                     return false;
                 }
             }
         }
-        double zTopoP1 = getTopoZByGiven3Points(triP1[0], triP1[1], triP1[2], p1);
-        double zTopoP2 = getTopoZByGiven3Points(triP2[0], triP2[1], triP2[2], p2);
+        double zTopoP1 = getTopoZ(curTriP1, p1);
+        double zTopoP2 = getTopoZ(curTriP2, p2);
         if(includePoints) {
             path.add(new TriIdWithIntersection(curTriP1, new Coordinate(p1.x, p1.y, zTopoP1)));
         }
@@ -779,24 +1091,24 @@ public class FastObstructionTest {
             //Z value of origin or destination is lower than topography. FreeField is always false in this case
             if(includePoints) {
                 path.add(new TriIdWithIntersection(curTriP2, new Coordinate(p2.x, p2.y, zTopoP2), false, false,
-                        buildingP2.getAttribute()));
+                        buildingP2));
             }
             return false;
         }
 
         HashSet<Integer> navigationHistory = new HashSet<Integer>();
+        TriangleWalk walk = new TriangleWalk();
         int navigationTri = curTriP1;
         while (navigationTri != -1) {
             navigationHistory.add(navigationTri);
-            Coordinate[] tri = getTriangle(navigationTri);
-            if (dotInTri(p2, tri[0], tri[1], tri[2])) {
+            if (dotInTri(p2, navigationTri)) {
                 if(includePoints) {
                     path.add(new TriIdWithIntersection(curTriP2, new Coordinate(p2.x, p2.y, zTopoP2), false, false,
-                            buildingP2.getAttribute()));
+                            buildingP2));
                 }
                 return true;
             }
-            TriIdWithIntersection propaTri = this.getNextTri(navigationTri, propaLine, navigationHistory);
+            TriIdWithIntersection propaTri = this.getNextTri(navigationTri, propaLine, navigationHistory, walk);
             if (path != null && propaTri.getTriID() >= 0) {
                 path.add(propaTri);
             }
@@ -830,9 +1142,7 @@ public class FastObstructionTest {
     public List<Coordinate> getGroundProfile(List<TriIdWithIntersection> allInterPoints) {
         List<Coordinate> groundProfile = new ArrayList<>(allInterPoints.size());
         for(TriIdWithIntersection tri : allInterPoints) {
-            Triangle triangle = triVertices.get(tri.getTriID());
-            double zTri = getTopoZByGiven3Points(vertices.get(triangle.getA()), vertices.get(triangle.getB()),
-                    vertices.get(triangle.getC()), tri.getCoorIntersection());
+            double zTri = getTopoZ(tri.getTriID(), tri.getCoorIntersection());
             groundProfile.add(new Coordinate(tri.getCoorIntersection().x, tri.getCoorIntersection().y, zTri));
         }
         return groundProfile;
@@ -1357,16 +1667,62 @@ public class FastObstructionTest {
      * When we fix a,b,c,d by given 3 points, we can get Z of given point X,Y
      * z=-(ax+by+d)/c
      *
-     * @param p1    first point
-     * @param p2    second point
-     * @param p3    third point
+     * The plane is the one of the triangle, vertices are read in place, see
+     * {@link Vertex#interpolateZ(Coordinate, Coordinate, Coordinate, Coordinate)}
+     *
+     * @param triId Triangle index
      * @param point the point which includes the x and y
      * @return z of point
      * {@see http://en.wikipedia.org/wiki/Plane_%28geometry%29}
      */
+    private double getTopoZ(int triId, Coordinate point) {
+        final int v0 = triangleVertices[triId * 3] * 3;
+        final int v1 = triangleVertices[triId * 3 + 1] * 3;
+        final int v2 = triangleVertices[triId * 3 + 2] * 3;
+        double x0 = vertexCoordinates[v0];
+        double y0 = vertexCoordinates[v0 + 1];
+        double z0 = vertexCoordinates[v0 + 2];
+        double a = vertexCoordinates[v1] - x0;
+        double b = vertexCoordinates[v2] - x0;
+        double c = vertexCoordinates[v1 + 1] - y0;
+        double d = vertexCoordinates[v2 + 1] - y0;
+        double det = a * d - b * c;
+        double dx = point.x - x0;
+        double dy = point.y - y0;
+        double t = (d * dx - b * dy) / det;
+        double u = (-c * dx + a * dy) / det;
+        return z0 + t * (vertexCoordinates[v1 + 2] - z0) + u * (vertexCoordinates[v2 + 2] - z0);
+    }
 
-    private double getTopoZByGiven3Points(Coordinate p1, Coordinate p2, Coordinate p3, Coordinate point) {
-        return Vertex.interpolateZ(point, p1, p2, p3);
+    /**
+     * Parameters of {@link #getLimitsInRangeCached(double, Coordinate, boolean)}
+     */
+    private static final class WallsQuery {
+        private final double x;
+        private final double y;
+        private final double maxDist;
+        private final boolean goThroughWalls;
+
+        WallsQuery(double x, double y, double maxDist, boolean goThroughWalls) {
+            this.x = x;
+            this.y = y;
+            this.maxDist = maxDist;
+            this.goThroughWalls = goThroughWalls;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            WallsQuery that = (WallsQuery) o;
+            return Double.compare(that.x, x) == 0 && Double.compare(that.y, y) == 0 &&
+                    Double.compare(that.maxDist, maxDist) == 0 && goThroughWalls == that.goThroughWalls;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(x, y, maxDist, goThroughWalls);
+        }
     }
 
     public static final class Wall extends LineSegment {
@@ -1395,30 +1751,84 @@ public class FastObstructionTest {
         sb.append("CREATE TABLE TRI_NEIGHBOURS(id serial, the_geom LINESTRING);\n");
         GeometryFactory gf = new GeometryFactory();
         WKTWriter wktWriter = new WKTWriter(3);
-        int idTriangle = 0;
-        for( Triangle t : triVertices) {
-            Coordinate[] line = new Coordinate[] {vertices.get(t.getA()), vertices.get(t.getB()), vertices.get(t.getC()), vertices.get(t.getA())};
+        for(int idTriangle = 0; idTriangle < getTriangleCount(); idTriangle++) {
+            Coordinate[] t = getTriangle(idTriangle);
+            Coordinate[] line = new Coordinate[] {t[0], t[1], t[2], t[0]};
             sb.append(String.format("INSERT INTO TRIANGLES(THE_GEOM) VALUES ('%s');\n", gf.createPolygon(line)));
-            Coordinate from = new org.locationtech.jts.geom.Triangle(vertices.get(t.getA()), vertices.get(t.getB()), vertices.get(t.getC())).centroid();
+            Coordinate from = new org.locationtech.jts.geom.Triangle(t[0], t[1], t[2]).centroid();
             // Dump neighbours links
-            Triangle neigh = triNeighbors.get(idTriangle);
             for(int n = 0; n < 3; n++) {
-                int vIndex = neigh.get(n);
+                int vIndex = triangleNeighbors[idTriangle * 3 + n];
                 if(vIndex >= 0) {
-                    Triangle tn = triVertices.get(vIndex);
-                    Coordinate to = new org.locationtech.jts.geom.Triangle(vertices.get(tn.getA()), vertices.get(tn.getB()), vertices.get(tn.getC())).centroid();
+                    Coordinate[] tn = getTriangle(vIndex);
+                    Coordinate to = new org.locationtech.jts.geom.Triangle(tn[0], tn[1], tn[2]).centroid();
                     sb.append(String.format("INSERT INTO TRI_NEIGHBOURS(THE_GEOM) VALUES ('%s');\n", gf.createLineString(new Coordinate[]{from, to})));
                 }
             }
-            idTriangle++;
         }
         return sb.toString();
     }
 
 
 
-    public static abstract class IntersectionRayVisitor implements ItemVisitor {
-        Set<Integer> buildingsprocessed = new HashSet<>();
+    /**
+     * Keep the triangle with the lowest barycentric error, see {@link #getBarycentricError(Coordinate, int)}
+     */
+    private final class NearestTriangleVisitor implements GridIndex.ItemVisitor {
+        final Coordinate pt;
+        double minDistance = Double.MAX_VALUE;
+        int minDistanceTriangle = -1;
+
+        NearestTriangleVisitor(Coordinate pt) {
+            this.pt = pt;
+        }
+
+        @Override
+        public void visitItem(int triId) {
+            double err = getBarycentricError(pt, triId);
+            // On ties keep the lowest identifier, the visit order of the grid is not the STRtree one
+            if (err < minDistance || (err == minDistance && triId < minDistanceTriangle)) {
+                minDistance = err;
+                minDistanceTriangle = triId;
+            }
+        }
+    }
+
+    /**
+     * Last visitor stamp of each building identifier, shared by the visitors of a thread
+     */
+    private static final class BuildingStamps {
+        int[] stamps = new int[0];
+        int stamp = 0;
+
+        /**
+         * @param buildingCount Maximal building identifier
+         * @return New stamp, not yet set to any building
+         */
+        int next(int buildingCount) {
+            if (stamps.length <= buildingCount) {
+                stamps = new int[Math.max(buildingCount + 1, stamps.length * 2)];
+                stamp = 0;
+            }
+            stamp++;
+            if (stamp == Integer.MAX_VALUE) {
+                Arrays.fill(stamps, 0);
+                stamp = 1;
+            }
+            return stamp;
+        }
+    }
+
+    private static final ThreadLocal<BuildingStamps> BUILDING_STAMPS = ThreadLocal.withInitial(BuildingStamps::new);
+
+    /**
+     * Visit buildings only once, without boxing their identifiers. Visitors of a thread must not be interleaved, the
+     * query of a visitor must be done before the creation of the next visitor.
+     */
+    public static abstract class IntersectionRayVisitor implements ItemVisitor, GridIndex.ItemVisitor {
+        // Buildings already processed by this visitor are set to the stamp of this visitor
+        private final int[] buildingsprocessed;
+        private final int stamp;
         List<MeshBuilder.PolygonWithHeight> polygonWithHeight;
         Coordinate p1;
         Coordinate p2;
@@ -1429,15 +1839,22 @@ public class FastObstructionTest {
             this.p1 = p1;
             this.p2 = p2;
             seg = new LineSegment(p1, p2).toGeometry(new GeometryFactory());
+            BuildingStamps buildingStamps = BUILDING_STAMPS.get();
+            stamp = buildingStamps.next(polygonWithHeight.size());
+            buildingsprocessed = buildingStamps.stamps;
         }
 
         public abstract void addBuilding(int buildingId);
 
         @Override
         public void visitItem(Object item) {
-            int buildingId = (Integer) item;
-            if(!buildingsprocessed.contains(buildingId)) {
-                buildingsprocessed.add(buildingId);
+            visitItem((int) (Integer) item);
+        }
+
+        @Override
+        public void visitItem(int buildingId) {
+            if(buildingsprocessed[buildingId] != stamp) {
+                buildingsprocessed[buildingId] = stamp;
                 final MeshBuilder.PolygonWithHeight p = polygonWithHeight.get(buildingId - 1);
                 RectangleLineIntersector rect = new RectangleLineIntersector(p.geo.getEnvelopeInternal());
                 if (rect.intersects(p1, p2) && p.geo.intersects(seg)) {
@@ -0,0 +1,188 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ *
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ *
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ *
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.geom.Envelope;
+
+/**
+ * Uniform grid index of envelopes. Unlike STRtree items are primitive int and queries do not allocate.
+ * Cells store the items in flat arrays (compressed rows), an item covering several cells is visited only once per
+ * query: it is reported by the cell that contains the lower left corner of the intersection between the item envelope
+ * and the query envelope.
+ * The index is immutable once built and can be queried by multiple threads.
+ */
+public class GridIndex {
+    // Limit the number of cells when the items are very small in comparison with the extent
+    private static final int MAXIMUM_CELLS_PER_SIDE = 1 << 14;
+    private final double minX;
+    private final double minY;
+    private final double cellSize;
+    private final int columns;
+    private final int rows;
+    // [minX, minY, maxX, maxY] of each item
+    private final double[] itemEnvelopes;
+    private final int[] itemIds;
+    // Items of cell i are cellItems[cellStart[i]] to cellItems[cellStart[i + 1] - 1]
+    private final int[] cellStart;
+    private final int[] cellItems;
+
+    /**
+     * Visitor of int items
+     */
+    public interface ItemVisitor {
+        void visitItem(int item);
+    }
+
+    /**
+     * @param itemEnvelopes [minX, minY, maxX, maxY] of each item
+     * @param itemIds Identifier returned for each item, or null to return the item index
+     */
+    public GridIndex(double[] itemEnvelopes, int[] itemIds) {
+        if(itemEnvelopes.length % 4 != 0) {
+            throw new IllegalArgumentException("Envelopes array length must be a multiple of 4");
+        }
+        final int itemCount = itemEnvelopes.length / 4;
+        if(itemIds != null && itemIds.length != itemCount) {
+            throw new IllegalArgumentException("Item identifiers and envelopes count differ");
+        }
+        this.itemEnvelopes = itemEnvelopes;
+        this.itemIds = itemIds;
+        Envelope extent = new Envelope();
+        for(int item = 0; item < itemCount; item++) {
+            extent.expandToInclude(itemEnvelopes[item * 4], itemEnvelopes[item * 4 + 1]);
+            extent.expandToInclude(itemEnvelopes[item * 4 + 2], itemEnvelopes[item * 4 + 3]);
+        }
+        if(extent.isNull()) {
+            extent = new Envelope(0, 0, 0, 0);
+        }
+        minX = extent.getMinX();
+        minY = extent.getMinY();
+        // One cell per item on average
+        double size = Math.sqrt(extent.getArea() / Math.max(1, itemCount));
+        size = Math.max(size, Math.max(extent.getWidth(), extent.getHeight()) / MAXIMUM_CELLS_PER_SIDE);
+        cellSize = size > 0 ? size : 1;
+        columns = Math.min(MAXIMUM_CELLS_PER_SIDE, (int) (extent.getWidth() / cellSize) + 1);
+        rows = Math.min(MAXIMUM_CELLS_PER_SIDE, (int) (extent.getHeight() / cellSize) + 1);
+        // Count items of each cell, then fill the cells
+        cellStart = new int[columns * rows + 1];
+        for(int item = 0; item < itemCount; item++) {
+            int minCol = getColumn(itemEnvelopes[item * 4]);
+            int maxCol = getColumn(itemEnvelopes[item * 4 + 2]);
+            int minRow = getRow(itemEnvelopes[item * 4 + 1]);
+            int maxRow = getRow(itemEnvelopes[item * 4 + 3]);
+            for(int row = minRow; row <= maxRow; row++) {
+                for(int col = minCol; col <= maxCol; col++) {
+                    cellStart[row * columns + col + 1]++;
+                }
+            }
+        }
+        for(int cell = 0; cell < columns * rows; cell++) {
+            cellStart[cell + 1] += cellStart[cell];
+        }
+        cellItems = new int[cellStart[columns * rows]];
+        int[] cellFill = new int[columns * rows];
+        for(int item = 0; item < itemCount; item++) {
+            int minCol = getColumn(itemEnvelopes[item * 4]);
+            int maxCol = getColumn(itemEnvelopes[item * 4 + 2]);
+            int minRow = getRow(itemEnvelopes[item * 4 + 1]);
+            int maxRow = getRow(itemEnvelopes[item * 4 + 3]);
+            for(int row = minRow; row <= maxRow; row++) {
+                for(int col = minCol; col <= maxCol; col++) {
+                    int cell = row * columns + col;
+                    cellItems[cellStart[cell] + cellFill[cell]++] = item;
+                }
+            }
+        }
+    }
+
+    private int getColumn(double x) {
+        return Math.max(0, Math.min(columns - 1, (int) ((x - minX) / cellSize)));
+    }
+
+    private int getRow(double y) {
+        return Math.max(0, Math.min(rows - 1, (int) ((y - minY) / cellSize)));
+    }
+
+    /**
+     * @return Number of indexed items
+     */
+    public int size() {
+        return itemEnvelopes.length / 4;
+    }
+
+    /**
+     * Visit each item whose envelope intersects the query envelope
+     * @param queryEnv Query envelope
+     * @param visitor Items visitor
+     */
+    public void query(Envelope queryEnv, ItemVisitor visitor) {
+        if(!queryEnv.isNull()) {
+            query(queryEnv.getMinX(), queryEnv.getMinY(), queryEnv.getMaxX(), queryEnv.getMaxY(), visitor);
+        }
+    }
+
+    /**
+     * Visit each item whose envelope intersects the query envelope
+     * @param queryMinX Query envelope minimum x
+     * @param queryMinY Query envelope minimum y
+     * @param queryMaxX Query envelope maximum x
+     * @param queryMaxY Query envelope maximum y
+     * @param visitor Items visitor
+     */
+    public void query(double queryMinX, double queryMinY, double queryMaxX, double queryMaxY, ItemVisitor visitor) {
+        int minCol = getColumn(queryMinX);
+        int maxCol = getColumn(queryMaxX);
+        int minRow = getRow(queryMinY);
+        int maxRow = getRow(queryMaxY);
+        for(int row = minRow; row <= maxRow; row++) {
+            for(int col = minCol; col <= maxCol; col++) {
+                int cell = row * columns + col;
+                for(int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                    int item = cellItems[i];
+                    double itemMinX = itemEnvelopes[item * 4];
+                    double itemMinY = itemEnvelopes[item * 4 + 1];
+                    if(itemMinX > queryMaxX || itemEnvelopes[item * 4 + 2] < queryMinX ||
+                            itemMinY > queryMaxY || itemEnvelopes[item * 4 + 3] < queryMinY) {
+                        continue;
+                    }
+                    // Report the item only once, in the cell of the lower left corner of the intersection
+                    if(getColumn(Math.max(itemMinX, queryMinX)) == col &&
+                            getRow(Math.max(itemMinY, queryMinY)) == row) {
+                        visitor.visitItem(itemIds == null ? item : itemIds[item]);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,284 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ *
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ *
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ *
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryCollection;
+import org.locationtech.jts.geom.Polygon;
+
+import java.util.Arrays;
+
+/**
+ * Ground factor G rasterised on a regular grid. Each cell holds the G value of the soil polygons weighted by their
+ * coverage of the cell, the uncovered part of the cell has G = 0 (as with the soil polygons).
+ * Lookups along a ray are array walks instead of polygon intersections.
+ * The raster can be queried by multiple threads once filled.
+ */
+public class GroundFactorRaster {
+    // Number of scanlines per row of cells used to evaluate the polygon coverage
+    private static final int SUB_ROWS = 8;
+    private final double minX;
+    private final double minY;
+    private final double cellSize;
+    private final int columns;
+    private final int rows;
+    private final float[] g;
+
+    /**
+     * @param envelope Extent of the raster, the last row and column may go beyond the envelope
+     * @param cellSize Cell side length in meters
+     */
+    public GroundFactorRaster(Envelope envelope, double cellSize) {
+        if(!(cellSize > 0)) {
+            throw new IllegalArgumentException("Cell size must be strictly positive");
+        }
+        this.minX = envelope.getMinX();
+        this.minY = envelope.getMinY();
+        this.cellSize = cellSize;
+        this.columns = Math.max(1, (int)Math.ceil(envelope.getWidth() / cellSize));
+        this.rows = Math.max(1, (int)Math.ceil(envelope.getHeight() / cellSize));
+        this.g = new float[columns * rows];
+    }
+
+    public double getMinX() {
+        return minX;
+    }
+
+    public double getMinY() {
+        return minY;
+    }
+
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * @return Envelope of the raster cells
+     */
+    public Envelope getEnvelope() {
+        return new Envelope(minX, minX + columns * cellSize, minY, minY + rows * cellSize);
+    }
+
+    /**
+     * @param column Column index
+     * @param row Row index
+     * @return Coverage weighted G of the cell
+     */
+    public float getCellValue(int column, int row) {
+        return g[row * columns + column];
+    }
+
+    /**
+     * @param x X coordinate
+     * @param y Y coordinate
+     * @return Coverage weighted G of the cell at this location, 0 outside of the raster
+     */
+    public double getG(double x, double y) {
+        int column = (int)Math.floor((x - minX) / cellSize);
+        int row = (int)Math.floor((y - minY) / cellSize);
+        if(column < 0 || row < 0 || column >= columns || row >= rows) {
+            return 0;
+        }
+        return g[row * columns + column];
+    }
+
+    /**
+     * Average G along the 2D segment, weighted by the length of the segment in each cell. Cells are walked with a
+     * DDA traversal (Amanatides and Woo), the cost is proportional to the number of crossed cells. Portions of the
+     * segment outside of the raster have G = 0.
+     * @param p0 First extremity
+     * @param p1 Second extremity
+     * @return G path
+     */
+    public double getMeanG(Coordinate p0, Coordinate p1) {
+        final double dx = p1.x - p0.x;
+        final double dy = p1.y - p0.y;
+        if(dx == 0 && dy == 0) {
+            return getG(p0.x, p0.y);
+        }
+        // Clip the segment parameter range [0, 1] on the raster extent (slab method)
+        final double maxX = minX + columns * cellSize;
+        final double maxY = minY + rows * cellSize;
+        double t = 0;
+        double tEnd = 1;
+        if(dx != 0) {
+            double ta = (minX - p0.x) / dx;
+            double tb = (maxX - p0.x) / dx;
+            t = Math.max(t, Math.min(ta, tb));
+            tEnd = Math.min(tEnd, Math.max(ta, tb));
+        } else if(p0.x < minX || p0.x > maxX) {
+            return 0;
+        }
+        if(dy != 0) {
+            double ta = (minY - p0.y) / dy;
+            double tb = (maxY - p0.y) / dy;
+            t = Math.max(t, Math.min(ta, tb));
+            tEnd = Math.min(tEnd, Math.max(ta, tb));
+        } else if(p0.y < minY || p0.y > maxY) {
+            return 0;
+        }
+        if(t >= tEnd) {
+            return 0;
+        }
+        int column = Math.max(0, Math.min(columns - 1, (int)Math.floor((p0.x + dx * t - minX) / cellSize)));
+        int row = Math.max(0, Math.min(rows - 1, (int)Math.floor((p0.y + dy * t - minY) / cellSize)));
+        final int stepColumn = dx > 0 ? 1 : -1;
+        final int stepRow = dy > 0 ? 1 : -1;
+        // Parameter of the next column and row boundaries, and parameter increment between two boundaries
+        final double tDeltaX = dx != 0 ? cellSize / Math.abs(dx) : Double.POSITIVE_INFINITY;
+        final double tDeltaY = dy != 0 ? cellSize / Math.abs(dy) : Double.POSITIVE_INFINITY;
+        double tMaxX = dx != 0 ? (minX + (column + (dx > 0 ? 1 : 0)) * cellSize - p0.x) / dx : Double.POSITIVE_INFINITY;
+        double tMaxY = dy != 0 ? (minY + (row + (dy > 0 ? 1 : 0)) * cellSize - p0.y) / dy : Double.POSITIVE_INFINITY;
+        double sum = 0;
+        while(t < tEnd) {
+            double tNext = Math.min(tEnd, Math.min(tMaxX, tMaxY));
+            if(tNext > t) {
+                sum += g[row * columns + column] * (tNext - t);
+                t = tNext;
+            }
+            if(tMaxX < tMaxY) {
+                column += stepColumn;
+                tMaxX += tDeltaX;
+            } else {
+                row += stepRow;
+                tMaxY += tDeltaY;
+            }
+            if(column < 0 || row < 0 || column >= columns || row >= rows) {
+                break;
+            }
+        }
+        // The parameter range is proportional to the length
+        return sum;
+    }
+
+    /**
+     * Add the contribution of a soil area. The coverage is exact along the x axis and evaluated with
+     * scanlines along the y axis.
+     * @param geometry Polygon, MultiPolygon or GeometryCollection, other geometries are ignored
+     * @param groundFactor G value of the area
+     */
+    public void addSoil(Geometry geometry, double groundFactor) {
+        if(geometry instanceof GeometryCollection) {
+            for(int i = 0; i < geometry.getNumGeometries(); i++) {
+                addSoil(geometry.getGeometryN(i), groundFactor);
+            }
+        } else if(geometry instanceof Polygon && !geometry.isEmpty()) {
+            addPolygon((Polygon) geometry, groundFactor);
+        }
+    }
+
+    private void addPolygon(Polygon polygon, double groundFactor) {
+        Envelope polygonEnvelope = polygon.getEnvelopeInternal();
+        int minRow = Math.max(0, (int)Math.floor((polygonEnvelope.getMinY() - minY) / cellSize));
+        int maxRow = Math.min(rows - 1, (int)Math.floor((polygonEnvelope.getMaxY() - minY) / cellSize));
+        if(minRow > maxRow || polygonEnvelope.getMaxX() < minX || polygonEnvelope.getMinX() > minX + columns * cellSize) {
+            return;
+        }
+        // Edges of all rings [x0, y0, x1, y1], the even-odd rule removes the holes
+        int edgeCount = 0;
+        for(int ring = 0; ring <= polygon.getNumInteriorRing(); ring++) {
+            edgeCount += Math.max(0, getRing(polygon, ring).size() - 1);
+        }
+        double[] edges = new double[edgeCount * 4];
+        int edge = 0;
+        for(int ring = 0; ring <= polygon.getNumInteriorRing(); ring++) {
+            CoordinateSequence sequence = getRing(polygon, ring);
+            for(int i = 0; i < sequence.size() - 1; i++) {
+                edges[edge++] = sequence.getX(i);
+                edges[edge++] = sequence.getY(i);
+                edges[edge++] = sequence.getX(i + 1);
+                edges[edge++] = sequence.getY(i + 1);
+            }
+        }
+        double[] crossings = new double[16];
+        final double weight = groundFactor / (cellSize * SUB_ROWS);
+        for(int row = minRow; row <= maxRow; row++) {
+            for(int subRow = 0; subRow < SUB_ROWS; subRow++) {
+                double y = minY + (row + (subRow + 0.5) / SUB_ROWS) * cellSize;
+                // X coordinates where the scanline crosses the polygon boundary
+                int crossingCount = 0;
+                for(int i = 0; i < edges.length; i += 4) {
+                    double y0 = edges[i + 1];
+                    double y1 = edges[i + 3];
+                    if((y0 <= y) != (y1 <= y)) {
+                        if(crossingCount == crossings.length) {
+                            crossings = Arrays.copyOf(crossings, crossings.length * 2);
+                        }
+                        crossings[crossingCount++] = edges[i] + (y - y0) * (edges[i + 2] - edges[i]) / (y1 - y0);
+                    }
+                }
+                Arrays.sort(crossings, 0, crossingCount);
+                for(int i = 0; i + 1 < crossingCount; i += 2) {
+                    addInterval(row, crossings[i], crossings[i + 1], weight);
+                }
+            }
+        }
+    }
+
+    private static CoordinateSequence getRing(Polygon polygon, int ring) {
+        return ring == 0 ? polygon.getExteriorRing().getCoordinateSequence() :
+                polygon.getInteriorRingN(ring - 1).getCoordinateSequence();
+    }
+
+    /**
+     * Add the covered length of the scanline to the cells of the row
+     */
+    private void addInterval(int row, double x0, double x1, double weight) {
+        x0 = Math.max(x0, minX);
+        x1 = Math.min(x1, minX + columns * cellSize);
+        if(x0 >= x1) {
+            return;
+        }
+        int firstColumn = Math.min(columns - 1, (int)((x0 - minX) / cellSize));
+        int lastColumn = Math.min(columns - 1, (int)((x1 - minX) / cellSize));
+        for(int column = firstColumn; column <= lastColumn; column++) {
+            double cellMinX = minX + column * cellSize;
+            double covered = Math.min(x1, cellMinX + cellSize) - Math.max(x0, cellMinX);
+            if(covered > 0) {
+                g[row * columns + column] += (float)(covered * weight);
+            }
+        }
+    }
+}
@@ -36,7 +36,15 @@ package org.noise_planet.noisemodelling.pathfinder;
 
 import org.locationtech.jts.geom.*;
 import org.locationtech.jts.index.strtree.STRtree;
-
+import org.locationtech.jts.io.WKBWriter;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 
 
@@ -501,6 +509,63 @@ public class MeshBuilder {
         }
     }
 
+    /**
+     * Compute a digest of the input data (buildings, topography and triangulation parameters). Two instances with
+     * the same digest produce the same triangulation. Must be called before {@link #finishPolygonFeeding(Geometry)}
+     * as buildings are merged and updated by the triangulation.
+     * @param boundingBox Bounding box that will be provided to finishPolygonFeeding
+     * @return SHA-256 digest
+     */
+    public byte[] computeInputDigest(Envelope boundingBox) {
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+        WKBWriter wkbWriter = new WKBWriter(3);
+        try (DataOutputStream out = new DataOutputStream(new DigestOutputStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        }, messageDigest))) {
+            out.writeDouble(boundingBox.getMinX());
+            out.writeDouble(boundingBox.getMinY());
+            out.writeDouble(boundingBox.getMaxX());
+            out.writeDouble(boundingBox.getMaxY());
+            out.writeDouble(maximumArea);
+            out.writeBoolean(computeNeighbors);
+            out.writeInt(polygonWithHeight.size());
+            for (PolygonWithHeight polygon : polygonWithHeight) {
+                out.writeInt(polygon.getPrimaryKey());
+                out.writeDouble(polygon.getHeight());
+                out.writeInt(polygon.alpha.size());
+                for (double alphaValue : polygon.alpha) {
+                    out.writeDouble(alphaValue);
+                }
+                out.write(wkbWriter.write(polygon.getGeometry()));
+            }
+            // Sort sets content in order to get the same digest whatever the insertion order
+            List<Coordinate> sortedTopoPoints = new ArrayList<>(topoPoints);
+            Collections.sort(sortedTopoPoints);
+            out.writeInt(sortedTopoPoints.size());
+            for (Coordinate topoPoint : sortedTopoPoints) {
+                out.writeDouble(topoPoint.x);
+                out.writeDouble(topoPoint.y);
+                out.writeDouble(topoPoint.z);
+            }
+            List<LineString> sortedTopoLines = new ArrayList<>(topoLines);
+            Collections.sort(sortedTopoLines);
+            out.writeInt(sortedTopoLines.size());
+            for (LineString topoLine : sortedTopoLines) {
+                out.write(wkbWriter.write(topoLine));
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return messageDigest.digest();
+    }
+
     public void clearBuildings() {
         polygonWithHeight.clear();
     }
@@ -0,0 +1,399 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ *
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ *
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ *
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.LineSegment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Receiver images through the walls around the receiver. Image positions and wall orientation tests do not depend
+ * on the source, so the image tree is computed once for a receiver and then filtered for each source.
+ * Nodes are stored in depth-first order in flat arrays, the sub-tree of a node ends at {@link #getSubTreeEnd(int)}.
+ * The images and their order are the same as the ones given by {@link MirrorReceiverIterator}.
+ * Images farther than the maximum distance from the receiver can not be in range of a source and are not stored,
+ * with all their children.
+ */
+public class MirrorReceiverTree {
+    /** Maximum number of images whatever the walls count, limit the memory used by the tree (about 50 MB) */
+    public static final int MAXIMUM_NODES_LIMIT = 1000000;
+    private final Coordinate receiverCoord;
+    private final List<FastObstructionTest.Wall> walls;
+    private final int maxDepth;
+    private final int maximumNodes;
+    private final double maximumDistance;
+    private int size = 0;
+    private boolean complete = true;
+    private double[] x = new double[0];
+    private double[] y = new double[0];
+    private double[] z = new double[0];
+    private int[] parent = new int[0];
+    private int[] wallId = new int[0];
+    private int[] depth = new int[0];
+    private int[] subTreeEnd = new int[0];
+    // Image objects are shared by all sources, created on first use
+    private MirrorReceiverResult[] results = new MirrorReceiverResult[0];
+    // Walls facing the receiver
+    private final boolean[] receiverSide;
+
+    /**
+     * @param receiverCoord Receiver position
+     * @param walls Walls around the receiver
+     * @param maxDepth Maximum reflection order
+     */
+    public MirrorReceiverTree(Coordinate receiverCoord, List<FastObstructionTest.Wall> walls, int maxDepth) {
+        this(receiverCoord, walls, maxDepth, Double.MAX_VALUE);
+    }
+
+    /**
+     * @param receiverCoord Receiver position
+     * @param walls Walls around the receiver
+     * @param maxDepth Maximum reflection order
+     * @param maximumDistance Images at this distance or farther from the receiver are not stored. Must be at least
+     *                        the source receiver distance plus the propagation limitation given to
+     *                        {@link #findImages(List, LineSegment, double, double)}
+     */
+    public MirrorReceiverTree(Coordinate receiverCoord, List<FastObstructionTest.Wall> walls, int maxDepth,
+                              double maximumDistance) {
+        this(receiverCoord, walls, maxDepth, maximumDistance,
+                (int) Math.min(MAXIMUM_NODES_LIMIT, getMaximumImageCount(walls.size(), maxDepth)));
+    }
+
+    /**
+     * @param receiverCoord Receiver position
+     * @param walls Walls around the receiver
+     * @param maxDepth Maximum reflection order
+     * @param maximumDistance Images at this distance or farther from the receiver are not stored
+     * @param maximumNodes Maximum number of receiver images, if the tree is bigger {@link #isComplete()} is false
+     */
+    public MirrorReceiverTree(Coordinate receiverCoord, List<FastObstructionTest.Wall> walls, int maxDepth,
+                              double maximumDistance, int maximumNodes) {
+        this.receiverCoord = receiverCoord;
+        this.walls = walls;
+        this.maxDepth = maxDepth;
+        this.maximumDistance = maximumDistance;
+        this.maximumNodes = maximumNodes;
+        receiverSide = new boolean[walls.size()];
+        for(int idWall = 0; idWall < receiverSide.length; idWall++) {
+            receiverSide[idWall] = MirrorReceiverIterator.wallPointTest(walls.get(idWall), receiverCoord);
+        }
+        if(maxDepth > 0) {
+            buildChildren(-1, 1);
+        }
+    }
+
+    /**
+     * @param wallCount Number of walls
+     * @param maxDepth Maximum reflection order
+     * @return Number of images if all walls see each other, the same wall can not be used twice in a row
+     */
+    public static long getMaximumImageCount(int wallCount, int maxDepth) {
+        long count = 0;
+        long levelCount = wallCount;
+        for(int depth = 1; depth <= maxDepth && levelCount > 0; depth++) {
+            count += levelCount;
+            if(count >= Integer.MAX_VALUE) {
+                return Integer.MAX_VALUE;
+            }
+            levelCount *= wallCount - 1;
+        }
+        return count;
+    }
+
+    private void buildChildren(int parentNode, int childDepth) {
+        FastObstructionTest.Wall parentWall = parentNode >= 0 ? walls.get(wallId[parentNode]) : null;
+        Coordinate receiverIm = parentNode >= 0 ? new Coordinate(x[parentNode], y[parentNode], z[parentNode]) :
+                receiverCoord;
+        for(int idWall = 0; idWall < walls.size() && complete; idWall++) {
+            if(parentNode >= 0 && idWall == wallId[parentNode]) {
+                continue;
+            }
+            FastObstructionTest.Wall wall = walls.get(idWall);
+            if(!receiverSide[idWall] || (parentWall != null &&
+                    !MirrorReceiverIterator.wallWallTest(parentWall, wall))) {
+                continue;
+            }
+            Coordinate intersectionPt = wall.project(receiverIm);
+            double imageX = 2 * intersectionPt.x - receiverIm.x;
+            double imageY = 2 * intersectionPt.y - receiverIm.y;
+            double dx = imageX - receiverCoord.x;
+            double dy = imageY - receiverCoord.y;
+            if(Math.sqrt(dx * dx + dy * dy) >= maximumDistance) {
+                // Out of range of all sources, as well as the images through this one
+                continue;
+            }
+            if(size == maximumNodes) {
+                complete = false;
+                return;
+            }
+            int node = addNode(parentNode, idWall, childDepth, imageX, imageY, receiverIm.z);
+            if(childDepth < maxDepth) {
+                buildChildren(node, childDepth + 1);
+            }
+            subTreeEnd[node] = size;
+        }
+    }
+
+    private int addNode(int parentNode, int idWall, int nodeDepth, double imageX, double imageY, double imageZ) {
+        if(size == x.length) {
+            int capacity = (int) Math.min(maximumNodes, Math.max(16, size * 2L));
+            x = Arrays.copyOf(x, capacity);
+            y = Arrays.copyOf(y, capacity);
+            z = Arrays.copyOf(z, capacity);
+            parent = Arrays.copyOf(parent, capacity);
+            wallId = Arrays.copyOf(wallId, capacity);
+            depth = Arrays.copyOf(depth, capacity);
+            subTreeEnd = Arrays.copyOf(subTreeEnd, capacity);
+            results = Arrays.copyOf(results, capacity);
+        }
+        int node = size++;
+        x[node] = imageX;
+        y[node] = imageY;
+        z[node] = imageZ;
+        parent[node] = parentNode;
+        wallId[node] = idWall;
+        depth[node] = nodeDepth;
+        subTreeEnd[node] = size;
+        return node;
+    }
+
+    /**
+     * @return False if the tree has been truncated because of the maximum number of nodes
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * @return Number of receiver images
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Walls given to the constructor, wall identifiers of images are indexes in this list
+     */
+    public List<FastObstructionTest.Wall> getWalls() {
+        return walls;
+    }
+
+    /**
+     * @param node Image index
+     * @return Parent image index, -1 for the first reflection
+     */
+    public int getParent(int node) {
+        return parent[node];
+    }
+
+    /**
+     * @param node Image index
+     * @return Index of the mirror wall
+     */
+    public int getWallId(int node) {
+        return wallId[node];
+    }
+
+    /**
+     * @param node Image index
+     * @return Reflection order of this image
+     */
+    public int getDepth(int node) {
+        return depth[node];
+    }
+
+    /**
+     * @param node Image index
+     * @return Index of the first image that is not a child of this image
+     */
+    public int getSubTreeEnd(int node) {
+        return subTreeEnd[node];
+    }
+
+    /**
+     * @param node Image index
+     * @return Mirrored receiver position
+     */
+    public Coordinate getReceiverPos(int node) {
+        return new Coordinate(x[node], y[node], z[node]);
+    }
+
+    private MirrorReceiverResult getResult(int node) {
+        MirrorReceiverResult result = results[node];
+        if(result == null) {
+            result = new MirrorReceiverResult(getReceiverPos(node),
+                    parent[node] >= 0 ? getResult(parent[node]) : null, wallId[node],
+                    walls.get(wallId[node]).getBuildingId());
+            results[node] = result;
+        }
+        return result;
+    }
+
+    /**
+     * Filter receiver images for a source. The result is the same as iterating over
+     * {@link MirrorReceiverIterator.It} with the same parameters.
+     * @param nearBuildingsWalls Walls given to the constructor, followed by additional walls around the source.
+     *                           Images that use additional walls are computed on the fly.
+     * @param srcReceiver Source receiver segment
+     * @param distanceLimitation Maximum distance between the walls and the source receiver segment
+     * @param propagationLimitation Maximum distance between the source and the receiver images
+     * @return Receiver images in the iterator order
+     */
+    public List<MirrorReceiverResult> findImages(List<FastObstructionTest.Wall> nearBuildingsWalls,
+                                                 LineSegment srcReceiver, double distanceLimitation,
+                                                 double propagationLimitation) {
+        if(!complete) {
+            throw new IllegalStateException("Receiver image tree is incomplete");
+        }
+        if(nearBuildingsWalls.size() < walls.size()) {
+            throw new IllegalArgumentException("Walls must start with the receiver walls");
+        }
+        if(srcReceiver.getLength() + propagationLimitation > maximumDistance) {
+            throw new IllegalArgumentException("Images in propagation range may have been removed from the tree");
+        }
+        List<MirrorReceiverResult> images = new ArrayList<>();
+        if(maxDepth > 0) {
+            new SourceFilter(nearBuildingsWalls, srcReceiver, distanceLimitation, propagationLimitation, images)
+                    .visitTree(-1, null);
+        }
+        return images;
+    }
+
+    /**
+     * Per source state of {@link #findImages(List, LineSegment, double, double)}
+     */
+    private final class SourceFilter {
+        private final List<FastObstructionTest.Wall> nearBuildingsWalls;
+        private final LineSegment srcReceiver;
+        private final double distanceLimitation;
+        private final double propagationLimitation;
+        private final List<MirrorReceiverResult> images;
+        // 1 if the wall is near enough of the source receiver segment, 0 if not, -1 not computed
+        private final byte[] wallInRange;
+        private final boolean[] additionalReceiverSide;
+
+        SourceFilter(List<FastObstructionTest.Wall> nearBuildingsWalls, LineSegment srcReceiver,
+                     double distanceLimitation, double propagationLimitation, List<MirrorReceiverResult> images) {
+            this.nearBuildingsWalls = nearBuildingsWalls;
+            this.srcReceiver = srcReceiver;
+            this.distanceLimitation = distanceLimitation;
+            this.propagationLimitation = propagationLimitation;
+            this.images = images;
+            wallInRange = new byte[nearBuildingsWalls.size()];
+            Arrays.fill(wallInRange, (byte)-1);
+            additionalReceiverSide = new boolean[nearBuildingsWalls.size() - walls.size()];
+            for(int idWall = walls.size(); idWall < nearBuildingsWalls.size(); idWall++) {
+                additionalReceiverSide[idWall - walls.size()] =
+                        MirrorReceiverIterator.wallPointTest(nearBuildingsWalls.get(idWall), receiverCoord);
+            }
+        }
+
+        private boolean isWallInRange(int idWall) {
+            if(wallInRange[idWall] < 0) {
+                wallInRange[idWall] = nearBuildingsWalls.get(idWall).distance(srcReceiver) < distanceLimitation ?
+                        (byte)1 : (byte)0;
+            }
+            return wallInRange[idWall] == 1;
+        }
+
+        private boolean isInPropagationRange(double imageX, double imageY) {
+            double dx = srcReceiver.p0.x - imageX;
+            double dy = srcReceiver.p0.y - imageY;
+            return Math.sqrt(dx * dx + dy * dy) < propagationLimitation;
+        }
+
+        /**
+         * Visit children of an image made only of receiver walls
+         * @param node Image index, -1 for the receiver
+         * @param parentResult Image of node
+         */
+        void visitTree(int node, MirrorReceiverResult parentResult) {
+            int childDepth = node >= 0 ? depth[node] + 1 : 1;
+            int end = node >= 0 ? subTreeEnd[node] : size;
+            // Images through receiver walls are read from the tree
+            for(int child = node + 1; child < end; child = subTreeEnd[child]) {
+                if(isWallInRange(wallId[child]) && isInPropagationRange(x[child], y[child])) {
+                    MirrorReceiverResult result = getResult(child);
+                    images.add(result);
+                    if(childDepth < maxDepth) {
+                        visitTree(child, result);
+                    }
+                }
+            }
+            // Images through the additional walls
+            for(int idWall = walls.size(); idWall < nearBuildingsWalls.size(); idWall++) {
+                visitWall(parentResult, idWall, childDepth);
+            }
+        }
+
+        /**
+         * Visit children of an image that use at least one additional wall
+         */
+        void visitAll(MirrorReceiverResult parentResult, int childDepth) {
+            for(int idWall = 0; idWall < nearBuildingsWalls.size(); idWall++) {
+                if(idWall != parentResult.getWallId()) {
+                    visitWall(parentResult, idWall, childDepth);
+                }
+            }
+        }
+
+        private void visitWall(MirrorReceiverResult parentResult, int idWall, int childDepth) {
+            FastObstructionTest.Wall wall = nearBuildingsWalls.get(idWall);
+            boolean isCCW = idWall < walls.size() ? receiverSide[idWall] :
+                    additionalReceiverSide[idWall - walls.size()];
+            if(parentResult != null) {
+                isCCW = isCCW && MirrorReceiverIterator.wallWallTest(
+                        nearBuildingsWalls.get(parentResult.getWallId()), wall);
+            }
+            if(!isCCW || !isWallInRange(idWall)) {
+                return;
+            }
+            Coordinate receiverIm = parentResult != null ? parentResult.getReceiverPos() : receiverCoord;
+            Coordinate intersectionPt = wall.project(receiverIm);
+            Coordinate mirrored = new Coordinate(2 * intersectionPt.x - receiverIm.x,
+                    2 * intersectionPt.y - receiverIm.y, receiverIm.z);
+            if(isInPropagationRange(mirrored.x, mirrored.y)) {
+                MirrorReceiverResult result = new MirrorReceiverResult(mirrored, parentResult, idWall,
+                        wall.getBuildingId());
+                images.add(result);
+                if(childDepth < maxDepth) {
+                    visitAll(result, childDepth + 1);
+                }
+            }
+        }
+    }
+}
@@ -65,6 +65,8 @@ public class PropagationPath {
     Orientation sourceOrientation =
             new Orientation(0,0,0);
     private boolean initialized = false;
+    // true if the values depending on the meteorological condition are computed for the current favorable flag
+    private boolean meteoInitialized = false;
     // computed in Augmented Path
     public List<Integer> difHPoints = new ArrayList<Integer>(); // diffraction points indices on horizontal edges
     public List<Integer> difVPoints = new ArrayList<Integer>(); // diffraction points indices on vertical edges
@@ -218,9 +220,16 @@ public class PropagationPath {
         return favorable;
     }
 
+    /**
+     * Change the meteorological condition. The geometry of an initialised path is kept, only the values depending on
+     * the condition (curved ray lengths, path length differences) are computed again by {@link #initPropagationPath()}
+     * @param favorable True for favorable conditions, false for homogeneous conditions
+     */
     public void setFavorable(boolean favorable) {
-        this.favorable =  favorable;
-        setInitialized(false);
+        if(this.favorable != favorable) {
+            this.favorable = favorable;
+            meteoInitialized = false;
+        }
     }
 
 
@@ -251,7 +260,12 @@ public class PropagationPath {
             computeAugmentedSegments();
             computeAugmentedSRPath();
             setInitialized(true);
+        } else if(!meteoInitialized) {
+            // Only the meteorological condition has changed
+            computeAugmentedSegmentsMeteo();
+            computeAugmentedSRPathMeteo();
         }
+        meteoInitialized = true;
     }
 
     /**
@@ -296,7 +310,6 @@ public class PropagationPath {
             SR.dp += CGAlgorithms3D.distance(iniGround, RGround);
         }
 
-        SR.dc = (favorable) ? getRayCurveLength(SR.d,SR.d): SR.d;
         SR.dPath = SR.d;
         if (difVPoints.size()>0) {
             double gPath = 0;
@@ -318,7 +331,6 @@ public class PropagationPath {
             SR.dPath = dPath
                     + CGAlgorithms3D.distance(S, pointList.get(1).coordinate)
                     + CGAlgorithms3D.distance(pointList.get(pointList.size()-2).coordinate,R);
-            SR.dc = SR.d;
 
             double convex = 1; // if path is convex, delta is positive, otherwise negative
 
@@ -333,9 +345,6 @@ public class PropagationPath {
 
         // diffraction on horizontal edges
         if (difHPoints.size()>0) {
-
-            dPath = 0;
-
             // Symmetric coordinates to the gound mean plane see Figure 2.5.c
             Coordinate SGroundSeg = this.segmentList.get(0).sGround;
             Coordinate RGroundSeg = this.segmentList.get(segmentList.size()-1).rGround;
@@ -352,6 +361,76 @@ public class PropagationPath {
             SRp.dp = SR.dp;
             SpR.dp = SR.dp;
 
+            this.srList.add(SpR);
+            this.srList.add(SRp);
+        }
+
+
+        SR.zs  =SR.getZs(this, SR);
+        SR.zr  =SR.getZr(this, SR);
+
+        // see Point 5.3 Equivalent heights in AFNOR document
+        if (SR.zs<=0){SR.zs = 0.000000001;}
+        if (SR.zr<=0){SR.zr = 0.000000001;}
+
+
+        double testForm = SR.dp / (30 * (SR.zs + SR.zr)); // if <= 1, then the distinction between the type of ground located near the source and the type of ground located near the receiver is negligible.
+        SR.testForm = testForm;
+
+        double gPathPrime;
+
+        // if dp <= 30(zs + zr), then the distinction between the type of ground located near the source and the type of ground located near the receiver is negligible.
+        // Eq. 2.5.14
+        if (testForm <= 1) {
+            SR.gPathPrime = testForm * SR.gPath + (1 - testForm) * pointList.get(0).gs;
+        } else {
+            SR.gPathPrime = SR.gPath;
+        }
+
+        this.srList.set(0,SR);
+
+        // Compute PRIME zs, zr and testForm
+        double zsPrime= SR.getZsPrime(this,SR );
+        double zrPrime = SR.getZrPrime(this, SR);
+
+        double testFormPrime = SR.dp / (30 * (zsPrime + zrPrime));
+        SR.testFormPrime = testFormPrime;
+
+        computeAugmentedSRPathMeteo();
+    }
+
+    /**
+     * Initialise the values of the global path that depend on the meteorological condition, curved ray lengths and
+     * path length differences. The geometry must have been computed by {@link #computeAugmentedSRPath()}.
+     */
+    private void computeAugmentedSRPathMeteo() {
+        SegmentPath SR = this.srList.get(0);
+        Coordinate S = pointList.get(0).coordinate;
+        Coordinate R = pointList.get(pointList.size()-1).coordinate;
+
+        SR.dc = (favorable) ? getRayCurveLength(SR.d,SR.d): SR.d;
+        if (difVPoints.size()>0) {
+            // Restore the vertical diffraction values that could have been overwritten by the other condition
+            SR.dPath = SR.dp;
+            SR.dc = SR.d;
+            SR.delta = SR.dPath - SR.d;
+        }
+
+        // diffraction on horizontal edges
+        if (difHPoints.size()>0) {
+            double dPath = 0;
+
+            Coordinate SGroundSeg = this.segmentList.get(0).sGround;
+            Coordinate RGroundSeg = this.segmentList.get(segmentList.size()-1).rGround;
+            Coordinate Sprime = new Coordinate(2 * SGroundSeg.x - S.x, 2 * SGroundSeg.y - S.y, 2 * SGroundSeg.z - S.z);
+            Coordinate Rprime = new Coordinate(2 * RGroundSeg.x - R.x, 2 * RGroundSeg.y - R.y, 2 * RGroundSeg.z - R.z);
+
+            SegmentPath SpR = this.srList.get(srList.size() - 2);
+            SegmentPath SRp = this.srList.get(srList.size() - 1);
+            // the image paths only hold the values of the current condition
+            SpR.eLength = 0.0;
+            SRp.eLength = 0.0;
+
             if (!this.favorable){
                 for (int idPoint = 2; idPoint < pointList.size()-1; idPoint++) {
                     dPath += CGAlgorithms3D.distance(pointList.get(idPoint - 1).coordinate, pointList.get(idPoint).coordinate);
@@ -437,40 +516,16 @@ public class PropagationPath {
                     SpR.delta = SpR.dPath - SpR.dc;
                 }
             }
-            this.srList.add(SpR);
-            this.srList.add(SRp);
         }
+    }
 
-
-        SR.zs  =SR.getZs(this, SR);
-        SR.zr  =SR.getZr(this, SR);
-
-        // see Point 5.3 Equivalent heights in AFNOR document
-        if (SR.zs<=0){SR.zs = 0.000000001;}
-        if (SR.zr<=0){SR.zr = 0.000000001;}
-
-
-        double testForm = SR.dp / (30 * (SR.zs + SR.zr)); // if <= 1, then the distinction between the type of ground located near the source and the type of ground located near the receiver is negligible.
-        SR.testForm = testForm;
-
-        double gPathPrime;
-
-        // if dp <= 30(zs + zr), then the distinction between the type of ground located near the source and the type of ground located near the receiver is negligible.
-        // Eq. 2.5.14
-        if (testForm <= 1) {
-            SR.gPathPrime = testForm * SR.gPath + (1 - testForm) * pointList.get(0).gs;
-        } else {
-            SR.gPathPrime = SR.gPath;
+    /**
+     * Initialise the curved length of the segments, the only segment value depending on the meteorological condition
+     */
+    private void computeAugmentedSegmentsMeteo() {
+        for (SegmentPath segmentPath : segmentList) {
+            segmentPath.dc = (favorable) ? getRayCurveLength(segmentPath.d, segmentPath.d) : segmentPath.d;
         }
-
-        this.srList.set(0,SR);
-
-        // Compute PRIME zs, zr and testForm
-        double zsPrime= SR.getZsPrime(this,SR );
-        double zrPrime = SR.getZrPrime(this, SR);
-
-        double testFormPrime = SR.dp / (30 * (zsPrime + zrPrime));
-        SR.testFormPrime = testFormPrime;
     }
 
 
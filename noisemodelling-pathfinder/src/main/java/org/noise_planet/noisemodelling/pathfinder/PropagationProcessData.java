@@ -98,14 +98,20 @@ public class PropagationProcessData {
     /** Source factor absorption */
     public double gS = DEFAULT_GS;
 
-    /** maximum dB Error, stop calculation if the sum of further sources contributions are smaller than this value */
+    /** maximum dB Error, stop calculation if the sum of further sources contributions are smaller than this value.
+     * With a positive or zero value sources are processed by descending maximal power using a quadtree of sources */
     public double maximumError = Double.NEGATIVE_INFINITY;
+    /** Discretize line sources once per segment size instead of once per receiver, the segment size is rounded down
+     * to a power of two meters */
+    public boolean cacheLineSourceDiscretization = false;
     /** cellId only used in output data */
     public int cellId;
     /** Progression information */
     public ProgressVisitor cellProg;
     /** list Geometry of soil and the type of this soil */
     protected List<GeoWithSoilType> soilList = new ArrayList<>();
+    /** Rasterised ground factor, if not null it is used instead of soilList */
+    protected GroundFactorRaster groundFactorRaster = null;
 
     Map<String, Integer> sourceFieldNames = new HashMap<>();
 
@@ -205,6 +211,17 @@ public class PropagationProcessData {
         return soilList;
     }
 
+    public GroundFactorRaster getGroundFactorRaster() {
+        return groundFactorRaster;
+    }
+
+    /**
+     * @param groundFactorRaster Rasterised ground factor, if not null it is used instead of the soil list
+     */
+    public void setGroundFactorRaster(GroundFactorRaster groundFactorRaster) {
+        this.groundFactorRaster = groundFactorRaster;
+    }
+
     public void addReceiver(Coordinate... receiver) {
         receivers.addAll(Arrays.asList(receiver));
     }
@@ -259,6 +276,22 @@ public class PropagationProcessData {
         return 0;
     }
 
+    /**
+     * Return directivity attenuation for all frequencies of one direction.
+     * @param srcIndex Source index in the list sourceGeometries
+     * @param frequencies Frequencies in Hertz
+     * @param phi (0 2π) 0 is front
+     * @param theta (-π/2 π/2) 0 is horizontal π is top
+     * @return Attenuation in dB for each frequency
+     */
+    public double[] getSourceAttenuation(int srcIndex, double[] frequencies, float phi, float theta) {
+        double[] attenuation = new double[frequencies.length];
+        for(int idFrequency = 0; idFrequency < frequencies.length; idFrequency++) {
+            attenuation[idFrequency] = getSourceAttenuation(srcIndex, frequencies[idFrequency], phi, theta);
+        }
+        return attenuation;
+    }
+
     /**
      * @param srcIndex Source index in the list sourceGeometries
      * @return True if the source is omnidirectional and so does not have orientation dependant attenuation.
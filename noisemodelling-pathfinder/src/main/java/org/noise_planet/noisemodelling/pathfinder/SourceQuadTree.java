@@ -0,0 +1,327 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ *
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ *
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ *
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ *
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Puntal;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Quadtree over the sound sources. Each node holds the envelope of its sources and the sum of their weights, the
+ * weight of a source being an upper bound of its power once discretized into point sources (power multiplied by
+ * the length of line sources). With the distance to the node envelope this gives an upper bound of the power
+ * received from a whole cluster of sources without discretizing it.
+ * Nodes are stored in flat arrays, the children of a node are contiguous.
+ */
+public class SourceQuadTree {
+    /** Default maximum number of sources in a leaf */
+    public static final int DEFAULT_LEAF_SIZE = 8;
+    private static final int MAXIMUM_DEPTH = 32;
+    private final int leafSize;
+    // [minX, minY, maxX, maxY] of each source
+    private final double[] sourceEnvelopes;
+    private final double[] sourceWeights;
+    // Sources index sorted by node
+    private final int[] sources;
+    private int size = 0;
+    private double[] nodeEnvelopes = new double[0];
+    private double[] nodeWeights = new double[0];
+    private int[] sourceStart = new int[0];
+    private int[] sourceEnd = new int[0];
+    private int[] firstChild = new int[0];
+    private int[] childCount = new int[0];
+
+    /**
+     * @param sourceGeometries Sources geometries
+     * @param sourceWeights Weight of each source, see {@link #getMaximalWeight(Geometry, double[])}
+     */
+    public SourceQuadTree(List<Geometry> sourceGeometries, double[] sourceWeights) {
+        this(sourceGeometries, sourceWeights, DEFAULT_LEAF_SIZE);
+    }
+
+    /**
+     * @param sourceGeometries Sources geometries
+     * @param sourceWeights Weight of each source, see {@link #getMaximalWeight(Geometry, double[])}
+     * @param leafSize Maximum number of sources in a leaf
+     */
+    public SourceQuadTree(List<Geometry> sourceGeometries, double[] sourceWeights, int leafSize) {
+        this.leafSize = Math.max(1, leafSize);
+        this.sourceWeights = sourceWeights;
+        sourceEnvelopes = new double[sourceGeometries.size() * 4];
+        int[] validSources = new int[sourceGeometries.size()];
+        int sourceCount = 0;
+        Envelope rootEnvelope = new Envelope();
+        for (int idSource = 0; idSource < sourceGeometries.size(); idSource++) {
+            Geometry geometry = sourceGeometries.get(idSource);
+            if (geometry == null || geometry.isEmpty()) {
+                continue;
+            }
+            Envelope envelope = geometry.getEnvelopeInternal();
+            sourceEnvelopes[idSource * 4] = envelope.getMinX();
+            sourceEnvelopes[idSource * 4 + 1] = envelope.getMinY();
+            sourceEnvelopes[idSource * 4 + 2] = envelope.getMaxX();
+            sourceEnvelopes[idSource * 4 + 3] = envelope.getMaxY();
+            rootEnvelope.expandToInclude(envelope);
+            validSources[sourceCount++] = idSource;
+        }
+        sources = Arrays.copyOf(validSources, sourceCount);
+        if (sourceCount > 0) {
+            int root = addNode(0, sourceCount);
+            build(root, rootEnvelope.getMinX(), rootEnvelope.getMinY(), rootEnvelope.getMaxX(),
+                    rootEnvelope.getMaxY(), 0);
+        }
+    }
+
+    /**
+     * Sum of the power of the point sources created from this source, line sources are weighted by their 3D length
+     * as {@link ComputeRays#splitLineStringIntoPoints(LineString, double, List)} splits lines using 3D lengths.
+     * @param source Source geometry
+     * @param wj Maximal source power for each frequency band
+     * @return Sum of the power over frequency bands, multiplied by the length bound of linear sources
+     */
+    public static double getMaximalWeight(Geometry source, double[] wj) {
+        double globalWj = ComputeRays.sumArray(wj.length, wj);
+        if (source instanceof Puntal) {
+            return globalWj * source.getNumGeometries();
+        }
+        double length = 0;
+        for (int id = 0; id < source.getNumGeometries(); id++) {
+            Geometry subGeom = source.getGeometryN(id);
+            if (subGeom instanceof LineString) {
+                Coordinate[] points = subGeom.getCoordinates();
+                for (int i = 0; i < points.length - 1; i++) {
+                    double segmentLength = points[i].distance3D(points[i + 1]);
+                    if (Double.isNaN(segmentLength)) {
+                        segmentLength = points[i].distance(points[i + 1]);
+                    }
+                    length += segmentLength;
+                }
+            }
+        }
+        return globalWj * length;
+    }
+
+    private void build(int node, double minX, double minY, double maxX, double maxY, int depth) {
+        int start = sourceStart[node];
+        int end = sourceEnd[node];
+        // Envelope and weight of the node
+        double nodeMinX = Double.POSITIVE_INFINITY, nodeMinY = Double.POSITIVE_INFINITY;
+        double nodeMaxX = Double.NEGATIVE_INFINITY, nodeMaxY = Double.NEGATIVE_INFINITY;
+        double weight = 0;
+        for (int i = start; i < end; i++) {
+            int idSource = sources[i];
+            nodeMinX = Math.min(nodeMinX, sourceEnvelopes[idSource * 4]);
+            nodeMinY = Math.min(nodeMinY, sourceEnvelopes[idSource * 4 + 1]);
+            nodeMaxX = Math.max(nodeMaxX, sourceEnvelopes[idSource * 4 + 2]);
+            nodeMaxY = Math.max(nodeMaxY, sourceEnvelopes[idSource * 4 + 3]);
+            weight += sourceWeights[idSource];
+        }
+        nodeEnvelopes[node * 4] = nodeMinX;
+        nodeEnvelopes[node * 4 + 1] = nodeMinY;
+        nodeEnvelopes[node * 4 + 2] = nodeMaxX;
+        nodeEnvelopes[node * 4 + 3] = nodeMaxY;
+        nodeWeights[node] = weight;
+        if (end - start <= leafSize) {
+            return;
+        }
+        // Split the cell until the sources are in more than one quadrant
+        int[] quadrantEnd = new int[4];
+        while (depth < MAXIMUM_DEPTH) {
+            double centerX = (minX + maxX) / 2;
+            double centerY = (minY + maxY) / 2;
+            int quadrant = partition(start, end, centerX, centerY, quadrantEnd);
+            if (quadrant < 0) {
+                int childStart = start;
+                firstChild[node] = size;
+                for (int idQuadrant = 0; idQuadrant < 4; idQuadrant++) {
+                    if (quadrantEnd[idQuadrant] > childStart) {
+                        addNode(childStart, quadrantEnd[idQuadrant]);
+                        childCount[node]++;
+                    }
+                    childStart = quadrantEnd[idQuadrant];
+                }
+                for (int idChild = 0; idChild < childCount[node]; idChild++) {
+                    int child = firstChild[node] + idChild;
+                    int quadrantId = quadrantOf(sources[sourceStart[child]], centerX, centerY);
+                    build(child, (quadrantId & 1) == 0 ? minX : centerX, (quadrantId & 2) == 0 ? minY : centerY,
+                            (quadrantId & 1) == 0 ? centerX : maxX, (quadrantId & 2) == 0 ? centerY : maxY,
+                            depth + 1);
+                }
+                return;
+            }
+            // All sources are in the same quadrant
+            minX = (quadrant & 1) == 0 ? minX : centerX;
+            minY = (quadrant & 2) == 0 ? minY : centerY;
+            maxX = (quadrant & 1) == 0 ? centerX : maxX;
+            maxY = (quadrant & 2) == 0 ? centerY : maxY;
+            depth++;
+        }
+    }
+
+    private int quadrantOf(int idSource, double centerX, double centerY) {
+        double x = (sourceEnvelopes[idSource * 4] + sourceEnvelopes[idSource * 4 + 2]) / 2;
+        double y = (sourceEnvelopes[idSource * 4 + 1] + sourceEnvelopes[idSource * 4 + 3]) / 2;
+        return (x < centerX ? 0 : 1) | (y < centerY ? 0 : 2);
+    }
+
+    /**
+     * Sort the sources by quadrant
+     * @return The quadrant index if all sources are in the same quadrant, -1 otherwise
+     */
+    private int partition(int start, int end, double centerX, double centerY, int[] quadrantEnd) {
+        int[] counts = new int[4];
+        for (int i = start; i < end; i++) {
+            counts[quadrantOf(sources[i], centerX, centerY)]++;
+        }
+        for (int idQuadrant = 0; idQuadrant < 4; idQuadrant++) {
+            if (counts[idQuadrant] == end - start) {
+                return idQuadrant;
+            }
+        }
+        int[] sorted = new int[end - start];
+        int[] position = new int[4];
+        for (int idQuadrant = 1; idQuadrant < 4; idQuadrant++) {
+            position[idQuadrant] = position[idQuadrant - 1] + counts[idQuadrant - 1];
+        }
+        for (int idQuadrant = 0; idQuadrant < 4; idQuadrant++) {
+            quadrantEnd[idQuadrant] = start + position[idQuadrant] + counts[idQuadrant];
+        }
+        for (int i = start; i < end; i++) {
+            sorted[position[quadrantOf(sources[i], centerX, centerY)]++] = sources[i];
+        }
+        System.arraycopy(sorted, 0, sources, start, sorted.length);
+        return -1;
+    }
+
+    private int addNode(int start, int end) {
+        if (size == sourceStart.length) {
+            int capacity = Math.max(16, size * 2);
+            nodeEnvelopes = Arrays.copyOf(nodeEnvelopes, capacity * 4);
+            nodeWeights = Arrays.copyOf(nodeWeights, capacity);
+            sourceStart = Arrays.copyOf(sourceStart, capacity);
+            sourceEnd = Arrays.copyOf(sourceEnd, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            childCount = Arrays.copyOf(childCount, capacity);
+        }
+        int node = size++;
+        sourceStart[node] = start;
+        sourceEnd[node] = end;
+        firstChild[node] = -1;
+        childCount[node] = 0;
+        return node;
+    }
+
+    private static double distance(double[] envelopes, int index, Coordinate pt) {
+        double dx = Math.max(0, Math.max(envelopes[index * 4] - pt.x, pt.x - envelopes[index * 4 + 2]));
+        double dy = Math.max(0, Math.max(envelopes[index * 4 + 1] - pt.y, pt.y - envelopes[index * 4 + 3]));
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * @return Number of nodes, 0 if there is no source
+     */
+    public int getNodeCount() {
+        return size;
+    }
+
+    /**
+     * @return Root node index
+     */
+    public int getRoot() {
+        return 0;
+    }
+
+    public boolean isLeaf(int node) {
+        return childCount[node] == 0;
+    }
+
+    public int getChildCount(int node) {
+        return childCount[node];
+    }
+
+    public int getChild(int node, int index) {
+        return firstChild[node] + index;
+    }
+
+    /**
+     * @return Number of sources in this node and its children
+     */
+    public int getSourceCount(int node) {
+        return sourceEnd[node] - sourceStart[node];
+    }
+
+    /**
+     * @param node Node index
+     * @param index Source index in the node [0-{@link #getSourceCount(int)}]
+     * @return Source index in the sources list
+     */
+    public int getSource(int node, int index) {
+        return sources[sourceStart[node] + index];
+    }
+
+    /**
+     * @return Sum of the weights of the sources of this node
+     */
+    public double getWeight(int node) {
+        return nodeWeights[node];
+    }
+
+    /**
+     * @return Minimal 2D distance between the point and the envelope of the node sources
+     */
+    public double getDistance(int node, Coordinate pt) {
+        return distance(nodeEnvelopes, node, pt);
+    }
+
+    /**
+     * @param source Source index in the sources list
+     * @return Weight of the source
+     */
+    public double getSourceWeight(int source) {
+        return sourceWeights[source];
+    }
+
+    /**
+     * @param source Source index in the sources list
+     * @return Minimal 2D distance between the point and the envelope of the source
+     */
+    public double getSourceDistance(int source, Coordinate pt) {
+        return distance(sourceEnvelopes, source, pt);
+    }
+}
@@ -373,6 +373,231 @@ public class TestComputeRays {
 
     }
 
+    /**
+     * Receivers fetched by small chunks must give the same rays than receivers split in equal ranges
+     */
+    @Test
+    public void testReceiverChunkScheduling() throws LayerDelaunayError, ParseException {
+        GeometryFactory factory = new GeometryFactory();
+        WKTReader wktReader = new WKTReader(factory);
+        //Scene dimension
+        Envelope cellEnvelope = new Envelope(new Coordinate(-200., -200., 0.), new Coordinate(200, 200, 0.));
+        MeshBuilder mesh = new MeshBuilder();
+        mesh.addGeometry(wktReader.read("POLYGON ((-20 -20, 20 -20, 20 20, -20 20, -20 -20))"), 10);
+        mesh.finishPolygonFeeding(cellEnvelope);
+        FastObstructionTest manager = new FastObstructionTest(mesh.getPolygonWithHeight(), mesh.getTriangles(),
+                mesh.getTriNeighbors(), mesh.getVertices());
+
+        long[] rayCount = new long[2];
+        for(int idRun = 0; idRun < rayCount.length; idRun++) {
+            PropagationProcessData processData = new PropagationProcessData(manager);
+            for (int i = 0; i < 25; i++) {
+                processData.addReceiver(new Coordinate(-120 + i * 10, 60 - (i % 5) * 30, 4));
+            }
+            processData.addSource(factory.createPoint(new Coordinate(-60, -50, 1)));
+            processData.addSource(factory.createLineString(new Coordinate[]{new Coordinate(40, -80, 0.5),
+                    new Coordinate(80, 50, 0.5)}));
+            processData.setComputeVerticalDiffraction(true);
+            ComputeRays computeRays = new ComputeRays(processData);
+            if(idRun == 0) {
+                computeRays.setThreadCount(1);
+            } else {
+                computeRays.setThreadCount(4);
+                computeRays.setReceiverChunkSize(3);
+            }
+            ComputeRaysOut computeRaysOut = new ComputeRaysOut(true, processData);
+            computeRays.run(computeRaysOut);
+            rayCount[idRun] = computeRaysOut.rayCount.get();
+        }
+        assertEquals(rayCount[0], rayCount[1]);
+        Assert.assertTrue(rayCount[0] > 0);
+    }
+
+    @Test
+    public void testCachedLineSourceDiscretization() throws LayerDelaunayError {
+        GeometryFactory factory = new GeometryFactory();
+        MeshBuilder mesh = new MeshBuilder();
+        mesh.finishPolygonFeeding(new Envelope(new Coordinate(-300., -300.), new Coordinate(300, 300)));
+        FastObstructionTest manager = new FastObstructionTest(mesh.getPolygonWithHeight(), mesh.getTriangles(),
+                mesh.getTriNeighbors(), mesh.getVertices());
+        PropagationProcessData processData = new PropagationProcessData(manager);
+        LineString source = factory.createLineString(new Coordinate[]{new Coordinate(-100, 0, 0.5),
+                new Coordinate(0, 20, 0.5), new Coordinate(100, 0, 0.5)});
+        processData.addSource(source);
+        processData.cacheLineSourceDiscretization = true;
+        ComputeRays computeRays = new ComputeRays(processData);
+        // Segment sizes 5.5 and 7.9 are rounded down to 4 meters
+        ComputeRays.DiscretizedLineSource near = computeRays.getDiscretizedLineSource(source, 0, 0, 5.5);
+        Assert.assertSame(near, computeRays.getDiscretizedLineSource(source, 0, 0, 7.9));
+        List<Coordinate> expected = new ArrayList<>();
+        assertEquals(ComputeRays.splitLineStringIntoPoints(source, 4, expected), near.li, 1e-12);
+        assertEquals(expected.size(), near.points.length);
+        assertEquals(source.getLength(), near.li * near.points.length, 1e-6);
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(0, expected.get(i).distance3D(near.points[i]), 1e-12);
+        }
+        // Far receivers use a coarser discretization
+        ComputeRays.DiscretizedLineSource far = computeRays.getDiscretizedLineSource(source, 0, 0, 150);
+        Assert.assertTrue(far.points.length < near.points.length);
+        Assert.assertTrue(far.li <= 150);
+        // Other lines of the source are cached separately
+        Assert.assertNotSame(near, computeRays.getDiscretizedLineSource(source, 0, 1, 5.5));
+    }
+
+    @Test
+    public void testGroundFactorRaster() throws ParseException {
+        WKTReader wktReader = new WKTReader();
+        GroundFactorRaster raster = new GroundFactorRaster(new Envelope(0, 100, 0, 100), 10);
+        assertEquals(10, raster.getColumns());
+        assertEquals(10, raster.getRows());
+        // Square with a hole, aligned on cells
+        raster.addSoil(wktReader.read("POLYGON((0 0, 50 0, 50 50, 0 50, 0 0), (10 10, 20 10, 20 20, 10 20, 10 10))"), 1);
+        // Square covering a quarter of 4 cells
+        raster.addSoil(wktReader.read("POLYGON((65 65, 75 65, 75 75, 65 75, 65 65))"), 0.8);
+        // Triangle, half of the cell
+        raster.addSoil(wktReader.read("POLYGON((90 0, 100 0, 100 10, 90 0))"), 0.5);
+        assertEquals(1, raster.getG(5, 5), 1e-6);
+        assertEquals(0, raster.getG(15, 15), 1e-6);
+        assertEquals(1, raster.getG(45, 45), 1e-6);
+        assertEquals(0, raster.getG(55, 5), 1e-6);
+        assertEquals(0.2, raster.getG(65, 65), 1e-6);
+        assertEquals(0.2, raster.getG(75, 75), 1e-6);
+        assertEquals(0.25, raster.getG(95, 5), 1e-6);
+        assertEquals(0, raster.getG(-5, 5), 1e-6);
+        assertEquals(0, raster.getG(5, 105), 1e-6);
+        double sum = 0;
+        for(int row = 0; row < raster.getRows(); row++) {
+            for(int column = 0; column < raster.getColumns(); column++) {
+                sum += raster.getCellValue(column, row) * 100;
+            }
+        }
+        assertEquals(2500 - 100 + 100 * 0.8 + 50 * 0.5, sum, 1e-3);
+        // Half of the path over G=1
+        assertEquals(0.5, raster.getMeanG(new Coordinate(0, 45), new Coordinate(100, 45)), 1e-6);
+    }
+
+    /**
+     * Compare the G path of free field rays computed with the soil polygons and with the rasterised soil
+     */
+    @Test
+    public void testGroundFactorRasterAccuracy() throws LayerDelaunayError {
+        GeometryFactory factory = new GeometryFactory();
+        Envelope envelope = new Envelope(new Coordinate(-300., -300.), new Coordinate(300, 300));
+        MeshBuilder mesh = new MeshBuilder();
+        mesh.finishPolygonFeeding(envelope);
+        FastObstructionTest manager = new FastObstructionTest(mesh.getPolygonWithHeight(), mesh.getTriangles(),
+                mesh.getTriNeighbors(), mesh.getVertices());
+        PropagationProcessData polygonData = new PropagationProcessData(manager);
+        PropagationProcessData rasterData = new PropagationProcessData(manager);
+        GroundFactorRaster raster = new GroundFactorRaster(envelope, 2);
+        Random random = new Random(42);
+        // Non overlapping rotated squares and star shaped polygons
+        for(int i = 0; i < 6; i++) {
+            for(int j = 0; j < 6; j++) {
+                Coordinate center = new Coordinate(-250 + i * 100 + random.nextDouble() * 20,
+                        -250 + j * 100 + random.nextDouble() * 20);
+                int vertexCount = (i + j) % 2 == 0 ? 4 : 12;
+                double angle = random.nextDouble() * Math.PI;
+                Coordinate[] ring = new Coordinate[vertexCount + 1];
+                for(int k = 0; k < vertexCount; k++) {
+                    double radius = vertexCount == 4 ? 40 : 20 + 20 * random.nextDouble();
+                    double a = angle + 2 * Math.PI * k / vertexCount;
+                    ring[k] = new Coordinate(center.x + radius * Math.cos(a), center.y + radius * Math.sin(a));
+                }
+                ring[vertexCount] = ring[0];
+                Polygon soil = factory.createPolygon(ring);
+                double g = random.nextDouble();
+                polygonData.addSoilType(soil, g);
+                raster.addSoil(soil, g);
+            }
+        }
+        rasterData.setGroundFactorRaster(raster);
+        ComputeRays polygonRays = new ComputeRays(polygonData);
+        polygonRays.initStructures();
+        ComputeRays rasterRays = new ComputeRays(rasterData);
+        rasterRays.initStructures();
+        double sumError = 0;
+        int rayCount = 200;
+        for(int i = 0; i < rayCount; i++) {
+            Coordinate source = new Coordinate(-290 + random.nextDouble() * 580, -290 + random.nextDouble() * 580, 0.5);
+            Coordinate receiver = new Coordinate(-290 + random.nextDouble() * 580, -290 + random.nextDouble() * 580, 4);
+            if(source.distance(receiver) < 50) {
+                continue;
+            }
+            double expected = polygonRays.computeFreefield(receiver, source, null).getSegmentList().get(0).gPath;
+            double gPath = rasterRays.computeFreefield(receiver, source, null).getSegmentList().get(0).gPath;
+            assertEquals(expected, gPath, 0.05);
+            sumError += Math.abs(expected - gPath);
+        }
+        Assert.assertTrue(sumError / rayCount < 0.01);
+    }
+
+    @Test
+    public void testInPlaceSpectrumArithmetic() {
+        double[] a = new double[] {50, 60, 70, 80};
+        double[] b = new double[] {55, 40, 70, 20};
+        double[] expectedDbSum = ComputeRays.sumDbArray(a, b);
+        double[] expectedPonderation = ComputeRays.sumArrayWithPonderation(a, b, 0.25);
+        double[] expectedSum = ComputeRays.sumArray(a, b);
+        double[] dest = ComputeRays.getScratchArray(0, a.length);
+        assertArrayEquals(expectedDbSum, ComputeRays.sumDbArray(a, b, dest), 1e-12);
+        assertArrayEquals(expectedPonderation, ComputeRays.sumArrayWithPonderation(a, b, 0.25, dest), 1e-12);
+        assertArrayEquals(expectedSum, ComputeRays.sumArray(a, b, dest), 1e-12);
+        // destination may be one of the operands
+        double[] w = ComputeRays.dbaToW(a);
+        double[] aCopy = a.clone();
+        assertArrayEquals(w, ComputeRays.dbaToW(aCopy, aCopy), 1e-12);
+        assertArrayEquals(a, ComputeRays.wToDba(aCopy, aCopy), 1e-12);
+        assertArrayEquals(expectedDbSum, ComputeRays.sumDbArray(aCopy, b, aCopy), 1e-12);
+        // Same slot and size return the same buffer
+        Assert.assertSame(dest, ComputeRays.getScratchArray(0, a.length));
+        Assert.assertNotSame(dest, ComputeRays.getScratchArray(1, a.length));
+    }
+
+    @Test
+    public void testSourceQuadTree() {
+        GeometryFactory factory = new GeometryFactory();
+        Random random = new Random(42);
+        List<Geometry> sources = new ArrayList<>();
+        double[] weights = new double[500];
+        for (int i = 0; i < weights.length; i++) {
+            Coordinate p = new Coordinate(random.nextGaussian() * 500, random.nextGaussian() * 500, 0.05);
+            if (i % 2 == 0) {
+                sources.add(factory.createPoint(p));
+            } else {
+                sources.add(factory.createLineString(new Coordinate[]{p, new Coordinate(p.x + 20, p.y + 10, 0.05)}));
+            }
+            weights[i] = SourceQuadTree.getMaximalWeight(sources.get(i), new double[]{1, 2});
+        }
+        // Line sources are weighted by their 3D length, equal to the 2D length of these horizontal lines
+        assertEquals(3 * sources.get(1).getLength(), weights[1], 1e-6);
+        SourceQuadTree tree = new SourceQuadTree(sources, weights, 4);
+        Coordinate receiver = new Coordinate(12, 24);
+        int[] sourceCount = new int[weights.length];
+        Deque<Integer> nodes = new ArrayDeque<>();
+        nodes.push(tree.getRoot());
+        while (!nodes.isEmpty()) {
+            int node = nodes.pop();
+            double weight = 0;
+            for (int i = 0; i < tree.getSourceCount(node); i++) {
+                int source = tree.getSource(node, i);
+                weight += weights[source];
+                Assert.assertTrue(tree.getDistance(node, receiver) <= tree.getSourceDistance(source, receiver));
+                if (tree.isLeaf(node)) {
+                    sourceCount[source]++;
+                }
+            }
+            assertEquals(weight, tree.getWeight(node), 1e-6);
+            for (int i = 0; i < tree.getChildCount(node); i++) {
+                nodes.push(tree.getChild(node, i));
+            }
+        }
+        // Each source is in one leaf
+        for (int count : sourceCount) {
+            assertEquals(1, count);
+        }
+    }
+
     @Test
     public void testVerticalSideDiffractionRaysOutOfDomain() throws LayerDelaunayError, ParseException  {
 
@@ -41,7 +41,11 @@ import org.locationtech.jts.io.ParseException;
 import org.locationtech.jts.io.WKTReader;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
 
 public class TestFastObstruction extends TestCase {
 
@@ -229,6 +233,166 @@ public class TestFastObstruction extends TestCase {
 
 	}
 
+	@Test
+	public void testTriangleIdCache() throws LayerDelaunayError {
+		GeometryFactory factory = new GeometryFactory();
+		Coordinate[] building1Coords = { new Coordinate(15., 5.,0.),
+				new Coordinate(30., 5.,0.), new Coordinate(30., 30.,0.),
+				new Coordinate(15., 30.,0.), new Coordinate(15., 5.,0.) };
+		MeshBuilder mesh = new MeshBuilder();
+		mesh.addGeometry(factory.createPolygon(factory.createLinearRing(building1Coords)), 5);
+		mesh.finishPolygonFeeding(new Envelope(new Coordinate(0., 0.,0.),
+				new Coordinate(45., 45.,0.)));
+		FastObstructionTest manager=new FastObstructionTest(mesh.getPolygonWithHeight(),mesh.getTriangles(),mesh.getTriNeighbors(),mesh.getVertices());
+		Coordinate receiver = new Coordinate(5, 20, 4);
+		int triangleId = manager.getTriangleIdByCoordinate(receiver);
+		assertEquals(0, manager.getTriangleCacheHitCount());
+		assertEquals(1, manager.getTriangleCacheMissCount());
+		// Z value is not part of the location
+		assertEquals(triangleId, manager.getTriangleIdByCoordinate(new Coordinate(5, 20, 1)));
+		assertEquals(1, manager.getTriangleCacheHitCount());
+		// Modification of the queried instance must not alter the cache
+		receiver.x = 40;
+		int otherTriangleId = manager.getTriangleIdByCoordinate(receiver);
+		assertEquals(2, manager.getTriangleCacheMissCount());
+		assertEquals(triangleId, manager.getTriangleIdByCoordinate(new Coordinate(5, 20)));
+		// Same result without cache
+		manager.setTriangleCacheSize(0);
+		assertEquals(otherTriangleId, manager.getTriangleIdByCoordinate(receiver));
+		assertEquals(triangleId, manager.getTriangleIdByCoordinate(new Coordinate(5, 20)));
+		assertEquals(2, manager.getTriangleCacheHitCount());
+	}
+
+	@Test
+	public void testWallCache() throws LayerDelaunayError {
+		GeometryFactory factory = new GeometryFactory();
+		Coordinate[] building1Coords = { new Coordinate(15., 5.,0.),
+				new Coordinate(30., 5.,0.), new Coordinate(30., 30.,0.),
+				new Coordinate(15., 30.,0.), new Coordinate(15., 5.,0.) };
+		MeshBuilder mesh = new MeshBuilder();
+		mesh.addGeometry(factory.createPolygon(factory.createLinearRing(building1Coords)), 5);
+		mesh.finishPolygonFeeding(new Envelope(new Coordinate(0., 0.,0.),
+				new Coordinate(45., 45.,0.)));
+		FastObstructionTest manager=new FastObstructionTest(mesh.getPolygonWithHeight(),mesh.getTriangles(),mesh.getTriNeighbors(),mesh.getVertices());
+		Coordinate source = new Coordinate(5, 20, 1);
+		Set<FastObstructionTest.Wall> expected = new HashSet<>(manager.getLimitsInRange(50, source, false));
+		assertFalse(expected.isEmpty());
+		List<FastObstructionTest.Wall> walls = manager.getLimitsInRangeCached(50, source, false);
+		assertEquals(expected, new HashSet<>(walls));
+		assertEquals(expected.size(), walls.size());
+		assertEquals(1, manager.getWallCacheMissCount());
+		assertSame(walls, manager.getLimitsInRangeCached(50, new Coordinate(5, 20, 1), false));
+		assertEquals(1, manager.getWallCacheHitCount());
+		// Another distance is another query
+		manager.getLimitsInRangeCached(5, source, false);
+		assertEquals(2, manager.getWallCacheMissCount());
+		// Least recently used entry is evicted
+		manager.setWallCacheSize(1);
+		manager.getLimitsInRangeCached(50, source, false);
+		manager.getLimitsInRangeCached(5, source, false);
+		manager.getLimitsInRangeCached(50, source, false);
+		assertEquals(5, manager.getWallCacheMissCount());
+		assertEquals(1, manager.getWallCacheHitCount());
+	}
+
+	@Test
+	public void testPackedMesh() throws LayerDelaunayError {
+		GeometryFactory factory = new GeometryFactory();
+		Coordinate[] building1Coords = { new Coordinate(15., 5.,0.),
+				new Coordinate(30., 5.,0.), new Coordinate(30., 30.,0.),
+				new Coordinate(15., 30.,0.), new Coordinate(15., 5.,0.) };
+		MeshBuilder mesh = new MeshBuilder();
+		mesh.addGeometry(factory.createPolygon(factory.createLinearRing(building1Coords)), 5);
+		mesh.finishPolygonFeeding(new Envelope(new Coordinate(0., 0.,0.),
+				new Coordinate(45., 45.,0.)));
+		FastObstructionTest manager=new FastObstructionTest(mesh.getPolygonWithHeight(),mesh.getTriangles(),mesh.getTriNeighbors(),mesh.getVertices());
+		assertEquals(mesh.getTriangles().size(), manager.getTriangleCount());
+		assertEquals(mesh.getVertices().size(), manager.getVertexCount());
+		for (int i = 0; i < manager.getTriangleCount(); i++) {
+			Triangle expected = mesh.getTriangles().get(i);
+			Triangle triangle = manager.getTriangles().get(i);
+			assertEquals(expected.getA(), triangle.getA());
+			assertEquals(expected.getB(), triangle.getB());
+			assertEquals(expected.getC(), triangle.getC());
+			assertEquals(expected.getAttribute(), manager.getTriangleAttribute(i));
+		}
+		for (int i = 0; i < manager.getVertexCount(); i++) {
+			assertEquals(0, mesh.getVertices().get(i).distance3D(manager.getVertices().get(i)), 0);
+		}
+		// The triangle walk uses the packed neighbors
+		int receiverTriangle = manager.getTriangleIdByCoordinate(new Coordinate(5, 20));
+		assertEquals(0, manager.getTriangleAttribute(receiverTriangle));
+		assertEquals(1, manager.getTriangleAttribute(manager.getTriangleIdByCoordinate(new Coordinate(20, 20))));
+		assertFalse(manager.isFreeField(new Coordinate(5, 20, 1), new Coordinate(40, 20, 1)));
+		assertTrue(manager.isFreeField(new Coordinate(5, 20, 1), new Coordinate(5, 40, 1)));
+	}
+
+	@Test
+	public void testGridIndex() {
+		Random random = new Random(42);
+		double[] envelopes = new double[500 * 4];
+		for (int i = 0; i < envelopes.length; i += 4) {
+			envelopes[i] = random.nextDouble() * 1000;
+			envelopes[i + 1] = random.nextDouble() * 1000;
+			envelopes[i + 2] = envelopes[i] + random.nextDouble() * random.nextDouble() * 300;
+			envelopes[i + 3] = envelopes[i + 1] + random.nextDouble() * 20;
+		}
+		GridIndex gridIndex = new GridIndex(envelopes, null);
+		for (int idQuery = 0; idQuery < 100; idQuery++) {
+			Envelope query = new Envelope(new Coordinate(random.nextDouble() * 1200 - 100, random.nextDouble() * 1200 - 100),
+					new Coordinate(random.nextDouble() * 1200 - 100, random.nextDouble() * 1200 - 100));
+			List<Integer> expected = new ArrayList<>();
+			for (int item = 0; item < envelopes.length / 4; item++) {
+				if (query.intersects(new Envelope(envelopes[item * 4], envelopes[item * 4 + 2], envelopes[item * 4 + 1],
+						envelopes[item * 4 + 3]))) {
+					expected.add(item);
+				}
+			}
+			final List<Integer> found = new ArrayList<>();
+			gridIndex.query(query, found::add);
+			// Each item is visited once
+			Collections.sort(found);
+			assertEquals(expected, found);
+		}
+	}
+
+	@Test
+	public void testGridSpatialIndex() throws LayerDelaunayError, ParseException {
+		WKTReader wktReader = new WKTReader();
+		MeshBuilder mesh = new MeshBuilder();
+		mesh.addGeometry(wktReader.read("POLYGON ((15 5, 30 5, 30 30, 15 30, 15 5))"), 5);
+		mesh.addGeometry(wktReader.read("POLYGON ((50 10, 70 10, 70 25, 50 25, 50 10))"), 8);
+		mesh.addGeometry(wktReader.read("POLYGON ((20 60, 40 60, 40 80, 20 80, 20 60))"), 12);
+		mesh.finishPolygonFeeding(new Envelope(new Coordinate(0., 0.), new Coordinate(100., 100.)));
+		FastObstructionTest strTree = new FastObstructionTest(mesh.getPolygonWithHeight(), mesh.getTriangles(),
+				mesh.getTriNeighbors(), mesh.getVertices(), FastObstructionTest.SpatialIndexType.STRTREE);
+		FastObstructionTest grid = new FastObstructionTest(mesh.getPolygonWithHeight(), mesh.getTriangles(),
+				mesh.getTriNeighbors(), mesh.getVertices(), FastObstructionTest.SpatialIndexType.GRID);
+		Random random = new Random(42);
+		for (int i = 0; i < 200; i++) {
+			Coordinate p1 = new Coordinate(random.nextDouble() * 100, random.nextDouble() * 100);
+			Coordinate p2 = new Coordinate(random.nextDouble() * 100, random.nextDouble() * 100);
+			assertEquals(strTree.getTriangleIdByCoordinate(p1), grid.getTriangleIdByCoordinate(p1));
+			final Set<Integer> expected = new HashSet<>();
+			strTree.getBuildingsOnPath(p1, p2, new FastObstructionTest.IntersectionRayVisitor(
+					strTree.getPolygonWithHeight(), p1, p2) {
+				@Override
+				public void addBuilding(int buildingId) {
+					expected.add(buildingId);
+				}
+			});
+			final Set<Integer> found = new HashSet<>();
+			grid.getBuildingsOnPath(p1, p2, new FastObstructionTest.IntersectionRayVisitor(
+					grid.getPolygonWithHeight(), p1, p2) {
+				@Override
+				public void addBuilding(int buildingId) {
+					found.add(buildingId);
+				}
+			});
+			assertEquals(expected, found);
+		}
+	}
+
 	@Test
 	public void testIntersectionRayEnvelope() {
 		Envelope env = new Envelope(new Coordinate(2, 3), new Coordinate(6, 6));
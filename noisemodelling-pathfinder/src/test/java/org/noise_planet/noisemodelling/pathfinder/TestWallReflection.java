@@ -161,6 +161,49 @@ public class TestWallReflection extends TestCase {
 
     }
 
+    @Test
+    public void testReceiverImageTree() {
+        List<FastObstructionTest.Wall> walls = new ArrayList<>();
+        walls.add(new FastObstructionTest.Wall(new Coordinate(355265.87,6688353.34), new Coordinate(355267.89,6688335.39) , 2));
+        walls.add(new FastObstructionTest.Wall(new Coordinate(355267.89,6688335.39), new Coordinate(355080.59,6688318.03) , 2));
+        walls.add(new FastObstructionTest.Wall(new Coordinate(355091.25,6688308.90), new Coordinate(355268.15,6688325.84) , 1));
+        walls.add(new FastObstructionTest.Wall(new Coordinate(355079.33,6688338.38), new Coordinate(355265.87,6688353.34) , 2));
+        walls.add(new FastObstructionTest.Wall(new Coordinate(355080.59,6688318.03), new Coordinate(355079.33,6688338.38) , 2));
+        walls.add(new FastObstructionTest.Wall(new Coordinate(355270.96,6688300.54), new Coordinate(355093.28,6688287.69) , 1));
+        walls.add(new FastObstructionTest.Wall(new Coordinate(355093.28,6688287.69), new Coordinate(355091.25,6688308.90) , 1));
+        walls.add(new FastObstructionTest.Wall(new Coordinate(355268.15,6688325.84), new Coordinate(355270.96,6688300.54) , 1));
+        Coordinate receiver = new Coordinate(355261.53293337114, 6688329.444505501, 1.6);
+        Coordinate source = new Coordinate(355104.51057583705, 6688315.152817895, 0.05);
+
+        for(int order = 1; order <= 4; order++) {
+            List<MirrorReceiverResult> expected = getReceiverImages(receiver, source, walls, order);
+            // Receiver tree with all walls, then with only some walls near the receiver and the other walls
+            // near the source
+            for(int receiverWallCount : new int[]{walls.size(), 3, 0}) {
+                MirrorReceiverTree tree = new MirrorReceiverTree(receiver,
+                        new ArrayList<>(walls.subList(0, receiverWallCount)), order);
+                assertTrue(tree.isComplete());
+                List<MirrorReceiverResult> res = tree.findImages(walls, new LineSegment(source, receiver), 9999, 9999);
+                assertEquals(expected, res);
+            }
+        }
+        // Truncated tree
+        assertFalse(new MirrorReceiverTree(receiver, walls, 4, Double.MAX_VALUE, 2).isComplete());
+        // Images out of range of the source are not stored
+        double propagationLimitation = 200;
+        LineSegment srcReceiver = new LineSegment(source, receiver);
+        List<MirrorReceiverResult> expected = new ArrayList<>();
+        for(MirrorReceiverResult r : new MirrorReceiverIterator.It(receiver, walls, srcReceiver, 9999, 4,
+                propagationLimitation)) {
+            expected.add(r);
+        }
+        MirrorReceiverTree prunedTree = new MirrorReceiverTree(receiver, walls, 4,
+                srcReceiver.getLength() + propagationLimitation);
+        assertTrue(prunedTree.isComplete());
+        assertTrue(prunedTree.size() < new MirrorReceiverTree(receiver, walls, 4).size());
+        assertEquals(expected, prunedTree.findImages(walls, srcReceiver, 9999, propagationLimitation));
+    }
+
     @Test
     public void testCrossTableIterator() {
         MirrorReceiverIterator.CrossTableIterator crossTableIterator = new MirrorReceiverIterator.CrossTableIterator(3, 8);
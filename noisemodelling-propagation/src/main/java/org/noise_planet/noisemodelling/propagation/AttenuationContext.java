@@ -0,0 +1,140 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ * <p>
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ * <p>
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ * <p>
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ * <p>
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * <p>
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ * <p>
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.propagation;
+
+import java.util.List;
+
+/**
+ * Immutable per-frequency constants of {@link EvaluateAttenuationCnossos}. They depend only on
+ * {@link PropagationProcessPathData} so they are computed once, see {@link PropagationProcessPathData#getAttenuationContext()}.
+ */
+public final class AttenuationContext {
+    // Source of the values, used to check that the context is up to date
+    private final List<Integer> freqLvl;
+    private final List<Double> freqLvlAWeighting;
+    private final double[] sourceAlphaAtmo;
+    private final double celerity;
+
+    final int frequencyCount;
+    /** Frequencies in Hertz */
+    final double[] frequencies;
+    /** Wave length (m) */
+    final double[] freqLambda;
+    /** Atmospheric absorption (dB/km) */
+    final double[] alphaAtmo;
+    /** A weighting (dB) */
+    final double[] aWeighting;
+    /** Wave number k=2πf/c */
+    final double[] waveNumber;
+    /** Frequency terms of the ground attenuation w parameter, f^2.5 f^1.5 and f^0.75 */
+    final double[] frequencyPow25;
+    final double[] frequencyPow15;
+    final double[] frequencyPow075;
+
+    /**
+     * @param data Propagation parameters
+     */
+    public AttenuationContext(PropagationProcessPathData data) {
+        freqLvl = data.freq_lvl;
+        freqLvlAWeighting = data.freq_lvl_a_weighting;
+        sourceAlphaAtmo = data.getAlpha_atmo();
+        celerity = data.getCelerity();
+        frequencyCount = freqLvl.size();
+        frequencies = new double[frequencyCount];
+        freqLambda = new double[frequencyCount];
+        waveNumber = new double[frequencyCount];
+        frequencyPow25 = new double[frequencyCount];
+        frequencyPow15 = new double[frequencyCount];
+        frequencyPow075 = new double[frequencyCount];
+        for (int idf = 0; idf < frequencyCount; idf++) {
+            int frequency = freqLvl.get(idf);
+            frequencies[idf] = frequency;
+            if (frequency > 0) {
+                freqLambda[idf] = celerity / frequency;
+            } else {
+                freqLambda[idf] = 1;
+            }
+            waveNumber[idf] = 2 * Math.PI * frequency / celerity;
+            frequencyPow25[idf] = Math.pow(frequency, 2.5);
+            frequencyPow15[idf] = Math.pow(frequency, 1.5);
+            frequencyPow075[idf] = Math.pow(frequency, 0.75);
+        }
+        alphaAtmo = sourceAlphaAtmo == null ? new double[0] : sourceAlphaAtmo.clone();
+        aWeighting = new double[freqLvlAWeighting == null ? 0 : freqLvlAWeighting.size()];
+        for (int idf = 0; idf < aWeighting.length; idf++) {
+            aWeighting[idf] = freqLvlAWeighting.get(idf);
+        }
+    }
+
+    /**
+     * @param data Propagation parameters
+     * @return True if this context has been computed with the current parameters of data
+     */
+    public boolean isBuiltFrom(PropagationProcessPathData data) {
+        return data.freq_lvl == freqLvl && data.freq_lvl_a_weighting == freqLvlAWeighting &&
+                data.getAlpha_atmo() == sourceAlphaAtmo && Double.compare(data.getCelerity(), celerity) == 0;
+    }
+
+    public int getFrequencyCount() {
+        return frequencyCount;
+    }
+
+    /**
+     * @return Frequencies in Hertz
+     */
+    public double[] getFrequencies() {
+        return frequencies.clone();
+    }
+
+    /**
+     * @return Wave length for each frequency (m)
+     */
+    public double[] getFreqLambda() {
+        return freqLambda.clone();
+    }
+
+    /**
+     * @return Atmospheric absorption for each frequency (dB/km)
+     */
+    public double[] getAlphaAtmo() {
+        return alphaAtmo.clone();
+    }
+
+    /**
+     * @return A weighting for each frequency (dB)
+     */
+    public double[] getAWeighting() {
+        return aWeighting.clone();
+    }
+}
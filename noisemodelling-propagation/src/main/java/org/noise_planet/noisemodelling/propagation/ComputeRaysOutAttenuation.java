@@ -40,10 +40,13 @@ import org.locationtech.jts.math.Vector3D;
 import org.noise_planet.noisemodelling.pathfinder.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -56,6 +59,8 @@ import java.util.concurrent.atomic.AtomicLong;
  * @author Pierre Aumond
  */
 public class ComputeRaysOutAttenuation implements IComputeRaysOut {
+    // Attenuation evaluators are reused by the computation threads
+    private static final ThreadLocal<EvaluateAttenuationCnossos> EVALUATORS = new ThreadLocal<>();
     public ConcurrentLinkedDeque<VerticeSL> receiversAttenuationLevels = new ConcurrentLinkedDeque<>();
     public List<PropagationPath> propagationPaths = Collections.synchronizedList(new ArrayList<PropagationPath>());
 
@@ -142,18 +147,39 @@ public class ComputeRaysOutAttenuation implements IComputeRaysOut {
         }
     }
 
+    /**
+     * @param context Per-frequency constants
+     * @return Evaluator of the current thread bound to this context
+     */
+    private static EvaluateAttenuationCnossos getEvaluator(AttenuationContext context) {
+        EvaluateAttenuationCnossos evaluator = EVALUATORS.get();
+        if(evaluator == null) {
+            evaluator = new EvaluateAttenuationCnossos(context);
+            EVALUATORS.set(evaluator);
+        } else if(evaluator.getContext() != context) {
+            evaluator.setContext(context);
+        }
+        return evaluator;
+    }
+
     public double[] computeAttenuation(PropagationProcessPathData pathData, long sourceId, double sourceLi, long receiverId, List<PropagationPath> propagationPath) {
         if(pathData != null) {
             // Compute receiver/source attenuation
-            EvaluateAttenuationCnossos evaluateAttenuationCnossos = new EvaluateAttenuationCnossos();
-
+            EvaluateAttenuationCnossos evaluateAttenuationCnossos = getEvaluator(pathData.getAttenuationContext());
+            final int freqCount = pathData.freq_lvl.size();
+            // Working arrays, only the returned spectrum is allocated
+            double[] aGlobalMeteoHom = ComputeRays.getScratchArray(0, freqCount);
+            double[] aGlobalMeteoFav = ComputeRays.getScratchArray(1, freqCount);
+            double[] aBoundaryHom = ComputeRays.getScratchArray(2, freqCount);
+            double[] aBoundaryFav = ComputeRays.getScratchArray(3, freqCount);
 
             double[] propagationAttenuationSpectrum = null;
+            // Frequencies of directivity queries, created on the first directional source
+            double[] frequencies = null;
             for (PropagationPath propath : propagationPath) {
                 List<PointPath> ptList = propath.getPointList();
 
                 propath.initPropagationPath();
-                evaluateAttenuationCnossos.initEvaluateAttenutation(pathData);
 
                 double[] Adiv = evaluateAttenuationCnossos.evaluateAdiv(propath, pathData);
 
@@ -169,32 +195,31 @@ public class ComputeRaysOutAttenuation implements IComputeRaysOut {
 
                 //
                 int roseindex = getRoseIndex(ptList.get(0).coordinate, ptList.get(ptList.size() - 1).coordinate);
-                double[] aGlobalMeteoHom = new double[pathData.freq_lvl.size()];
-                double[] aGlobalMeteoFav = new double[pathData.freq_lvl.size()];
-                double[] Aboundary;
-
-                if (pathData.getWindRose()[roseindex]!=1) {
+                Arrays.fill(aGlobalMeteoHom, 0);
+                Arrays.fill(aGlobalMeteoFav, 0);
+                boolean computeHomogeneous = pathData.getWindRose()[roseindex]!=1;
+                boolean computeFavorable = pathData.getWindRose()[roseindex]!=0;
+                // Homogeneous and favorable conditions share the path geometry
+                evaluateAttenuationCnossos.evaluateAboundary(propath, pathData,
+                        computeHomogeneous ? aBoundaryHom : null, computeFavorable ? aBoundaryFav : null);
+
+                if (computeHomogeneous) {
                     // Compute homogeneous conditions attenuation
-                    propath.setFavorable(false);
-                    propath.initPropagationPath();
-                    Aboundary = evaluateAttenuationCnossos.evaluateAboundary(propath, pathData, false);
-                    for (int idfreq = 0; idfreq < pathData.freq_lvl.size(); idfreq++) {
-                        aGlobalMeteoHom[idfreq] = -(Adiv[idfreq] + Aatm[idfreq] + Aboundary[idfreq] + Aref[idfreq]); // Eq. 2.5.6
+                    for (int idfreq = 0; idfreq < freqCount; idfreq++) {
+                        aGlobalMeteoHom[idfreq] = -(Adiv[idfreq] + Aatm[idfreq] + aBoundaryHom[idfreq] + Aref[idfreq]); // Eq. 2.5.6
                     }
                 }
 
                 // Compute favorable conditions attenuation
-                if (pathData.getWindRose()[roseindex]!=0) {
-                    propath.setFavorable(true);
-                    propath.initPropagationPath();
-                    Aboundary = evaluateAttenuationCnossos.evaluateAboundary(propath, pathData, true);
-                    for (int idfreq = 0; idfreq < pathData.freq_lvl.size(); idfreq++) {
-                        aGlobalMeteoFav[idfreq] = -(Adiv[idfreq] + Aatm[idfreq] + Aboundary[idfreq]+ Aref[idfreq]); // Eq. 2.5.8
+                if (computeFavorable) {
+                    for (int idfreq = 0; idfreq < freqCount; idfreq++) {
+                        aGlobalMeteoFav[idfreq] = -(Adiv[idfreq] + Aatm[idfreq] + aBoundaryFav[idfreq]+ Aref[idfreq]); // Eq. 2.5.8
                     }
                 }
 
                 // Compute attenuation under the wind conditions using the ray direction
-                double[] aGlobalMeteoRay = ComputeRays.sumArrayWithPonderation(aGlobalMeteoFav, aGlobalMeteoHom, pathData.getWindRose()[roseindex]);
+                double[] aGlobalMeteoRay = ComputeRays.sumArrayWithPonderation(aGlobalMeteoFav, aGlobalMeteoHom,
+                        pathData.getWindRose()[roseindex], aGlobalMeteoHom);
 
                 // Apply attenuation due to sound direction
                 if(inputData != null && !inputData.isOmnidirectional((int)sourceId)) {
@@ -206,21 +231,25 @@ public class ComputeRaysOutAttenuation implements IComputeRaysOut {
                             nextPointFromSource.y - sourceCoordinate.y,
                             nextPointFromSource.z - sourceCoordinate.z)).normalize();
                     Orientation directivityToPick = Orientation.fromVector(Orientation.rotate(sourceOrientation, outgoingRay, true), 0);
-                    double[] attSource = new double[pathData.freq_lvl.size()];
-                    for (int idfreq = 0; idfreq < pathData.freq_lvl.size(); idfreq++) {
-                        attSource[idfreq] = inputData.getSourceAttenuation((int) sourceId,
-                                pathData.freq_lvl.get(idfreq), (float)Math.toRadians(directivityToPick.yaw),
-                                (float)Math.toRadians(directivityToPick.pitch));
+                    if(frequencies == null) {
+                        frequencies = new double[freqCount];
+                        for (int idfreq = 0; idfreq < freqCount; idfreq++) {
+                            frequencies[idfreq] = pathData.freq_lvl.get(idfreq);
+                        }
+                    }
+                    // All bands are read from the same direction
+                    double[] directivityAttenuation = inputData.getSourceAttenuation((int) sourceId, frequencies,
+                            (float)Math.toRadians(directivityToPick.yaw),
+                            (float)Math.toRadians(directivityToPick.pitch));
+                    for (int idfreq = 0; idfreq < freqCount; idfreq++) {
+                        aGlobalMeteoRay[idfreq] += directivityAttenuation[idfreq];
                     }
-                    aGlobalMeteoRay = ComputeRays.sumArray(aGlobalMeteoRay, attSource);
                 }
 
-
-
                 if (propagationAttenuationSpectrum != null) {
-                    propagationAttenuationSpectrum = ComputeRays.sumDbArray(aGlobalMeteoRay, propagationAttenuationSpectrum);
+                    ComputeRays.sumDbArray(aGlobalMeteoRay, propagationAttenuationSpectrum, propagationAttenuationSpectrum);
                 } else {
-                    propagationAttenuationSpectrum = aGlobalMeteoRay;
+                    propagationAttenuationSpectrum = aGlobalMeteoRay.clone();
                 }
             }
             if (propagationAttenuationSpectrum != null) {
@@ -368,13 +397,19 @@ public class ComputeRaysOutAttenuation implements IComputeRaysOut {
                 // Push merged sources into multi-thread parent
                 // Merge levels for each receiver for lines sources
                 Map<Long, double[]> levelsPerSourceLines = new HashMap<>();
+                // Sources having a merged level owned by this map
+                Set<Long> mergedSources = new HashSet<>();
                 for (VerticeSL lvl : receiverAttenuationLevels) {
                     if (!levelsPerSourceLines.containsKey(lvl.sourceId)) {
                         levelsPerSourceLines.put(lvl.sourceId, lvl.value);
                     } else {
-                        // merge
-                        levelsPerSourceLines.put(lvl.sourceId, ComputeRays.sumDbArray(levelsPerSourceLines.get(lvl.sourceId),
-                                lvl.value));
+                        // merge, the first level is still referenced by the receiver levels so it is copied on first write
+                        double[] merged = levelsPerSourceLines.get(lvl.sourceId);
+                        if (mergedSources.add(lvl.sourceId)) {
+                            levelsPerSourceLines.put(lvl.sourceId, ComputeRays.sumDbArray(merged, lvl.value));
+                        } else {
+                            ComputeRays.sumDbArray(merged, lvl.value, merged);
+                        }
                     }
                 }
                 long sourcePK;
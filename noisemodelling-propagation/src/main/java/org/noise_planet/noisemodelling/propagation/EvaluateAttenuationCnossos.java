@@ -51,8 +51,34 @@ public class EvaluateAttenuationCnossos {
     private int nbfreq;
     private double[] freq_lambda;
     private double[] aGlobal;
+    private AttenuationContext context = null;
     boolean gToSigma = false; // Todo publish parameter issue #13
 
+    public EvaluateAttenuationCnossos() {
+    }
+
+    /**
+     * Evaluator bound to precomputed constants, {@link #initEvaluateAttenutation(PropagationProcessPathData)} does
+     * not have to be called for each path. An instance must not be shared between threads.
+     * @param context Per-frequency constants
+     */
+    public EvaluateAttenuationCnossos(AttenuationContext context) {
+        setContext(context);
+    }
+
+    /**
+     * @param context Per-frequency constants
+     */
+    public void setContext(AttenuationContext context) {
+        this.context = context;
+        nbfreq = context.frequencyCount;
+        freq_lambda = context.freqLambda;
+    }
+
+    public AttenuationContext getContext() {
+        return context;
+    }
+
     public void setaGlobal(double[] aGlobal) {
         this.aGlobal = aGlobal;
     }
@@ -143,51 +169,96 @@ public class EvaluateAttenuationCnossos {
      * @return
      */
     public static double[] getAGroundCore(PropagationPath path, SegmentPath segmentPath, PropagationProcessPathData data) {
+        return getAGroundCore(path, segmentPath, data, data.getAttenuationContext());
+    }
 
-        double[] aGround = new double[data.freq_lvl.size()];
+    /**
+     * Eq. 2.5.15
+     * Compute Aground
+     * @param context Per-frequency constants of data
+     * @return
+     */
+    static double[] getAGroundCore(PropagationPath path, SegmentPath segmentPath, PropagationProcessPathData data,
+                                   AttenuationContext context) {
+        double[] aGround = new double[context.frequencyCount];
+        if (path.isFavorable()) {
+            getAGroundCore(segmentPath, data, context, segmentPath.gw, segmentPath.gw, segmentPath.gm, null, aGround);
+        } else {
+            getAGroundCore(segmentPath, data, context, segmentPath.gw, segmentPath.gw, segmentPath.gm, aGround, null);
+        }
+        return aGround;
+    }
+
+    /**
+     * Eq. 2.5.15 and Eq. 2.5.20
+     * Compute Aground for the homogeneous and favorable conditions, the wave number and the ground terms are shared
+     * when both conditions use the same Gw
+     * @param gwHomogeneous Gw of the homogeneous condition
+     * @param gwFavorable Gw of the favorable condition
+     * @param gm Gm of both conditions
+     * @param aGroundH Aground,H output or null
+     * @param aGroundF Aground,F output or null
+     */
+    static void getAGroundCore(SegmentPath segmentPath, PropagationProcessPathData data, AttenuationContext context,
+                               double gwHomogeneous, double gwFavorable, double gm, double[] aGroundH,
+                               double[] aGroundF) {
         double aGroundmin;
         double AGround;
+        boolean sameGw = aGroundH != null && gwFavorable == gwHomogeneous;
+        double gw26H = aGroundH != null ? Math.pow(gwHomogeneous, 2.6) : 0;
+        double gw13H = aGroundH != null ? Math.pow(gwHomogeneous, 1.3) : 0;
+        double gw26F = aGroundF != null && !sameGw ? Math.pow(gwFavorable, 2.6) : gw26H;
+        double gw13F = aGroundF != null && !sameGw ? Math.pow(gwFavorable, 1.3) : gw13H;
 
-        for (int idfreq = 0; idfreq < data.freq_lvl.size(); idfreq++) {
+        for (int idfreq = 0; idfreq < context.frequencyCount; idfreq++) {
             //NF S 31-133 page 41 c
-            double k = 2 * Math.PI * data.freq_lvl.get(idfreq) / data.getCelerity();
-            //NF S 31-113 page 41 w
-            double w = 0.0185 * Math.pow(data.freq_lvl.get(idfreq), 2.5) * Math.pow(segmentPath.gw, 2.6) /
-                    (Math.pow(data.freq_lvl.get(idfreq), 1.5) * Math.pow(segmentPath.gw, 2.6) + 1.3 * Math.pow(10, 3) * Math.pow(data.freq_lvl.get(idfreq), 0.75) * Math.pow(segmentPath.gw, 1.3) + 1.16 * Math.pow(10, 6));
-            //NF S 31-113 page 41 Cf
-            double cf = segmentPath.dp * (1 + 3 * w * segmentPath.dp * Math.pow(Math.E, -Math.sqrt(w * segmentPath.dp))) / (1 + w * segmentPath.dp);
-            //NF S 31-113 page 41 A sol
-
-            if (path.isFavorable()) {
+            double k = context.waveNumber[idfreq];
+            double cfH = 0;
+            if (aGroundH != null) {
+                cfH = getCf(segmentPath, context, idfreq, gw26H, gw13H);
+                /** eq. 2.5.15**/
+                AGround = -10 * Math.log10(4 * Math.pow(k, 2) / Math.pow(segmentPath.dp, 2) *
+                        (Math.pow(segmentPath.zs, 2) - Math.sqrt(2 * cfH / k) * segmentPath.zs + cfH / k) *
+                        (Math.pow(segmentPath.zr, 2) - Math.sqrt(2 * cfH / k) * segmentPath.zr + cfH / k));
+                /** eq. 2.5.18**/
+                aGroundmin = -3 * (1 - gm);
+                aGroundH[idfreq] = Math.max(AGround, aGroundmin);
+            }
+            if (aGroundF != null) {
+                double cf = sameGw ? cfH : getCf(segmentPath, context, idfreq, gw26F, gw13F);
                 if (data.isPrime2520()) {
                     if (segmentPath.testFormPrime <= 1) {
-                        aGroundmin = -3 * (1 - segmentPath.gm);
+                        aGroundmin = -3 * (1 - gm);
                     } else {
-                        aGroundmin = -3 * (1 - segmentPath.gm) * (1 + 2 * (1 - (1 / segmentPath.testFormPrime)));
+                        aGroundmin = -3 * (1 - gm) * (1 + 2 * (1 - (1 / segmentPath.testFormPrime)));
                     }
                 } else {
                     if (segmentPath.testForm <= 1) {
-                        aGroundmin = -3 * (1 - segmentPath.gm);
+                        aGroundmin = -3 * (1 - gm);
                     } else {
-                        aGroundmin = -3 * (1 - segmentPath.gm) * (1 + 2 * (1 - (1 / segmentPath.testForm)));
+                        aGroundmin = -3 * (1 - gm) * (1 + 2 * (1 - (1 / segmentPath.testForm)));
                     }
                 }
                 /** eq. 2.5.20**/
                 AGround = -10 * Math.log10(4 * Math.pow(k, 2) / Math.pow(segmentPath.dp, 2) *
                         (Math.pow(segmentPath.zsPrime, 2) - Math.sqrt(2 * cf / k) * segmentPath.zsPrime + cf / k) *
                         (Math.pow(segmentPath.zrPrime, 2) - Math.sqrt(2 * cf / k) * segmentPath.zrPrime + cf / k));
-            } else {
-                /** eq. 2.5.15**/
-                AGround = -10 * Math.log10(4 * Math.pow(k, 2) / Math.pow(segmentPath.dp, 2) *
-                        (Math.pow(segmentPath.zs, 2) - Math.sqrt(2 * cf / k) * segmentPath.zs + cf / k) *
-                        (Math.pow(segmentPath.zr, 2) - Math.sqrt(2 * cf / k) * segmentPath.zr + cf / k));
-                /** eq. 2.5.18**/
-                aGroundmin = -3 * (1 - segmentPath.gm);
+                aGroundF[idfreq] = Math.max(AGround, aGroundmin);
             }
-            aGround[idfreq] = Math.max(AGround, aGroundmin);
-
         }
-        return aGround;
+    }
+
+    /**
+     * NF S 31-113 page 41 Cf
+     * @param gw26 Gw power 2.6
+     * @param gw13 Gw power 1.3
+     */
+    private static double getCf(SegmentPath segmentPath, AttenuationContext context, int idfreq, double gw26,
+                                double gw13) {
+        //NF S 31-113 page 41 w
+        double w = 0.0185 * context.frequencyPow25[idfreq] * gw26 /
+                (context.frequencyPow15[idfreq] * gw26 + 1.3 * Math.pow(10, 3) * context.frequencyPow075[idfreq] * gw13 + 1.16 * Math.pow(10, 6));
+        return segmentPath.dp * (1 + 3 * w * segmentPath.dp * Math.pow(Math.E, -Math.sqrt(w * segmentPath.dp))) / (1 + w * segmentPath.dp);
     }
 
     /**
@@ -252,11 +323,41 @@ public class EvaluateAttenuationCnossos {
             }
             java.util.Arrays.fill(aGround, aGroundmin);
         } else {
-            aGround = getAGroundCore(path, segmentPath, data);
+            aGround = getAGroundCore(path, segmentPath, data, getContext(data));
         }
         return aGround;
     }
 
+    /**
+     * Aground of both meteorological conditions, see {@link #getAGround(SegmentPath, PropagationPath, PropagationProcessPathData)}
+     * @param gwHomogeneous Gw of the homogeneous condition
+     * @param gwFavorable Gw of the favorable condition
+     * @param gm Gm of both conditions
+     * @param aGroundH Aground,H output or null
+     * @param aGroundF Aground,F output or null
+     */
+    private void getAGround(SegmentPath segmentPath, PropagationProcessPathData data, AttenuationContext context,
+                            double gwHomogeneous, double gwFavorable, double gm, double[] aGroundH,
+                            double[] aGroundF) {
+        if (segmentPath.gPath == 0 && data.isgDisc()) {
+            if (aGroundH != null) {
+                java.util.Arrays.fill(aGroundH, -3);
+            }
+            if (aGroundF != null) {
+                // The lower bound of Aground,F (calculated with unmodified heights) depends on the geometry of the path
+                double aGroundmin;
+                if (segmentPath.testForm <= 1) {
+                    aGroundmin = -3 * (1 - gm);
+                } else {
+                    aGroundmin = -3 * (1 - gm) * (1 + 2 * (1 - (1 / segmentPath.testForm)));
+                }
+                java.util.Arrays.fill(aGroundF, aGroundmin);
+            }
+        } else {
+            getAGroundCore(segmentPath, data, context, gwHomogeneous, gwFavorable, gm, aGroundH, aGroundF);
+        }
+    }
+
     /**
      *
      * @param path
@@ -273,14 +374,7 @@ public class EvaluateAttenuationCnossos {
         double[] aBoundary;
 
 
-        // Set Gm and Gw for AGround SR - Table 2.5.b
-        if (path.isFavorable()) {
-            srPath.get(0).setGw(srPath.get(0).gPath);
-            srPath.get(0).setGm(srPath.get(0).gPathPrime);
-        } else {
-            srPath.get(0).setGw(srPath.get(0).gPathPrime);
-            srPath.get(0).setGm(srPath.get(0).gPathPrime);
-        }
+        setGroundFactors(path);
 
         if (path.difHPoints.size() > 0) {
             // Adif is calculated with diffraction. The ground effect is taken into account in the Adif equation itself (Aground = 0 dB). This therefore gives Aboundary = Adif
@@ -296,40 +390,11 @@ public class EvaluateAttenuationCnossos {
             DeltaDifSpR = getDeltaDif(srPath.get(srPath.size() - 2), data);
             DeltaDifSRp = getDeltaDif(srPath.get(srPath.size() - 1), data);
 
-            // Set Gm and Gw for AGround SO - Table 2.5.b
-            if (path.isFavorable()) {
-                segmentPath.get(0).setGw(segmentPath.get(0).gPath);
-                segmentPath.get(0).setGm(segmentPath.get(0).gPathPrime);
-            } else {
-                segmentPath.get(0).setGw(segmentPath.get(0).gPathPrime);
-                segmentPath.get(0).setGm(segmentPath.get(0).gPathPrime);
-            }
             aGroundSO = getAGround(segmentPath.get(0), path, data);
-
-            // Set Gm and Gw for AGround OR - Table 2.5.b
-            if (path.isFavorable()) {
-                segmentPath.get(segmentPath.size() - 1).setGw(segmentPath.get(segmentPath.size() - 1).gPath);
-                segmentPath.get(segmentPath.size() - 1).setGm(segmentPath.get(segmentPath.size() - 1).gPath);
-            } else {
-                segmentPath.get(segmentPath.size() - 1).setGw(segmentPath.get(segmentPath.size() - 1).gPath);
-                segmentPath.get(segmentPath.size() - 1).setGm(segmentPath.get(segmentPath.size() - 1).gPath);
-            }
             aGroundOR = getAGround(segmentPath.get(segmentPath.size() - 1), path, data);
 
-            double[] deltaGroundSO = new double[data.freq_lvl.size()];
-            double[] deltaGroundOR = new double[data.freq_lvl.size()];
-            // Eq 2.5.30 - Eq. 2.5.31 - Eq. 2.5.32
-            for (int idf = 0; idf < nbfreq; idf++) {
-                // if Deltadif > 25: Deltadif = 25 dB for a diffraction on a horizontal edge and only on the term Deltadif which figures in the calculation of Adif. This upper bound shall not be applied in the Deltadif terms that intervene in the calculation of Deltaground, or for a diffraction on a vertical edge (lateral diffraction) in the case of industrial noise mapping
-                if (segmentPath.get(segmentPath.size() - 1).zr > 0.0000001) {// see 5.3 Equivalent heights from AFNOR document
-                    deltaGroundSO[idf]  = getDeltaGround(aGroundSO[idf], DeltaDifSpR[idf],DeltaDifSR[idf]);
-                    deltaGroundOR[idf] = getDeltaGround(aGroundOR[idf], DeltaDifSRp[idf], DeltaDifSR[idf]);
-                }else{
-                    deltaGroundSO[idf]  = getDeltaGround(aGroundSO[idf], DeltaDifSpR[idf],DeltaDifSR[idf]);
-                    deltaGroundOR[idf]  = aGroundOR[idf];
-                }
-                aDif[idf] = Math.min(25, DeltaDifSR[idf]) + deltaGroundSO[idf] + deltaGroundOR[idf]; // Eq. 2.5.30
-            }
+            getADif(segmentPath.get(segmentPath.size() - 1), aGroundSO, aGroundOR, DeltaDifSR, DeltaDifSpR, DeltaDifSRp,
+                    aDif);
 
             aBoundary = aDif;
         } else {
@@ -355,6 +420,48 @@ public class EvaluateAttenuationCnossos {
         return aBoundary;
     }
 
+    /**
+     * Set Gm and Gw of the SR path and of the SO and OR segments for the meteorological condition of the path
+     * - Table 2.5.b
+     * @param path Initialised propagation path
+     */
+    private static void setGroundFactors(PropagationPath path) {
+        SegmentPath sr = path.getSRList().get(0);
+        sr.setGw(path.isFavorable() ? sr.gPath : sr.gPathPrime);
+        sr.setGm(sr.gPathPrime);
+        if (path.difHPoints.size() > 0) {
+            List<SegmentPath> segmentPath = path.getSegmentList();
+            SegmentPath so = segmentPath.get(0);
+            so.setGw(path.isFavorable() ? so.gPath : so.gPathPrime);
+            so.setGm(so.gPathPrime);
+            SegmentPath or = segmentPath.get(segmentPath.size() - 1);
+            or.setGw(or.gPath);
+            or.setGm(or.gPath);
+        }
+    }
+
+    /**
+     * Eq 2.5.30 - Eq. 2.5.31 - Eq. 2.5.32
+     * @param segmentOR Last segment of the path (receiver side)
+     * @param aDif Adif output
+     */
+    private void getADif(SegmentPath segmentOR, double[] aGroundSO, double[] aGroundOR, double[] DeltaDifSR,
+                         double[] DeltaDifSpR, double[] DeltaDifSRp, double[] aDif) {
+        double deltaGroundSO;
+        double deltaGroundOR;
+        for (int idf = 0; idf < nbfreq; idf++) {
+            // if Deltadif > 25: Deltadif = 25 dB for a diffraction on a horizontal edge and only on the term Deltadif which figures in the calculation of Adif. This upper bound shall not be applied in the Deltadif terms that intervene in the calculation of Deltaground, or for a diffraction on a vertical edge (lateral diffraction) in the case of industrial noise mapping
+            if (segmentOR.zr > 0.0000001) {// see 5.3 Equivalent heights from AFNOR document
+                deltaGroundSO  = getDeltaGround(aGroundSO[idf], DeltaDifSpR[idf],DeltaDifSR[idf]);
+                deltaGroundOR = getDeltaGround(aGroundOR[idf], DeltaDifSRp[idf], DeltaDifSR[idf]);
+            }else{
+                deltaGroundSO  = getDeltaGround(aGroundSO[idf], DeltaDifSpR[idf],DeltaDifSR[idf]);
+                deltaGroundOR  = aGroundOR[idf];
+            }
+            aDif[idf] = Math.min(25, DeltaDifSR[idf]) + deltaGroundSO + deltaGroundOR; // Eq. 2.5.30
+        }
+    }
+
     /**
      *
      * @param data
@@ -362,18 +469,20 @@ public class EvaluateAttenuationCnossos {
     public void initEvaluateAttenutation(PropagationProcessPathData data) {
         // init
         aGlobal = new double[data.freq_lvl.size()];
-        nbfreq = data.freq_lvl.size();
+        // Wave length for each frequency
+        setContext(data.getAttenuationContext());
+    }
 
-        // Init wave length for each frequency
-        freq_lambda = new double[nbfreq];
-        for (int idf = 0; idf < nbfreq; idf++) {
-            if (data.freq_lvl.get(idf) > 0) {
-                freq_lambda[idf] = data.getCelerity() / data.freq_lvl.get(idf);
-            } else {
-                freq_lambda[idf] = 1;
-            }
+    /**
+     * @param data Propagation parameters
+     * @return Context of this evaluator if it is up to date with data
+     */
+    private AttenuationContext getContext(PropagationProcessPathData data) {
+        AttenuationContext attenuationContext = context;
+        if(attenuationContext == null || !attenuationContext.isBuiltFrom(data)) {
+            attenuationContext = data.getAttenuationContext();
         }
-
+        return attenuationContext;
     }
 
 
@@ -397,7 +506,7 @@ public class EvaluateAttenuationCnossos {
         // init
         double[] aAtm = new double[data.freq_lvl.size()];
         // init atmosphere
-        double[] alpha_atmo = data.getAlpha_atmo();
+        double[] alpha_atmo = getContext(data).alphaAtmo;
 
         for (int idfreq = 0; idfreq < nbfreq; idfreq++) {
             aAtm[idfreq] = getAAtm(distance, alpha_atmo[idfreq]);
@@ -429,6 +538,82 @@ public class EvaluateAttenuationCnossos {
         return aBoundary;
     }
 
+    /**
+     * Compute Aboundary of the homogeneous and favorable conditions in a single pass. The path geometry (mean planes,
+     * equivalent heights, projected distances) is computed once, only the diffraction path length differences are
+     * evaluated for each condition. Results are the same as {@link #evaluateAboundary(PropagationPath, PropagationProcessPathData, boolean)}
+     * called after {@link PropagationPath#setFavorable(boolean)} for each condition.
+     * The path is left initialised in the favorable condition if aBoundaryF is computed, in the homogeneous condition
+     * otherwise, with the Gw and Gm of this condition.
+     * @param path Propagation path
+     * @param data Propagation parameters
+     * @param aBoundaryH Aboundary,H output, null to skip the homogeneous condition
+     * @param aBoundaryF Aboundary,F output, null to skip the favorable condition
+     */
+    public void evaluateAboundary(PropagationPath path, PropagationProcessPathData data, double[] aBoundaryH,
+                                  double[] aBoundaryF) {
+        AttenuationContext attenuationContext = getContext(data);
+        path.initPropagationPath();
+        List<SegmentPath> srPath = path.getSRList();
+        SegmentPath sr = srPath.get(0);
+        // Gm and Gw of each condition for AGround - Table 2.5.b
+        if (path.difHPoints.size() > 0) {
+            List<SegmentPath> segmentPath = path.getSegmentList();
+            SegmentPath so = segmentPath.get(0);
+            SegmentPath or = segmentPath.get(segmentPath.size() - 1);
+            double[] deltaDifSRH = null, deltaDifSpRH = null, deltaDifSRpH = null;
+            double[] deltaDifSRF = null, deltaDifSpRF = null, deltaDifSRpF = null;
+            double[] aGroundSOH = null, aGroundORH = null, aGroundSOF = null, aGroundORF = null;
+            // Only the path length differences depend on the meteorological condition
+            if (aBoundaryH != null) {
+                path.setFavorable(false);
+                path.initPropagationPath();
+                deltaDifSRH = getDeltaDif(sr, data);
+                deltaDifSpRH = getDeltaDif(srPath.get(srPath.size() - 2), data);
+                deltaDifSRpH = getDeltaDif(srPath.get(srPath.size() - 1), data);
+                aGroundSOH = new double[attenuationContext.frequencyCount];
+                aGroundORH = new double[attenuationContext.frequencyCount];
+            }
+            if (aBoundaryF != null) {
+                path.setFavorable(true);
+                path.initPropagationPath();
+                deltaDifSRF = getDeltaDif(sr, data);
+                deltaDifSpRF = getDeltaDif(srPath.get(srPath.size() - 2), data);
+                deltaDifSRpF = getDeltaDif(srPath.get(srPath.size() - 1), data);
+                aGroundSOF = new double[attenuationContext.frequencyCount];
+                aGroundORF = new double[attenuationContext.frequencyCount];
+            }
+            getAGround(so, data, attenuationContext, so.gPathPrime, so.gPath, so.gPathPrime, aGroundSOH, aGroundSOF);
+            getAGround(or, data, attenuationContext, or.gPath, or.gPath, or.gPath, aGroundORH, aGroundORF);
+            if (aBoundaryH != null) {
+                getADif(or, aGroundSOH, aGroundORH, deltaDifSRH, deltaDifSpRH, deltaDifSRpH, aBoundaryH);
+            }
+            if (aBoundaryF != null) {
+                getADif(or, aGroundSOF, aGroundORF, deltaDifSRF, deltaDifSpRF, deltaDifSRpF, aBoundaryF);
+            }
+        } else {
+            // Aground is calculated with no diffraction (Adif = 0 dB) and Aboundary = Aground;
+            getAGround(sr, data, attenuationContext, sr.gPathPrime, sr.gPath, sr.gPathPrime, aBoundaryH, aBoundaryF);
+            if (path.difVPoints.size() > 0) {
+                // Lateral diffraction does not depend on the meteorological condition
+                double[] aDif = getDeltaDif(sr, data);
+                // Eq. 2.5.33 - Eq. 2.5.34
+                for (int idf = 0; idf < nbfreq; idf++) {
+                    if (aBoundaryH != null) {
+                        aBoundaryH[idf] = aDif[idf] + aBoundaryH[idf];
+                    }
+                    if (aBoundaryF != null) {
+                        aBoundaryF[idf] = aDif[idf] + aBoundaryF[idf];
+                    }
+                }
+            }
+        }
+        // Leave the path in the last evaluated condition, as the per condition evaluation does
+        path.setFavorable(aBoundaryF != null);
+        path.initPropagationPath();
+        setGroundFactors(path);
+    }
+
 
 
     /**
@@ -73,6 +73,8 @@ public class PropagationProcessPathData {
     private boolean prime2520 = false; // choose to use prime values to compute eq. 2.5.20
     /** probability occurrence favourable condition */
     private double[] windRose  = DEFAULT_WIND_ROSE;
+    // Per-frequency constants, rebuilt when the parameters change
+    private volatile AttenuationContext attenuationContext = null;
 
     public PropagationProcessPathData() {
         this(false);
@@ -398,6 +400,19 @@ public class PropagationProcessPathData {
         return alpha_atmo;
     }
 
+    /**
+     * @return Per-frequency constants of the attenuation computation. The same instance is returned until frequencies
+     * or atmospheric parameters are modified.
+     */
+    public AttenuationContext getAttenuationContext() {
+        AttenuationContext context = attenuationContext;
+        if(context == null || !context.isBuiltFrom(this)) {
+            context = new AttenuationContext(this);
+            attenuationContext = context;
+        }
+        return context;
+    }
+
 
 
 }
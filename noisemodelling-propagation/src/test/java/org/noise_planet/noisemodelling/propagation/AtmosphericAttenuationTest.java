@@ -38,7 +38,7 @@ import org.junit.Test;
 import java.util.Arrays;
 import java.util.List;
 
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.*;
 
 
 /**
@@ -113,4 +113,23 @@ public class AtmosphericAttenuationTest {
             assertEquals(expected[idfreq], coefAttAtmos, EPSILON);
         }
     }
+
+    @Test
+    public void testAttenuationContext() {
+        PropagationProcessPathData data = new PropagationProcessPathData();
+        AttenuationContext context = data.getAttenuationContext();
+        assertSame(context, data.getAttenuationContext());
+        assertArrayEquals(data.getAlpha_atmo(), context.getAlphaAtmo(), 0);
+        for(int idfreq = 0; idfreq < data.freq_lvl.size(); idfreq++) {
+            assertEquals(data.getCelerity() / data.freq_lvl.get(idfreq), context.getFreqLambda()[idfreq], 0);
+            assertEquals(data.freq_lvl_a_weighting.get(idfreq), context.getAWeighting()[idfreq], 0);
+        }
+        // Atmospheric parameters change the constants
+        data.setTemperature(-20);
+        AttenuationContext newContext = data.getAttenuationContext();
+        assertNotSame(context, newContext);
+        assertFalse(context.isBuiltFrom(data));
+        assertArrayEquals(data.getAlpha_atmo(), newContext.getAlphaAtmo(), 0);
+        assertEquals(data.getCelerity() / data.freq_lvl.get(0), newContext.getFreqLambda()[0], 0);
+    }
 }
@@ -12,8 +12,11 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Function;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class PropagationPath_Cnossos {
 
@@ -457,4 +460,104 @@ public class PropagationPath_Cnossos {
 
     }
 
-}
\ No newline at end of file
+    private static PropagationPath createDiffractionPath(boolean favorable) {
+        List<PointPath> points = new ArrayList<PointPath>();
+        List<SegmentPath> segments = new ArrayList<SegmentPath>();
+        List<SegmentPath> srPath = new ArrayList<SegmentPath>();
+
+        points.add(new PointPath(new Coordinate(10, 10, 1), 0, 0.5, new ArrayList<>(), -1, PointPath.POINT_TYPE.SRCE));
+        points.add(new PointPath(new Coordinate(100, 12, 12), 0, Double.NaN, new ArrayList<>(), -1, PointPath.POINT_TYPE.DIFH));
+        points.add(new PointPath(new Coordinate(110, 13, 12), 0, Double.NaN, new ArrayList<>(), -1, PointPath.POINT_TYPE.DIFH));
+        points.add(new PointPath(new Coordinate(200, 15, 4), 0, 0, new ArrayList<>(), -1, PointPath.POINT_TYPE.RECV));
+        segments.add(new SegmentPath(0.8, new Vector3D(new Coordinate(10,10,0),new Coordinate(100,12,0.5)),new Coordinate(10,10,0)));
+        segments.add(new SegmentPath(0.2, new Vector3D(new Coordinate(100,12,0.5),new Coordinate(110,13,0.5)),new Coordinate(100,12,0.5)));
+        segments.add(new SegmentPath(0.3, new Vector3D(new Coordinate(110,13,0.5),new Coordinate(200,15,1)),new Coordinate(110,13,0.5)));
+        srPath.add(new SegmentPath(0.5,new Vector3D(new Coordinate(10,10,0),new Coordinate(200,15,1)),new Coordinate(10,10,0)));
+        return new PropagationPath(favorable, points, segments, srPath);
+    }
+
+    private static PropagationPath createFreeFieldPath(boolean favorable) {
+        List<PointPath> points = new ArrayList<PointPath>();
+        List<SegmentPath> segments = new ArrayList<SegmentPath>();
+        List<SegmentPath> srPath = new ArrayList<SegmentPath>();
+
+        points.add(new PointPath(new Coordinate(10, 10, 1), 0, 0.2, new ArrayList<>(), -1, PointPath.POINT_TYPE.SRCE));
+        points.add(new PointPath(new Coordinate(200, 15, 4), 0, 0, new ArrayList<>(), -1, PointPath.POINT_TYPE.RECV));
+        srPath.add(new SegmentPath(0.6,new Vector3D(new Coordinate(10,10,0),new Coordinate(200,15,1)),new Coordinate(10,10,0)));
+        return new PropagationPath(favorable, points, segments, srPath);
+    }
+
+    private static PropagationPath createVerticalDiffractionPath(boolean favorable) {
+        List<PointPath> points = new ArrayList<PointPath>();
+        List<SegmentPath> segments = new ArrayList<SegmentPath>();
+        List<SegmentPath> srPath = new ArrayList<SegmentPath>();
+
+        points.add(new PointPath(new Coordinate(10, 10, 4.0), 0, 0.5, new ArrayList<>(), -1, PointPath.POINT_TYPE.SRCE));
+        points.add(new PointPath(new Coordinate(175, 50, 4.0), 0, 0, new ArrayList<>(), -1, PointPath.POINT_TYPE.DIFV));
+        points.add(new PointPath(new Coordinate(200, 10, 4.0), 0, 0, new ArrayList<>(), -1, PointPath.POINT_TYPE.RECV));
+        segments.add(new SegmentPath(0.5, new Vector3D(new Coordinate(10,10,0),new Coordinate(175,50,0)),new Coordinate(0,0,0)));
+        segments.add(new SegmentPath(0.2, new Vector3D(new Coordinate(175,50,0),new Coordinate(200,10,0)),new Coordinate(0,0,0)));
+        srPath.add(new SegmentPath(0.4,new Vector3D(new Coordinate(10,10,0),new Coordinate(200,10,0)),new Coordinate(0,0,0)));
+        return new PropagationPath(favorable, points, segments, srPath);
+    }
+
+    /**
+     * Aboundary of both conditions computed in a single pass must be equal to the evaluation of each condition
+     * @param pathFactory Create the same path for the provided favorable condition
+     */
+    private void assertSinglePassAboundary(Function<Boolean, PropagationPath> pathFactory, String testName) {
+        PropagationProcessPathData propData = new PropagationProcessPathData();
+        propData.setTemperature(15);
+        propData.setHumidity(70);
+        EvaluateAttenuationCnossos evaluateAttenuationCnossos = new EvaluateAttenuationCnossos();
+        evaluateAttenuationCnossos.initEvaluateAttenutation(propData);
+
+        PropagationPath homogeneousPath = pathFactory.apply(false);
+        homogeneousPath.initPropagationPath();
+        double[] expectedH = evaluateAttenuationCnossos.evaluateAboundary(homogeneousPath, propData, false);
+        PropagationPath favorablePath = pathFactory.apply(true);
+        favorablePath.initPropagationPath();
+        double[] expectedF = evaluateAttenuationCnossos.evaluateAboundary(favorablePath, propData, true);
+
+        // Start from the homogeneous condition, the path must end in the favorable condition
+        PropagationPath propagationPath = pathFactory.apply(false);
+        double[] aBoundaryH = new double[freqLvl.size()];
+        double[] aBoundaryF = new double[freqLvl.size()];
+        evaluateAttenuationCnossos.evaluateAboundary(propagationPath, propData, aBoundaryH, aBoundaryF);
+        splCompare(aBoundaryH, testName + " single pass Aboundary,H", expectedH, 1e-12);
+        splCompare(aBoundaryF, testName + " single pass Aboundary,F", expectedF, 1e-12);
+        assertEquals(homogeneousPath.getSRList().size(), propagationPath.getSRList().size());
+        assertTrue(propagationPath.isFavorable());
+        SegmentPath expectedSR = favorablePath.getSRList().get(0);
+        SegmentPath sr = propagationPath.getSRList().get(0);
+        assertEquals(expectedSR.dc, sr.dc, 1e-12);
+        assertEquals(expectedSR.gw, sr.gw, 1e-12);
+        assertEquals(expectedSR.gm, sr.gm, 1e-12);
+
+        // Homogeneous condition only
+        propagationPath = pathFactory.apply(true);
+        evaluateAttenuationCnossos.evaluateAboundary(propagationPath, propData, aBoundaryH, null);
+        splCompare(aBoundaryH, testName + " single pass Aboundary,H only", expectedH, 1e-12);
+        assertFalse(propagationPath.isFavorable());
+        expectedSR = homogeneousPath.getSRList().get(0);
+        sr = propagationPath.getSRList().get(0);
+        assertEquals(expectedSR.dc, sr.dc, 1e-12);
+        assertEquals(expectedSR.gw, sr.gw, 1e-12);
+        assertEquals(expectedSR.gm, sr.gm, 1e-12);
+    }
+
+    @Test
+    public void TestSinglePassAboundary() {
+        assertSinglePassAboundary(PropagationPath_Cnossos::createDiffractionPath, "Horizontal diffraction");
+    }
+
+    @Test
+    public void TestSinglePassAboundaryFreeField() {
+        assertSinglePassAboundary(PropagationPath_Cnossos::createFreeFieldPath, "Free field");
+    }
+
+    @Test
+    public void TestSinglePassAboundaryVerticalDiffraction() {
+        assertSinglePassAboundary(PropagationPath_Cnossos::createVerticalDiffractionPath, "Vertical diffraction");
+    }
+}
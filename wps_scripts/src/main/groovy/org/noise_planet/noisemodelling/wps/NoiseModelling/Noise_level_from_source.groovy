@@ -40,6 +40,7 @@ import org.slf4j.LoggerFactory
 
 import java.sql.Connection
 import java.sql.SQLException
+import java.util.function.Consumer
 
 title = 'Calculation of the Lden,LDay,LEvening,LNight map from the noise emission table'
 description = 'Calculation of the Lden map from the road noise emission table (DEN format, see input details). </br> Tables must be projected in a metric coordinate system (SRID). Use "Change_SRID" WPS Block if needed. ' +
@@ -306,15 +307,23 @@ def run(input) {
     // Open connection
     openGeoserverDataStoreConnection(dbName).withCloseable {
         Connection connection ->
-            return [result: exec(connection, input)]
+            // Dedicated connection used to fetch the next computation area while the current one is computed
+            openGeoserverDataStoreConnection(dbName).withCloseable {
+                Connection prefetchConnection ->
+                    return [result: exec(connection, input, prefetchConnection)]
+            }
     }
 }
 
 // main function of the script
-def exec(Connection connection, input) {
+// prefetchConnection is optional, if provided the next computation area is fetched with it while the current one is computed
+def exec(Connection connection, input, Connection prefetchConnection = null) {
 
     //Need to change the ConnectionWrapper to WpsConnectionWrapper to work under postGIS database
     connection = new ConnectionWrapper(connection)
+    if (prefetchConnection != null) {
+        prefetchConnection = new ConnectionWrapper(prefetchConnection)
+    }
 
     // output string, the information given back to the user
     String resultString = null
@@ -555,15 +564,17 @@ def exec(Connection connection, input) {
         int k = 0
         Map cells = pointNoiseMap.searchPopulatedCells(connection);
         ProgressVisitor progressVisitor = progressLogger.subProcess(cells.size());
-        new TreeSet<>(cells.keySet()).each { cellIndex ->
+        TreeSet cellIndexes = new TreeSet<>(cells.keySet())
+        Iterator cellIterator = cellIndexes.iterator()
+        // Run ray propagation, the next cell is fetched and triangulated while the current cell is computed
+        pointNoiseMap.evaluateCells(connection, prefetchConnection, cellIndexes, progressVisitor, receivers, { out ->
+            def cellIndex = cellIterator.next()
             Envelope cellEnvelope = pointNoiseMap.getCellEnv(pointNoiseMap.getMainEnvelope(),
                     cellIndex.getLatitudeIndex(), cellIndex.getLongitudeIndex(), pointNoiseMap.getCellWidth(),
                     pointNoiseMap.getCellHeight());
-            logger.info("Compute domain is " + new GeometryFactory().toGeometry(cellEnvelope))
-            logger.info(String.format("Compute... %.3f %% (%d receivers in this cell)", 100 * k++ / cells.size(), cells.get(cellIndex)))
-            // Run ray propagation
-            pointNoiseMap.evaluateCell(connection, cellIndex.getLatitudeIndex(), cellIndex.getLongitudeIndex(), progressVisitor, receivers)
-        }
+            logger.info("Computed domain is " + new GeometryFactory().toGeometry(cellEnvelope))
+            logger.info(String.format("Compute... %.3f %% (%d receivers in this cell)", 100 * ++k / cells.size(), cells.get(cellIndex)))
+        } as Consumer)
     } finally {
         ldenProcessing.stop()
     }
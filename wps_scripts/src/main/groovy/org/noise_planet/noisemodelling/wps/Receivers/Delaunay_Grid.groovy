@@ -249,13 +249,8 @@ def exec(Connection connection, input) {
     AtomicInteger pk = new AtomicInteger(0)
     ProgressVisitor progressVisitorNM = progressLogger.subProcess(noiseMap.getGridDim() * noiseMap.getGridDim())
 
-    for (int i = 0; i < noiseMap.getGridDim(); i++) {
-        for (int j = 0; j < noiseMap.getGridDim(); j++) {
-            logger.info("Compute cell " + (i * noiseMap.getGridDim() + j + 1) + " of " + noiseMap.getGridDim() * noiseMap.getGridDim())
-            noiseMap.generateReceivers(connection, i, j, receivers_table_name, "TRIANGLES", pk)
-            progressVisitorNM.endStep()
-        }
-    }
+    // Cells are triangulated concurrently, receivers are inserted in the cells order
+    noiseMap.generateReceivers(connection, receivers_table_name, "TRIANGLES", pk, progressVisitorNM)
     logger.info("Create spatial index on "+receivers_table_name+" table")
     sql.execute("Create spatial index on " + receivers_table_name + "(the_geom);")
 